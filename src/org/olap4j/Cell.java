@@ -52,6 +52,10 @@ public interface Cell {
      * </ul>
      *
      * @return Ordinal of this Cell
+     *
+     * @throws IndexOutOfBoundsException if the ordinal is larger than
+     * {@link Integer#MAX_VALUE}, which is possible if the cell set has
+     * more cells than that; in that case use {@link #getCoordinateList()}
      */
     int getOrdinal();
 
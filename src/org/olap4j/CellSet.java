@@ -190,6 +190,9 @@ public interface CellSet extends ResultSet, OlapWrapper {
      *
      * @param coordinates Cell coordinates
      * @return Cell ordinal
+     * @throws IndexOutOfBoundsException if the ordinal is larger than
+     * {@link Integer#MAX_VALUE}, which is possible if the cell set has
+     * more cells than that
      */
     int coordinatesToOrdinal(List<Integer> coordinates);
 
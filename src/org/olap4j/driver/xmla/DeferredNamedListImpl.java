@@ -24,7 +24,7 @@ import org.olap4j.metadata.NamedList;
 
 import java.util.AbstractList;
 import java.util.Map;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.Future;
 
 /**
  * Named list which instantiates itself on first use.
@@ -35,6 +35,11 @@ import java.util.concurrent.Semaphore;
  * collections loaded immediately, loading the catalog would immediately load
  * all sub-objects into memory, taking a lot of memory and time.
  *
+ * <p>The first thread to access the list populates it, holding the list's
+ * lock, and publishes the contents as an unmodifiable snapshot. Later
+ * accesses read the snapshot without locking. Call
+ * {@link #populateInBackground()} to populate several lists concurrently.
+ *
  * <p>This class is not gc-friendly at present. Once populated,
  * <code>DeferredNamedListImpl</code> holds hard references
  * to the objects it contains, so they are not available to be
@@ -48,14 +53,22 @@ class DeferredNamedListImpl<T extends Named>
     extends AbstractList<T>
     implements NamedList<T>
 {
-    private final NamedList<T> list = new NamedListImpl<T>();
-    private State state = State.NEW;
+    /**
+     * Contents of the list, or null if the list has not been populated.
+     * Never modified once published, so may be read without locking.
+     */
+    private volatile NamedList<T> snapshot;
+
+    /**
+     * Whether the list is being populated. Accessed only while holding the
+     * lock; a thread that sees it set is populating recursively.
+     */
+    private boolean populating;
 
     protected final XmlaOlap4jConnection.MetadataRequest metadataRequest;
     protected final XmlaOlap4jConnection.Context context;
     protected final XmlaOlap4jConnection.Handler<T> handler;
     protected final Object[] restrictions;
-    protected final Semaphore semaphore = new Semaphore(1);
 
     DeferredNamedListImpl(
         XmlaOlap4jConnection.MetadataRequest metadataRequest,
@@ -72,40 +85,70 @@ class DeferredNamedListImpl<T extends Named>
 
     /**
      * Flushes the contents of the list. Next access will re-populate.
+     * Threads that are reading the previous contents are not affected.
      */
-    void reset() {
-        state = State.NEW;
-        list.clear();
+    synchronized void reset() {
+        snapshot = null;
     }
 
     private NamedList<T> getList() {
+        final NamedList<T> list = snapshot;
+        if (list != null) {
+            return list;
+        }
+        return populate();
+    }
+
+    private synchronized NamedList<T> populate() {
+        if (snapshot != null) {
+            // Another thread populated the list while we were waiting.
+            return snapshot;
+        }
+        if (populating) {
+            throw new RuntimeException("recursive population");
+        }
+        populating = true;
         try {
-            semaphore.acquire();
-            switch (state) {
-            case POPULATING:
-                throw new RuntimeException("recursive population");
-            case NEW:
-                try {
-                    state = State.POPULATING;
-                    populateList(list);
-                    state = State.POPULATED;
-                } catch (OlapException e) {
-                    state = State.NEW;
-                    // TODO: fetch metadata on getCollection() method, so we
-                    // can't get an exception while traversing the list
-                    throw new RuntimeException(e);
-                }
-                // fall through
-            case POPULATED:
-            default:
-                return list;
-            }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+            final NamedList<T> list = new NamedListImpl<T>();
+            populateList(list);
+            snapshot = list;
+            return list;
+        } catch (OlapException e) {
+            // TODO: fetch metadata on getCollection() method, so we
+            // can't get an exception while traversing the list
             throw new RuntimeException(e);
         } finally {
-            semaphore.release();
+            populating = false;
+        }
+    }
+
+    /**
+     * Starts populating this list in a background thread, if it is not
+     * already populated. Lists that do not depend on each other, such as
+     * the hierarchies of each dimension of a cube, can be populated
+     * concurrently this way. A thread that accesses the list before the
+     * background thread has finished waits for it.
+     *
+     * <p>Errors are not reported by the background thread; if population
+     * fails, the next access tries again, and throws.
+     *
+     * @return Future that completes when the list is populated, or null if
+     * the list is already populated
+     */
+    Future<?> populateInBackground() {
+        if (snapshot != null) {
+            return null;
         }
+        return XmlaOlap4jDriver.submit(
+            new Runnable() {
+                public void run() {
+                    try {
+                        getList();
+                    } catch (RuntimeException e) {
+                        // Ignore. The next access will try again.
+                    }
+                }
+            });
     }
 
     public T get(int index) {
@@ -136,12 +179,6 @@ class DeferredNamedListImpl<T extends Named>
         context.olap4jConnection.populateList(
             list, context, metadataRequest, handler, restrictions);
     }
-
-    private enum State {
-        NEW,
-        POPULATING,
-        POPULATED
-    }
 }
 
 // End DeferredNamedListImpl.java
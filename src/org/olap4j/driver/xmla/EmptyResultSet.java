@@ -35,6 +35,13 @@ import javax.sql.rowset.RowSetMetaDataImpl;
  * methods for querying object types where those object types never have
  * any instances for this particular driver.</p>
  *
+ * <p>It is also used to return a fixed list of rows, and rows generated on
+ * demand by an iterator. In the latter case, rows are pulled from the
+ * iterator only when the cursor first reaches them, and are kept so that the
+ * result set remains scrollable. The result set lets go of the iterator, and
+ * whatever resources the iterator holds, as soon as the last row has been
+ * read or the result set is closed.</p>
+ *
  * <p>This class has sub-classes which implement JDBC 3.0 and JDBC 4.0 APIs;
  * it is instantiated using {@link Factory#newEmptyResultSet}.</p>
  *
@@ -45,7 +52,9 @@ abstract class EmptyResultSet implements ResultSet, OlapWrapper {
     final XmlaOlap4jConnection olap4jConnection;
     private final List<String> headerList;
     private final List<List<Object>> rowList;
+    private Iterator<List<Object>> rowIterator;
     private int rowOrdinal = -1;
+    private int fetchSize;
     private final RowSetMetaDataImpl metaData = new RowSetMetaDataImpl();
 
     /**
@@ -59,10 +68,38 @@ abstract class EmptyResultSet implements ResultSet, OlapWrapper {
         XmlaOlap4jConnection olap4jConnection,
         List<String> headerList,
         List<List<Object>> rowList)
+    {
+        this(olap4jConnection, headerList, rowList, null);
+    }
+
+    /**
+     * Creates an EmptyResultSet whose rows are generated, as they are needed,
+     * by an iterator.
+     *
+     * @param olap4jConnection Connection
+     * @param headerList Column names
+     * @param rowIterator Iterator over row values
+     */
+    EmptyResultSet(
+        XmlaOlap4jConnection olap4jConnection,
+        List<String> headerList,
+        Iterator<List<Object>> rowIterator)
+    {
+        this(
+            olap4jConnection, headerList, new ArrayList<List<Object>>(),
+            rowIterator);
+    }
+
+    private EmptyResultSet(
+        XmlaOlap4jConnection olap4jConnection,
+        List<String> headerList,
+        List<List<Object>> rowList,
+        Iterator<List<Object>> rowIterator)
     {
         this.olap4jConnection = olap4jConnection;
         this.headerList = headerList;
         this.rowList = rowList;
+        this.rowIterator = rowIterator;
         try {
             metaData.setColumnCount(headerList.size());
             for (int i = 0; i < headerList.size(); i++) {
@@ -90,9 +127,37 @@ abstract class EmptyResultSet implements ResultSet, OlapWrapper {
         return rowList.get(rowOrdinal).get(column);
     }
 
+    /**
+     * Reads rows from the iterator, if there is one, until the row with a
+     * given ordinal has been read or the iterator is exhausted.
+     *
+     * @param ordinal 0-based row ordinal
+     * @return Whether the row exists
+     */
+    private boolean fetch(int ordinal) {
+        while (rowList.size() <= ordinal && rowIterator != null) {
+            if (rowIterator.hasNext()) {
+                rowList.add(rowIterator.next());
+            } else {
+                // Let go of the iterator, so that it and the response it is
+                // reading can be garbage-collected.
+                rowIterator = null;
+            }
+        }
+        return ordinal >= 0 && ordinal < rowList.size();
+    }
+
+    /**
+     * Reads all remaining rows from the iterator.
+     */
+    private void fetchAll() {
+        fetch(Integer.MAX_VALUE);
+    }
+
     // implement ResultSet
 
     public boolean next() throws SQLException {
+        fetch(rowOrdinal + 1);
         // note that if rowOrdinal == rowList.size - 1, we move but then return
         // false
         if (rowOrdinal < rowList.size()) {
@@ -102,6 +167,7 @@ abstract class EmptyResultSet implements ResultSet, OlapWrapper {
     }
 
     public void close() throws SQLException {
+        rowIterator = null;
     }
 
     public boolean wasNull() throws SQLException {
@@ -436,6 +502,7 @@ abstract class EmptyResultSet implements ResultSet, OlapWrapper {
     }
 
     public boolean isLast() throws SQLException {
+        fetch(rowOrdinal + 1);
         return rowOrdinal == rowList.size() - 1;
     }
 
@@ -444,10 +511,12 @@ abstract class EmptyResultSet implements ResultSet, OlapWrapper {
     }
 
     public void afterLast() throws SQLException {
+        fetchAll();
         rowOrdinal = rowList.size();
     }
 
     public boolean first() throws SQLException {
+        fetch(0);
         if (rowList.size() == 0) {
             return false;
         } else {
@@ -457,6 +526,7 @@ abstract class EmptyResultSet implements ResultSet, OlapWrapper {
     }
 
     public boolean last() throws SQLException {
+        fetchAll();
         if (rowList.size() == 0) {
             return false;
         } else {
@@ -471,6 +541,7 @@ abstract class EmptyResultSet implements ResultSet, OlapWrapper {
 
     public boolean absolute(int row) throws SQLException {
         int newRowOrdinal = row - 1;// convert to 0-based
+        fetch(newRowOrdinal);
         if (newRowOrdinal >= 0 && newRowOrdinal < rowList.size()) {
             rowOrdinal = newRowOrdinal;
             return true;
@@ -481,6 +552,7 @@ abstract class EmptyResultSet implements ResultSet, OlapWrapper {
 
     public boolean relative(int rows) throws SQLException {
         int newRowOrdinal = rowOrdinal + (rows - 1);
+        fetch(newRowOrdinal);
         if (newRowOrdinal >= 0 && newRowOrdinal < rowList.size()) {
             rowOrdinal = newRowOrdinal;
             return true;
@@ -507,15 +579,19 @@ abstract class EmptyResultSet implements ResultSet, OlapWrapper {
     }
 
     public void setFetchSize(int rows) throws SQLException {
-        throw new UnsupportedOperationException();
+        // Rows are decoded one at a time, so the fetch size is only a hint.
+        if (rows < 0) {
+            throw new SQLException("Invalid fetch size " + rows);
+        }
+        this.fetchSize = rows;
     }
 
     public int getFetchSize() throws SQLException {
-        throw new UnsupportedOperationException();
+        return fetchSize;
     }
 
     public int getType() throws SQLException {
-        throw new UnsupportedOperationException();
+        return TYPE_SCROLL_INSENSITIVE;
     }
 
     public int getConcurrency() throws SQLException {
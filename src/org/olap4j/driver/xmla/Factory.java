@@ -22,6 +22,7 @@ import org.olap4j.OlapStatement;
 import org.olap4j.driver.xmla.proxy.XmlaOlap4jProxy;
 
 import java.sql.*;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
 
@@ -74,6 +75,20 @@ interface Factory {
         List<String> headerList,
         List<List<Object>> rowList);
 
+    /**
+     * Creates a scrollable result set whose rows are generated, one at a
+     * time, by an iterator as the cursor first reaches them.
+     *
+     * @param olap4jConnection Connection
+     * @param headerList Column headers
+     * @param rowIterator Iterator over row values
+     * @return Result set
+     */
+    ResultSet newLazyResultSet(
+        XmlaOlap4jConnection olap4jConnection,
+        List<String> headerList,
+        Iterator<List<Object>> rowIterator);
+
     /**
      * Creates a cell set.
      *
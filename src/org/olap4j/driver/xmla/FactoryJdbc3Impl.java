@@ -64,6 +64,15 @@ class FactoryJdbc3Impl implements Factory {
         return new EmptyResultSetJdbc3(olap4jConnection, headerList, rowList);
     }
 
+    public ResultSet newLazyResultSet(
+        XmlaOlap4jConnection olap4jConnection,
+        List<String> headerList,
+        Iterator<List<Object>> rowIterator)
+    {
+        return new EmptyResultSetJdbc3(
+            olap4jConnection, headerList, rowIterator);
+    }
+
     public XmlaOlap4jCellSet newCellSet(
         XmlaOlap4jStatement olap4jStatement) throws OlapException
     {
@@ -132,6 +141,14 @@ class FactoryJdbc3Impl implements Factory {
         {
             super(olap4jConnection, headerList, rowList);
         }
+
+        public EmptyResultSetJdbc3(
+            XmlaOlap4jConnection olap4jConnection,
+            List<String> headerList,
+            Iterator<List<Object>> rowIterator)
+        {
+            super(olap4jConnection, headerList, rowIterator);
+        }
     }
 
     private class XmlaOlap4jConnectionJdbc3 extends XmlaOlap4jConnection {
@@ -65,6 +65,15 @@ class FactoryJdbc41Impl implements Factory {
             olap4jConnection, headerList, rowList);
     }
 
+    public ResultSet newLazyResultSet(
+        XmlaOlap4jConnection olap4jConnection,
+        List<String> headerList,
+        Iterator<List<Object>> rowIterator)
+    {
+        return new EmptyResultSetJdbc41(
+            olap4jConnection, headerList, rowIterator);
+    }
+
     public XmlaOlap4jCellSet newCellSet(
         XmlaOlap4jStatement olap4jStatement) throws OlapException
     {
@@ -110,6 +119,21 @@ class FactoryJdbc41Impl implements Factory {
             super(olap4jConnection, headerList, rowList);
         }
 
+        /**
+         * Creates a lazy EmptyResultSetJdbc41.
+         *
+         * @param olap4jConnection Connection
+         * @param headerList Column names
+         * @param rowIterator Iterator over row values
+         */
+        EmptyResultSetJdbc41(
+            XmlaOlap4jConnection olap4jConnection,
+            List<String> headerList,
+            Iterator<List<Object>> rowIterator)
+        {
+            super(olap4jConnection, headerList, rowIterator);
+        }
+
         public <T> T getObject(
             int columnIndex,
             Class<T> type) throws SQLException
@@ -64,6 +64,15 @@ class FactoryJdbc4Impl implements Factory {
             olap4jConnection, headerList, rowList);
     }
 
+    public ResultSet newLazyResultSet(
+        XmlaOlap4jConnection olap4jConnection,
+        List<String> headerList,
+        Iterator<List<Object>> rowIterator)
+    {
+        return new EmptyResultSetJdbc4(
+            olap4jConnection, headerList, rowIterator);
+    }
+
     public XmlaOlap4jCellSet newCellSet(
         XmlaOlap4jStatement olap4jStatement) throws OlapException
     {
@@ -108,6 +117,21 @@ class FactoryJdbc4Impl implements Factory {
         {
             super(olap4jConnection, headerList, rowList);
         }
+
+        /**
+         * Creates a lazy EmptyResultSetJdbc4.
+         *
+         * @param olap4jConnection Connection
+         * @param headerList Column names
+         * @param rowIterator Iterator over row values
+         */
+        EmptyResultSetJdbc4(
+            XmlaOlap4jConnection olap4jConnection,
+            List<String> headerList,
+            Iterator<List<Object>> rowIterator)
+        {
+            super(olap4jConnection, headerList, rowIterator);
+        }
     }
 
     private static class XmlaOlap4jConnectionJdbc4
@@ -50,6 +50,21 @@ class FactoryJdbc4Plus {
             super(olap4jConnection, headerList, rowList);
         }
 
+        /**
+         * Creates a lazy AbstractEmptyResultSet.
+         *
+         * @param olap4jConnection Connection
+         * @param headerList Column names
+         * @param rowIterator Iterator over row values
+         */
+        AbstractEmptyResultSet(
+            XmlaOlap4jConnection olap4jConnection,
+            List<String> headerList,
+            Iterator<List<Object>> rowIterator)
+        {
+            super(olap4jConnection, headerList, rowIterator);
+        }
+
         // implement java.sql.ResultSet methods
         // introduced in JDBC 4.0/JDK 1.6
 
@@ -80,6 +80,30 @@ interface MetadataReader {
         String memberUniqueName,
         List<XmlaOlap4jMember> list) throws OlapException;
 
+    /**
+     * Looks up several members by their unique names and, for each, finds
+     * the members related by the specified tree-operations. Writes the
+     * results into a map.
+     *
+     * <p>Not part of public olap4j API.
+     *
+     * @param treeOps Collection of tree operations to travel relative to
+     * each member in order to create its list of members
+     *
+     * @param memberUniqueNames List of unique names of members; no
+     * duplicates
+     *
+     * @param memberListMap Map to populate with a list of related members
+     * for each unique name; the list is empty if the member is not found
+     *
+     * @throws org.olap4j.OlapException if error occurs
+     */
+    void lookupMemberRelatives(
+        Set<Member.TreeOp> treeOps,
+        List<String> memberUniqueNames,
+        Map<String, List<XmlaOlap4jMember>> memberListMap)
+        throws OlapException;
+
     /**
      * Looks up members of a given level.
      *
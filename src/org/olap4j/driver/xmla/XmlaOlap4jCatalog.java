@@ -24,7 +24,7 @@ import org.olap4j.impl.Olap4jUtil;
 import org.olap4j.metadata.*;
 
 import java.sql.SQLException;
-import java.util.List;
+import java.util.*;
 
 /**
  * Implementation of {@link org.olap4j.metadata.Catalog}
@@ -36,7 +36,13 @@ import java.util.List;
 class XmlaOlap4jCatalog implements Catalog, Named {
     final XmlaOlap4jDatabaseMetaData olap4jDatabaseMetaData;
     private final String name;
-    final DeferredNamedListImpl<XmlaOlap4jSchema> schemas;
+
+    /**
+     * Lists of schemas, one for each locale that has been used.
+     */
+    private final Map<Locale, DeferredNamedListImpl<XmlaOlap4jSchema>>
+        schemasByLocale =
+            new HashMap<Locale, DeferredNamedListImpl<XmlaOlap4jSchema>>();
     private final XmlaOlap4jDatabase database;
     private List<String> roles;
 
@@ -52,7 +58,42 @@ class XmlaOlap4jCatalog implements Catalog, Named {
         this.olap4jDatabaseMetaData = olap4jDatabaseMetaData;
         this.name = name;
         this.roles = roles;
+    }
+
+    /**
+     * Returns the list of schemas for the connection's current locale,
+     * creating it if this is the first time the locale has been used.
+     *
+     * <p>Schemas, and the cubes, dimensions and members beneath them, hold
+     * captions and descriptions in one locale. Each locale has its own list,
+     * and a connection that switches between locales finds each list as it
+     * left it.
+     *
+     * @return List of schemas in the connection's current locale
+     */
+    DeferredNamedListImpl<XmlaOlap4jSchema> getSchemaList() {
+        final Locale locale =
+            olap4jDatabaseMetaData.olap4jConnection.getLocale();
+        synchronized (schemasByLocale) {
+            DeferredNamedListImpl<XmlaOlap4jSchema> schemas =
+                schemasByLocale.get(locale);
+            if (schemas == null) {
+                schemas = createSchemaList(locale);
+                schemasByLocale.put(locale, schemas);
+            }
+            return schemas;
+        }
+    }
 
+    /**
+     * Creates a list of schemas whose metadata is in a given locale.
+     *
+     * @param locale Locale
+     * @return List of schemas
+     */
+    private DeferredNamedListImpl<XmlaOlap4jSchema> createSchemaList(
+        final Locale locale)
+    {
         // Some servers don't support MDSCHEMA_MDSCHEMATA, so we will
         // override the list class so it tries it first, and falls
         // back to the MDSCHEMA_CUBES trick, where ask for the cubes,
@@ -61,72 +102,72 @@ class XmlaOlap4jCatalog implements Catalog, Named {
         //
         // Many servers (SSAS for example) won't support the schema name column
         // in the returned rowset. This has to be taken into account as well.
-        this.schemas =
-            new DeferredNamedListImpl<XmlaOlap4jSchema>(
-                XmlaOlap4jConnection.MetadataRequest.DBSCHEMA_SCHEMATA,
-                new XmlaOlap4jConnection.Context(
-                    olap4jDatabaseMetaData.olap4jConnection,
-                    olap4jDatabaseMetaData,
-                    this,
-                    null, null, null, null, null),
-                new XmlaOlap4jConnection.CatalogSchemaHandler(this.name),
-                null)
+        return new DeferredNamedListImpl<XmlaOlap4jSchema>(
+            XmlaOlap4jConnection.MetadataRequest.DBSCHEMA_SCHEMATA,
+            new XmlaOlap4jConnection.Context(
+                olap4jDatabaseMetaData.olap4jConnection,
+                olap4jDatabaseMetaData,
+                this,
+                null, null, null, null, null),
+            new XmlaOlap4jConnection.CatalogSchemaHandler(
+                this.name, locale),
+            null)
+        {
+            private boolean useSchemata = false;
+
+            @Override
+            protected void populateList(
+                NamedList<XmlaOlap4jSchema> list)
+                throws OlapException
             {
-                private boolean useSchemata = false;
-
-                @Override
-                protected void populateList(
-                    NamedList<XmlaOlap4jSchema> list)
-                    throws OlapException
-                {
-                    try {
-                        // Some OLAP servers don't support DBSCHEMA_SCHEMATA so
-                        // we fork the behavior here according to the database
-                        // product name.
-                        if (XmlaOlap4jCatalog.this.olap4jDatabaseMetaData
-                            .getDatabaseProductName().contains("Mondrian"))
-                        {
-                            this.useSchemata = true;
-                        }
-                    } catch (SQLException e1) {
-                        throw new OlapException(
-                            "Failed to obtain the database product name.",
-                            e1);
+                try {
+                    // Some OLAP servers don't support DBSCHEMA_SCHEMATA so
+                    // we fork the behavior here according to the database
+                    // product name.
+                    if (XmlaOlap4jCatalog.this.olap4jDatabaseMetaData
+                        .getDatabaseProductName().contains("Mondrian"))
+                    {
+                        this.useSchemata = true;
                     }
-                    try {
-                        if (this.useSchemata) {
-                            super.populateList(list);
-                            return;
-                        }
-                    } catch (OlapException e) {
-                        // no op. we know how to fallback.
-                        useSchemata = false;
+                } catch (SQLException e1) {
+                    throw new OlapException(
+                        "Failed to obtain the database product name.",
+                        e1);
+                }
+                try {
+                    if (this.useSchemata) {
+                        super.populateList(list);
+                        return;
                     }
-                    // Fallback to MDSCHEMA_CUBES trick
-                    populateInternal(list);
+                } catch (OlapException e) {
+                    // no op. we know how to fallback.
+                    useSchemata = false;
                 }
+                // Fallback to MDSCHEMA_CUBES trick
+                populateInternal(list);
+            }
 
-                private void populateInternal(
-                    NamedList<XmlaOlap4jSchema> list)
-                    throws OlapException
-                {
-                    XmlaOlap4jConnection conn =
-                        XmlaOlap4jCatalog.this
-                        .olap4jDatabaseMetaData.olap4jConnection;
-                    conn.populateList(
-                        list,
-                        new XmlaOlap4jConnection.Context(
-                            conn,
-                            conn.olap4jDatabaseMetaData,
-                            XmlaOlap4jCatalog.this,
-                            null, null, null, null, null),
-                            XmlaOlap4jConnection.MetadataRequest
-                                .MDSCHEMA_CUBES,
-                            new XmlaOlap4jConnection.CatalogSchemaHandler(
-                                XmlaOlap4jCatalog.this.name),
-                            new Object[0]);
-                }
-            };
+            private void populateInternal(
+                NamedList<XmlaOlap4jSchema> list)
+                throws OlapException
+            {
+                XmlaOlap4jConnection conn =
+                    XmlaOlap4jCatalog.this
+                    .olap4jDatabaseMetaData.olap4jConnection;
+                conn.populateList(
+                    list,
+                    new XmlaOlap4jConnection.Context(
+                        conn,
+                        conn.olap4jDatabaseMetaData,
+                        XmlaOlap4jCatalog.this,
+                        null, null, null, null, null),
+                        XmlaOlap4jConnection.MetadataRequest
+                            .MDSCHEMA_CUBES,
+                        new XmlaOlap4jConnection.CatalogSchemaHandler(
+                            XmlaOlap4jCatalog.this.name, locale),
+                        new Object[0]);
+            }
+        };
     }
 
     public int hashCode() {
@@ -142,7 +183,7 @@ class XmlaOlap4jCatalog implements Catalog, Named {
     }
 
     public NamedList<Schema> getSchemas() throws OlapException {
-        return Olap4jUtil.cast(schemas);
+        return Olap4jUtil.cast(getSchemaList());
     }
 
     public String getName() {
@@ -18,10 +18,15 @@
 package org.olap4j.driver.xmla;
 
 import org.olap4j.*;
+import org.olap4j.driver.xmla.XmlaOlap4jCellSet.XsdTypes;
+import org.olap4j.impl.FormatString;
 import org.olap4j.impl.UnmodifiableArrayMap;
 import org.olap4j.metadata.Property;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.sql.ResultSet;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -34,41 +39,165 @@ import java.util.Map;
  */
 class XmlaOlap4jCell implements Cell {
     private final XmlaOlap4jCellSet cellSet;
-    private final int ordinal;
+    private final long ordinal;
     private final Object value;
+
+    /**
+     * Type of the value if it is held as a primitive in {@link #bits} and
+     * {@link #scale}, or null if it is held in {@link #value}. See
+     * {@link XmlaOlap4jValueDecoder}.
+     */
+    private final XsdTypes type;
+    private final long bits;
+    private final int scale;
     private final String formattedValue;
+    private final String formatString;
     private final Map<Property, Object> propertyValues;
 
+    /**
+     * Value as returned by {@link #getValue()}, created on first call. The
+     * boxed types are immutable, so if two threads race, each sees a valid
+     * object.
+     */
+    private Object boxedValue;
+
+    /**
+     * Creates an XmlaOlap4jCell.
+     *
+     * @param cellSet Cell set
+     * @param ordinal Ordinal of cell
+     * @param value Value
+     * @param formattedValue Formatted value as sent by the server, or null
+     *     if the cell is to format itself
+     * @param formatString Format string, or null
+     * @param propertyValues Values of other properties
+     */
     XmlaOlap4jCell(
         XmlaOlap4jCellSet cellSet,
-        int ordinal,
+        long ordinal,
         Object value,
         String formattedValue,
+        String formatString,
+        Map<Property, Object> propertyValues)
+    {
+        this(
+            cellSet, ordinal, null, 0L, 0, value, formattedValue, formatString,
+            propertyValues);
+    }
+
+    /**
+     * Creates an XmlaOlap4jCell whose value was read by a decoder.
+     *
+     * @param cellSet Cell set
+     * @param ordinal Ordinal of cell
+     * @param decoder Decoder that has just decoded the cell's value
+     * @param formattedValue Formatted value as sent by the server, or null
+     *     if the cell is to format itself
+     * @param formatString Format string, or null
+     * @param propertyValues Values of other properties
+     */
+    XmlaOlap4jCell(
+        XmlaOlap4jCellSet cellSet,
+        long ordinal,
+        XmlaOlap4jValueDecoder decoder,
+        String formattedValue,
+        String formatString,
+        Map<Property, Object> propertyValues)
+    {
+        this(
+            cellSet, ordinal, decoder.type, decoder.bits, decoder.scale,
+            decoder.object, formattedValue, formatString, propertyValues);
+    }
+
+    private XmlaOlap4jCell(
+        XmlaOlap4jCellSet cellSet,
+        long ordinal,
+        XsdTypes type,
+        long bits,
+        int scale,
+        Object value,
+        String formattedValue,
+        String formatString,
         Map<Property, Object> propertyValues)
     {
         this.cellSet = cellSet;
         this.ordinal = ordinal;
+        this.type = type;
+        this.bits = bits;
+        this.scale = scale;
         this.value = value;
         this.formattedValue = formattedValue;
+        this.formatString = formatString;
 
         // Use an ArrayMap for memory efficiency, because cells
         // typically have few properties, but there are a lot of cells
         this.propertyValues = UnmodifiableArrayMap.of(propertyValues);
     }
 
+    /**
+     * Creates a copy of a cell that belongs to another cell set, and
+     * possibly has a different ordinal. The copy shares the value, format
+     * and property values of the original.
+     *
+     * @param cell Cell to copy
+     * @param cellSet Cell set
+     * @param ordinal Ordinal of cell in the new cell set
+     */
+    private XmlaOlap4jCell(
+        XmlaOlap4jCell cell,
+        XmlaOlap4jCellSet cellSet,
+        long ordinal)
+    {
+        this.cellSet = cellSet;
+        this.ordinal = ordinal;
+        this.type = cell.type;
+        this.bits = cell.bits;
+        this.scale = cell.scale;
+        this.value = cell.value;
+        this.formattedValue = cell.formattedValue;
+        this.formatString = cell.formatString;
+        this.propertyValues = cell.propertyValues;
+    }
+
+    /**
+     * Returns a copy of this cell for use in another cell set.
+     *
+     * @param cellSet Cell set
+     * @param ordinal Ordinal of cell in the new cell set
+     * @return Copy of this cell
+     */
+    XmlaOlap4jCell copy(XmlaOlap4jCellSet cellSet, long ordinal) {
+        return new XmlaOlap4jCell(this, cellSet, ordinal);
+    }
+
     public CellSet getCellSet() {
         return cellSet;
     }
 
     public int getOrdinal() {
-        return ordinal;
+        if (ordinal > Integer.MAX_VALUE) {
+            throw new IndexOutOfBoundsException(
+                "Cell ordinal " + ordinal + " does not fit into an int; "
+                + "use getCoordinateList()");
+        }
+        return (int) ordinal;
     }
 
     public List<Integer> getCoordinateList() {
-        return cellSet.ordinalToCoordinates(ordinal);
+        final int[] coordinates = cellSet.ordinalToCoordinates(ordinal);
+        final List<Integer> list = new ArrayList<Integer>(coordinates.length);
+        for (int coordinate : coordinates) {
+            list.add(coordinate);
+        }
+        return list;
     }
 
     public Object getPropertyValue(Property property) {
+        if (property == Property.StandardCellProperty.FORMATTED_VALUE
+            && !propertyValues.containsKey(property))
+        {
+            return getFormattedValue();
+        }
         return propertyValues.get(property);
     }
 
@@ -82,10 +211,33 @@ class XmlaOlap4jCell implements Cell {
     }
 
     public boolean isNull() {
-        return value == null;
+        return type == null && value == null;
     }
 
     public double getDoubleValue() throws OlapException {
+        if (type != null) {
+            switch (type) {
+            case XSD_BOOLEAN:
+                break;
+            case XSD_DOUBLE:
+            case XSD_FLOAT:
+                return Double.longBitsToDouble(bits);
+            case XSD_DECIMAL:
+            case XSD_UNSIGNEDLONG:
+                if (scale < XmlaOlap4jValueDecoder.POW10.length
+                    && bits <= XmlaOlap4jValueDecoder.MAX_EXACT_DOUBLE
+                    && bits >= -XmlaOlap4jValueDecoder.MAX_EXACT_DOUBLE)
+                {
+                    // Both operands are exact, so the quotient is correctly
+                    // rounded.
+                    return bits / XmlaOlap4jValueDecoder.POW10[scale];
+                }
+                return BigDecimal.valueOf(bits, scale).doubleValue();
+            default:
+                return bits;
+            }
+        }
+        final Object value = getValue();
         if (value instanceof Number) {
             return ((Number) value).doubleValue();
         } else {
@@ -98,11 +250,64 @@ class XmlaOlap4jCell implements Cell {
     }
 
     public Object getValue() {
-        return value;
+        if (type == null) {
+            return value;
+        }
+        Object boxedValue = this.boxedValue;
+        if (boxedValue == null) {
+            boxedValue = this.boxedValue = box();
+        }
+        return boxedValue;
+    }
+
+    /**
+     * Converts the primitive value of this cell to an object.
+     *
+     * @return Value as an object
+     */
+    private Object box() {
+        switch (type) {
+        case XSD_BOOLEAN:
+            return bits != 0;
+        case XSD_BYTE:
+            return (byte) bits;
+        case XSD_SHORT:
+        case XSD_UNSIGNEDBYTE:
+            return (short) bits;
+        case XSD_INT:
+        case XSD_UNSIGNEDSHORT:
+            return (int) bits;
+        case XSD_LONG:
+        case XSD_UNSIGNEDINT:
+            return bits;
+        case XSD_INTEGER:
+        case XSD_POSITIVEINTEGER:
+            return BigInteger.valueOf(bits);
+        case XSD_DECIMAL:
+        case XSD_UNSIGNEDLONG:
+            return BigDecimal.valueOf(bits, scale);
+        case XSD_DOUBLE:
+            return Double.longBitsToDouble(bits);
+        case XSD_FLOAT:
+            return (float) Double.longBitsToDouble(bits);
+        default:
+            throw new AssertionError(type);
+        }
     }
 
     public String getFormattedValue() {
-        return formattedValue;
+        if (formattedValue != null
+            || (isNull() && formatString == null))
+        {
+            return formattedValue;
+        }
+        // The server did not send the formatted value. Format the value
+        // now, rather than when the cell set was populated, because most
+        // cells are never formatted. The compiled format is cached.
+        return FormatString.compile(
+            formatString,
+            cellSet.olap4jStatement.olap4jConnection.getLocale())
+            .format(getValue());
     }
 
     public ResultSet drillThrough() throws OlapException {
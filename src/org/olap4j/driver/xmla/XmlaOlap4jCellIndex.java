@@ -0,0 +1,182 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.driver.xmla;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Sparse index of the cells of a cell set, keyed by <code>long</code>
+ * ordinal.
+ *
+ * <p>Cells that have no value are not sent by the server, so the index holds
+ * only the cells that were sent, in a sorted array of ordinals and a
+ * parallel array of cells. Lookup is a binary search, with no boxing, and
+ * the ordinal space may be larger than 2<sup>31</sup>.
+ *
+ * <p>Lookups are often sequential, so the index remembers where the last
+ * lookup ended, and tries the next entry first. The hint is only ever used
+ * as a guess, and is verified, so concurrent readers do not interfere with
+ * each other's correctness.
+ *
+ * <p>The index is built by calling {@link #add} then {@link #seal}, by one
+ * thread. After that it is read-only.
+ *
+ * @author jhyde
+ */
+class XmlaOlap4jCellIndex {
+    private long[] ordinals = new long[16];
+    private XmlaOlap4jCell[] cells = new XmlaOlap4jCell[16];
+    private int size;
+    private boolean sorted = true;
+
+    /**
+     * Position after the last lookup. Volatile because cell sets may be read
+     * by several threads; each reads and writes it once per lookup, and a
+     * stale value only costs a binary search.
+     */
+    private volatile int hint;
+
+    /**
+     * Adds a cell. If a cell with the same ordinal has already been added,
+     * the later cell wins.
+     *
+     * @param ordinal Ordinal
+     * @param cell Cell
+     */
+    void add(long ordinal, XmlaOlap4jCell cell) {
+        if (size == ordinals.length) {
+            final int newLength = size * 2;
+            final long[] newOrdinals = new long[newLength];
+            System.arraycopy(ordinals, 0, newOrdinals, 0, size);
+            ordinals = newOrdinals;
+            final XmlaOlap4jCell[] newCells = new XmlaOlap4jCell[newLength];
+            System.arraycopy(cells, 0, newCells, 0, size);
+            cells = newCells;
+        }
+        if (size > 0 && ordinal <= ordinals[size - 1]) {
+            sorted = false;
+        }
+        ordinals[size] = ordinal;
+        cells[size] = cell;
+        ++size;
+    }
+
+    /**
+     * Finishes building the index. Servers send cells in ordinal order, so
+     * the arrays are usually already sorted; if not, sorts them.
+     */
+    void seal() {
+        if (!sorted) {
+            final Integer[] permutation = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                permutation[i] = i;
+            }
+            final long[] keys = ordinals;
+            // Stable sort, so that of cells with the same ordinal, the one
+            // added last comes last.
+            Arrays.sort(
+                permutation,
+                new Comparator<Integer>() {
+                    public int compare(Integer o1, Integer o2) {
+                        final long k1 = keys[o1];
+                        final long k2 = keys[o2];
+                        return k1 < k2 ? -1 : k1 == k2 ? 0 : 1;
+                    }
+                });
+            final long[] newOrdinals = new long[size];
+            final XmlaOlap4jCell[] newCells = new XmlaOlap4jCell[size];
+            int n = 0;
+            for (int i = 0; i < size; i++) {
+                final int j = permutation[i];
+                if (n > 0 && newOrdinals[n - 1] == ordinals[j]) {
+                    --n;
+                }
+                newOrdinals[n] = ordinals[j];
+                newCells[n] = cells[j];
+                ++n;
+            }
+            ordinals = newOrdinals;
+            cells = newCells;
+            size = n;
+            sorted = true;
+        }
+    }
+
+    /**
+     * Returns the number of cells in the index.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the cell with a given ordinal, or null if there is none.
+     *
+     * @param ordinal Ordinal
+     * @return Cell, or null
+     */
+    XmlaOlap4jCell get(long ordinal) {
+        int i = hint;
+        if (i >= size || ordinals[i] != ordinal) {
+            i = lowerBound(ordinal);
+            if (i >= size || ordinals[i] != ordinal) {
+                return null;
+            }
+        }
+        hint = i + 1;
+        return cells[i];
+    }
+
+    /**
+     * Returns the position of the first entry whose ordinal is greater than
+     * or equal to a given ordinal; {@link #size()} if there is none.
+     *
+     * @param ordinal Ordinal
+     * @return Position in index
+     */
+    int lowerBound(long ordinal) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (ordinals[mid] < ordinal) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Returns the ordinal of the entry at a given position.
+     */
+    long ordinalAt(int i) {
+        return ordinals[i];
+    }
+
+    /**
+     * Returns the cell at a given position.
+     */
+    XmlaOlap4jCell cellAt(int i) {
+        return cells[i];
+    }
+}
+
+// End XmlaOlap4jCellIndex.java
@@ -18,6 +18,8 @@
 package org.olap4j.driver.xmla;
 
 import org.olap4j.*;
+import org.olap4j.impl.ExtendedCellSet;
+import org.olap4j.impl.IdentifierParser;
 import org.olap4j.impl.Olap4jUtil;
 import org.olap4j.mdx.*;
 import org.olap4j.metadata.*;
@@ -45,7 +47,7 @@ import static org.olap4j.driver.xmla.XmlaOlap4jUtil.*;
  * @author jhyde
  * @since May 24, 2007
  */
-abstract class XmlaOlap4jCellSet implements CellSet {
+abstract class XmlaOlap4jCellSet implements CellSet, ExtendedCellSet {
     private static final String VALUE_TAG = "Value";
     enum XsdTypes {
         XSD_INT("xsd:int"),
@@ -85,16 +87,35 @@ abstract class XmlaOlap4jCellSet implements CellSet {
     }
 
     final XmlaOlap4jStatement olap4jStatement;
+
+    /**
+     * Query that this cell set was created from, and the properties it is
+     * to contain.
+     */
+    XmlaOlap4jStatement.Projection projection =
+        new XmlaOlap4jStatement.Projection("");
+
     protected boolean closed;
     private XmlaOlap4jCellSetMetaData metaData;
-    private final Map<Integer, Cell> cellMap =
-        new HashMap<Integer, Cell>();
+    private final XmlaOlap4jCellIndex cellIndex = new XmlaOlap4jCellIndex();
     private final List<XmlaOlap4jCellSetAxis> axisList =
         new ArrayList<XmlaOlap4jCellSetAxis>();
     private final List<CellSetAxis> immutableAxisList =
         Olap4jUtil.cast(Collections.unmodifiableList(axisList));
     private XmlaOlap4jCellSetAxis filterAxis;
 
+    /**
+     * Stride of each axis: how much the ordinal of a cell increases when its
+     * coordinate on that axis increases by one. Computed once the axes have
+     * been populated.
+     */
+    private long[] strides = {};
+
+    /**
+     * Number of cells; the product of the number of positions on each axis.
+     */
+    private long cellCount = 1;
+
     private static final List<String> standardProperties = Arrays.asList(
         "UName", "Caption", "LName", "LNum", "DisplayInfo");
 
@@ -127,8 +148,17 @@ abstract class XmlaOlap4jCellSet implements CellSet {
      * @throws OlapException on error
      */
     void populate() throws OlapException {
-        byte[] bytes = olap4jStatement.getBytes();
+        populate(olap4jStatement.getBytes());
+    }
 
+    /**
+     * Populates cell set axes and cells from the response to an XMLA
+     * request.
+     *
+     * @param bytes Response
+     * @throws OlapException on error
+     */
+    void populate(byte[] bytes) throws OlapException {
         Document doc;
         try {
             doc = parse(bytes);
@@ -339,99 +369,448 @@ abstract class XmlaOlap4jCellSet implements CellSet {
                             0)));
         }
 
+        computeStrides();
+
+        // Most cells share one of a few format strings. Share the String
+        // objects too.
+        final Map<String, String> formatStrings = new HashMap<String, String>();
+        final XmlaOlap4jValueDecoder decoder = new XmlaOlap4jValueDecoder();
+        final boolean readFormattedValue =
+            projection.isCellPropertyProjected(
+                Property.StandardCellProperty.FORMATTED_VALUE.name());
+        final boolean readFormatString =
+            projection.isCellPropertyProjected(
+                Property.StandardCellProperty.FORMAT_STRING.name());
         final Element cellDataNode = findChild(root, MDDATASET_NS, "CellData");
         for (Element cell : findChildren(cellDataNode, MDDATASET_NS, "Cell")) {
             propertyValues.clear();
-            final int cellOrdinal =
-                Integer.valueOf(cell.getAttribute("CellOrdinal"));
-            final Object value = getTypedValue(cell);
-            final String formattedValue = stringElement(cell, "FmtValue");
-            final String formatString = stringElement(cell, "FormatString");
-            Olap4jUtil.discard(formatString);
+            final long cellOrdinal =
+                Long.parseLong(cell.getAttribute("CellOrdinal"));
+            decodeValue(decoder, cell);
+            final String formattedValue =
+                readFormattedValue ? stringElement(cell, "FmtValue") : null;
+            String formatString =
+                readFormatString ? stringElement(cell, "FormatString") : null;
+            if (formatString != null) {
+                final String previous = formatStrings.get(formatString);
+                if (previous != null) {
+                    formatString = previous;
+                } else {
+                    formatStrings.put(formatString, formatString);
+                }
+            }
             for (Element element : childElements(cell)) {
                 String tag = element.getLocalName();
                 final Property property =
                     metaData.propertiesByTag.get(tag);
-                if (property != null) {
+                if (property == Property.StandardCellProperty.FORMAT_STRING) {
+                    propertyValues.put(property, formatString);
+                } else if (property != null) {
                     propertyValues.put(property, element.getTextContent());
                 }
             }
-            cellMap.put(
+            cellIndex.add(
                 cellOrdinal,
                 new XmlaOlap4jCell(
                     this,
                     cellOrdinal,
-                    value,
+                    decoder,
                     formattedValue,
+                    formatString,
                     propertyValues));
         }
+        cellIndex.seal();
     }
 
     /**
-     * Returns the value of a cell, cast to the appropriate Java object type
-     * corresponding to the XML schema (XSD) type of the value.
+     * Computes the stride of each axis, and the number of cells.
      *
-     * <p>The value type must conform to XSD definitions of the XML element. See
-     * <a href="http://books.xmlschemata.org/relaxng/relax-CHP-19.html">RELAX
-     * NG, Chapter 19</a> for a full list of possible data types.
+     * @throws OlapException if the number of cells does not fit into a
+     * <code>long</code>
+     */
+    private void computeStrides() throws OlapException {
+        strides = new long[axisList.size()];
+        long n = 1;
+        for (int i = 0; i < strides.length; i++) {
+            strides[i] = n;
+            final int positionCount = axisList.get(i).getPositionCount();
+            if (positionCount > 0 && n > Long.MAX_VALUE / positionCount) {
+                throw getHelper().createException(
+                    "Cell set has too many cells ("
+                    + getBoundsAsString() + ")");
+            }
+            n *= positionCount;
+        }
+        cellCount = n;
+    }
+
+    /**
+     * Returns whether this cell set, the result of a delta query, can be
+     * spliced into a previous cell set on a given axis.
      *
-     * <p>This method does not currently support all types; most numeric types
-     * are supported, but no dates are yet supported. Those not supported
-     * fall back to Strings.
+     * <p>It can if every other axis, including the filter axis, has the same
+     * positions as in the previous cell set, if the positions of the axis
+     * have as many members as those of the previous cell set, and if both
+     * cell sets have the same cell properties.
      *
-     * @param cell The cell of which we want the casted object.
-     * @return The object with a correct value.
-     * @throws OlapException if any error is encountered while casting the cell
-     * value
+     * @param previous Previous cell set
+     * @param axisOrdinal Ordinal of the axis that the delta query computed
+     * @return Whether this cell set can be spliced into the previous one
      */
-     private Object getTypedValue(Element cell) throws OlapException {
-        Element elm = findChild(cell, MDDATASET_NS, "Value");
-        if (elm == null) {
-            // Cell is null.
-            return null;
+    boolean isDeltaOf(XmlaOlap4jCellSet previous, int axisOrdinal) {
+        if (axisList.size() != previous.axisList.size()
+            || axisOrdinal < 0
+            || axisOrdinal >= axisList.size()
+            || !sameCellProperties(metaData, previous.metaData)
+            || !samePositions(filterAxis, previous.filterAxis))
+        {
+            return false;
+        }
+        for (int i = 0; i < axisList.size(); i++) {
+            final XmlaOlap4jCellSetAxis axis = axisList.get(i);
+            final XmlaOlap4jCellSetAxis previousAxis =
+                previous.axisList.get(i);
+            if (i != axisOrdinal) {
+                if (!samePositions(axis, previousAxis)) {
+                    return false;
+                }
+            } else if (!axis.positions.isEmpty()
+                && !previousAxis.positions.isEmpty()
+                && axis.positions.get(0).getMembers().size()
+                   != previousAxis.positions.get(0).getMembers().size())
+            {
+                return false;
+            }
         }
+        return true;
+    }
 
-        // The object type is contained in xsi:type attribute.
-        String type = elm.getAttribute("xsi:type");
-        XsdTypes xsdType =  XsdTypes.fromString(elm.getAttribute("xsi:type"));
+    private static boolean sameCellProperties(
+        XmlaOlap4jCellSetMetaData metaData0,
+        XmlaOlap4jCellSetMetaData metaData1)
+    {
+        final List<Property> properties0 = metaData0.getCellProperties();
+        final List<Property> properties1 = metaData1.getCellProperties();
+        if (properties0.size() != properties1.size()) {
+            return false;
+        }
+        for (int i = 0; i < properties0.size(); i++) {
+            if (!properties0.get(i).getName().equals(
+                    properties1.get(i).getName()))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
 
-        try {
-            switch (xsdType) {
-            case XSD_BOOLEAN:
-                return XmlaOlap4jUtil.booleanElement(cell, VALUE_TAG);
-            case XSD_INT:
-                return XmlaOlap4jUtil.intElement(cell, VALUE_TAG);
-            case XSD_INTEGER:
-                return XmlaOlap4jUtil.bigIntegerElement(cell, VALUE_TAG);
-            case XSD_DOUBLE:
-                return XmlaOlap4jUtil.doubleElement(cell, VALUE_TAG);
-            case XSD_POSITIVEINTEGER:
-                return XmlaOlap4jUtil.bigIntegerElement(cell, VALUE_TAG);
-            case XSD_DECIMAL:
-                return XmlaOlap4jUtil.bigDecimalElement(cell, VALUE_TAG);
-            case XSD_SHORT:
-                return XmlaOlap4jUtil.shortElement(cell, VALUE_TAG);
-            case XSD_FLOAT:
-                return XmlaOlap4jUtil.floatElement(cell, VALUE_TAG);
-            case XSD_LONG:
-                return XmlaOlap4jUtil.longElement(cell, VALUE_TAG);
-            case XSD_BYTE:
-                return XmlaOlap4jUtil.byteElement(cell, VALUE_TAG);
-            case XSD_UNSIGNEDBYTE:
-                return XmlaOlap4jUtil.shortElement(cell, VALUE_TAG);
-            case XSD_UNSIGNEDSHORT:
-                return XmlaOlap4jUtil.intElement(cell, VALUE_TAG);
-            case XSD_UNSIGNEDLONG:
-                return XmlaOlap4jUtil.bigDecimalElement(cell, VALUE_TAG);
-            case XSD_UNSIGNEDINT:
-                return XmlaOlap4jUtil.longElement(cell, VALUE_TAG);
-            default:
-                return XmlaOlap4jUtil.stringElement(cell, VALUE_TAG);
+    static boolean samePositions(
+        XmlaOlap4jCellSetAxis axis0,
+        XmlaOlap4jCellSetAxis axis1)
+    {
+        if (axis0.positions.size() != axis1.positions.size()) {
+            return false;
+        }
+        for (int i = 0; i < axis0.positions.size(); i++) {
+            final List<Member> members0 =
+                axis0.positions.get(i).getMembers();
+            final List<Member> members1 =
+                axis1.positions.get(i).getMembers();
+            if (members0.size() != members1.size()) {
+                return false;
+            }
+            for (int j = 0; j < members0.size(); j++) {
+                if (!members0.get(j).getUniqueName().equals(
+                        members1.get(j).getUniqueName()))
+                {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the ordinals of the cells whose value or formatted value
+     * differs between two results of the same query, in ascending order.
+     *
+     * <p>Visits only the cells that are populated in either result, so the
+     * cost is proportional to the number of populated cells, however large
+     * the cell count.
+     *
+     * @param previous Previous result
+     * @param current Current result; must have the same axes as previous
+     * @param limit Maximum number of ordinals to return
+     * @return Ordinals of changed cells, at most <code>limit</code>
+     */
+    static List<Long> changedOrdinals(
+        XmlaOlap4jCellSet previous,
+        XmlaOlap4jCellSet current,
+        int limit)
+    {
+        final List<Long> ordinals = new ArrayList<Long>();
+        final XmlaOlap4jCellIndex index0 = previous.cellIndex;
+        final XmlaOlap4jCellIndex index1 = current.cellIndex;
+        int i0 = 0;
+        int i1 = 0;
+        while (ordinals.size() < limit
+            && (i0 < index0.size() || i1 < index1.size()))
+        {
+            final long ordinal0 =
+                i0 < index0.size() ? index0.ordinalAt(i0) : Long.MAX_VALUE;
+            final long ordinal1 =
+                i1 < index1.size() ? index1.ordinalAt(i1) : Long.MAX_VALUE;
+            final long ordinal = Math.min(ordinal0, ordinal1);
+            final Cell cell0 =
+                ordinal0 == ordinal
+                    ? index0.cellAt(i0++)
+                    : previous.getCellInternal(ordinal);
+            final Cell cell1 =
+                ordinal1 == ordinal
+                    ? index1.cellAt(i1++)
+                    : current.getCellInternal(ordinal);
+            if (!Olap4jUtil.equal(cell0.getValue(), cell1.getValue())
+                || !Olap4jUtil.equal(
+                    cell0.getFormattedValue(), cell1.getFormattedValue()))
+            {
+                ordinals.add(ordinal);
+            }
+        }
+        return ordinals;
+    }
+
+    /**
+     * Populates this cell set by splicing the result of a delta query into
+     * a previous cell set.
+     *
+     * <p>On the axis <code>axisOrdinal</code>, the <code>removeCount</code>
+     * positions starting at <code>positionOrdinal</code> are replaced by the
+     * positions of the delta. The metadata and the other axes are shared
+     * with the previous cell set, and each cell is a copy, with a new
+     * ordinal, of a cell of the previous cell set or of the delta. Nothing
+     * is read from the server.
+     *
+     * <p>The caller must first check
+     * {@link #isDeltaOf(XmlaOlap4jCellSet, int)}.
+     *
+     * @param previous Previous cell set
+     * @param delta Cell set of the delta query
+     * @param axisOrdinal Ordinal of the axis that the delta query computed
+     * @param positionOrdinal Ordinal of the position on the axis before which
+     *     to insert the positions of the delta
+     * @param removeCount Number of positions of the previous cell set to
+     *     remove, starting at <code>positionOrdinal</code>
+     * @throws OlapException on error
+     */
+    void populateSplice(
+        XmlaOlap4jCellSet previous,
+        XmlaOlap4jCellSet delta,
+        int axisOrdinal,
+        int positionOrdinal,
+        int removeCount)
+        throws OlapException
+    {
+        final List<Position> previousPositions =
+            previous.axisList.get(axisOrdinal).positions;
+        final List<Position> deltaPositions =
+            delta.axisList.get(axisOrdinal).positions;
+        assert positionOrdinal >= 0
+            && removeCount >= 0
+            && positionOrdinal + removeCount <= previousPositions.size();
+        metaData = previous.metaData;
+        for (XmlaOlap4jCellSetAxis previousAxis : previous.axisList) {
+            final Axis axis = previousAxis.getAxisOrdinal();
+            axisList.add(
+                new XmlaOlap4jCellSetAxis(
+                    this,
+                    axis,
+                    axis.axisOrdinal() == axisOrdinal
+                        ? splice(
+                            previousPositions,
+                            deltaPositions,
+                            positionOrdinal,
+                            removeCount)
+                        : previousAxis.positions));
+        }
+        filterAxis =
+            new XmlaOlap4jCellSetAxis(
+                this, Axis.FILTER, previous.filterAxis.positions);
+        computeStrides();
+
+        // Only the coordinate on the spliced axis changes. Axes before it have
+        // the same positions, so its stride is unchanged.
+        final int count = axisList.get(axisOrdinal).getPositionCount();
+        for (int i = 0; i < previous.cellIndex.size(); i++) {
+            final long ordinal = previous.cellIndex.ordinalAt(i);
+            final long stride = strides[axisOrdinal];
+            final long rest = ordinal / stride;
+            int coordinate = (int) (rest % previousPositions.size());
+            if (coordinate >= positionOrdinal) {
+                if (coordinate < positionOrdinal + removeCount) {
+                    continue;
+                }
+                coordinate += deltaPositions.size() - removeCount;
+            }
+            final long newOrdinal =
+                ordinal % stride
+                + (coordinate + rest / previousPositions.size() * count)
+                * stride;
+            cellIndex.add(
+                newOrdinal,
+                previous.cellIndex.cellAt(i).copy(this, newOrdinal));
+        }
+        addCells(delta, axisOrdinal, positionOrdinal);
+        cellIndex.seal();
+    }
+
+    /**
+     * Populates this cell set by concatenating the cell sets of queries that
+     * each computed a slice of the positions of one axis.
+     *
+     * <p>The metadata and the other axes are shared with the first slice.
+     * The positions of the axis are those of each slice in turn, and each
+     * cell is a copy, with a new ordinal, of a cell of a slice. Nothing is
+     * read from the server.
+     *
+     * <p>The caller must first check, for each slice after the first, that
+     * {@link #isDeltaOf(XmlaOlap4jCellSet, int)} holds with respect to the
+     * first.
+     *
+     * @param slices Cell sets of the slices, in order
+     * @param axisOrdinal Ordinal of the axis that was sliced
+     * @throws OlapException on error
+     */
+    void populateConcat(
+        List<XmlaOlap4jCellSet> slices,
+        int axisOrdinal)
+        throws OlapException
+    {
+        final XmlaOlap4jCellSet first = slices.get(0);
+        final List<Position> positions = new ArrayList<Position>();
+        for (XmlaOlap4jCellSet slice : slices) {
+            for (Position position : slice.axisList.get(axisOrdinal).positions)
+            {
+                positions.add(
+                    position.getOrdinal() == positions.size()
+                        ? position
+                        : new XmlaOlap4jPosition(
+                            position.getMembers(), positions.size()));
             }
+        }
+        metaData = first.metaData;
+        for (XmlaOlap4jCellSetAxis firstAxis : first.axisList) {
+            final Axis axis = firstAxis.getAxisOrdinal();
+            axisList.add(
+                new XmlaOlap4jCellSetAxis(
+                    this,
+                    axis,
+                    axis.axisOrdinal() == axisOrdinal
+                        ? Collections.unmodifiableList(positions)
+                        : firstAxis.positions));
+        }
+        filterAxis =
+            new XmlaOlap4jCellSetAxis(
+                this, Axis.FILTER, first.filterAxis.positions);
+        computeStrides();
+        int positionOrdinal = 0;
+        for (XmlaOlap4jCellSet slice : slices) {
+            addCells(slice, axisOrdinal, positionOrdinal);
+            positionOrdinal +=
+                slice.axisList.get(axisOrdinal).getPositionCount();
+        }
+        cellIndex.seal();
+    }
+
+    /**
+     * Copies the cells of a cell set that computed some positions of an axis
+     * into this cell set, whose positions on that axis include them starting
+     * at a given ordinal. The other axes of both cell sets must have the same
+     * positions, and this cell set's strides must be computed.
+     *
+     * @param from Cell set to copy cells from
+     * @param axisOrdinal Ordinal of the axis
+     * @param positionOrdinal Ordinal of the position in this cell set of the
+     *     first position of <code>from</code>
+     */
+    private void addCells(
+        XmlaOlap4jCellSet from,
+        int axisOrdinal,
+        int positionOrdinal)
+    {
+        final int count = axisList.get(axisOrdinal).getPositionCount();
+        final int fromCount =
+            from.axisList.get(axisOrdinal).getPositionCount();
+        final long stride = strides[axisOrdinal];
+        for (int i = 0; i < from.cellIndex.size(); i++) {
+            final long ordinal = from.cellIndex.ordinalAt(i);
+            final long rest = ordinal / stride;
+            final int coordinate =
+                (int) (rest % fromCount) + positionOrdinal;
+            final long newOrdinal =
+                ordinal % stride
+                + (coordinate + rest / fromCount * count)
+                * stride;
+            cellIndex.add(
+                newOrdinal,
+                from.cellIndex.cellAt(i).copy(this, newOrdinal));
+        }
+    }
+
+    /**
+     * Returns a list of positions with a range of positions replaced by
+     * another list of positions. Positions before the range are shared;
+     * the others are re-numbered, sharing their members.
+     */
+    private static List<Position> splice(
+        List<Position> positions,
+        List<Position> insertPositions,
+        int positionOrdinal,
+        int removeCount)
+    {
+        final List<Position> list =
+            new ArrayList<Position>(
+                positions.size() - removeCount + insertPositions.size());
+        list.addAll(positions.subList(0, positionOrdinal));
+        for (Position position : insertPositions) {
+            list.add(
+                new XmlaOlap4jPosition(position.getMembers(), list.size()));
+        }
+        for (Position position
+            : positions.subList(
+                positionOrdinal + removeCount, positions.size()))
+        {
+            list.add(
+                new XmlaOlap4jPosition(position.getMembers(), list.size()));
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Decodes the value of a cell, according to the XML schema (XSD) type
+     * of the value.
+     *
+     * <p>The value type must conform to XSD definitions of the XML element. See
+     * <a href="http://books.xmlschemata.org/relaxng/relax-CHP-19.html">RELAX
+     * NG, Chapter 19</a> for a full list of possible data types.
+     *
+     * <p>Most numeric types are supported, but no dates are yet supported.
+     * Those not supported fall back to Strings.
+     *
+     * @param decoder Decoder, which will hold the value
+     * @param cell The cell whose value we want
+     * @throws OlapException if any error is encountered while decoding the
+     * cell value
+     */
+    private void decodeValue(XmlaOlap4jValueDecoder decoder, Element cell)
+        throws OlapException
+    {
+        final Element elm = findChild(cell, MDDATASET_NS, VALUE_TAG);
+        try {
+            decoder.decode(elm);
         } catch (Exception e) {
             throw getHelper().createException(
                 "Error while casting a cell value to the correct java type for"
-                + " its XSD type " + type,
+                + " its XSD type " + elm.getAttribute("xsi:type"),
                 e);
         }
     }
@@ -510,6 +889,13 @@ abstract class XmlaOlap4jCellSet implements CellSet {
                     }
                     final String propertyUniqueName =
                         childNode.getAttribute("name");
+                    if (!projection.isDimensionPropertyProjected(
+                            axis, propertyUniqueName))
+                    {
+                        // Not projected. Leave it out of the metadata, and
+                        // values will not be decoded.
+                        continue;
+                    }
                     final XmlaOlap4jCellSetMemberProperty property =
                         new XmlaOlap4jCellSetMemberProperty(
                             propertyUniqueName,
@@ -543,6 +929,11 @@ abstract class XmlaOlap4jCellSet implements CellSet {
         List<XmlaOlap4jCellProperty> cellProperties =
             new ArrayList<XmlaOlap4jCellProperty>();
         for (Element element : childElements(cellInfo)) {
+            if (!projection.isCellPropertyProjected(
+                    element.getAttribute("name")))
+            {
+                continue;
+            }
             cellProperties.add(
                 new XmlaOlap4jCellProperty(
                     element.getLocalName(),
@@ -635,23 +1026,148 @@ abstract class XmlaOlap4jCellSet implements CellSet {
     }
 
     public Cell getCell(List<Integer> coordinates) {
-        return getCellInternal(coordinatesToOrdinal(coordinates));
+        return getCellInternal(toOrdinal(coordinates));
     }
 
     public Cell getCell(int ordinal) {
         return getCellInternal(ordinal);
     }
 
+    public Cell getCell(long ordinal) {
+        return getCellInternal(ordinal);
+    }
+
+    public Cell getCell(int[] coordinates) {
+        return getCellInternal(coordinatesToOrdinal(coordinates));
+    }
+
     public Cell getCell(Position... positions) {
         if (positions.length != getAxes().size()) {
             throw new IllegalArgumentException(
                 "cell coordinates should have dimension " + getAxes().size());
         }
-        List<Integer> coords = new ArrayList<Integer>(positions.length);
-        for (Position position : positions) {
-            coords.add(position.getOrdinal());
+        final int[] coordinates = new int[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            coordinates[i] = positions[i].getOrdinal();
+        }
+        return getCell(coordinates);
+    }
+
+    public long getCellCount() {
+        return cellCount;
+    }
+
+    // implement ExtendedCellSet
+
+    public void getDoubleValues(
+        long fromOrdinal,
+        long toOrdinal,
+        double[] dst,
+        BitSet nulls)
+        throws OlapException
+    {
+        if (fromOrdinal < 0
+            || fromOrdinal > toOrdinal
+            || toOrdinal > cellCount)
+        {
+            throw new IndexOutOfBoundsException(
+                "Cell range [" + fromOrdinal + ", " + toOrdinal
+                + ") lies outside CellSet bounds ("
+                + getBoundsAsString() + ")");
+        }
+        if (toOrdinal - fromOrdinal > dst.length) {
+            throw new IndexOutOfBoundsException(
+                "Array has length " + dst.length + ", needs "
+                + (toOrdinal - fromOrdinal));
+        }
+        getDoubleValues(
+            fromOrdinal, 1, (int) (toOrdinal - fromOrdinal), dst, nulls);
+    }
+
+    public void getDoubleValues(
+        List<Integer> coordinates,
+        int axisOrdinal,
+        double[] dst,
+        BitSet nulls)
+        throws OlapException
+    {
+        final List<Integer> start = new ArrayList<Integer>(coordinates);
+        start.set(axisOrdinal, 0);
+        getDoubleValues(
+            toOrdinal(start),
+            strides[axisOrdinal],
+            axisList.get(axisOrdinal).getPositionCount(),
+            dst,
+            nulls);
+    }
+
+    /**
+     * Copies the values of cells <code>ordinal</code>,
+     * <code>ordinal + stride</code>, ... into an array.
+     *
+     * <p>Cells that have no value are not held in the index. Rather than
+     * manufacture a cell for each of those, as {@link #getCell(int)} does,
+     * treats them as null. If the cells are contiguous, walks the index
+     * instead of looking up each ordinal.
+     *
+     * @param ordinal Ordinal of first cell
+     * @param stride Difference between ordinals of consecutive cells
+     * @param count Number of cells
+     * @param dst Array to receive values
+     * @param nulls Bit set to receive which cells are null, or null
+     * @throws OlapException if a cell does not have a numeric value
+     */
+    private void getDoubleValues(
+        long ordinal,
+        long stride,
+        int count,
+        double[] dst,
+        BitSet nulls)
+        throws OlapException
+    {
+        if (dst.length < count) {
+            throw new IndexOutOfBoundsException(
+                "Array has length " + dst.length + ", needs " + count);
+        }
+        Arrays.fill(dst, 0, count, 0d);
+        if (nulls != null) {
+            nulls.set(0, count);
+        }
+        if (stride == 1) {
+            final long end = ordinal + count;
+            for (int i = cellIndex.lowerBound(ordinal);
+                i < cellIndex.size() && cellIndex.ordinalAt(i) < end;
+                i++)
+            {
+                setDoubleValue(
+                    cellIndex.cellAt(i),
+                    (int) (cellIndex.ordinalAt(i) - ordinal),
+                    dst,
+                    nulls);
+            }
+        } else {
+            for (int i = 0; i < count; i++) {
+                final Cell cell = cellIndex.get(ordinal + i * stride);
+                if (cell != null) {
+                    setDoubleValue(cell, i, dst, nulls);
+                }
+            }
+        }
+    }
+
+    private static void setDoubleValue(
+        Cell cell,
+        int i,
+        double[] dst,
+        BitSet nulls)
+        throws OlapException
+    {
+        if (!cell.isNull()) {
+            dst[i] = cell.getDoubleValue();
+            if (nulls != null) {
+                nulls.clear(i);
+            }
         }
-        return getCell(coords);
     }
 
     /**
@@ -661,16 +1177,16 @@ abstract class XmlaOlap4jCellSet implements CellSet {
      * @return Cell
      * @throws IndexOutOfBoundsException if ordinal is not in range
      */
-    private Cell getCellInternal(int pos) {
-        final Cell cell = cellMap.get(pos);
+    private Cell getCellInternal(long pos) {
+        final Cell cell = cellIndex.get(pos);
         if (cell == null) {
-            if (pos < 0 || pos >= maxOrdinal()) {
+            if (pos < 0 || pos >= cellCount) {
                 throw new IndexOutOfBoundsException();
             } else {
                 // Cell is within bounds, but is not held in the cache because
                 // it has no value. Manufacture a cell with an empty value.
                 return new XmlaOlap4jCell(
-                    this, pos, null, "",
+                    this, pos, (Object) null, "", null,
                     Collections.<Property, Object>emptyMap());
             }
         }
@@ -703,69 +1219,94 @@ abstract class XmlaOlap4jCellSet implements CellSet {
         return filterAxis;
     }
 
-    /**
-     * Returns the ordinal of the last cell in this cell set. This is the
-     * product of the cardinalities of all axes.
-     *
-     * @return ordinal of last cell in cell set
-     */
-    private int maxOrdinal() {
-        int modulo = 1;
-        for (CellSetAxis axis : axisList) {
-            modulo *= axis.getPositionCount();
+    public List<Integer> ordinalToCoordinates(int ordinal) {
+        final int[] coordinates = ordinalToCoordinates((long) ordinal);
+        final List<Integer> list = new ArrayList<Integer>(coordinates.length);
+        for (int coordinate : coordinates) {
+            list.add(coordinate);
         }
-        return modulo;
+        return list;
     }
 
-    public List<Integer> ordinalToCoordinates(int ordinal) {
-        List<CellSetAxis> axes = getAxes();
-        final List<Integer> list = new ArrayList<Integer>(axes.size());
-        int modulo = 1;
-        for (CellSetAxis axis : axes) {
-            int prevModulo = modulo;
-            modulo *= axis.getPositionCount();
-            list.add((ordinal % modulo) / prevModulo);
-        }
-        if (ordinal < 0 || ordinal >= modulo) {
+    public int[] ordinalToCoordinates(long ordinal) {
+        if (ordinal < 0 || ordinal >= cellCount) {
             throw new IndexOutOfBoundsException(
                 "Cell ordinal " + ordinal
                 + ") lies outside CellSet bounds ("
                 + getBoundsAsString() + ")");
         }
-        return list;
+        final int[] coordinates = new int[strides.length];
+        for (int i = 0; i < coordinates.length; i++) {
+            coordinates[i] =
+                (int) ((ordinal / strides[i])
+                    % axisList.get(i).getPositionCount());
+        }
+        return coordinates;
     }
 
     public int coordinatesToOrdinal(List<Integer> coordinates) {
-        List<CellSetAxis> axes = getAxes();
-        if (coordinates.size() != axes.size()) {
-            throw new IllegalArgumentException(
-                "Coordinates have different dimension " + coordinates.size()
-                    + " than axes " + axes.size());
+        final long ordinal = toOrdinal(coordinates);
+        if (ordinal > Integer.MAX_VALUE) {
+            throw new IndexOutOfBoundsException(
+                "Cell ordinal " + ordinal + " does not fit into an int");
         }
-        int modulo = 1;
-        int ordinal = 0;
-        int k = 0;
-        for (CellSetAxis axis : axes) {
-            final Integer coordinate = coordinates.get(k++);
-            if (coordinate < 0 || coordinate >= axis.getPositionCount()) {
-                throw new IndexOutOfBoundsException(
-                    "Coordinate " + coordinate
-                    + " of axis " + (k - 1)
-                    + " is out of range ("
-                    + getBoundsAsString() + ")");
-            }
-            ordinal += coordinate * modulo;
-            modulo *= axis.getPositionCount();
+        return (int) ordinal;
+    }
+
+    /**
+     * Converts a list of coordinates to a <code>long</code> ordinal.
+     *
+     * @param coordinates Cell coordinates
+     * @return Cell ordinal
+     */
+    private long toOrdinal(List<Integer> coordinates) {
+        checkDimension(coordinates.size());
+        long ordinal = 0;
+        for (int i = 0; i < strides.length; i++) {
+            ordinal += checkCoordinate(i, coordinates.get(i)) * strides[i];
+        }
+        return ordinal;
+    }
+
+    public long coordinatesToOrdinal(int[] coordinates) {
+        checkDimension(coordinates.length);
+        long ordinal = 0;
+        for (int i = 0; i < strides.length; i++) {
+            ordinal += checkCoordinate(i, coordinates[i]) * strides[i];
         }
         return ordinal;
     }
 
+    private void checkDimension(int size) {
+        if (size != strides.length) {
+            throw new IllegalArgumentException(
+                "Coordinates have different dimension " + size
+                    + " than axes " + strides.length);
+        }
+    }
+
+    private long checkCoordinate(int axisOrdinal, int coordinate) {
+        if (coordinate < 0
+            || coordinate >= axisList.get(axisOrdinal).getPositionCount())
+        {
+            throw new IndexOutOfBoundsException(
+                "Coordinate " + coordinate
+                + " of axis " + axisOrdinal
+                + " is out of range ("
+                + getBoundsAsString() + ")");
+        }
+        return coordinate;
+    }
+
     public boolean next() throws SQLException {
         throw new UnsupportedOperationException();
     }
 
     public void close() throws SQLException {
-        this.closed = true;
+        if (!closed) {
+            this.closed = true;
+            olap4jStatement.cellSetClosed(this);
+        }
     }
 
     public boolean wasNull() throws SQLException {
@@ -1355,11 +1896,15 @@ abstract class XmlaOlap4jCellSet implements CellSet {
     // implement Wrapper
 
     public <T> T unwrap(Class<T> iface) throws SQLException {
-        throw new UnsupportedOperationException();
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw getHelper().createException(
+            "does not implement '" + iface + "'");
     }
 
     public boolean isWrapperFor(Class<?> iface) throws SQLException {
-        throw new UnsupportedOperationException();
+        return iface.isInstance(this);
     }
 
     /**
@@ -1407,11 +1952,7 @@ abstract class XmlaOlap4jCellSet implements CellSet {
         }
 
         private String getParentUniqueName() {
-            List<IdentifierSegment> segments = IdentifierNode
-                .parseIdentifier(getUniqueName()).getSegmentList();
-            IdentifierNode parentIdentifier = new IdentifierNode(
-                segments.subList(0, segments.size() - 1));
-            return parentIdentifier.toString();
+            return IdentifierParser.parentOf(getUniqueName());
         }
 
         public final XmlaOlap4jCube getCube() {
@@ -0,0 +1,445 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.driver.xmla;
+
+import org.olap4j.*;
+import org.olap4j.metadata.Member;
+
+import java.lang.ref.WeakReference;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+import static org.olap4j.driver.xmla.XmlaOlap4jUtil.LOGGER;
+
+/**
+ * Refreshes the open cell set of a statement that has
+ * {@link CellSetListener}s, and notifies them of changes.
+ *
+ * <p>An XMLA server does not tell its clients when data changes, so the
+ * refresher periodically re-executes the query of the open cell set, in the
+ * background, and compares the result with that of the previous refresh.
+ * Listeners receive a {@link CellSetListener.CellSetChange} only if something
+ * has changed, and it describes only the changes since the previous event.
+ *
+ * <p>Positions are compared by the unique names of their members. If an axis
+ * has changed, the event lists the axis changes but no cell changes,
+ * because the coordinates of the cells no longer correspond.
+ *
+ * <p>Cells are compared by value and formatted value. Only cells that are
+ * populated in either result are visited (see
+ * {@link XmlaOlap4jCellSet#changedOrdinals}), and unless a listener asked for
+ * {@link CellSetListener.Granularity#FINE fine} granularity, the comparison
+ * stops at the first change.
+ *
+ * <p>The refresher only runs while the statement has an open cell set. The
+ * scheduled task refers to the refresher weakly, so a statement that the
+ * application abandons without closing it can still be garbage-collected,
+ * along with its connection; the task then cancels itself.
+ *
+ * @author jhyde
+ */
+class XmlaOlap4jCellSetRefresher implements Runnable {
+    /**
+     * Maximum number of cell changes in an event. If more cells have
+     * changed, the event does not list them.
+     */
+    private static final int MAX_CELL_CHANGES = 1000;
+
+    private final XmlaOlap4jStatement statement;
+    private final long refreshInterval;
+    private final List<CellSetListener> listeners =
+        new CopyOnWriteArrayList<CellSetListener>();
+    private volatile boolean fine;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    // The following fields are guarded by the refresher's monitor.
+
+    /**
+     * Task that refreshes periodically; null unless a cell set is open and
+     * the refresh interval is positive.
+     */
+    private Future<?> future;
+
+    /** Open cell set, to which events refer, or null. */
+    private XmlaOlap4jCellSet cellSet;
+
+    /** Query of the open cell set, with the statement's projection. */
+    private XmlaOlap4jStatement.Projection projection;
+
+    /** Latest result of the query, initially the open cell set. */
+    private XmlaOlap4jCellSet latest;
+
+    /**
+     * Creates an XmlaOlap4jCellSetRefresher.
+     *
+     * @param statement Statement
+     * @param refreshInterval Interval between refreshes, in milliseconds;
+     *     0 means that cell sets are only refreshed by calling
+     *     {@link #refresh()}
+     */
+    XmlaOlap4jCellSetRefresher(
+        XmlaOlap4jStatement statement,
+        long refreshInterval)
+    {
+        this.statement = statement;
+        this.refreshInterval = refreshInterval;
+    }
+
+    void addListener(
+        CellSetListener.Granularity granularity,
+        CellSetListener listener)
+    {
+        listeners.add(listener);
+        if (granularity == CellSetListener.Granularity.FINE) {
+            fine = true;
+        }
+    }
+
+    /**
+     * Called when the statement has opened a cell set.
+     *
+     * @param cellSet Cell set
+     * @param projection Query that created the cell set
+     */
+    void opened(
+        XmlaOlap4jCellSet cellSet,
+        XmlaOlap4jStatement.Projection projection)
+    {
+        synchronized (this) {
+            this.cellSet = cellSet;
+            this.projection = projection;
+            this.latest = cellSet;
+            if (future == null && refreshInterval > 0) {
+                future = RefreshTask.schedule(this, refreshInterval);
+            }
+        }
+        for (CellSetListener listener : listeners) {
+            listener.cellSetOpened(cellSet);
+        }
+    }
+
+    /**
+     * Called when a cell set created by the statement has been closed.
+     *
+     * @param cellSet Cell set
+     */
+    void closed(XmlaOlap4jCellSet cellSet) {
+        synchronized (this) {
+            if (this.cellSet != cellSet) {
+                return;
+            }
+            this.cellSet = null;
+            this.projection = null;
+            this.latest = null;
+            stop();
+        }
+        for (CellSetListener listener : listeners) {
+            listener.cellSetClosed(cellSet);
+        }
+    }
+
+    /**
+     * Stops refreshing. Called when the open cell set or the statement is
+     * closed.
+     */
+    synchronized void stop() {
+        if (future != null) {
+            future.cancel(false);
+            future = null;
+        }
+    }
+
+    /**
+     * Returns whether a task is scheduled to refresh periodically.
+     *
+     * @return whether refreshing periodically
+     */
+    synchronized boolean isScheduled() {
+        return future != null;
+    }
+
+    public void run() {
+        try {
+            if (statement.isClosed()) {
+                stop();
+                return;
+            }
+            refresh();
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "Error while refreshing cell set", e);
+        }
+    }
+
+    /**
+     * Re-executes the query of the open cell set, and if the result has
+     * changed, notifies the listeners. Does nothing if there is no open cell
+     * set, or if another refresh is in progress.
+     *
+     * @throws OlapException on error
+     */
+    void refresh() throws OlapException {
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            final XmlaOlap4jCellSet cellSet;
+            final XmlaOlap4jStatement.Projection projection;
+            final XmlaOlap4jCellSet previous;
+            synchronized (this) {
+                cellSet = this.cellSet;
+                projection = this.projection;
+                previous = this.latest;
+            }
+            if (cellSet == null || cellSet.closed) {
+                return;
+            }
+            final XmlaOlap4jCellSet current =
+                statement.executeDetached(projection);
+            final CellSetListener.CellSetChange change =
+                diff(cellSet, previous, current);
+            synchronized (this) {
+                if (this.cellSet != cellSet) {
+                    // The statement has opened another cell set meanwhile.
+                    return;
+                }
+                this.latest = current;
+            }
+            if (change != null) {
+                for (CellSetListener listener : listeners) {
+                    listener.cellSetChanged(change);
+                }
+            }
+        } finally {
+            refreshing.set(false);
+        }
+    }
+
+    /**
+     * Compares two results of the same query, and returns a description of
+     * the changes, or null if there are none.
+     */
+    private CellSetListener.CellSetChange diff(
+        XmlaOlap4jCellSet cellSet,
+        XmlaOlap4jCellSet previous,
+        XmlaOlap4jCellSet current)
+    {
+        final List<CellSetListener.AxisChange> axisChanges =
+            new ArrayList<CellSetListener.AxisChange>();
+        diffAxis(
+            (XmlaOlap4jCellSetAxis) cellSet.getFilterAxis(),
+            (XmlaOlap4jCellSetAxis) previous.getFilterAxis(),
+            (XmlaOlap4jCellSetAxis) current.getFilterAxis(),
+            axisChanges);
+        for (int i = 0; i < cellSet.getAxes().size(); i++) {
+            diffAxis(
+                (XmlaOlap4jCellSetAxis) cellSet.getAxes().get(i),
+                (XmlaOlap4jCellSetAxis) previous.getAxes().get(i),
+                (XmlaOlap4jCellSetAxis) current.getAxes().get(i),
+                axisChanges);
+        }
+        if (!axisChanges.isEmpty()) {
+            return new CellSetChangeImpl(cellSet, null, axisChanges);
+        }
+
+        // Axes are the same, therefore so are cell ordinals. If more cells
+        // have changed than an event can list, the listener must re-read the
+        // whole cell set.
+        final List<Long> ordinals =
+            XmlaOlap4jCellSet.changedOrdinals(
+                previous, current, fine ? MAX_CELL_CHANGES + 1 : 1);
+        if (ordinals.isEmpty()) {
+            return null;
+        }
+        List<CellSetListener.CellChange> cellChanges = null;
+        if (fine && ordinals.size() <= MAX_CELL_CHANGES) {
+            cellChanges = new ArrayList<CellSetListener.CellChange>();
+            for (long ordinal : ordinals) {
+                cellChanges.add(
+                    new CellChangeImpl(
+                        previous.getCell(ordinal),
+                        current.getCell(ordinal)));
+            }
+        }
+        return new CellSetChangeImpl(
+            cellSet,
+            cellChanges,
+            Collections.<CellSetListener.AxisChange>emptyList());
+    }
+
+    /**
+     * Compares the positions of an axis in two results of the same query, and
+     * adds a change for each position that has been created, deleted or
+     * moved.
+     */
+    private static void diffAxis(
+        XmlaOlap4jCellSetAxis axis,
+        XmlaOlap4jCellSetAxis previousAxis,
+        XmlaOlap4jCellSetAxis currentAxis,
+        List<CellSetListener.AxisChange> axisChanges)
+    {
+        if (XmlaOlap4jCellSet.samePositions(previousAxis, currentAxis)) {
+            return;
+        }
+        final Map<List<String>, Position> currentPositions =
+            new HashMap<List<String>, Position>();
+        for (Position position : currentAxis.positions) {
+            currentPositions.put(key(position), position);
+        }
+        final Set<List<String>> previousKeys = new HashSet<List<String>>();
+        for (Position before : previousAxis.positions) {
+            final List<String> key = key(before);
+            previousKeys.add(key);
+            final Position after = currentPositions.get(key);
+            if (after == null || after.getOrdinal() != before.getOrdinal()) {
+                axisChanges.add(new AxisChangeImpl(axis, before, after));
+            }
+        }
+        for (Position after : currentAxis.positions) {
+            if (!previousKeys.contains(key(after))) {
+                axisChanges.add(new AxisChangeImpl(axis, null, after));
+            }
+        }
+    }
+
+    private static List<String> key(Position position) {
+        final List<Member> members = position.getMembers();
+        final String[] names = new String[members.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = members.get(i).getUniqueName();
+        }
+        return Arrays.asList(names);
+    }
+
+    /**
+     * Task that the driver's scheduler runs periodically. Holds the
+     * refresher only by a weak reference, and cancels itself once the
+     * refresher has been garbage-collected.
+     */
+    private static class RefreshTask implements Runnable {
+        private final WeakReference<XmlaOlap4jCellSetRefresher> refresherRef;
+        private volatile Future<?> future;
+
+        private RefreshTask(XmlaOlap4jCellSetRefresher refresher) {
+            this.refresherRef =
+                new WeakReference<XmlaOlap4jCellSetRefresher>(refresher);
+        }
+
+        static Future<?> schedule(
+            XmlaOlap4jCellSetRefresher refresher,
+            long refreshInterval)
+        {
+            final RefreshTask task = new RefreshTask(refresher);
+            task.future = XmlaOlap4jDriver.schedule(task, refreshInterval);
+            return task.future;
+        }
+
+        public void run() {
+            final XmlaOlap4jCellSetRefresher refresher = refresherRef.get();
+            if (refresher != null) {
+                refresher.run();
+            } else if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    private static class CellSetChangeImpl
+        implements CellSetListener.CellSetChange
+    {
+        private final CellSet cellSet;
+        private final List<CellSetListener.CellChange> cellChanges;
+        private final List<CellSetListener.AxisChange> axisChanges;
+
+        CellSetChangeImpl(
+            CellSet cellSet,
+            List<CellSetListener.CellChange> cellChanges,
+            List<CellSetListener.AxisChange> axisChanges)
+        {
+            this.cellSet = cellSet;
+            this.cellChanges =
+                cellChanges == null
+                    ? null
+                    : Collections.unmodifiableList(cellChanges);
+            this.axisChanges = Collections.unmodifiableList(axisChanges);
+        }
+
+        public CellSet getCellSet() {
+            return cellSet;
+        }
+
+        public List<CellSetListener.CellChange> getCellChanges() {
+            return cellChanges;
+        }
+
+        public List<CellSetListener.AxisChange> getAxisChanges() {
+            return axisChanges;
+        }
+    }
+
+    private static class CellChangeImpl implements CellSetListener.CellChange {
+        private final Cell beforeCell;
+        private final Cell afterCell;
+
+        CellChangeImpl(Cell beforeCell, Cell afterCell) {
+            this.beforeCell = beforeCell;
+            this.afterCell = afterCell;
+        }
+
+        public Cell getBeforeCell() {
+            return beforeCell;
+        }
+
+        public Cell getAfterCell() {
+            return afterCell;
+        }
+    }
+
+    private static class AxisChangeImpl implements CellSetListener.AxisChange {
+        private final CellSetAxis axis;
+        private final Position beforePosition;
+        private final Position afterPosition;
+
+        AxisChangeImpl(
+            CellSetAxis axis,
+            Position beforePosition,
+            Position afterPosition)
+        {
+            this.axis = axis;
+            this.beforePosition = beforePosition;
+            this.afterPosition = afterPosition;
+        }
+
+        public CellSetAxis getAxis() {
+            return axis;
+        }
+
+        public Position getBeforePosition() {
+            return beforePosition;
+        }
+
+        public Position getAfterPosition() {
+            return afterPosition;
+        }
+    }
+}
+
+// End XmlaOlap4jCellSetRefresher.java
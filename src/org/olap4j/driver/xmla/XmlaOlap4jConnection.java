@@ -20,8 +20,7 @@ package org.olap4j.driver.xmla;
 import org.olap4j.*;
 import org.olap4j.driver.xmla.proxy.*;
 import org.olap4j.impl.*;
-import org.olap4j.mdx.ParseTreeWriter;
-import org.olap4j.mdx.SelectNode;
+import org.olap4j.mdx.DefaultMdxValidatorImpl;
 import org.olap4j.mdx.parser.*;
 import org.olap4j.mdx.parser.impl.DefaultMdxParserImpl;
 import org.olap4j.metadata.*;
@@ -32,13 +31,14 @@ import org.w3c.dom.*;
 import org.xml.sax.SAXException;
 
 import java.io.IOException;
-import java.io.StringWriter;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.sql.*;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import static org.olap4j.driver.xmla.XmlaOlap4jUtil.*;
@@ -84,7 +84,15 @@ abstract class XmlaOlap4jConnection implements OlapConnection {
 
     final XmlaOlap4jProxy proxy;
 
-    private boolean closed = false;
+    private volatile boolean closed = false;
+
+    /**
+     * Statements created by this connection that have not been closed; the
+     * values are unused. Weak, so that a statement that the application
+     * forgets to close can be garbage-collected. Guarded by its own monitor.
+     */
+    private final Map<XmlaOlap4jStatement, Boolean> statementMap =
+        new WeakHashMap<XmlaOlap4jStatement, Boolean>();
 
     /**
      * URL of the HTTP server to which to send XML requests.
@@ -126,6 +134,28 @@ abstract class XmlaOlap4jConnection implements OlapConnection {
      */
     private final Map<String, String> databaseProperties;
 
+    /**
+     * Whether cell values are formatted by the driver, from their
+     * FORMAT_STRING property, rather than by the server. Set by the
+     * {@link XmlaOlap4jDriver.Property#CLIENTFORMATTING} property.
+     */
+    final boolean clientFormatting;
+
+    /**
+     * Whether the server evaluates wildcards in metadata restrictions; null
+     * until determined. Set by the
+     * {@link XmlaOlap4jDriver.Property#WILDCARDRESTRICTIONS} property, or by
+     * {@link #supportsWildcardRestrictions()}.
+     */
+    private volatile Boolean wildcardRestrictions;
+
+    /**
+     * Interval, in milliseconds, at which statements that have listeners
+     * refresh their cell set; 0 means never. Set by the
+     * {@link XmlaOlap4jDriver.Property#REFRESHINTERVAL} property.
+     */
+    final long refreshInterval;
+
     private boolean autoCommit;
     private boolean readOnly;
 
@@ -196,6 +226,31 @@ abstract class XmlaOlap4jConnection implements OlapConnection {
         this.roleName =
             map.get(XmlaOlap4jDriver.Property.ROLE.name());
 
+        this.clientFormatting =
+            Boolean.parseBoolean(
+                map.get(XmlaOlap4jDriver.Property.CLIENTFORMATTING.name()));
+
+        final String wildcardRestrictions =
+            map.get(XmlaOlap4jDriver.Property.WILDCARDRESTRICTIONS.name());
+        if (wildcardRestrictions != null) {
+            this.wildcardRestrictions =
+                Boolean.valueOf(wildcardRestrictions);
+        }
+
+        final String refreshInterval =
+            map.get(XmlaOlap4jDriver.Property.REFRESHINTERVAL.name());
+        try {
+            this.refreshInterval =
+                refreshInterval == null
+                    ? 10000L
+                    : Long.parseLong(refreshInterval);
+        } catch (NumberFormatException e) {
+            throw getHelper().createException(
+                "Connection property '"
+                + XmlaOlap4jDriver.Property.REFRESHINTERVAL.name()
+                + "' must be a number of milliseconds", e);
+        }
+
         // Set URL of HTTP server.
         final String serverUrl =
             map.get(XmlaOlap4jDriver.Property.SERVER.name());
@@ -313,6 +368,91 @@ abstract class XmlaOlap4jConnection implements OlapConnection {
         return BackendFlavor.getFlavor(dataSourceInfo, provider, fail);
     }
 
+    /**
+     * Returns whether the server evaluates '%' and '_' in the value of a
+     * metadata restriction as a LIKE pattern. If so, the driver can send a
+     * wildcard to the server, rather than downloading every row and
+     * filtering them itself.
+     *
+     * <p>The answer comes from the
+     * {@link XmlaOlap4jDriver.Property#WILDCARDRESTRICTIONS} property, if
+     * set, otherwise from the {@link BackendFlavor}. If the flavor does not
+     * know, asks the server (see {@link #probeWildcardRestrictions()}). The
+     * answer is remembered for the life of the connection.
+     *
+     * <p>The probe is a network call, so it is made without holding this
+     * connection's lock. Two threads may both probe; they get the same
+     * answer.
+     *
+     * @return Whether the server evaluates wildcards in restrictions
+     * @throws OlapException on error
+     */
+    boolean supportsWildcardRestrictions() throws OlapException {
+        Boolean b = wildcardRestrictions;
+        if (b == null) {
+            b = getFlavor(false).wildcardRestrictions;
+            if (b == null) {
+                b = probeWildcardRestrictions();
+            }
+            wildcardRestrictions = b;
+        }
+        return b;
+    }
+
+    /**
+     * Asks the server whether it evaluates wildcards in restrictions.
+     *
+     * <p>Takes the name of a cube, say "Sales", replaces its last character
+     * with '_', and asks for cubes whose name is "Sale_". A server that
+     * evaluates wildcards returns "Sales"; a server that matches
+     * restrictions exactly returns nothing; a server that ignores
+     * restrictions returns cubes that do not match. Only the first is
+     * a yes.
+     *
+     * @return Whether the server evaluated the wildcard
+     */
+    boolean probeWildcardRestrictions() {
+        try {
+            final NamedList<Cube> cubes = getOlapSchema().getCubes();
+            if (cubes.isEmpty() || cubes.get(0).getName().length() == 0) {
+                return false;
+            }
+            final String cubeName = cubes.get(0).getName();
+            final String pattern =
+                cubeName.substring(0, cubeName.length() - 1) + "_";
+            final Matcher matcher =
+                Pattern.compile(
+                    Olap4jUtil.wildcardToRegexp(
+                        Collections.singletonList(pattern)))
+                    .matcher("");
+            final XmlaOlap4jRequest request =
+                buildRequest(
+                    new Context(this, null, null, null, null, null, null, null),
+                    MetadataRequest.MDSCHEMA_CUBES,
+                    new Object[] {
+                        "CATALOG_NAME", getCatalog(),
+                        "CUBE_NAME", pattern
+                    });
+            final Element root = executeMetadataRequest(request);
+            int matchCount = 0;
+            for (Element row : XmlaOlap4jUtil.childElements(root)) {
+                if (!"row".equals(row.getLocalName())) {
+                    continue;
+                }
+                final String name =
+                    XmlaOlap4jUtil.stringElement(row, "CUBE_NAME");
+                if (name == null || !matcher.reset(name).matches()) {
+                    return false;
+                }
+                ++matchCount;
+            }
+            return matchCount > 0;
+        } catch (OlapException e) {
+            // A server that rejects the request does not evaluate wildcards.
+            return false;
+        }
+    }
+
     String makeConnectionPropertyList() throws OlapException {
         synchronized (propPopulation) {
             if (propPopulation.get()) {
@@ -418,7 +558,41 @@ abstract class XmlaOlap4jConnection implements OlapConnection {
     }
 
     public void close() throws SQLException {
+        if (closed) {
+            return;
+        }
         closed = true;
+        final List<XmlaOlap4jStatement> statements;
+        synchronized (statementMap) {
+            statements =
+                new ArrayList<XmlaOlap4jStatement>(statementMap.keySet());
+            statementMap.clear();
+        }
+        for (XmlaOlap4jStatement statement : statements) {
+            statement.close();
+        }
+    }
+
+    /**
+     * Called by a statement when it is created.
+     *
+     * @param statement Statement
+     */
+    void statementOpened(XmlaOlap4jStatement statement) {
+        synchronized (statementMap) {
+            statementMap.put(statement, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Called by a statement when it is closed.
+     *
+     * @param statement Statement
+     */
+    void statementClosed(XmlaOlap4jStatement statement) {
+        synchronized (statementMap) {
+            statementMap.remove(statement);
+        }
     }
 
     public boolean isClosed() throws SQLException {
@@ -734,7 +908,7 @@ abstract class XmlaOlap4jConnection implements OlapConnection {
             }
 
             public MdxValidator createMdxValidator(OlapConnection connection) {
-                return new XmlaOlap4jMdxValidator(connection);
+                return new DefaultMdxValidatorImpl(connection);
             }
         };
     }
@@ -763,26 +937,19 @@ abstract class XmlaOlap4jConnection implements OlapConnection {
         final Locale previousLocale = this.locale;
         this.locale = locale;
 
-        // If locale has changed, clear the cache. This is necessary because
-        // metadata elements (e.g. Cubes) only store the caption & description
-        // of the current locale. The SOAP cache, if enabled, will speed things
-        // up a little if a client JVM uses connections to the same server with
-        // different locales.
+        // Metadata elements (e.g. Cubes) only store the caption &
+        // description of one locale. Databases and catalogs have no
+        // captions, and are kept; each catalog keeps a separate tree of
+        // schemas, cubes, dimensions and members for each locale (see
+        // XmlaOlap4jCatalog.getSchemaList). If locale has changed, forget the
+        // current schema, so that it is looked up in the new locale's tree.
+        // Switching back to a locale used earlier finds its tree as it was
+        // left.
         if (!Olap4jUtil.equal(previousLocale, locale)) {
-            clearCache();
+            this.olap4jSchema = null;
         }
     }
 
-    /**
-     * Clears the cache.
-     */
-    private void clearCache() {
-        ((DeferredNamedListImpl) this.olapDatabases).reset();
-        this.olap4jCatalog = null;
-        this.olap4jDatabase = null;
-        this.olap4jSchema = null;
-    }
-
     public Locale getLocale() {
         if (locale == null) {
             return Locale.getDefault();
@@ -826,17 +993,26 @@ abstract class XmlaOlap4jConnection implements OlapConnection {
      * to get the vendor for a given connection.
      */
     enum BackendFlavor {
-        MONDRIAN("Mondrian"),
-        SSAS("Microsoft"),
-        PALO("Palo"),
-        SAP("SAP"),
-        ESSBASE("Essbase"),
-        UNKNOWN("");
+        MONDRIAN("Mondrian", false),
+        SSAS("Microsoft", false),
+        PALO("Palo", null),
+        SAP("SAP", null),
+        ESSBASE("Essbase", null),
+        UNKNOWN("", null);
 
         private final String token;
 
-        private BackendFlavor(String token) {
+        /**
+         * Whether servers of this flavor evaluate '%' and '_' in metadata
+         * restrictions as LIKE patterns; null if not known, and the server
+         * must be asked. Mondrian and SSAS match restriction values
+         * exactly.
+         */
+        final Boolean wildcardRestrictions;
+
+        private BackendFlavor(String token, Boolean wildcardRestrictions) {
             this.token = token;
+            this.wildcardRestrictions = wildcardRestrictions;
         }
 
         static BackendFlavor getFlavor(
@@ -864,8 +1040,8 @@ abstract class XmlaOlap4jConnection implements OlapConnection {
         Handler<T> handler,
         Object[] restrictions) throws OlapException
     {
-        String request =
-            generateRequest(context, metadataRequest, restrictions);
+        final XmlaOlap4jRequest request =
+            buildRequest(context, metadataRequest, restrictions);
         Element root = executeMetadataRequest(request);
         for (Element o : childElements(root)) {
             if (o.getLocalName().equals("row")) {
@@ -879,19 +1055,21 @@ abstract class XmlaOlap4jConnection implements OlapConnection {
      * Executes an XMLA metadata request and returns the root element of the
      * response.
      *
-     * @param request XMLA request string
+     * @param request XMLA request
      * @return Root element of the response
      * @throws OlapException on error
      */
-    Element executeMetadataRequest(String request) throws OlapException {
+    Element executeMetadataRequest(XmlaOlap4jRequest request)
+        throws OlapException
+    {
         byte[] bytes;
         if (LOGGER.isLoggable(java.util.logging.Level.FINE)) {
             LOGGER.fine("********************************************");
             LOGGER.fine("** SENDING REQUEST :");
-            LOGGER.fine(request);
+            LOGGER.fine(request.toString());
         }
         try {
-            bytes = proxy.get(serverInfos, request);
+            bytes = send(request);
         } catch (XmlaOlap4jProxyException e) {
             throw getHelper().createException(
                 "This connection encountered an exception while executing a query.",
@@ -974,6 +1152,44 @@ abstract class XmlaOlap4jConnection implements OlapConnection {
         return findChild(returnElement, ROWSET_NS, "root");
     }
 
+    /**
+     * Sends a request via the proxy, and waits for the response.
+     *
+     * <p>If the proxy can accept the encoded request, sends the bytes;
+     * otherwise sends the request as a string.
+     *
+     * @param request Request
+     * @return Response
+     * @throws XmlaOlap4jProxyException on error
+     */
+    byte[] send(XmlaOlap4jRequest request) throws XmlaOlap4jProxyException {
+        if (canStream(request)) {
+            return ((XmlaOlap4jStreamingProxy) proxy).get(
+                serverInfos, request);
+        }
+        return proxy.get(serverInfos, request.toString());
+    }
+
+    /**
+     * Submits a request via the proxy for background execution.
+     *
+     * @param request Request
+     * @return Future response
+     */
+    Future<byte[]> submit(XmlaOlap4jRequest request) {
+        if (canStream(request)) {
+            return ((XmlaOlap4jStreamingProxy) proxy).submit(
+                serverInfos, request);
+        }
+        return proxy.submit(serverInfos, request.toString());
+    }
+
+    private boolean canStream(XmlaOlap4jRequest request) {
+        return proxy instanceof XmlaOlap4jStreamingProxy
+            && request.getCharsetName().equals(
+                proxy.getEncodingCharsetName());
+    }
+
     final AtomicBoolean propPopulation = new AtomicBoolean(false);
 
     /**
@@ -998,24 +1214,44 @@ abstract class XmlaOlap4jConnection implements OlapConnection {
         MetadataRequest metadataRequest,
         Object[] restrictions) throws OlapException
     {
-        final String content = "Data";
+        return buildRequest(context, metadataRequest, restrictions)
+            .toString();
+    }
+
+    /**
+     * Generates a metadata request, encoded and ready to send.
+     *
+     * <p>The constant parts of the envelope are encoded once, when this
+     * class is loaded.
+     *
+     * @param context Context
+     * @param metadataRequest Metadata request
+     * @param restrictions List of restrictions
+     * @return XMLA SOAP request
+     *
+     * @throws OlapException when the query depends on a datasource name but
+     * the one specified doesn't exist at the url, or there are no default
+     * datasource (should use the first one)
+     *
+     * @see #generateRequest(Context, MetadataRequest, Object[])
+     */
+    XmlaOlap4jRequest buildRequest(
+        Context context,
+        MetadataRequest metadataRequest,
+        Object[] restrictions) throws OlapException
+    {
         final String encoding = proxy.getEncodingCharsetName();
-        final StringBuilder buf =
-            new StringBuilder(
-                "<?xml version=\"1.0\" encoding=\"" + encoding + "\"?>\n"
-                + "<SOAP-ENV:Envelope\n"
-                + "    xmlns:SOAP-ENV=\"http://schemas.xmlsoap.org/soap/envelope/\"\n"
-                + "    SOAP-ENV:encodingStyle=\"http://schemas.xmlsoap.org/soap/encoding/\">\n"
-                + "  <SOAP-ENV:Body>\n"
-                + "    <Discover xmlns=\"urn:schemas-microsoft-com:xml-analysis\"\n"
-                + "        SOAP-ENV:encodingStyle=\"http://schemas.xmlsoap.org/soap/encoding/\">\n"
-                + "    <RequestType>");
-
-        buf.append(metadataRequest.name());
-        buf.append(
-            "</RequestType>\n"
-            + "    <Restrictions>\n"
-            + "      <RestrictionList>\n");
+        final XmlaOlap4jRequest buf = new XmlaOlap4jRequest("Discover", 1024);
+        if (XmlaOlap4jRequest.UTF_8.equals(encoding)) {
+            buf.append(DISCOVER_PROLOG_UTF8);
+        } else {
+            buf.append("<?xml version=\"1.0\" encoding=\"")
+                .append(encoding)
+                .append("\"?>\n");
+        }
+        buf.append(DISCOVER_HEAD)
+            .append(metadataRequest.name())
+            .append(DISCOVER_RESTRICTIONS_HEAD);
         String restrictedCatalogName = null;
         if (restrictions.length > 0) {
             if (restrictions.length % 2 != 0) {
@@ -1027,7 +1263,7 @@ abstract class XmlaOlap4jConnection implements OlapConnection {
                 if (o instanceof String) {
                     buf.append("<").append(restriction).append(">");
                     final String value = (String) o;
-                    xmlEncode(buf, value);
+                    buf.appendXml(value);
                     buf.append("</").append(restriction).append(">");
 
                     // To remind ourselves to generate a <Catalog> restriction
@@ -1040,17 +1276,13 @@ abstract class XmlaOlap4jConnection implements OlapConnection {
                     List<String> valueList = (List<String>) o;
                     for (String value : valueList) {
                         buf.append("<").append(restriction).append(">");
-                        xmlEncode(buf, value);
+                        buf.appendXml(value);
                         buf.append("</").append(restriction).append(">");
                     }
                 }
             }
         }
-        buf.append(
-            "      </RestrictionList>\n"
-            + "    </Restrictions>\n"
-            + "    <Properties>\n"
-            + "      <PropertyList>\n");
+        buf.append(DISCOVER_RESTRICTIONS_TAIL);
 
         String conProperties = makeConnectionPropertyList();
         if (conProperties != null && !("".equals(conProperties))) {
@@ -1059,7 +1291,7 @@ abstract class XmlaOlap4jConnection implements OlapConnection {
 
         if (roleName != null && !("".equals(roleName))) {
             buf.append("        <Roles>");
-            xmlEncode(buf, roleName);
+            buf.appendXml(roleName);
             buf.append("</Roles>\n");
         }
 
@@ -1077,7 +1309,7 @@ abstract class XmlaOlap4jConnection implements OlapConnection {
                     context.olap4jConnection.getDatabase();
             }
             buf.append("        <DataSourceInfo>");
-            xmlEncode(buf, dataSourceInfo);
+            buf.appendXml(dataSourceInfo);
             buf.append("</DataSourceInfo>\n");
         }
 
@@ -1125,31 +1357,68 @@ abstract class XmlaOlap4jConnection implements OlapConnection {
                     + " exist on the server.");
             }
             buf.append("        <Catalog>");
-            xmlEncode(buf, requestCatalogName);
+            buf.appendXml(requestCatalogName);
             buf.append("</Catalog>\n");
         }
 
         if (metadataRequest.allowsLocale()) {
-            final Locale locale1 = context.olap4jConnection.getLocale();
+            // Metadata that belongs to a schema is requested in that
+            // schema's locale, so that each locale's cache is consistent.
+            final Locale locale1 =
+                context.olap4jSchema != null
+                    ? context.olap4jSchema.locale
+                    : context.olap4jConnection.getLocale();
             if (locale1 != null) {
                 final short lcid = LcidLocale.localeToLcid(locale1);
                 buf.append("<LocaleIdentifier>")
-                    .append(lcid)
+                    .append(Short.toString(lcid))
                     .append("</LocaleIdentifier>");
             }
         }
 
-        buf.append("        <Content>");
-        xmlEncode(buf, content);
-        buf.append(
-            "</Content>\n"
+        buf.append(DISCOVER_TAIL);
+        return buf;
+    }
+
+    private static final byte[] DISCOVER_PROLOG_UTF8 =
+        XmlaOlap4jRequest.template(
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+
+    private static final byte[] DISCOVER_HEAD =
+        XmlaOlap4jRequest.template(
+            "<SOAP-ENV:Envelope\n"
+            + "    xmlns:SOAP-ENV="
+            + "\"http://schemas.xmlsoap.org/soap/envelope/\"\n"
+            + "    SOAP-ENV:encodingStyle="
+            + "\"http://schemas.xmlsoap.org/soap/encoding/\">\n"
+            + "  <SOAP-ENV:Body>\n"
+            + "    <Discover "
+            + "xmlns=\"urn:schemas-microsoft-com:xml-analysis\"\n"
+            + "        SOAP-ENV:encodingStyle="
+            + "\"http://schemas.xmlsoap.org/soap/encoding/\">\n"
+            + "    <RequestType>");
+
+    private static final byte[] DISCOVER_RESTRICTIONS_HEAD =
+        XmlaOlap4jRequest.template(
+            "</RequestType>\n"
+            + "    <Restrictions>\n"
+            + "      <RestrictionList>\n");
+
+    private static final byte[] DISCOVER_RESTRICTIONS_TAIL =
+        XmlaOlap4jRequest.template(
+            "      </RestrictionList>\n"
+            + "    </Restrictions>\n"
+            + "    <Properties>\n"
+            + "      <PropertyList>\n");
+
+    private static final byte[] DISCOVER_TAIL =
+        XmlaOlap4jRequest.template(
+            "        <Content>Data</Content>\n"
             + "      </PropertyList>\n"
             + "    </Properties>\n"
             + "  </Discover>\n"
             + "</SOAP-ENV:Body>\n"
             + "</SOAP-ENV:Envelope>");
-        return buf.toString();
-    }
 
     /**
      * Encodes a string for use in an XML CDATA section.
@@ -1807,15 +2076,23 @@ abstract class XmlaOlap4jConnection implements OlapConnection {
             list.add(
                 new XmlaOlap4jSchema(
                     context.getCatalog(row),
-                    (schemaName == null) ? "" : schemaName));
+                    (schemaName == null) ? "" : schemaName,
+                    context.olap4jConnection.getLocale()));
         }
     }
 
     static class CatalogSchemaHandler extends HandlerImpl<XmlaOlap4jSchema> {
 
         private String catalogName;
+        private final Locale locale;
 
-        public CatalogSchemaHandler(String catalogName) {
+        /**
+         * Creates a CatalogSchemaHandler.
+         *
+         * @param catalogName Catalog name
+         * @param locale Locale of the schemas that this handler creates
+         */
+        public CatalogSchemaHandler(String catalogName, Locale locale) {
             super();
             if (catalogName == null) {
                 throw new RuntimeException(
@@ -1823,6 +2100,7 @@ abstract class XmlaOlap4jConnection implements OlapConnection {
                     + "name.");
             }
             this.catalogName = catalogName;
+            this.locale = locale;
         }
 
         public void handle(
@@ -1851,7 +2129,7 @@ abstract class XmlaOlap4jConnection implements OlapConnection {
             {
                 list.add(
                     new XmlaOlap4jSchema(
-                        context.getCatalog(row), schemaName2));
+                        context.getCatalog(row), schemaName2, locale));
             }
         }
     }
@@ -2484,26 +2762,6 @@ abstract class XmlaOlap4jConnection implements OlapConnection {
             this.name = name;
         }
     }
-
-    private static class XmlaOlap4jMdxValidator implements MdxValidator {
-        private final OlapConnection connection;
-
-        XmlaOlap4jMdxValidator(OlapConnection connection) {
-            this.connection = connection;
-        }
-
-        public SelectNode validateSelect(
-            SelectNode selectNode)
-            throws OlapException
-        {
-            StringWriter sw = new StringWriter();
-            selectNode.unparse(new ParseTreeWriter(sw));
-            String mdx = sw.toString();
-            final XmlaOlap4jConnection olap4jConnection =
-                (XmlaOlap4jConnection) connection;
-            return selectNode;
-        }
-    }
 }
 
 // End XmlaOlap4jConnection.java
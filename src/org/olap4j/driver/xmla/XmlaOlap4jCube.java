@@ -24,6 +24,7 @@ import org.olap4j.metadata.*;
 
 import java.lang.ref.SoftReference;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Implementation of {@link Cube}
@@ -32,21 +33,38 @@ import java.util.*;
  * @author jhyde
  * @since Dec 4, 2007
  */
-class XmlaOlap4jCube implements Cube, Named
+class XmlaOlap4jCube implements Cube, ExtendedCube, Named
 {
+    /**
+     * Tree operations whose results can be assigned to the members they
+     * were requested for, and can therefore be looked up for several
+     * members in one request.
+     */
+    private static final Set<Member.TreeOp> BATCH_TREE_OPS =
+        Olap4jUtil.enumSetOf(Member.TreeOp.SELF, Member.TreeOp.CHILDREN);
+
+    /**
+     * Maximum number of requests that a lookup of several members sends
+     * to the server at a time, when it cannot send them as one.
+     */
+    private static final int MAX_CONCURRENT_LOOKUPS = 4;
+
     final XmlaOlap4jSchema olap4jSchema;
     private final String name;
     private final String caption;
     private final String description;
 
     final NamedList<XmlaOlap4jDimension> dimensions;
+    // The following maps are written by the handlers that populate
+    // dimensions, hierarchies and levels, which may run in several threads
+    // at once; see getHierarchies.
     final Map<String, XmlaOlap4jDimension> dimensionsByUname =
-        new HashMap<String, XmlaOlap4jDimension>();
-    private NamedList<XmlaOlap4jHierarchy> hierarchies = null;
+        new ConcurrentHashMap<String, XmlaOlap4jDimension>();
+    private volatile NamedList<XmlaOlap4jHierarchy> hierarchies = null;
     final Map<String, XmlaOlap4jHierarchy> hierarchiesByUname =
-        new HashMap<String, XmlaOlap4jHierarchy>();
+        new ConcurrentHashMap<String, XmlaOlap4jHierarchy>();
     final Map<String, XmlaOlap4jLevel> levelsByUname =
-        new HashMap<String, XmlaOlap4jLevel>();
+        new ConcurrentHashMap<String, XmlaOlap4jLevel>();
     final List<XmlaOlap4jMeasure> measures =
         new ArrayList<XmlaOlap4jMeasure>();
     private final NamedList<XmlaOlap4jNamedSet> namedSets;
@@ -158,10 +176,20 @@ class XmlaOlap4jCube implements Cube, Named
         // of all dimensions and all hierarchies.
         // We defer it to this point.
         if (this.hierarchies == null) {
-            this.hierarchies = new NamedListImpl<XmlaOlap4jHierarchy>();
+            // Each dimension's hierarchies are a separate request. Send them
+            // all at once, rather than waiting for each in turn.
             for (XmlaOlap4jDimension dim : this.dimensions) {
-                this.hierarchies.addAll(dim.hierarchies);
+                if (dim.hierarchies instanceof DeferredNamedListImpl<?>) {
+                    ((DeferredNamedListImpl<?>) dim.hierarchies)
+                        .populateInBackground();
+                }
             }
+            final NamedList<XmlaOlap4jHierarchy> hierarchies =
+                new NamedListImpl<XmlaOlap4jHierarchy>();
+            for (XmlaOlap4jDimension dim : this.dimensions) {
+                hierarchies.addAll(dim.hierarchies);
+            }
+            this.hierarchies = hierarchies;
         }
         return Olap4jUtil.cast(hierarchies);
     }
@@ -187,6 +215,14 @@ class XmlaOlap4jCube implements Cube, Named
         List<IdentifierSegment> segmentList)
         throws OlapException
     {
+        final String uniqueName = toUniqueName(segmentList);
+        return getMetadataReader().lookupMemberByUniqueName(uniqueName);
+    }
+
+    /**
+     * Converts a list of name segments to a unique name.
+     */
+    private static String toUniqueName(List<IdentifierSegment> segmentList) {
         StringBuilder buf = new StringBuilder();
         for (IdentifierSegment segment : segmentList) {
             if (buf.length() > 0) {
@@ -194,8 +230,7 @@ class XmlaOlap4jCube implements Cube, Named
             }
             buf.append(segment.toString());
         }
-        final String uniqueName = buf.toString();
-        return getMetadataReader().lookupMemberByUniqueName(uniqueName);
+        return buf.toString();
     }
 
     /**
@@ -213,14 +248,7 @@ class XmlaOlap4jCube implements Cube, Named
         Set<Member.TreeOp> treeOps,
         List<IdentifierSegment> nameParts) throws OlapException
     {
-        StringBuilder buf = new StringBuilder();
-        for (IdentifierSegment namePart : nameParts) {
-            if (buf.length() > 0) {
-                buf.append('.');
-            }
-            buf.append(namePart);
-        }
-        final String uniqueName = buf.toString();
+        final String uniqueName = toUniqueName(nameParts);
         final List<XmlaOlap4jMember> list =
             new ArrayList<XmlaOlap4jMember>();
         getMetadataReader().lookupMemberRelatives(
@@ -228,6 +256,33 @@ class XmlaOlap4jCube implements Cube, Named
         return Olap4jUtil.cast(list);
     }
 
+    // implement ExtendedCube
+
+    public List<List<Member>> lookupMemberRelatives(
+        Set<Member.TreeOp> treeOps,
+        List<List<IdentifierSegment>> namePartsList) throws OlapException
+    {
+        final Set<String> uniqueNames = new LinkedHashSet<String>();
+        for (List<IdentifierSegment> nameParts : namePartsList) {
+            uniqueNames.add(toUniqueName(nameParts));
+        }
+        final Map<String, List<XmlaOlap4jMember>> map =
+            new HashMap<String, List<XmlaOlap4jMember>>();
+        getMetadataReader().lookupMemberRelatives(
+            treeOps, new ArrayList<String>(uniqueNames), map);
+        final List<List<Member>> lists = new ArrayList<List<Member>>();
+        for (List<IdentifierSegment> nameParts : namePartsList) {
+            final List<XmlaOlap4jMember> list =
+                map.get(toUniqueName(nameParts));
+            if (list == null) {
+                lists.add(Collections.<Member>emptyList());
+            } else {
+                lists.add(Olap4jUtil.<Member>cast(list));
+            }
+        }
+        return lists;
+    }
+
     /**
      * Abstract implementation of MemberReader that delegates all operations
      * to an underlying MemberReader.
@@ -269,6 +324,16 @@ class XmlaOlap4jCube implements Cube, Named
                 treeOps, memberUniqueName, list);
         }
 
+        public void lookupMemberRelatives(
+            Set<Member.TreeOp> treeOps,
+            List<String> memberUniqueNames,
+            Map<String, List<XmlaOlap4jMember>> memberListMap)
+            throws OlapException
+        {
+            metadataReader.lookupMemberRelatives(
+                treeOps, memberUniqueNames, memberListMap);
+        }
+
         public List<XmlaOlap4jMember> getLevelMembers(
             XmlaOlap4jLevel level)
             throws OlapException
@@ -283,20 +348,32 @@ class XmlaOlap4jCube implements Cube, Named
      *
      * <p>Caches are {@link Map}s containing
      * {@link java.lang.ref.SoftReference}s to cached objects, so can be
-     * cleared when memory is in short supply.
+     * cleared when memory is in short supply. They are concurrent, because
+     * members are looked up by several threads at once: by concurrent
+     * lookups, by cell sets that are populated in the background, and by
+     * the application.
+     *
+     * <p>The member cache also remembers names that the server does not
+     * know, so that they are not asked for again.
      */
     private static class CachingMetadataReader
         extends DelegatingMetadataReader
     {
+        /**
+         * Entry in {@link #memberMap} for a member that does not exist.
+         */
+        private static final SoftReference<XmlaOlap4jMember> NOT_FOUND =
+            new SoftReference<XmlaOlap4jMember>(null);
+
         private final Map<String, XmlaOlap4jMeasure> measuresMap;
 
         private final Map<String, SoftReference<XmlaOlap4jMember>> memberMap =
-            new HashMap<String, SoftReference<XmlaOlap4jMember>>();
+            new ConcurrentHashMap<String, SoftReference<XmlaOlap4jMember>>();
 
         private final Map<
             XmlaOlap4jLevel,
             SoftReference<List<XmlaOlap4jMember>>> levelMemberListMap =
-            new HashMap<
+            new ConcurrentHashMap<
                 XmlaOlap4jLevel,
                 SoftReference<List<XmlaOlap4jMember>>>();
 
@@ -318,6 +395,46 @@ class XmlaOlap4jCube implements Cube, Named
         public XmlaOlap4jMember lookupMemberByUniqueName(
             String memberUniqueName) throws OlapException
         {
+            final XmlaOlap4jMember cachedMember =
+                lookupCachedMember(memberUniqueName);
+            if (cachedMember != null) {
+                return cachedMember;
+            }
+            if (isMissing(memberUniqueName)) {
+                return null;
+            }
+
+            final XmlaOlap4jMember member =
+                super.lookupMemberByUniqueName(memberUniqueName);
+            if (member == null) {
+                memberMap.put(memberUniqueName, NOT_FOUND);
+            } else if (member.getDimension().type != Dimension.Type.MEASURE) {
+                memberMap.put(
+                    memberUniqueName,
+                    new SoftReference<XmlaOlap4jMember>(member));
+            }
+            return member;
+        }
+
+        /**
+         * Returns whether a previous lookup found that there is no member
+         * with a given unique name.
+         *
+         * @param memberUniqueName Unique name of member
+         * @return Whether member is known not to exist
+         */
+        private boolean isMissing(String memberUniqueName) {
+            return memberMap.get(memberUniqueName) == NOT_FOUND;
+        }
+
+        /**
+         * Looks up a member in the measures map and then in the cache,
+         * without reading from the underlying reader.
+         *
+         * @param memberUniqueName Unique name of member
+         * @return Member, or null if not cached
+         */
+        private XmlaOlap4jMember lookupCachedMember(String memberUniqueName) {
             // First, look in measures map.
             XmlaOlap4jMeasure measure =
                 measuresMap.get(memberUniqueName);
@@ -329,22 +446,64 @@ class XmlaOlap4jCube implements Cube, Named
             final SoftReference<XmlaOlap4jMember> memberRef =
                 memberMap.get(memberUniqueName);
             if (memberRef != null) {
-                final XmlaOlap4jMember member = memberRef.get();
-                if (member != null) {
-                    return member;
-                }
+                return memberRef.get();
             }
+            return null;
+        }
 
-            final XmlaOlap4jMember member =
-                super.lookupMemberByUniqueName(memberUniqueName);
-            if (member != null
-                && member.getDimension().type != Dimension.Type.MEASURE)
-            {
-                memberMap.put(
-                    memberUniqueName,
-                    new SoftReference<XmlaOlap4jMember>(member));
+        public void lookupMemberRelatives(
+            Set<Member.TreeOp> treeOps,
+            List<String> memberUniqueNames,
+            Map<String, List<XmlaOlap4jMember>> memberListMap)
+            throws OlapException
+        {
+            // A lookup of the members themselves can be answered from the
+            // cache, including for members that are known not to exist.
+            // Other relatives are not cached, but the members found are
+            // cached, so that they are not read again by name.
+            final boolean selfOnly =
+                treeOps.size() == 1 && treeOps.contains(Member.TreeOp.SELF);
+            List<String> remainingMemberUniqueNames = memberUniqueNames;
+            if (selfOnly) {
+                remainingMemberUniqueNames = new ArrayList<String>();
+                for (String memberUniqueName : memberUniqueNames) {
+                    final XmlaOlap4jMember member =
+                        lookupCachedMember(memberUniqueName);
+                    if (member != null) {
+                        memberListMap.put(
+                            memberUniqueName,
+                            Collections.singletonList(member));
+                    } else if (isMissing(memberUniqueName)) {
+                        memberListMap.put(
+                            memberUniqueName,
+                            Collections.<XmlaOlap4jMember>emptyList());
+                    } else {
+                        remainingMemberUniqueNames.add(memberUniqueName);
+                    }
+                }
+            }
+            if (remainingMemberUniqueNames.isEmpty()) {
+                return;
+            }
+            super.lookupMemberRelatives(
+                treeOps, remainingMemberUniqueNames, memberListMap);
+            for (String memberUniqueName : remainingMemberUniqueNames) {
+                final List<XmlaOlap4jMember> list =
+                    memberListMap.get(memberUniqueName);
+                if (selfOnly && list.isEmpty()) {
+                    memberMap.put(memberUniqueName, NOT_FOUND);
+                }
+                for (XmlaOlap4jMember member : list) {
+                    if (!(member instanceof Measure)
+                        && member.getDimension().type
+                           != Dimension.Type.MEASURE)
+                    {
+                        this.memberMap.put(
+                            member.getUniqueName(),
+                            new SoftReference<XmlaOlap4jMember>(member));
+                    }
+                }
             }
-            return member;
         }
 
         public void lookupMembersByUniqueName(
@@ -372,6 +531,9 @@ class XmlaOlap4jCube implements Cube, Named
                     memberMap.put(memberUniqueName, member);
                     continue;
                 }
+                if (memberRef == NOT_FOUND) {
+                    continue;
+                }
 
                 remainingMemberUniqueNames.add(memberUniqueName);
             }
@@ -385,7 +547,9 @@ class XmlaOlap4jCube implements Cube, Named
                 // Add the previously missing members into the cache.
                 for (String memberName : remainingMemberUniqueNames) {
                     XmlaOlap4jMember member = memberMap.get(memberName);
-                    if (member != null) {
+                    if (member == null) {
+                        this.memberMap.put(memberName, NOT_FOUND);
+                    } else {
                         if (!(member instanceof Measure)
                             && member.getDimension().type
                                != Dimension.Type.MEASURE)
@@ -561,6 +725,186 @@ class XmlaOlap4jCube implements Cube, Named
                     });
         }
 
+        public void lookupMemberRelatives(
+            Set<Member.TreeOp> treeOps,
+            List<String> memberUniqueNames,
+            Map<String, List<XmlaOlap4jMember>> memberListMap)
+            throws OlapException
+        {
+            List<String> remainingMemberUniqueNames = memberUniqueNames;
+            if (memberUniqueNames.size() > 1
+                && BATCH_TREE_OPS.containsAll(treeOps)
+                && olap4jSchema.olap4jCatalog.getDatabase().getProviderName()
+                    .equals("Mondrian"))
+            {
+                final Set<String> foundNames =
+                    batchMemberRelatives(
+                        treeOps, memberUniqueNames, memberListMap);
+
+                // A member that did not come back was either not found, or
+                // the server wrote its name differently from the request
+                // (say with the hierarchy name repeated), so we could not
+                // tell which rows were its relatives. Ask again, one at a
+                // time. A member that came back but has no relatives, such
+                // as the children of a leaf, is not asked for again.
+                remainingMemberUniqueNames = new ArrayList<String>();
+                for (String memberUniqueName : memberUniqueNames) {
+                    if (!foundNames.contains(memberUniqueName)) {
+                        remainingMemberUniqueNames.add(memberUniqueName);
+                    }
+                }
+            }
+            concurrentMemberRelatives(
+                treeOps, remainingMemberUniqueNames, memberListMap);
+        }
+
+        /**
+         * Looks up the relatives of several members in one request. Each
+         * returned member is assigned to the requested member that it is,
+         * or that is its parent; hence the tree operations must be a subset
+         * of {@link #BATCH_TREE_OPS}.
+         *
+         * <p>Mondrian accepts a list of member unique names as a
+         * restriction, as {@link #mondrianMembersLookup} relies on.
+         *
+         * <p>The request always asks for the members themselves, even if
+         * the tree operations do not include {@link Member.TreeOp#SELF}, so
+         * that a member that exists can be told apart from one that does
+         * not.
+         *
+         * @return Names of the requested members that the server returned
+         */
+        private Set<String> batchMemberRelatives(
+            Set<Member.TreeOp> treeOps,
+            List<String> memberUniqueNames,
+            Map<String, List<XmlaOlap4jMember>> memberListMap)
+            throws OlapException
+        {
+            final XmlaOlap4jConnection.Context context =
+                new XmlaOlap4jConnection.Context(
+                    XmlaOlap4jCube.this, null, null, null);
+            int treeOpMask = Member.TreeOp.SELF.xmlaOrdinal();
+            for (Member.TreeOp treeOp : treeOps) {
+                treeOpMask |= treeOp.xmlaOrdinal();
+            }
+            final List<XmlaOlap4jMember> memberList =
+                new ArrayList<XmlaOlap4jMember>();
+            olap4jSchema.olap4jCatalog.olap4jDatabaseMetaData.olap4jConnection
+                .populateList(
+                    memberList,
+                    context,
+                    XmlaOlap4jConnection.MetadataRequest.MDSCHEMA_MEMBERS,
+                    new XmlaOlap4jConnection.MemberHandler(),
+                    new Object[] {
+                        "CATALOG_NAME", olap4jSchema.olap4jCatalog.getName(),
+                        "SCHEMA_NAME", olap4jSchema.getName(),
+                        "CUBE_NAME", getName(),
+                        "MEMBER_UNIQUE_NAME", memberUniqueNames,
+                        "TREE_OP", String.valueOf(treeOpMask)
+                    });
+            for (String memberUniqueName : memberUniqueNames) {
+                memberListMap.put(
+                    memberUniqueName, new ArrayList<XmlaOlap4jMember>());
+            }
+            final boolean self = treeOps.contains(Member.TreeOp.SELF);
+            final boolean children = treeOps.contains(Member.TreeOp.CHILDREN);
+            final Set<XmlaOlap4jMember> seen = new HashSet<XmlaOlap4jMember>();
+            final Set<String> foundNames = new HashSet<String>();
+            for (XmlaOlap4jMember member : memberList) {
+                if (member == null || !seen.add(member)) {
+                    continue;
+                }
+                final List<XmlaOlap4jMember> selfList =
+                    memberListMap.get(member.getUniqueName());
+                if (selfList != null) {
+                    foundNames.add(member.getUniqueName());
+                    if (self) {
+                        selfList.add(member);
+                    }
+                }
+                if (children && member.getParentMemberUniqueName() != null) {
+                    final List<XmlaOlap4jMember> list =
+                        memberListMap.get(member.getParentMemberUniqueName());
+                    if (list != null) {
+                        list.add(member);
+                    }
+                }
+            }
+            return foundNames;
+        }
+
+        /**
+         * Looks up the relatives of each member in its own request, running
+         * up to {@link #MAX_CONCURRENT_LOOKUPS} requests at a time.
+         */
+        private void concurrentMemberRelatives(
+            final Set<Member.TreeOp> treeOps,
+            List<String> memberUniqueNames,
+            Map<String, List<XmlaOlap4jMember>> memberListMap)
+            throws OlapException
+        {
+            final int streamCount =
+                Math.min(MAX_CONCURRENT_LOOKUPS, memberUniqueNames.size());
+            final List<FutureTask<Map<String, List<XmlaOlap4jMember>>>> tasks =
+                new ArrayList<
+                    FutureTask<Map<String, List<XmlaOlap4jMember>>>>();
+            for (int i = 0; i < streamCount; i++) {
+                // Stream i looks up every streamCount'th name.
+                final List<String> streamNames = new ArrayList<String>();
+                for (int j = i; j < memberUniqueNames.size();
+                     j += streamCount)
+                {
+                    streamNames.add(memberUniqueNames.get(j));
+                }
+                tasks.add(
+                    new FutureTask<Map<String, List<XmlaOlap4jMember>>>(
+                        new Callable<Map<String, List<XmlaOlap4jMember>>>() {
+                            public Map<String, List<XmlaOlap4jMember>> call()
+                                throws OlapException
+                            {
+                                final Map<String, List<XmlaOlap4jMember>> map =
+                                    new HashMap<String,
+                                        List<XmlaOlap4jMember>>();
+                                for (String name : streamNames) {
+                                    final List<XmlaOlap4jMember> list =
+                                        new ArrayList<XmlaOlap4jMember>();
+                                    lookupMemberRelatives(
+                                        treeOps, name, list);
+                                    map.put(name, list);
+                                }
+                                return map;
+                            }
+                        }));
+            }
+            // Run the first stream in this thread, the rest in the
+            // background.
+            for (int i = 1; i < tasks.size(); i++) {
+                XmlaOlap4jDriver.submit(tasks.get(i));
+            }
+            final XmlaOlap4jConnection connection =
+                olap4jSchema.olap4jCatalog.olap4jDatabaseMetaData
+                    .olap4jConnection;
+            for (int i = 0; i < tasks.size(); i++) {
+                final FutureTask<Map<String, List<XmlaOlap4jMember>>> task =
+                    tasks.get(i);
+                if (i == 0) {
+                    task.run();
+                }
+                try {
+                    memberListMap.putAll(task.get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw connection.helper.createException(null, e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof OlapException) {
+                        throw (OlapException) e.getCause();
+                    }
+                    throw connection.helper.createException(
+                        null, e.getCause());
+                }
+            }
+        }
+
         public List<XmlaOlap4jMember> getLevelMembers(
             XmlaOlap4jLevel level)
             throws OlapException
@@ -18,11 +18,13 @@
 package org.olap4j.driver.xmla;
 
 import org.olap4j.*;
+import org.olap4j.driver.xmla.proxy.XmlaOlap4jRequest;
 import org.olap4j.impl.Olap4jUtil;
 import org.olap4j.metadata.Member;
 import org.olap4j.metadata.XmlaConstants;
 
 import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -115,6 +117,15 @@ abstract class XmlaOlap4jDatabaseMetaData implements OlapDatabaseMetaData {
                     patternValueList.add(name);
                     patternValueList.add(wildcard.pattern);
                 } else {
+                    if (olap4jConnection.supportsWildcardRestrictions()) {
+                        // The server can evaluate the wildcard, and will
+                        // send fewer rows.
+                        patternValueList.add(name);
+                        patternValueList.add(wildcard.pattern);
+                    }
+                    // Filter the rows as they are read. If the server
+                    // evaluated the wildcard, this is a cheap check that
+                    // it did so correctly.
                     String regexp =
                         Olap4jUtil.wildcardToRegexp(
                             Collections.singletonList(wildcard.pattern));
@@ -127,35 +138,88 @@ abstract class XmlaOlap4jDatabaseMetaData implements OlapDatabaseMetaData {
             }
         }
 
-        String request =
-            olap4jConnection.generateRequest(
+        final XmlaOlap4jRequest request =
+            olap4jConnection.buildRequest(
                 context,
                 metadataRequest,
                 patternValueList.toArray(
                     new String[patternValueList.size()]));
 
         final Element root = olap4jConnection.executeMetadataRequest(request);
-        List<List<Object>> rowList = new ArrayList<List<Object>>();
-        rowLoop:
-        for (Element row : XmlaOlap4jUtil.childElements(root)) {
-            if (row.getNamespaceURI() != null
-                && !row.getNamespaceURI().equals(
-                    "urn:schemas-microsoft-com:xml-analysis:rowset"))
-            {
-                // Ignore any vendor specific namespaced elements that
-                // are not part of the rowset namespace
-                continue;
-            }
-            final ArrayList<Object> valueList = new ArrayList<Object>();
-            for (Map.Entry<String, Matcher> entry : predicateList.entrySet()) {
-                final String column = entry.getKey();
-                final String value =
-                    XmlaOlap4jUtil.stringElement(row, column);
-                final Matcher matcher = entry.getValue();
-                if (!matcher.reset(value).matches()) {
-                    continue rowLoop;
+        List<String> headerList = new ArrayList<String>();
+        for (XmlaOlap4jConnection.MetadataColumn column
+            : metadataRequest.columns)
+        {
+            headerList.add(column.name);
+        }
+        return olap4jConnection.factory.newLazyResultSet(
+            olap4jConnection,
+            headerList,
+            new MetadataRowIterator(
+                root, metadataRequest, overrides, predicateList));
+    }
+
+    /**
+     * Iterator that converts the row elements of a metadata response into
+     * lists of values, one row at a time, as the result set is read.
+     *
+     * <p>Rows that are not in the rowset namespace, or that do not match one
+     * of the predicates, are skipped. When the last row has been read, the
+     * iterator lets go of the response.
+     */
+    private static class MetadataRowIterator
+        implements Iterator<List<Object>>
+    {
+        private Node node;
+        private final XmlaOlap4jConnection.MetadataRequest metadataRequest;
+        private final Map<XmlaOlap4jConnection.MetadataColumn, String>
+            overrides;
+        private final Map<String, Matcher> predicateList;
+        private Element nextRow;
+
+        /**
+         * Creates a MetadataRowIterator.
+         *
+         * @param root Root element of response
+         * @param metadataRequest Metadata request
+         * @param overrides Map of column values to use instead of the
+         *     values in the response
+         * @param predicateList Map from column name to the matcher that a
+         *     row's value for that column must match
+         */
+        MetadataRowIterator(
+            Element root,
+            XmlaOlap4jConnection.MetadataRequest metadataRequest,
+            Map<XmlaOlap4jConnection.MetadataColumn, String> overrides,
+            Map<String, Matcher> predicateList)
+        {
+            this.node = root.getFirstChild();
+            this.metadataRequest = metadataRequest;
+            this.overrides = overrides;
+            this.predicateList = predicateList;
+        }
+
+        public boolean hasNext() {
+            while (nextRow == null && node != null) {
+                final Node current = node;
+                node = node.getNextSibling();
+                if (current instanceof Element
+                    && accept((Element) current))
+                {
+                    nextRow = (Element) current;
                 }
             }
+            return nextRow != null;
+        }
+
+        public List<Object> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final Element row = nextRow;
+            nextRow = null;
+            final List<Object> valueList =
+                new ArrayList<Object>(metadataRequest.columns.size());
             for (XmlaOlap4jConnection.MetadataColumn column
                 : metadataRequest.columns)
             {
@@ -167,16 +231,33 @@ abstract class XmlaOlap4jDatabaseMetaData implements OlapDatabaseMetaData {
                     valueList.add(value);
                 }
             }
-            rowList.add(valueList);
+            return valueList;
         }
-        List<String> headerList = new ArrayList<String>();
-        for (XmlaOlap4jConnection.MetadataColumn column
-            : metadataRequest.columns)
-        {
-            headerList.add(column.name);
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private boolean accept(Element row) {
+            if (row.getNamespaceURI() != null
+                && !row.getNamespaceURI().equals(
+                    "urn:schemas-microsoft-com:xml-analysis:rowset"))
+            {
+                // Ignore any vendor specific namespaced elements that
+                // are not part of the rowset namespace
+                return false;
+            }
+            for (Map.Entry<String, Matcher> entry : predicateList.entrySet()) {
+                final String column = entry.getKey();
+                final String value =
+                    XmlaOlap4jUtil.stringElement(row, column);
+                final Matcher matcher = entry.getValue();
+                if (value == null || !matcher.reset(value).matches()) {
+                    return false;
+                }
+            }
+            return true;
         }
-        return olap4jConnection.factory.newFixedResultSet(
-            olap4jConnection, headerList, rowList);
     }
 
     /**
@@ -1010,7 +1091,7 @@ abstract class XmlaOlap4jDatabaseMetaData implements OlapDatabaseMetaData {
         getSupportedCellSetListenerGranularities()
         throws OlapException
     {
-        return Collections.emptySet();
+        return EnumSet.allOf(CellSetListener.Granularity.class);
     }
 
     public ResultSet getActions(
@@ -1073,8 +1154,8 @@ abstract class XmlaOlap4jDatabaseMetaData implements OlapDatabaseMetaData {
         final XmlaOlap4jConnection.Context context =
             new XmlaOlap4jConnection.Context(
                 olap4jConnection, null, null, null, null, null, null, null);
-        String request =
-            olap4jConnection.generateRequest(
+        final XmlaOlap4jRequest request =
+            olap4jConnection.buildRequest(
                 context, metadataRequest, new Object[0]);
         final Element root = olap4jConnection.executeMetadataRequest(request);
         StringBuilder buf = new StringBuilder();
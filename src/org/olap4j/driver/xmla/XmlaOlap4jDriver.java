@@ -17,8 +17,7 @@
 */
 package org.olap4j.driver.xmla;
 
-import org.olap4j.driver.xmla.proxy.XmlaOlap4jHttpProxy;
-import org.olap4j.driver.xmla.proxy.XmlaOlap4jProxy;
+import org.olap4j.driver.xmla.proxy.*;
 import org.olap4j.impl.Olap4jUtil;
 
 import java.sql.*;
@@ -121,6 +120,25 @@ import java.util.logging.Logger;
  *                             protocol, but are also sent as part of the SOAP
  *                             Security headers.
  *                             </td></tr>
+ * <tr><td>ClientFormatting</td><td>Whether to format cell values in the
+ *                             driver. If true, queries that have no
+ *                             CELL PROPERTIES clause request only the VALUE
+ *                             and FORMAT_STRING properties, which makes
+ *                             responses much smaller, and
+ *                             {@link org.olap4j.Cell#getFormattedValue()}
+ *                             applies the format string to the value when
+ *                             called. Default false.
+ *                             </td></tr>
+ * <tr><td>WildcardRestrictions</td><td>Whether the server treats '%' and
+ *                             '_' in metadata restrictions as LIKE
+ *                             patterns. If true, wildcard arguments to
+ *                             {@link org.olap4j.OlapDatabaseMetaData}
+ *                             methods are sent to the server; if false,
+ *                             the driver fetches the unrestricted rows and
+ *                             filters them. If not set, the driver decides
+ *                             based on the server's provider, and asks the
+ *                             server once if the provider is not known.
+ *                             </td></tr>
  * </table>
  *
  * @author jhyde, Luc Boudreau
@@ -135,16 +153,23 @@ public class XmlaOlap4jDriver implements Driver {
      */
     private static final ExecutorService executor;
 
+    /**
+     * Scheduler shared by all connections for periodic tasks, such as
+     * refreshing cell sets that have listeners.
+     */
+    private static final ScheduledExecutorService scheduler;
+
     static {
-        executor = Executors.newCachedThreadPool(
+        final ThreadFactory threadFactory =
             new ThreadFactory() {
                 public Thread newThread(Runnable r) {
                     Thread t = Executors.defaultThreadFactory().newThread(r);
                     t.setDaemon(true);
                     return t;
                }
-            }
-        );
+            };
+        executor = Executors.newCachedThreadPool(threadFactory);
+        scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
     }
 
     private static int nextCookie;
@@ -329,6 +354,68 @@ public class XmlaOlap4jDriver implements Driver {
         );
     }
 
+    /**
+     * Returns a future object representing an asynchronous submission of an
+     * encoded XMLA request to a URL.
+     *
+     * @param proxy Proxy via which to send the request
+     * @param serverInfos Server infos.
+     * @param request Request
+     * @return Future object from which the byte array containing the result
+     * of the XMLA call can be obtained
+     */
+    public static Future<byte[]> getFuture(
+        final XmlaOlap4jStreamingProxy proxy,
+        final XmlaOlap4jServerInfos serverInfos,
+        final XmlaOlap4jRequest request)
+    {
+        return executor.submit(
+            new Callable<byte[]>() {
+                public byte[] call() throws Exception {
+                    return proxy.get(serverInfos, request);
+                }
+            }
+        );
+    }
+
+    /**
+     * Submits a task for execution by the executor shared by all
+     * connections.
+     *
+     * @param task Task
+     * @return Future that completes when the task has run
+     */
+    static Future<?> submit(Runnable task) {
+        return executor.submit(task);
+    }
+
+    /**
+     * Schedules a task to run periodically.
+     *
+     * <p>Each run of the task is submitted to the executor shared by all
+     * connections, so a task that waits for a slow request does not delay
+     * other tasks. A task may therefore start before its previous run has
+     * finished, and must guard against that if necessary.
+     *
+     * @param task Task
+     * @param periodMillis Period, in milliseconds
+     * @return Future with which to cancel the task
+     */
+    static ScheduledFuture<?> schedule(
+        final Runnable task,
+        long periodMillis)
+    {
+        return scheduler.scheduleWithFixedDelay(
+            new Runnable() {
+                public void run() {
+                    executor.submit(task);
+                }
+            },
+            periodMillis,
+            periodMillis,
+            TimeUnit.MILLISECONDS);
+    }
+
     /**
      * For testing. Map from a cookie value (which is uniquely generated for
      * each test) to a proxy object. Uses a weak hash map so that, if the code
@@ -361,7 +448,22 @@ public class XmlaOlap4jDriver implements Driver {
         CACHE("Class name of the SOAP cache implementation"),
         ROLE("Comma separated list of roles this connection impersonates"),
         USER("Username to use when creating connections to the server."),
-        PASSWORD("Password to use when creating connections to the server.");
+        PASSWORD("Password to use when creating connections to the server."),
+        CLIENTFORMATTING(
+            "Whether to format cell values in the driver, from each cell's "
+            + "FORMAT_STRING, rather than have the server send the "
+            + "FORMATTED_VALUE of every cell. Default false."),
+        WILDCARDRESTRICTIONS(
+            "Whether the server treats '%' and '_' in metadata restrictions "
+            + "as LIKE patterns, so that patterns can be sent to it rather "
+            + "than evaluated by the driver. If not set, the driver decides "
+            + "based on the server's provider, asking the server if the "
+            + "provider is not known."),
+        REFRESHINTERVAL(
+            "Interval, in milliseconds, at which the driver re-executes the "
+            + "query of a statement that has a CellSetListener, in order to "
+            + "notify the listener of changes. Default 10000. If 0, the "
+            + "driver does not refresh.");
 
         /**
          * Creates a property.
@@ -130,6 +130,16 @@ class XmlaOlap4jMember
         return parentMember;
     }
 
+    /**
+     * Returns the unique name of this member's parent, or null if it has no
+     * parent. Unlike {@link #getParentMember()}, never reads metadata.
+     *
+     * @return unique name of parent, or null
+     */
+    String getParentMemberUniqueName() {
+        return parentMemberUniqueName;
+    }
+
     public XmlaOlap4jLevel getLevel() {
         return olap4jLevel;
     }
@@ -34,12 +34,21 @@ import java.util.*;
 class XmlaOlap4jSchema implements Schema, Named {
     final XmlaOlap4jCatalog olap4jCatalog;
     private final String name;
+
+    /**
+     * Locale of the captions and descriptions of this schema's cubes,
+     * dimensions and other metadata. Requests for this schema's metadata
+     * are sent in this locale, whatever the connection's current locale.
+     */
+    final Locale locale;
+
     final NamedList<XmlaOlap4jCube> cubes;
     private final NamedList<XmlaOlap4jDimension> sharedDimensions;
 
     XmlaOlap4jSchema(
         XmlaOlap4jCatalog olap4jCatalog,
-        String name)
+        String name,
+        Locale locale)
         throws OlapException
     {
         if (olap4jCatalog == null) {
@@ -51,6 +60,7 @@ class XmlaOlap4jSchema implements Schema, Named {
 
         this.olap4jCatalog = olap4jCatalog;
         this.name = name;
+        this.locale = locale;
 
         // Dummy cube to own shared dimensions.
         final XmlaOlap4jCube sharedCube =
@@ -19,11 +19,17 @@ package org.olap4j.driver.xmla;
 
 import org.olap4j.*;
 import org.olap4j.driver.xmla.XmlaOlap4jConnection.BackendFlavor;
+import org.olap4j.driver.xmla.proxy.XmlaOlap4jRequest;
+import org.olap4j.impl.ExtendedStatement;
 import org.olap4j.mdx.*;
+import org.olap4j.metadata.Property;
 
 import java.io.StringWriter;
+import java.math.BigDecimal;
 import java.sql.*;
+import java.util.*;
 import java.util.concurrent.*;
+import java.util.regex.Pattern;
 
 /**
  * Implementation of {@link org.olap4j.OlapStatement}
@@ -32,9 +38,77 @@ import java.util.concurrent.*;
  * @author jhyde
  * @since May 24, 2007
  */
-abstract class XmlaOlap4jStatement implements OlapStatement {
+abstract class XmlaOlap4jStatement
+    implements OlapStatement, ExtendedStatement
+{
+    /**
+     * Matches a query that has a CELL PROPERTIES clause. Errs on the side of
+     * matching, say if the words occur in a comment; then the query is sent
+     * unchanged.
+     */
+    private static final Pattern CELL_PROPERTIES_PATTERN =
+        Pattern.compile(
+            "\\bCELL\\s+PROPERTIES\\b", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Cell properties requested when the connection formats cells on the
+     * client.
+     */
+    private static final List<Property> CLIENT_FORMATTING_PROPERTIES =
+        Collections.unmodifiableList(
+            Arrays.<Property>asList(
+                Property.StandardCellProperty.VALUE,
+                Property.StandardCellProperty.FORMAT_STRING));
+
+    /**
+     * Constant parts of the SOAP envelope of an Execute request, encoded
+     * once.
+     */
+    private static final byte[] EXECUTE_HEAD =
+        XmlaOlap4jRequest.template(
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<soapenv:Envelope\n"
+            + "    xmlns:soapenv="
+            + "\"http://schemas.xmlsoap.org/soap/envelope/\"\n"
+            + "    xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\"\n"
+            + "    xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">\n"
+            + "    <soapenv:Body>\n"
+            + "        <Execute "
+            + "xmlns=\"urn:schemas-microsoft-com:xml-analysis\">\n"
+            + "        <Command>\n"
+            + "        <Statement>\n"
+            + "           <![CDATA[\n");
+    private static final byte[] EXECUTE_PROPERTIES =
+        XmlaOlap4jRequest.template(
+            "]]>\n"
+            + "         </Statement>\n"
+            + "        </Command>\n"
+            + "        <Properties>\n"
+            + "          <PropertyList>\n");
+    private static final byte[] CATALOG_START =
+        XmlaOlap4jRequest.template("            <Catalog>");
+    private static final byte[] CATALOG_END =
+        XmlaOlap4jRequest.template("</Catalog>\n");
+    private static final byte[] ROLES_START =
+        XmlaOlap4jRequest.template("        <Roles>");
+    private static final byte[] ROLES_END =
+        XmlaOlap4jRequest.template("</Roles>\n");
+    private static final byte[] DATA_SOURCE_INFO_START =
+        XmlaOlap4jRequest.template("            <DataSourceInfo>");
+    private static final byte[] DATA_SOURCE_INFO_END =
+        XmlaOlap4jRequest.template("</DataSourceInfo>\n");
+    private static final byte[] EXECUTE_TAIL =
+        XmlaOlap4jRequest.template(
+            "            <Format>Multidimensional</Format>\n"
+            + "            <AxisFormat>TupleFormat</AxisFormat>\n"
+            + "          </PropertyList>\n"
+            + "        </Properties>\n"
+            + "</Execute>\n"
+            + "</soapenv:Body>\n"
+            + "</soapenv:Envelope>");
+
     final XmlaOlap4jConnection olap4jConnection;
-    private boolean closed;
+    private volatile boolean closed;
 
     /**
      * Current cell set, or null if the statement is not executing anything.
@@ -49,6 +123,32 @@ abstract class XmlaOlap4jStatement implements OlapStatement {
     // Tells this statement to cancel as soon as it starts.
     private boolean cancelEarly = false;
 
+    /**
+     * Refreshes the open cell set and notifies listeners; null until
+     * the first listener is added.
+     */
+    private volatile XmlaOlap4jCellSetRefresher refresher;
+
+    /**
+     * Cell properties that queries are to return, or null if the server
+     * decides; and the names of those properties, for quick lookup while
+     * populating a cell set.
+     */
+    private List<Property> cellProperties;
+    private Set<String> cellPropertyNames;
+
+    /**
+     * Member properties that queries are to return for each axis, or null if
+     * the server decides; and the names of those properties.
+     */
+    private List<Property> dimensionProperties;
+    private Set<String> dimensionPropertyNames;
+
+    /**
+     * Number of slices into which to split the ROWS axis of a query.
+     */
+    private int rowSliceCount = 1;
+
     /**
      * Creates an XmlaOlap4jStatement.
      *
@@ -60,6 +160,7 @@ abstract class XmlaOlap4jStatement implements OlapStatement {
         assert olap4jConnection != null;
         this.olap4jConnection = olap4jConnection;
         this.closed = false;
+        olap4jConnection.statementOpened(this);
     }
 
     /**
@@ -90,6 +191,10 @@ abstract class XmlaOlap4jStatement implements OlapStatement {
     public void close() throws SQLException {
         if (!closed) {
             closed = true;
+            olap4jConnection.statementClosed(this);
+            if (refresher != null) {
+                refresher.stop();
+            }
             if (openCellSet != null) {
                 CellSet c = openCellSet;
                 openCellSet = null;
@@ -288,6 +393,98 @@ abstract class XmlaOlap4jStatement implements OlapStatement {
     // implement OlapStatement
 
     public CellSet executeOlapQuery(String mdx) throws OlapException {
+        return executeMdx(project(mdx));
+    }
+
+    /**
+     * Executes a query whose text already has the statement's projection
+     * applied.
+     *
+     * @param projection Projected query
+     * @return Cell set
+     * @throws OlapException on error
+     */
+    private CellSet executeMdx(Projection projection) throws OlapException {
+        final XmlaOlap4jCellSet cellSet;
+        synchronized (this) {
+            closeOpenCellSet();
+            this.future = submit(projection);
+            openCellSet = cellSet = olap4jConnection.factory.newCellSet(this);
+            cellSet.projection = projection;
+        }
+        if (cancelEarly) {
+            cancel();
+        }
+        // Release the monitor before calling populate, so that cancel can
+        // grab the monitor if it needs to.
+        cellSet.populate();
+        if (refresher != null) {
+            refresher.opened(cellSet, projection);
+        }
+        return cellSet;
+    }
+
+    /**
+     * Closes the previous open cell set, if there is one. The caller must
+     * hold the monitor on this statement.
+     *
+     * @throws OlapException on error
+     */
+    private void closeOpenCellSet() throws OlapException {
+        assert Thread.holdsLock(this);
+        if (openCellSet != null) {
+            final XmlaOlap4jCellSet cs = openCellSet;
+            openCellSet = null;
+            try {
+                cs.close();
+            } catch (SQLException e) {
+                throw getHelper().createException(
+                    "Error while closing previous CellSet", e);
+            }
+        }
+    }
+
+    /**
+     * Executes a query without closing or replacing the open cell set. The
+     * resulting cell set is not visible to the client.
+     *
+     * @param projection Projected query
+     * @return Cell set
+     * @throws OlapException on error
+     */
+    XmlaOlap4jCellSet executeDetached(Projection projection)
+        throws OlapException
+    {
+        final Future<byte[]> future = submit(projection);
+        final XmlaOlap4jCellSet cellSet =
+            olap4jConnection.factory.newCellSet(this);
+        cellSet.projection = projection;
+        cellSet.populate(await(future));
+        return cellSet;
+    }
+
+    /**
+     * Submits the request that executes a query, and returns a future for
+     * its response.
+     *
+     * @param projection Projected query
+     * @return Future response
+     * @throws OlapException on error
+     */
+    Future<byte[]> submit(Projection projection) throws OlapException {
+        return olap4jConnection.submit(createExecuteRequest(projection.mdx));
+    }
+
+    /**
+     * Creates the XMLA request that executes a query.
+     *
+     * @param mdx MDX text
+     * @return Request
+     * @throws OlapException on error
+     */
+    private XmlaOlap4jRequest createExecuteRequest(String mdx)
+        throws OlapException
+    {
         final String catalog = olap4jConnection.getCatalog();
         final String roleName = olap4jConnection.getRoleName();
         final String propList = olap4jConnection.makeConnectionPropertyList();
@@ -303,91 +500,500 @@ abstract class XmlaOlap4jStatement implements OlapStatement {
                 olap4jConnection.getDatabase();
         }
 
-        StringBuilder buf = new StringBuilder(
-            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
-            + "<soapenv:Envelope\n"
-            + "    xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\"\n"
-            + "    xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\"\n"
-            + "    xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">\n"
-            + "    <soapenv:Body>\n"
-            + "        <Execute xmlns=\"urn:schemas-microsoft-com:xml-analysis\">\n"
-            + "        <Command>\n"
-            + "        <Statement>\n"
-            + "           <![CDATA[\n" + mdx + "]]>\n"
-            + "         </Statement>\n"
-            + "        </Command>\n"
-            + "        <Properties>\n"
-            + "          <PropertyList>\n");
+        final XmlaOlap4jRequest request =
+            new XmlaOlap4jRequest("Execute", 1024 + mdx.length());
+        request.append(EXECUTE_HEAD)
+            .append(mdx)
+            .append(EXECUTE_PROPERTIES);
         if (catalog != null) {
-            buf.append("            <Catalog>");
-            buf.append(catalog);
-            buf.append("</Catalog>\n");
+            request.append(CATALOG_START)
+                .append(catalog)
+                .append(CATALOG_END);
         }
         if (propList != null) {
-            buf.append(propList);
+            request.append(propList);
         }
         if (roleName != null && !("".equals(roleName))) {
-            buf.append("        <Roles>");
-            buf.append(roleName);
-            buf.append("</Roles>\n");
+            request.append(ROLES_START)
+                .append(roleName)
+                .append(ROLES_END);
         }
         if (dataSourceInfo != null) {
-            buf.append("            <DataSourceInfo>");
-            buf.append(dataSourceInfo);
-            buf.append("</DataSourceInfo>\n");
+            request.append(DATA_SOURCE_INFO_START)
+                .append(dataSourceInfo)
+                .append(DATA_SOURCE_INFO_END);
         }
-        buf.append(
-            "            <Format>Multidimensional</Format>\n"
-            + "            <AxisFormat>TupleFormat</AxisFormat>\n"
-            + "          </PropertyList>\n"
-            + "        </Properties>\n"
-            + "</Execute>\n"
-            + "</soapenv:Body>\n"
-            + "</soapenv:Envelope>");
-        final String request = buf.toString();
+        request.append(EXECUTE_TAIL);
+        return request;
+    }
 
-        // Close the previous open CellSet, if there is one.
+    public CellSet executeOlapQuery(
+        SelectNode selectNode)
+        throws OlapException
+    {
+        if (rowSliceCount > 1) {
+            final CellSet cellSet = executeSliced(selectNode);
+            if (cellSet != null) {
+                return cellSet;
+            }
+        }
+        return executeMdx(project(selectNode));
+    }
+
+    /**
+     * Executes a query by splitting the set on its ROWS axis into slices,
+     * executing a query for each slice, and concatenating the results.
+     *
+     * <p>The requests for the slices run concurrently, but this thread
+     * decodes the responses one at a time, in order. While the requests
+     * run, {@link #cancel()} cancels all of them.
+     *
+     * <p>Returns null if the query cannot be split safely, or if the slices
+     * turn out not to agree on the other axes; the caller should then execute
+     * the query in one piece.
+     *
+     * @param selectNode Parse tree of query
+     * @return Cell set, or null
+     * @throws OlapException on error
+     */
+    private CellSet executeSliced(SelectNode selectNode) throws OlapException {
+        if (refresher != null) {
+            // Listeners need a cell set that the driver can re-execute.
+            return null;
+        }
+        final List<ParseTreeNode> rowSets = sliceRows(selectNode);
+        if (rowSets == null) {
+            return null;
+        }
+        final List<Projection> projections = new ArrayList<Projection>();
+        final List<Future<byte[]>> futures = new ArrayList<Future<byte[]>>();
+        for (ParseTreeNode rowSet : rowSets) {
+            final Projection projection =
+                project(replaceRows(selectNode, rowSet));
+            projections.add(projection);
+            futures.add(submit(projection));
+        }
+        final Future<byte[]> sliceFuture = new SliceFuture(futures);
+        final List<XmlaOlap4jCellSet> slices =
+            new ArrayList<XmlaOlap4jCellSet>();
+        boolean success = false;
+        try {
+            synchronized (this) {
+                closeOpenCellSet();
+                this.future = sliceFuture;
+            }
+            if (cancelEarly) {
+                cancel();
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                final XmlaOlap4jCellSet slice =
+                    olap4jConnection.factory.newCellSet(this);
+                slice.projection = projections.get(i);
+                slice.populate(await(futures.get(i)));
+                slices.add(slice);
+            }
+            success = true;
+        } finally {
+            synchronized (this) {
+                if (this.future == sliceFuture) {
+                    this.future = null;
+                }
+            }
+            if (!success) {
+                // If a slice failed, don't wait for the others.
+                sliceFuture.cancel(true);
+            }
+        }
+        final int axisOrdinal = Axis.ROWS.axisOrdinal();
+        for (XmlaOlap4jCellSet slice : slices.subList(1, slices.size())) {
+            if (!slice.isDeltaOf(slices.get(0), axisOrdinal)) {
+                return null;
+            }
+        }
+        final XmlaOlap4jCellSet cellSet =
+            olap4jConnection.factory.newCellSet(this);
+        cellSet.populateConcat(slices, axisOrdinal);
         synchronized (this) {
-            if (openCellSet != null) {
-                final XmlaOlap4jCellSet cs = openCellSet;
-                openCellSet = null;
-                try {
-                    cs.close();
-                } catch (SQLException e) {
-                    throw getHelper().createException(
-                        "Error while closing previous CellSet", e);
+            closeOpenCellSet();
+            openCellSet = cellSet;
+        }
+        return cellSet;
+    }
+
+    /**
+     * Partitions the set on the ROWS axis of a query into contiguous slices,
+     * returning an expression for each slice; or null if the query cannot be
+     * split safely.
+     *
+     * <p>If the set is an explicit list such as <code>{a, b, c, d}</code>,
+     * and has at least as many elements as there are to be slices, splits
+     * the list. Otherwise executes a query to count the tuples in the set,
+     * and each slice is a call to <code>Subset</code>. The set is evaluated
+     * in full for each slice, so each slice sees the same order.
+     *
+     * @param selectNode Parse tree of query
+     * @return List of expressions for slices of the ROWS axis, or null
+     * @throws OlapException on error
+     */
+    private List<ParseTreeNode> sliceRows(SelectNode selectNode)
+        throws OlapException
+    {
+        AxisNode rowAxis = null;
+        for (AxisNode axis : selectNode.getAxisList()) {
+            if (axis.getAxis() == Axis.ROWS) {
+                rowAxis = axis;
+            } else if (axis.isNonEmpty()) {
+                // Whether a column is empty depends on every row.
+                return null;
+            }
+        }
+        if (rowAxis == null
+            || rowAxis.getExpression() == null
+            || refersToAxis(selectNode))
+        {
+            return null;
+        }
+        final ParseTreeNode rowSet = rowAxis.getExpression();
+        final List<ParseTreeNode> slices = new ArrayList<ParseTreeNode>();
+        if (rowSet instanceof CallNode
+            && ((CallNode) rowSet).getSyntax() == Syntax.Braces
+            && ((CallNode) rowSet).getArgList().size() >= rowSliceCount)
+        {
+            final List<ParseTreeNode> args = ((CallNode) rowSet).getArgList();
+            for (int i = 0; i < rowSliceCount; i++) {
+                slices.add(
+                    new CallNode(
+                        null,
+                        "{}",
+                        Syntax.Braces,
+                        new ArrayList<ParseTreeNode>(
+                            args.subList(
+                                i * args.size() / rowSliceCount,
+                                (i + 1) * args.size() / rowSliceCount))));
+            }
+            return slices;
+        }
+        final int tupleCount = countTuples(selectNode, rowSet);
+        if (tupleCount < 2) {
+            return null;
+        }
+        final int sliceCount = Math.min(rowSliceCount, tupleCount);
+        for (int i = 0; i < sliceCount; i++) {
+            final int start = (int) ((long) i * tupleCount / sliceCount);
+            final int end = (int) ((long) (i + 1) * tupleCount / sliceCount);
+            slices.add(
+                new CallNode(
+                    null,
+                    "Subset",
+                    Syntax.Function,
+                    rowSet,
+                    LiteralNode.createNumeric(
+                        null, new BigDecimal(start), false),
+                    LiteralNode.createNumeric(
+                        null, new BigDecimal(end - start), false)));
+        }
+        return slices;
+    }
+
+    /**
+     * Executes a query that counts the tuples in a set, in the context of
+     * another query's calculated members and slicer. Returns -1 if the
+     * count is not a number.
+     */
+    private int countTuples(SelectNode selectNode, ParseTreeNode set)
+        throws OlapException
+    {
+        final IdentifierNode countName =
+            IdentifierNode.ofNames("Measures", "olap4j Row Count");
+        final List<ParseTreeNode> withList =
+            new ArrayList<ParseTreeNode>(selectNode.getWithList());
+        withList.add(
+            new WithMemberNode(
+                null,
+                countName,
+                new CallNode(null, "Count", Syntax.Function, set),
+                Collections.<PropertyValueNode>emptyList()));
+        final List<AxisNode> axisList = new ArrayList<AxisNode>();
+        axisList.add(
+            new AxisNode(
+                null, false, Axis.COLUMNS, null,
+                new CallNode(null, "{}", Syntax.Braces, countName)));
+        final SelectNode countQuery =
+            new SelectNode(
+                null,
+                withList,
+                axisList,
+                selectNode.getFrom(),
+                selectNode.getFilterAxis(),
+                Collections.<IdentifierNode>emptyList());
+        final Projection projection = new Projection(toString(countQuery));
+        final Future<byte[]> countFuture = submit(projection);
+        final XmlaOlap4jCellSet cellSet;
+        try {
+            synchronized (this) {
+                this.future = countFuture;
+            }
+            if (cancelEarly) {
+                cancel();
+            }
+            cellSet = olap4jConnection.factory.newCellSet(this);
+            cellSet.projection = projection;
+            cellSet.populate(await(countFuture));
+        } finally {
+            synchronized (this) {
+                if (this.future == countFuture) {
+                    this.future = null;
                 }
             }
+        }
+        final Object value = cellSet.getCell(0).getValue();
+        return value instanceof Number ? ((Number) value).intValue() : -1;
+    }
 
-            this.future =
-                olap4jConnection.proxy.submit(
-                    olap4jConnection.serverInfos, request);
-            openCellSet = olap4jConnection.factory.newCellSet(this);
+    /**
+     * Returns whether a query refers to the positions of an axis, for
+     * example by calling the <code>Axis</code> function in a calculated
+     * member. Such a query would give different results if split.
+     */
+    private static boolean refersToAxis(SelectNode selectNode) {
+        for (ParseTreeNode with : selectNode.getWithList()) {
+            if (with instanceof WithMemberNode
+                && refersToAxis(((WithMemberNode) with).getExpression())
+                || with instanceof WithSetNode
+                && refersToAxis(((WithSetNode) with).getExpression()))
+            {
+                return true;
+            }
         }
-        if (cancelEarly) {
-            cancel();
+        for (AxisNode axis : selectNode.getAxisList()) {
+            if (refersToAxis(axis.getExpression())) {
+                return true;
+            }
         }
-        // Release the monitor before calling populate, so that cancel can
-        // grab the monitor if it needs to.
-        openCellSet.populate();
-        return openCellSet;
+        return refersToAxis(selectNode.getFilterAxis().getExpression());
     }
 
-    public CellSet executeOlapQuery(
-        SelectNode selectNode)
+    private static boolean refersToAxis(ParseTreeNode node) {
+        if (!(node instanceof CallNode)) {
+            return false;
+        }
+        final CallNode call = (CallNode) node;
+        if (call.getOperatorName().equalsIgnoreCase("Axis")) {
+            return true;
+        }
+        for (ParseTreeNode arg : call.getArgList()) {
+            if (refersToAxis(arg)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns a copy of a query with a different set on the ROWS axis. The
+     * copy shares the other parts of the query.
+     */
+    private static SelectNode replaceRows(
+        SelectNode selectNode,
+        ParseTreeNode rowSet)
+    {
+        final List<AxisNode> axisList = new ArrayList<AxisNode>();
+        for (AxisNode axis : selectNode.getAxisList()) {
+            if (axis.getAxis() == Axis.ROWS) {
+                axis =
+                    new AxisNode(
+                        axis.getRegion(),
+                        axis.isNonEmpty(),
+                        axis.getAxis(),
+                        axis.getDimensionProperties(),
+                        rowSet);
+            }
+            axisList.add(axis);
+        }
+        return new SelectNode(
+            selectNode.getRegion(),
+            selectNode.getWithList(),
+            axisList,
+            selectNode.getFrom(),
+            selectNode.getFilterAxis(),
+            selectNode.getCellPropertyList());
+    }
+
+    /**
+     * Future that stands for the requests of all of the slices of a query,
+     * so that {@link XmlaOlap4jStatement#cancel()} cancels all of them. Its
+     * result is null.
+     */
+    private static class SliceFuture implements Future<byte[]> {
+        private final List<Future<byte[]>> futures;
+
+        SliceFuture(List<Future<byte[]>> futures) {
+            this.futures = futures;
+        }
+
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean canceled = false;
+            for (Future<byte[]> future : futures) {
+                canceled |= future.cancel(mayInterruptIfRunning);
+            }
+            return canceled;
+        }
+
+        public boolean isCancelled() {
+            for (Future<byte[]> future : futures) {
+                if (future.isCancelled()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public boolean isDone() {
+            for (Future<byte[]> future : futures) {
+                if (!future.isDone()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public byte[] get()
+            throws InterruptedException, ExecutionException
+        {
+            for (Future<byte[]> future : futures) {
+                future.get();
+            }
+            return null;
+        }
+
+        public byte[] get(long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException
+        {
+            final long deadline = System.nanoTime() + unit.toNanos(timeout);
+            for (Future<byte[]> future : futures) {
+                future.get(
+                    deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            }
+            return null;
+        }
+    }
+
+    // implement ExtendedStatement
+
+    public CellSet executeOlapDeltaQuery(
+        SelectNode deltaQuery,
+        CellSet previous,
+        Axis axis,
+        int positionOrdinal,
+        int removeCount)
         throws OlapException
     {
-        final String mdx = toString(selectNode);
-        return executeOlapQuery(mdx);
+        if (axis.isFilter()) {
+            throw new IllegalArgumentException(
+                "cannot splice the filter axis");
+        }
+        if (!(previous instanceof XmlaOlap4jCellSet)) {
+            return null;
+        }
+        if (refresher != null) {
+            // Listeners need a cell set that the driver can re-execute.
+            return null;
+        }
+        final XmlaOlap4jCellSet previousCellSet = (XmlaOlap4jCellSet) previous;
+        final int axisOrdinal = axis.axisOrdinal();
+        if (axisOrdinal >= previousCellSet.getAxes().size()
+            || positionOrdinal < 0
+            || removeCount < 0
+            || positionOrdinal + removeCount
+               > previousCellSet.getAxes().get(axisOrdinal).getPositionCount())
+        {
+            throw new IllegalArgumentException(
+                "positions [" + positionOrdinal + ", "
+                + (positionOrdinal + removeCount) + ") are not on axis "
+                + axis);
+        }
+        final XmlaOlap4jCellSet delta =
+            (XmlaOlap4jCellSet) executeOlapQuery(deltaQuery);
+        if (!delta.isDeltaOf(previousCellSet, axisOrdinal)) {
+            return null;
+        }
+        final XmlaOlap4jCellSet cellSet =
+            olap4jConnection.factory.newCellSet(this);
+        cellSet.populateSplice(
+            previousCellSet, delta, axisOrdinal, positionOrdinal, removeCount);
+        synchronized (this) {
+            if (openCellSet == delta) {
+                openCellSet = cellSet;
+            }
+        }
+        return cellSet;
     }
 
+    public void setRowSliceCount(int sliceCount) throws OlapException {
+        if (sliceCount < 1) {
+            throw getHelper().createException(
+                "Slice count must be at least 1: " + sliceCount);
+        }
+        this.rowSliceCount = sliceCount;
+    }
+
+    public int getRowSliceCount() {
+        return rowSliceCount;
+    }
+
+    public void setCellProperties(List<Property> propertyList)
+        throws OlapException
+    {
+        checkPropertyType(propertyList, Property.TypeFlag.CELL);
+        this.cellProperties = copy(propertyList);
+        this.cellPropertyNames = names(propertyList, false);
+    }
+
+    public List<Property> getCellProperties() {
+        return cellProperties;
+    }
+
+    public void setDimensionProperties(List<Property> propertyList)
+        throws OlapException
+    {
+        checkPropertyType(propertyList, Property.TypeFlag.MEMBER);
+        this.dimensionProperties = copy(propertyList);
+        this.dimensionPropertyNames = names(propertyList, true);
+    }
+
+    public List<Property> getDimensionProperties() {
+        return dimensionProperties;
+    }
+
+    // implement OlapStatement
+
     public void addListener(
         CellSetListener.Granularity granularity,
         CellSetListener listener)
         throws OlapException
     {
-        throw getHelper().createException(
-            "This driver does not support the cell listener API.");
+        if (granularity == null || listener == null) {
+            throw new NullPointerException();
+        }
+        synchronized (this) {
+            if (refresher == null) {
+                refresher =
+                    new XmlaOlap4jCellSetRefresher(
+                        this, olap4jConnection.refreshInterval);
+            }
+        }
+        refresher.addListener(granularity, listener);
+    }
+
+    /**
+     * Called when a cell set created by this statement is closed.
+     *
+     * @param cellSet Cell set
+     */
+    void cellSetClosed(XmlaOlap4jCellSet cellSet) {
+        if (refresher != null) {
+            refresher.closed(cellSet);
+        }
     }
 
     /**
@@ -408,9 +1014,28 @@ abstract class XmlaOlap4jStatement implements OlapStatement {
             }
         }
         try {
-            // Wait for the request to complete, with timeout if necessary.
-            // Whether or not timeout is used, the request can still be
-            // canceled.
+            return await(future);
+        } finally {
+            synchronized (this) {
+                if (future == null) {
+                    throw new IllegalArgumentException();
+                }
+                future = null;
+            }
+        }
+    }
+
+    /**
+     * Waits for a request to complete, with timeout if necessary. Whether or
+     * not timeout is used, the request can still be canceled.
+     *
+     * @param future Future of request
+     * @return Byte array resulting from successful request
+     * @throws OlapException if error occurred, or request timed out or
+     * was canceled
+     */
+    private byte[] await(Future<byte[]> future) throws OlapException {
+        try {
             if (timeoutSeconds > 0) {
                 return future.get(timeoutSeconds, TimeUnit.SECONDS);
             } else {
@@ -425,14 +1050,177 @@ abstract class XmlaOlap4jStatement implements OlapStatement {
                 "Query timeout of " + timeoutSeconds + " seconds exceeded");
         } catch (CancellationException e) {
             throw getHelper().createException("Query canceled");
-        } finally {
-            synchronized (this) {
-                if (future == null) {
-                    throw new IllegalArgumentException();
+        }
+    }
+
+    /**
+     * Returns the cell properties to add to a query that has no CELL
+     * PROPERTIES clause, or null to leave it as is.
+     */
+    private List<Property> effectiveCellProperties() {
+        if (cellProperties != null) {
+            return cellProperties;
+        }
+        if (olap4jConnection.clientFormatting) {
+            // Ask for the format string instead of the formatted value. The
+            // cells will format themselves, if and when asked, and the
+            // response is much smaller.
+            return CLIENT_FORMATTING_PROPERTIES;
+        }
+        return null;
+    }
+
+    /**
+     * Applies this statement's cell and dimension properties to a query
+     * string.
+     *
+     * <p>Adding DIMENSION PROPERTIES requires a parse tree. If the query
+     * cannot be parsed on the client, it is sent without that clause, and
+     * the server will report any error in it.
+     *
+     * @param mdx MDX text
+     * @return Projected query
+     */
+    Projection project(String mdx) {
+        if (dimensionProperties != null) {
+            SelectNode selectNode;
+            try {
+                selectNode =
+                    olap4jConnection.getParserFactory()
+                        .createMdxParser(olap4jConnection)
+                        .parseSelect(mdx);
+            } catch (RuntimeException e) {
+                selectNode = null;
+            }
+            if (selectNode != null) {
+                return project(selectNode);
+            }
+        }
+        final List<Property> propertyList = effectiveCellProperties();
+        if (propertyList == null
+            || CELL_PROPERTIES_PATTERN.matcher(mdx).find())
+        {
+            return new Projection(mdx);
+        }
+        final StringBuilder buf = new StringBuilder(mdx);
+        buf.append("\nCELL PROPERTIES ");
+        int k = 0;
+        for (Property property : propertyList) {
+            if (k++ > 0) {
+                buf.append(", ");
+            }
+            buf.append(toString(toIdentifier(property)));
+        }
+        return new Projection(
+            buf.toString(),
+            cellPropertyNames,
+            null,
+            Collections.<Axis>emptySet());
+    }
+
+    /**
+     * Applies this statement's cell and dimension properties to a parse
+     * tree. Clauses that the query already has are left alone, and the
+     * properties they ask for are not filtered.
+     *
+     * @param selectNode Parse tree
+     * @return Projected query
+     */
+    private Projection project(SelectNode selectNode) {
+        final List<Property> propertyList = effectiveCellProperties();
+        SelectNode copy = null;
+        Set<String> cellNames = null;
+        final Set<Axis> dimensionAxes = new HashSet<Axis>();
+        if (propertyList != null
+            && selectNode.getCellPropertyList().isEmpty())
+        {
+            copy = selectNode.deepCopy();
+            for (Property property : propertyList) {
+                copy.getCellPropertyList().add(toIdentifier(property));
+            }
+            cellNames = cellPropertyNames;
+        }
+        if (dimensionProperties != null) {
+            for (int i = 0; i < selectNode.getAxisList().size(); i++) {
+                if (!selectNode.getAxisList().get(i)
+                    .getDimensionProperties().isEmpty())
+                {
+                    continue;
                 }
-                future = null;
+                if (copy == null) {
+                    copy = selectNode.deepCopy();
+                }
+                final List<IdentifierNode> axisProperties =
+                    copy.getAxisList().get(i).getDimensionProperties();
+                for (Property property : dimensionProperties) {
+                    axisProperties.add(toIdentifier(property));
+                }
+                dimensionAxes.add(copy.getAxisList().get(i).getAxis());
             }
         }
+        return new Projection(
+            toString(copy == null ? selectNode : copy),
+            cellNames,
+            dimensionAxes.isEmpty() ? null : dimensionPropertyNames,
+            dimensionAxes);
+    }
+
+    /**
+     * Converts a property to an identifier for use in a CELL PROPERTIES or
+     * DIMENSION PROPERTIES clause. Standard properties such as
+     * <code>VALUE</code> are unquoted; level properties use their unique
+     * name.
+     */
+    private static IdentifierNode toIdentifier(Property property) {
+        final String uniqueName = property.getUniqueName();
+        if (uniqueName.startsWith("[")) {
+            return IdentifierNode.parseIdentifier(uniqueName);
+        }
+        return new IdentifierNode(
+            new NameSegment(null, uniqueName, Quoting.UNQUOTED));
+    }
+
+    private void checkPropertyType(
+        List<Property> propertyList,
+        Property.TypeFlag typeFlag)
+        throws OlapException
+    {
+        if (propertyList == null) {
+            return;
+        }
+        for (Property property : propertyList) {
+            if (!property.getType().contains(typeFlag)) {
+                throw getHelper().createException(
+                    "Property '" + property.getUniqueName()
+                    + "' is not a " + typeFlag.name().toLowerCase()
+                    + " property");
+            }
+        }
+    }
+
+    private static List<Property> copy(List<Property> propertyList) {
+        if (propertyList == null) {
+            return null;
+        }
+        return Collections.unmodifiableList(
+            new ArrayList<Property>(propertyList));
+    }
+
+    private static Set<String> names(
+        List<Property> propertyList,
+        boolean unique)
+    {
+        if (propertyList == null) {
+            return null;
+        }
+        final Set<String> names = new HashSet<String>();
+        for (Property property : propertyList) {
+            names.add(property.getName());
+            if (unique) {
+                names.add(property.getUniqueName());
+            }
+        }
+        return names;
     }
 
     /**
@@ -448,6 +1236,92 @@ abstract class XmlaOlap4jStatement implements OlapStatement {
         return sw.toString();
     }
 
+    /**
+     * Query text with the statement's projection applied, and the
+     * properties that cell sets created from it are to contain.
+     *
+     * <p>Properties are filtered only if the statement added the clause that
+     * asks for them. If a query has its own CELL PROPERTIES or DIMENSION
+     * PROPERTIES clause, the cell set contains everything the server
+     * returns.
+     */
+    static class Projection {
+        final String mdx;
+        private final Set<String> cellPropertyNames;
+        private final Set<String> dimensionPropertyNames;
+        private final Set<Axis> dimensionPropertyAxes;
+
+        /**
+         * Creates a Projection that filters nothing.
+         *
+         * @param mdx MDX text
+         */
+        Projection(String mdx) {
+            this(mdx, null, null, Collections.<Axis>emptySet());
+        }
+
+        /**
+         * Creates a Projection.
+         *
+         * @param mdx MDX text
+         * @param cellPropertyNames Names of cell properties to keep, or null
+         *     to keep all
+         * @param dimensionPropertyNames Names of member properties to keep,
+         *     or null to keep all
+         * @param dimensionPropertyAxes Axes to which dimensionPropertyNames
+         *     applies
+         */
+        Projection(
+            String mdx,
+            Set<String> cellPropertyNames,
+            Set<String> dimensionPropertyNames,
+            Set<Axis> dimensionPropertyAxes)
+        {
+            this.mdx = mdx;
+            this.cellPropertyNames = cellPropertyNames;
+            this.dimensionPropertyNames = dimensionPropertyNames;
+            this.dimensionPropertyAxes = dimensionPropertyAxes;
+        }
+
+        /**
+         * Returns whether cell sets are to contain a given cell property.
+         *
+         * @param name Property name, for example "FORMATTED_VALUE"
+         * @return Whether property is projected
+         */
+        boolean isCellPropertyProjected(String name) {
+            return cellPropertyNames == null
+                || cellPropertyNames.contains(name);
+        }
+
+        /**
+         * Returns whether cell sets are to contain a given member property
+         * on a given axis. Matches either the unique name of the property,
+         * such as "[Store].[Store Name].[Store Sqft]", or its last segment.
+         *
+         * @param axis Axis
+         * @param uniqueName Unique name of property
+         * @return Whether property is projected
+         */
+        boolean isDimensionPropertyProjected(Axis axis, String uniqueName) {
+            if (dimensionPropertyNames == null
+                || !dimensionPropertyAxes.contains(axis)
+                || dimensionPropertyNames.contains(uniqueName))
+            {
+                return true;
+            }
+            final List<IdentifierSegment> segments;
+            try {
+                segments = IdentifierNode.parseIdentifier(uniqueName)
+                    .getSegmentList();
+            } catch (RuntimeException e) {
+                return false;
+            }
+            return !segments.isEmpty()
+                && dimensionPropertyNames.contains(
+                    segments.get(segments.size() - 1).getName());
+        }
+    }
 }
 
 // End XmlaOlap4jStatement.java
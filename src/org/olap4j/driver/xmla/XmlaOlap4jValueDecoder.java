@@ -0,0 +1,370 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.driver.xmla;
+
+import org.olap4j.driver.xmla.XmlaOlap4jCellSet.XsdTypes;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Decodes the <code>Value</code> element of cells in an XMLA result.
+ *
+ * <p>A cell set creates one decoder and uses it for all of its cells. After
+ * a call to {@link #decode(org.w3c.dom.Element)}, the decoder holds the
+ * value as a primitive in {@link #bits} (and {@link #scale}) if its type
+ * permits, otherwise as an object. Numbers are parsed directly from the text
+ * of the element; no boxes, and no {@link BigDecimal} or {@link BigInteger}
+ * unless the value does not fit into a <code>long</code>.
+ * {@link XmlaOlap4jCell} keeps the value in the same form, and creates the
+ * Java object only when {@link org.olap4j.Cell#getValue()} is called.
+ *
+ * <p>Not thread-safe.
+ *
+ * @author jhyde
+ */
+class XmlaOlap4jValueDecoder {
+    /**
+     * Powers of ten that can be represented exactly as a double.
+     */
+    static final double[] POW10 = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22,
+    };
+
+    /**
+     * Largest long that can be converted to a double without loss.
+     */
+    static final long MAX_EXACT_DOUBLE = 1L << 53;
+
+    private String lastTypeName;
+    private XsdTypes lastType;
+
+    /**
+     * Type of the last value decoded, or null if the value is held in
+     * {@link #object}.
+     */
+    XsdTypes type;
+
+    /**
+     * Primitive value: a long for the integral types (0 or 1 for boolean),
+     * the unscaled value for decimals, and the bits of a double for
+     * floating-point types.
+     */
+    long bits;
+
+    /**
+     * Number of decimal places, for decimal types.
+     */
+    int scale;
+
+    /**
+     * Value, if it is not held as a primitive; null if the cell is null.
+     */
+    Object object;
+
+    /**
+     * Decodes a value element.
+     *
+     * @param element Value element, or null if the cell is null
+     * @throws NumberFormatException if the text does not conform to the type
+     */
+    void decode(Element element) {
+        object = null;
+        scale = 0;
+        if (element == null) {
+            type = null;
+            return;
+        }
+        final XsdTypes xsdType = classify(element.getAttribute("xsi:type"));
+        final String s = text(element);
+        type = xsdType;
+        switch (xsdType) {
+        case XSD_BOOLEAN:
+            // Some servers send "True" or "TRUE"; XSD also allows "1".
+            bits = s.equalsIgnoreCase("true") || s.equals("1") ? 1 : 0;
+            return;
+        case XSD_BYTE:
+            bits = parseLong(s, Byte.MIN_VALUE, Byte.MAX_VALUE);
+            return;
+        case XSD_SHORT:
+        case XSD_UNSIGNEDBYTE:
+            bits = parseLong(s, Short.MIN_VALUE, Short.MAX_VALUE);
+            return;
+        case XSD_INT:
+        case XSD_UNSIGNEDSHORT:
+            bits = parseLong(s, Integer.MIN_VALUE, Integer.MAX_VALUE);
+            return;
+        case XSD_LONG:
+        case XSD_UNSIGNEDINT:
+            bits = parseLong(s, Long.MIN_VALUE, Long.MAX_VALUE);
+            return;
+        case XSD_INTEGER:
+        case XSD_POSITIVEINTEGER:
+            if (!parseLong(s)) {
+                type = null;
+                object = new BigInteger(s);
+            }
+            return;
+        case XSD_DECIMAL:
+        case XSD_UNSIGNEDLONG:
+            if (!parseDecimal(s)) {
+                type = null;
+                object = new BigDecimal(s);
+            }
+            return;
+        case XSD_DOUBLE:
+            bits = Double.doubleToRawLongBits(parseDouble(s));
+            return;
+        case XSD_FLOAT:
+            bits = Double.doubleToRawLongBits(Float.parseFloat(s));
+            return;
+        default:
+            type = null;
+            object = s;
+        }
+    }
+
+    /**
+     * Converts the value of an <code>xsi:type</code> attribute to a type.
+     * Cells in a result usually have the same few types, so remembers the
+     * last one.
+     */
+    private XsdTypes classify(String typeName) {
+        if (!typeName.equals(lastTypeName)) {
+            lastType = XsdTypes.fromString(typeName);
+            lastTypeName = typeName;
+        }
+        return lastType;
+    }
+
+    /**
+     * Returns the text of an element. Avoids the buffer that
+     * {@link Element#getTextContent()} uses in the common case that the
+     * element has a single text node.
+     */
+    private static String text(Element element) {
+        final Node child = element.getFirstChild();
+        if (child != null
+            && child.getNextSibling() == null
+            && child.getNodeType() == Node.TEXT_NODE)
+        {
+            return child.getNodeValue();
+        }
+        return element.getTextContent();
+    }
+
+    /**
+     * Parses an integer and checks that it is within range.
+     *
+     * @throws NumberFormatException if not an integer, or out of range
+     */
+    private long parseLong(String s, long min, long max) {
+        if (!parseLong(s) || bits < min || bits > max) {
+            throw new NumberFormatException(
+                "For input string: \"" + s + "\"");
+        }
+        return bits;
+    }
+
+    /**
+     * Parses an integer into {@link #bits}. Returns false if the string is
+     * not an integer or does not fit into a long.
+     */
+    private boolean parseLong(String s) {
+        final int n = s.length();
+        int i = 0;
+        boolean negative = false;
+        if (n > 0) {
+            final char c = s.charAt(0);
+            if (c == '-') {
+                negative = true;
+                ++i;
+            } else if (c == '+') {
+                ++i;
+            }
+        }
+        if (i == n) {
+            return false;
+        }
+        // Accumulate negatively, so that Long.MIN_VALUE does not overflow.
+        final long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        final long multMin = limit / 10;
+        long acc = 0;
+        for (; i < n; i++) {
+            final int digit = s.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || acc < multMin) {
+                return false;
+            }
+            acc *= 10;
+            if (acc < limit + digit) {
+                return false;
+            }
+            acc -= digit;
+        }
+        bits = negative ? acc : -acc;
+        return true;
+    }
+
+    /**
+     * Parses a decimal number into {@link #bits} and {@link #scale}.
+     * Returns false if the string has an exponent, is not a number, or has
+     * more than 18 digits.
+     */
+    private boolean parseDecimal(String s) {
+        final int n = s.length();
+        int i = 0;
+        boolean negative = false;
+        if (n > 0) {
+            final char c = s.charAt(0);
+            if (c == '-') {
+                negative = true;
+                ++i;
+            } else if (c == '+') {
+                ++i;
+            }
+        }
+        long acc = 0;
+        int digits = 0;
+        int point = -1;
+        for (; i < n; i++) {
+            final char c = s.charAt(i);
+            if (c == '.' && point < 0) {
+                point = digits;
+                continue;
+            }
+            final int digit = c - '0';
+            if (digit < 0 || digit > 9 || digits == 18) {
+                return false;
+            }
+            acc = acc * 10 + digit;
+            ++digits;
+        }
+        if (digits == 0) {
+            return false;
+        }
+        bits = negative ? -acc : acc;
+        scale = point < 0 ? 0 : digits - point;
+        return true;
+    }
+
+    /**
+     * Parses a double. Numbers whose digits fit into 53 bits and whose
+     * exponent is small, which is what servers send, are computed with one
+     * exact multiplication or division, and are therefore correctly
+     * rounded; anything else goes to {@link Double#parseDouble(String)}.
+     * Accepts the XSD special values "INF", "-INF" and "NaN".
+     */
+    static double parseDouble(String s) {
+        final int n = s.length();
+        int i = 0;
+        boolean negative = false;
+        if (n > 0) {
+            final char c = s.charAt(0);
+            if (c == '-') {
+                negative = true;
+                ++i;
+            } else if (c == '+') {
+                ++i;
+            }
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean point = false;
+        for (; i < n; i++) {
+            final char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                if (mantissa > MAX_EXACT_DOUBLE) {
+                    return parseDoubleSlow(s);
+                }
+                ++digits;
+                if (point) {
+                    --exponent;
+                }
+            } else if (c == '.' && !point) {
+                point = true;
+            } else if ((c == 'e' || c == 'E') && digits > 0) {
+                final int e = parseExponent(s, i + 1);
+                if (e == Integer.MIN_VALUE) {
+                    return parseDoubleSlow(s);
+                }
+                exponent += e;
+                break;
+            } else {
+                return parseDoubleSlow(s);
+            }
+        }
+        if (digits == 0) {
+            return parseDoubleSlow(s);
+        }
+        double d = mantissa;
+        if (exponent > 0) {
+            if (exponent >= POW10.length) {
+                return parseDoubleSlow(s);
+            }
+            d *= POW10[exponent];
+        } else if (exponent < 0) {
+            if (-exponent >= POW10.length) {
+                return parseDoubleSlow(s);
+            }
+            d /= POW10[-exponent];
+        }
+        return negative ? -d : d;
+    }
+
+    /**
+     * Parses a short exponent, returning {@link Integer#MIN_VALUE} if it is
+     * invalid or has more than 3 digits.
+     */
+    private static int parseExponent(String s, int i) {
+        final int n = s.length();
+        boolean negative = false;
+        if (i < n && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+            negative = s.charAt(i) == '-';
+            ++i;
+        }
+        if (i == n || n - i > 3) {
+            return Integer.MIN_VALUE;
+        }
+        int e = 0;
+        for (; i < n; i++) {
+            final int digit = s.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return Integer.MIN_VALUE;
+            }
+            e = e * 10 + digit;
+        }
+        return negative ? -e : e;
+    }
+
+    private static double parseDoubleSlow(String s) {
+        if (s.equals("INF")) {
+            return Double.POSITIVE_INFINITY;
+        } else if (s.equals("-INF")) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        return Double.parseDouble(s);
+    }
+}
+
+// End XmlaOlap4jValueDecoder.java
@@ -161,8 +161,7 @@ class XmlaOlap4jConcurrentMemoryCache {
 
             // Extract the data from the cache
             XmlaOlap4jCacheElement entry = this.cacheEntries.get(
-                XmlaOlap4jShaEncoder.encodeSha1(
-                    url.toExternalForm() + new String(request)));
+                XmlaOlap4jShaEncoder.encodeSha1(url, request));
 
             // Increment its counter
             if (entry != null) {
@@ -172,7 +171,7 @@ class XmlaOlap4jConcurrentMemoryCache {
 
             // Return a copy to prevent corruption
             return entry != null
-                ? new String(entry.getResponse()).getBytes()
+                ? entry.getResponse().clone()
                 : null;
         }
     }
@@ -193,10 +192,8 @@ class XmlaOlap4jConcurrentMemoryCache {
                 entry.setResponse(response);
 
                 this.cacheEntries.put(
-                    XmlaOlap4jShaEncoder.encodeSha1(
-                        String.valueOf(url.toExternalForm())
-                        + new String(request)),
-                        entry);
+                    XmlaOlap4jShaEncoder.encodeSha1(url, request),
+                    entry);
             } else {
                 throw new RuntimeException("Concurrency error detected.");
             }
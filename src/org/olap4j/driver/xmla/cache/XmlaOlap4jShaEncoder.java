@@ -17,6 +17,8 @@
 */
 package org.olap4j.driver.xmla.cache;
 
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -45,16 +47,7 @@ class XmlaOlap4jShaEncoder {
     }
 
     public static String encodeSha1(String text) {
-        MessageDigest md;
-        try {
-            md = MessageDigest.getInstance("SHA-1");
-        } catch (NoSuchAlgorithmException e) {
-            try {
-                md = MessageDigest.getInstance("MD5");
-            } catch (NoSuchAlgorithmException e1) {
-                throw new RuntimeException(e1);
-            }
-        }
+        final MessageDigest md = newDigest();
 
         byte[] sha1hash = new byte[40];
 
@@ -64,6 +57,37 @@ class XmlaOlap4jShaEncoder {
 
         return convertToHex(sha1hash);
     }
+
+    /**
+     * Computes the hash of a request sent to a URL. Digests the bytes of the
+     * request directly, rather than copying them into a string.
+     *
+     * @param url URL
+     * @param request Encoded request
+     * @return Hash, as a string of hex digits
+     */
+    public static String encodeSha1(URL url, byte[] request) {
+        final MessageDigest md = newDigest();
+        try {
+            md.update(url.toExternalForm().getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+        md.update(request);
+        return convertToHex(md.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            try {
+                return MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e1) {
+                throw new RuntimeException(e1);
+            }
+        }
+    }
 }
 
 // End XmlaOlap4jShaEncoder.java
@@ -40,7 +40,7 @@ import java.util.concurrent.Future;
  * @author Luc Boudreau
  */
 abstract class XmlaOlap4jAbstractHttpProxy
-    implements XmlaOlap4jCachedProxy
+    implements XmlaOlap4jCachedProxy, XmlaOlap4jStreamingProxy
 {
     private final XmlaHelper helper = new XmlaHelper();
 
@@ -80,6 +80,25 @@ abstract class XmlaOlap4jAbstractHttpProxy
             throws XmlaOlap4jProxyException;
 
 
+    /**
+     * Sends an encoded request to a URL and returns the response.
+     *
+     * <p>The default implementation converts the request to a string and
+     * calls {@link #getResponse(XmlaOlap4jServerInfos, String)}. Subclasses
+     * should override, and write the bytes directly.
+     *
+     * @param serverInfos Server infos
+     * @param request Request
+     * @return Response
+     */
+    protected byte[] getResponse(
+        XmlaOlap4jServerInfos serverInfos,
+        XmlaOlap4jRequest request)
+        throws XmlaOlap4jProxyException
+    {
+        return getResponse(serverInfos, request.toString());
+    }
+
     /**
      * Submits a request for background execution.
      *
@@ -159,14 +178,23 @@ abstract class XmlaOlap4jAbstractHttpProxy
         XmlaOlap4jServerInfos serverInfos,
         String request)
         throws XmlaOlap4jProxyException
+    {
+        // Encode once, for the cache and for the server.
+        return get(
+            serverInfos,
+            new XmlaOlap4jRequest(request, getEncodingCharsetName()));
+    }
+
+    // implement XmlaOlap4jStreamingProxy
+    public byte[] get(
+        XmlaOlap4jServerInfos serverInfos,
+        XmlaOlap4jRequest request)
+        throws XmlaOlap4jProxyException
     {
         byte[] response = null;
         // Tries to fetch from cache
         try {
-            response =
-                getFromCache(
-                    serverInfos.getUrl(),
-                    request.getBytes(getEncodingCharsetName()));
+            response = getFromCache(serverInfos.getUrl(), request);
             // Returns the cached value if found
             if (response != null) {
                 return response;
@@ -182,15 +210,13 @@ abstract class XmlaOlap4jAbstractHttpProxy
 
         try {
             // Adds to cache
-            addToCache(
-                serverInfos.getUrl(),
-                request.getBytes(getEncodingCharsetName()),
-                response);
+            addToCache(serverInfos.getUrl(), request, response);
             // Returns result
             return response;
         } catch (Exception e) {
             throw new XmlaOlap4jProxyException(
-                "An exception was encountered while saving a response in the proxy cache.",
+                "An exception was encountered while saving a response in "
+                + "the proxy cache.",
                 e);
         }
     }
@@ -206,11 +232,11 @@ abstract class XmlaOlap4jAbstractHttpProxy
      * @return either a response in a byte array or null
      * if the response is not in cache
      */
-    private byte[] getFromCache(final URL url, final byte[] request)
+    private byte[] getFromCache(final URL url, final XmlaOlap4jRequest request)
             throws OlapException
     {
         return (this.cache != null)
-            ? this.cache.get(this.cacheId, url, request)
+            ? this.cache.get(this.cacheId, url, request.getBytes())
             : null;
     }
 
@@ -221,11 +247,14 @@ abstract class XmlaOlap4jAbstractHttpProxy
      * @param request The SOAP request to cache
      * @param response The SOAP response to cache
      */
-    private void addToCache(URL url, byte[] request, byte[] response)
-            throws OlapException
+    private void addToCache(
+        URL url,
+        XmlaOlap4jRequest request,
+        byte[] response)
+        throws OlapException
     {
         if (this.cache != null) {
-            this.cache.put(this.cacheId, url, request, response);
+            this.cache.put(this.cacheId, url, request.getBytes(), response);
         }
     }
 
@@ -243,6 +272,14 @@ abstract class XmlaOlap4jAbstractHttpProxy
         return getResponseViaSubmit(serverInfos, request);
     }
 
+    // implement XmlaOlap4jStreamingProxy
+    public Future<byte[]> submit(
+        final XmlaOlap4jServerInfos serverInfos,
+        final XmlaOlap4jRequest request)
+    {
+        return XmlaOlap4jDriver.getFuture(this, serverInfos, request);
+    }
+
     /**
      * Initializes the cookie manager. It is not initialized
      * by default because some proxy implementation might not need this
@@ -43,6 +43,13 @@ public class XmlaOlap4jHttpProxy extends XmlaOlap4jAbstractHttpProxy
 {
     private final XmlaOlap4jDriver driver;
 
+    /**
+     * Whether to stream requests. Cleared the first time a server answers
+     * with an authentication challenge or a redirect, because a streamed
+     * request cannot be replayed.
+     */
+    private volatile boolean streaming = true;
+
     /**
      * Creates a XmlaOlap4jHttpProxy.
      *
@@ -63,6 +70,49 @@ public class XmlaOlap4jHttpProxy extends XmlaOlap4jAbstractHttpProxy
     @Override
     public byte[] getResponse(XmlaOlap4jServerInfos serverInfos, String request)
         throws XmlaOlap4jProxyException
+    {
+        return getResponse(
+            serverInfos,
+            new XmlaOlap4jRequest(request, getEncodingCharsetName()));
+    }
+
+    @Override
+    protected byte[] getResponse(
+        XmlaOlap4jServerInfos serverInfos,
+        XmlaOlap4jRequest request)
+        throws XmlaOlap4jProxyException
+    {
+        if (streaming) {
+            try {
+                return send(serverInfos, request, true);
+            } catch (XmlaOlap4jProxyException e) {
+                if (!(e.getCause() instanceof HttpRetryException)) {
+                    throw e;
+                }
+                // The server wants to authenticate us (e.g. NTLM or Digest,
+                // via an Authenticator) or redirects us. Both need the
+                // request to be sent again, so buffer it from now on.
+                streaming = false;
+            }
+        }
+        return send(serverInfos, request, false);
+    }
+
+    /**
+     * Sends a request and returns the response.
+     *
+     * @param serverInfos Server
+     * @param request Request
+     * @param stream Whether to stream the request, rather than let
+     *     {@link HttpURLConnection} buffer it so that it can be replayed
+     * @return Response
+     * @throws XmlaOlap4jProxyException on error
+     */
+    private byte[] send(
+        XmlaOlap4jServerInfos serverInfos,
+        XmlaOlap4jRequest request,
+        boolean stream)
+        throws XmlaOlap4jProxyException
     {
         URLConnection urlConnection = null;
         try {
@@ -93,16 +143,22 @@ public class XmlaOlap4jHttpProxy extends XmlaOlap4jAbstractHttpProxy
                 "Accept-Encoding",
                 "gzip");
 
-            // Some servers expect a SOAPAction header.
-            // TODO There is bound to be a better way to do this.
-            if (request.contains(DISCOVER)) {
-                urlConnection.setRequestProperty(
-                    "SOAPAction",
-                    "\"urn:schemas-microsoft-com:xml-analysis:Discover\"");
-            } else if (request.contains(EXECUTE)) {
+            // Some servers expect a SOAPAction header. Requests built by the
+            // driver know their method; others we have to search.
+            String soapAction = request.getSoapAction();
+            if (soapAction == null) {
+                final String requestString = request.toString();
+                if (requestString.contains(DISCOVER)) {
+                    soapAction = "Discover";
+                } else if (requestString.contains(EXECUTE)) {
+                    soapAction = "Execute";
+                }
+            }
+            if (soapAction != null) {
                 urlConnection.setRequestProperty(
                     "SOAPAction",
-                    "\"urn:schemas-microsoft-com:xml-analysis:Execute\"");
+                    "\"urn:schemas-microsoft-com:xml-analysis:"
+                    + soapAction + "\"");
             }
 
             // Encode credentials for basic authentication
@@ -128,9 +184,21 @@ public class XmlaOlap4jHttpProxy extends XmlaOlap4jAbstractHttpProxy
             this.useCookies(urlConnection);
 
             // Send data (i.e. POST). Use same encoding as specified in the
-            // header.
+            // header. We know the length, so HttpURLConnection can stream the
+            // request rather than buffer a copy of it, unless the server has
+            // shown that it needs the request to be replayable.
             final String encoding = getEncodingCharsetName();
-            urlConnection.getOutputStream().write(request.getBytes(encoding));
+            if (!encoding.equals(request.getCharsetName())) {
+                request =
+                    new XmlaOlap4jRequest(request.toString(), encoding);
+            }
+            if (stream && urlConnection instanceof HttpURLConnection) {
+                ((HttpURLConnection) urlConnection)
+                    .setFixedLengthStreamingMode(request.size());
+            }
+            final OutputStream os = urlConnection.getOutputStream();
+            request.writeTo(os);
+            os.flush();
 
             // Get the response, again assuming default encoding.
             InputStream is = urlConnection.getInputStream();
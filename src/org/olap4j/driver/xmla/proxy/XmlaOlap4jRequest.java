@@ -0,0 +1,286 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.driver.xmla.proxy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * SOAP request that has already been encoded as bytes.
+ *
+ * <p>The driver builds requests by appending constant parts of the envelope,
+ * which it encodes once (see {@link #template(String)}), and variable parts,
+ * which are encoded to UTF-8 as they are appended. A
+ * {@link XmlaOlap4jStreamingProxy} can look up the request in its cache and
+ * write it to the server without ever converting it to a string. Other
+ * proxies receive {@link #toString()}.
+ *
+ * <p>A request is built by one thread, and is not modified after it has
+ * been sent.
+ *
+ * @author jhyde
+ */
+public class XmlaOlap4jRequest {
+    /**
+     * Name of the encoding of requests built by appending.
+     */
+    public static final String UTF_8 = "UTF-8";
+
+    private final String soapAction;
+    private final String charsetName;
+    private byte[] buf;
+    private int count;
+    private String string;
+
+    /**
+     * Creates an empty request, to be built by appending, encoded in UTF-8.
+     *
+     * @param soapAction Method, "Discover" or "Execute", or null if not known
+     * @param capacity Initial capacity, in bytes
+     */
+    public XmlaOlap4jRequest(String soapAction, int capacity) {
+        this.soapAction = soapAction;
+        this.charsetName = UTF_8;
+        this.buf = new byte[capacity];
+    }
+
+    /**
+     * Creates a request from a string, encoding it once.
+     *
+     * @param request Request string
+     * @param charsetName Name of the character set to encode it with
+     */
+    public XmlaOlap4jRequest(String request, String charsetName) {
+        this.soapAction = null;
+        this.charsetName = charsetName;
+        this.string = request;
+        try {
+            this.buf = request.getBytes(charsetName);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        this.count = buf.length;
+    }
+
+    /**
+     * Encodes a constant part of a request, so that it can be appended to
+     * any number of requests without encoding it again.
+     *
+     * @param s Text of template
+     * @return UTF-8 bytes
+     */
+    public static byte[] template(String s) {
+        try {
+            return s.getBytes(UTF_8);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the SOAP method of this request, "Discover" or "Execute", or
+     * null if not known.
+     */
+    public String getSoapAction() {
+        return soapAction;
+    }
+
+    /**
+     * Returns the name of the character set in which this request is
+     * encoded.
+     */
+    public String getCharsetName() {
+        return charsetName;
+    }
+
+    /**
+     * Returns the number of bytes in this request.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Appends an encoded template.
+     *
+     * @param bytes Bytes returned from {@link #template(String)}
+     * @return This request
+     */
+    public XmlaOlap4jRequest append(byte[] bytes) {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buf, count, bytes.length);
+        count += bytes.length;
+        return this;
+    }
+
+    /**
+     * Appends a string, encoding it as UTF-8.
+     *
+     * @param s String
+     * @return This request
+     */
+    public XmlaOlap4jRequest append(String s) {
+        final int n = s.length();
+        ensure(n);
+        for (int i = 0; i < n;) {
+            i += appendChar(s, i);
+        }
+        return this;
+    }
+
+    /**
+     * Appends a string, encoding it as UTF-8 and escaping the characters
+     * that are special in XML.
+     *
+     * @param s String
+     * @return This request
+     */
+    public XmlaOlap4jRequest appendXml(String s) {
+        final int n = s.length();
+        ensure(n);
+        for (int i = 0; i < n;) {
+            final char c = s.charAt(i);
+            switch (c) {
+            case '&':
+                append(AMP);
+                ++i;
+                break;
+            case '<':
+                append(LT);
+                ++i;
+                break;
+            case '>':
+                append(GT);
+                ++i;
+                break;
+            case '"':
+                append(QUOT);
+                ++i;
+                break;
+            case '\'':
+                append(APOS);
+                ++i;
+                break;
+            default:
+                i += appendChar(s, i);
+            }
+        }
+        return this;
+    }
+
+    private static final byte[] AMP = template("&amp;");
+    private static final byte[] LT = template("&lt;");
+    private static final byte[] GT = template("&gt;");
+    private static final byte[] QUOT = template("&quot;");
+    private static final byte[] APOS = template("&apos;");
+
+    /**
+     * Encodes the character (or surrogate pair) at position {@code i} of a
+     * string, and returns the number of characters consumed.
+     */
+    private int appendChar(String s, int i) {
+        final char c = s.charAt(i);
+        if (c < 0x80) {
+            ensure(1);
+            buf[count++] = (byte) c;
+            return 1;
+        } else if (c < 0x800) {
+            ensure(2);
+            buf[count++] = (byte) (0xc0 | (c >> 6));
+            buf[count++] = (byte) (0x80 | (c & 0x3f));
+            return 1;
+        } else if (Character.isHighSurrogate(c)
+            && i + 1 < s.length()
+            && Character.isLowSurrogate(s.charAt(i + 1)))
+        {
+            final int cp = Character.toCodePoint(c, s.charAt(i + 1));
+            ensure(4);
+            buf[count++] = (byte) (0xf0 | (cp >> 18));
+            buf[count++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+            buf[count++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+            buf[count++] = (byte) (0x80 | (cp & 0x3f));
+            return 2;
+        } else if (Character.isHighSurrogate(c)
+            || Character.isLowSurrogate(c))
+        {
+            // Unpaired surrogate. Encode as '?', as String.getBytes does.
+            ensure(1);
+            buf[count++] = '?';
+            return 1;
+        } else {
+            ensure(3);
+            buf[count++] = (byte) (0xe0 | (c >> 12));
+            buf[count++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+            buf[count++] = (byte) (0x80 | (c & 0x3f));
+            return 1;
+        }
+    }
+
+    private void ensure(int extra) {
+        if (count + extra > buf.length) {
+            final byte[] newBuf =
+                new byte[Math.max(buf.length * 2, count + extra)];
+            System.arraycopy(buf, 0, newBuf, 0, count);
+            buf = newBuf;
+        }
+        string = null;
+    }
+
+    /**
+     * Writes this request to a stream.
+     *
+     * @param out Output stream
+     * @throws IOException on error
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buf, 0, count);
+    }
+
+    /**
+     * Returns the bytes of this request. The array is shared, so that a
+     * caller that needs the bytes more than once (say to look up a cache, and
+     * then to populate it) does not copy them each time. Do not modify it.
+     *
+     * @return Bytes of this request
+     */
+    public byte[] getBytes() {
+        if (buf.length != count) {
+            final byte[] newBuf = new byte[count];
+            System.arraycopy(buf, 0, newBuf, 0, count);
+            buf = newBuf;
+        }
+        return buf;
+    }
+
+    /**
+     * Returns the request as a string. The string is created on first call.
+     */
+    public String toString() {
+        if (string == null) {
+            try {
+                string = new String(buf, 0, count, charsetName);
+            } catch (UnsupportedEncodingException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return string;
+    }
+}
+
+// End XmlaOlap4jRequest.java
@@ -0,0 +1,62 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.driver.xmla.proxy;
+
+import org.olap4j.driver.xmla.XmlaOlap4jServerInfos;
+
+import java.util.concurrent.Future;
+
+/**
+ * Extended Proxy interface which accepts requests that are already encoded,
+ * and writes them to the server without converting them to strings.
+ *
+ * <p>The driver uses these methods, rather than those that take a string,
+ * if the proxy implements this interface and its
+ * {@link #getEncodingCharsetName() encoding} is that of the request.
+ *
+ * @author jhyde
+ */
+public interface XmlaOlap4jStreamingProxy extends XmlaOlap4jProxy {
+    /**
+     * Sends an encoded request to a URL and returns the response.
+     *
+     * @param serverInfos Server infos.
+     * @param request Request
+     * @return Response The byte array that contains the whole response
+     * from the server.
+     * @throws XmlaOlap4jProxyException If anything occurs during the
+     * request execution.
+     */
+    byte[] get(
+        XmlaOlap4jServerInfos serverInfos,
+        XmlaOlap4jRequest request)
+        throws XmlaOlap4jProxyException;
+
+    /**
+     * Submits an encoded request for background execution.
+     *
+     * @param serverInfos Server infos.
+     * @param request Request
+     * @return Future object representing the submitted job
+     */
+    Future<byte[]> submit(
+        XmlaOlap4jServerInfos serverInfos,
+        XmlaOlap4jRequest request);
+}
+
+// End XmlaOlap4jStreamingProxy.java
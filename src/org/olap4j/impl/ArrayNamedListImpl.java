@@ -28,6 +28,13 @@ import java.util.*;
  * <p>Derived class must implement {@link #getName(Object)}, to indicate how
  * elements are named.
  *
+ * <p>Small lists are searched by name linearly. Once a list has
+ * {@link #INDEX_THRESHOLD} or more elements, the first search by name builds
+ * an open-addressing hash table from name to position, and later searches use
+ * it. Appending an element updates the table; any other modification
+ * discards it, and the next search rebuilds it. If several elements have the
+ * same name, searches find the first.
+ *
  * @see NamedListImpl
  *
  * @author jhyde
@@ -37,6 +44,18 @@ public abstract class ArrayNamedListImpl<T>
     extends ArrayList<T>
     implements NamedList<T>
 {
+    /**
+     * Size at which a list starts using a hash table to search by name.
+     */
+    static final int INDEX_THRESHOLD = 16;
+
+    /**
+     * Hash table from name to position, or null if not built. Valid only if
+     * its {@link NameIndex#modCount} equals this list's
+     * {@link #modCount}.
+     */
+    private transient volatile NameIndex nameIndex;
+
     /**
      * Creates an empty list with the specified initial capacity.
      *
@@ -68,27 +87,154 @@ public abstract class ArrayNamedListImpl<T>
     }
 
     public T get(String name) {
-        for (T t : this) {
-            if (getName(t).equals(name)) {
-                return t;
-            }
-        }
-        return null;
+        final int i = indexOfName(name);
+        return i < 0 ? null : get(i);
     }
 
     public int indexOfName(String name) {
-        for (int i = 0; i < size(); ++i) {
-            T t = get(i);
-            if (getName(t).equals(name)) {
-                return i;
+        final int size = size();
+        if (size < INDEX_THRESHOLD || name == null) {
+            for (int i = 0; i < size; ++i) {
+                T t = get(i);
+                if (getName(t).equals(name)) {
+                    return i;
+                }
             }
+            return -1;
+        }
+        NameIndex index = nameIndex;
+        if (index == null || index.modCount != modCount) {
+            // Several threads may build an index at the same time; that is
+            // wasteful but harmless, because the index is not shared until
+            // it is complete.
+            index = new NameIndex(this, modCount);
+            nameIndex = index;
         }
-        return -1;
+        return index.find(this, name);
+    }
+
+    public boolean add(T t) {
+        super.add(t);
+        final NameIndex index = nameIndex;
+        if (index != null && index.modCount == modCount - 1) {
+            index.add(this, size() - 1);
+            index.modCount = modCount;
+        }
+        return true;
+    }
+
+    public T set(int index, T element) {
+        // ArrayList.set does not change modCount, but it may change a name.
+        nameIndex = null;
+        return super.set(index, element);
     }
 
     public Map<String, T> asMap() {
         return new NamedListMap<T>(this);
     }
+
+    /**
+     * Open-addressing hash table from the name of each element of a list to
+     * its position in the list.
+     *
+     * <p>Each slot holds the position plus one (zero means the slot is
+     * empty) and the hash code of the name, so that a probe compares names
+     * only if the hash codes match. The table is at most half full.
+     */
+    private static class NameIndex {
+        /**
+         * Value of the list's modification count when this index was last
+         * brought up to date.
+         */
+        int modCount;
+
+        private int[] positions;
+        private int[] hashes;
+        private int count;
+
+        NameIndex(ArrayNamedListImpl<?> list, int modCount) {
+            final int size = list.size();
+            int capacity = 4;
+            while (capacity < size * 2) {
+                capacity <<= 1;
+            }
+            positions = new int[capacity];
+            hashes = new int[capacity];
+            for (int i = 0; i < size; i++) {
+                add(list, i);
+            }
+            this.modCount = modCount;
+        }
+
+        private static int hash(String name) {
+            final int h = name.hashCode();
+            return h ^ (h >>> 16);
+        }
+
+        /**
+         * Adds the element at a given position. Does nothing if there is
+         * already an element with the same name.
+         */
+        void add(ArrayNamedListImpl<?> list, int i) {
+            if ((count + 1) * 2 > positions.length) {
+                grow();
+            }
+            final String name = list.getName(list.get(i));
+            final int hash = hash(name);
+            final int mask = positions.length - 1;
+            for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+                final int position = positions[slot];
+                if (position == 0) {
+                    positions[slot] = i + 1;
+                    hashes[slot] = hash;
+                    ++count;
+                    return;
+                }
+                if (hashes[slot] == hash
+                    && list.getName(list.get(position - 1)).equals(name))
+                {
+                    return;
+                }
+            }
+        }
+
+        private void grow() {
+            final int[] oldPositions = positions;
+            final int[] oldHashes = hashes;
+            positions = new int[oldPositions.length * 2];
+            hashes = new int[oldPositions.length * 2];
+            final int mask = positions.length - 1;
+            for (int i = 0; i < oldPositions.length; i++) {
+                if (oldPositions[i] != 0) {
+                    int slot = oldHashes[i] & mask;
+                    while (positions[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    positions[slot] = oldPositions[i];
+                    hashes[slot] = oldHashes[i];
+                }
+            }
+        }
+
+        /**
+         * Returns the position of the first element with a given name, or -1.
+         */
+        int find(ArrayNamedListImpl<?> list, String name) {
+            final int hash = hash(name);
+            final int mask = positions.length - 1;
+            for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+                final int position = positions[slot];
+                if (position == 0) {
+                    return -1;
+                }
+                if (hashes[slot] == hash
+                    && list.getName(list.get(position - 1)).equals(name))
+                {
+                    return position - 1;
+                }
+            }
+        }
+    }
 }
 
 // End ArrayNamedListImpl.java
@@ -0,0 +1,347 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.impl;
+
+import org.olap4j.*;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Cursor over a range of the cells of a {@link CellSet}, in ordinal order.
+ *
+ * <p>Unlike {@link CoordinateIterator}, a cursor does not allocate as it
+ * advances: it keeps the coordinates of the current cell in an array that
+ * it updates in place, and {@link #getCoordinate(int)} reads from it.
+ * {@link #getDoubleValue()} and {@link #isNull()} read values in blocks,
+ * using
+ * {@link ExtendedCellSet#getDoubleValues(long, long, double[], BitSet)}; if
+ * the provider implements that interface, they do not create a
+ * {@link Cell} for each cell, not even for the empty cells that the
+ * provider does not store.
+ *
+ * <p>A cursor can be split, to process the cells of a large cell set in
+ * parallel. {@link #trySplit()} divides the remaining range in two, and
+ * {@link #split(CellSet, int)} divides a cell set into a given number of
+ * ranges of equal size. Give each cursor to a different thread (say using a
+ * {@link java.util.concurrent.ExecutorService}), and combine the results.
+ * For example, to total the cells of a cell set:
+ *
+ * <blockquote><pre>
+ * List&lt;Future&lt;Double&gt;&gt; futures = new ArrayList&lt;...&gt;();
+ * for (final CellCursor cursor : CellCursor.split(cellSet, 8)) {
+ *     futures.add(
+ *         executor.submit(
+ *             new Callable&lt;Double&gt;() {
+ *                 public Double call() throws OlapException {
+ *                     double sum = 0;
+ *                     while (cursor.next()) {
+ *                         sum += cursor.getDoubleValue();
+ *                     }
+ *                     return sum;
+ *                 }
+ *             }));
+ * }
+ * </pre></blockquote>
+ *
+ * <p>A cursor must be used by one thread at a time. Different cursors may
+ * be used concurrently if the cell set supports concurrent reads, as the
+ * cell sets of the XMLA driver do.
+ *
+ * @author jhyde
+ */
+public class CellCursor {
+    /**
+     * Number of values that {@link #getDoubleValue()} reads at a time.
+     */
+    private static final int BLOCK_SIZE = 1024;
+
+    private final CellSet cellSet;
+    private final ExtendedCellSet extendedCellSet;
+    private final int[] dimensions;
+    private final int[] coordinates;
+    private long ordinal;
+    private long end;
+    private boolean started;
+
+    /**
+     * Values of cells <code>blockStart</code> onwards, which of them are
+     * null, and which of them are not numeric; allocated on first call to
+     * {@link #getDoubleValue()}.
+     */
+    private double[] block;
+    private BitSet blockNulls;
+    private BitSet blockErrors;
+    private long blockStart;
+    private int blockLength;
+
+    /**
+     * Creates a cursor over all cells of a cell set.
+     *
+     * @param cellSet Cell set
+     */
+    public CellCursor(CellSet cellSet) {
+        this(cellSet, dimensions(cellSet));
+    }
+
+    private CellCursor(CellSet cellSet, int[] dimensions) {
+        this(cellSet, dimensions, 0, cellCount(dimensions));
+    }
+
+    /**
+     * Creates a cursor over a range of cells.
+     *
+     * @param cellSet Cell set
+     * @param start Ordinal of first cell
+     * @param end Ordinal after last cell
+     */
+    public CellCursor(CellSet cellSet, long start, long end) {
+        this(cellSet, dimensions(cellSet), start, end);
+    }
+
+    private CellCursor(
+        CellSet cellSet,
+        int[] dimensions,
+        long start,
+        long end)
+    {
+        if (start < 0 || start > end || end > cellCount(dimensions)) {
+            throw new IndexOutOfBoundsException(
+                "range [" + start + ", " + end + ") is not within cell set");
+        }
+        this.cellSet = cellSet;
+        this.extendedCellSet = Olap4jUtil.extend(cellSet);
+        this.dimensions = dimensions;
+        this.coordinates = new int[dimensions.length];
+        this.ordinal = start;
+        this.end = end;
+    }
+
+    /**
+     * Divides all cells of a cell set into ranges of nearly equal size.
+     * Returns fewer cursors than requested if there are fewer cells than
+     * parts, but always at least one.
+     *
+     * @param cellSet Cell set
+     * @param parts Number of parts
+     * @return List of cursors
+     */
+    public static List<CellCursor> split(CellSet cellSet, int parts) {
+        if (parts <= 0) {
+            throw new IllegalArgumentException(
+                "parts must be positive: " + parts);
+        }
+        final int[] dimensions = dimensions(cellSet);
+        final long cellCount = cellCount(dimensions);
+        parts = (int) Math.max(1, Math.min(parts, cellCount));
+        final List<CellCursor> list = new ArrayList<CellCursor>(parts);
+        for (int i = 0; i < parts; i++) {
+            // Multiply before dividing, so that the ranges are of nearly
+            // equal size; a cell count times a part count fits in a long.
+            final long start = cellCount * i / parts;
+            final long end = cellCount * (i + 1) / parts;
+            list.add(new CellCursor(cellSet, dimensions, start, end));
+        }
+        return list;
+    }
+
+    private static int[] dimensions(CellSet cellSet) {
+        final List<CellSetAxis> axes = cellSet.getAxes();
+        final int[] dimensions = new int[axes.size()];
+        for (int i = 0; i < dimensions.length; i++) {
+            dimensions[i] = axes.get(i).getPositionCount();
+        }
+        return dimensions;
+    }
+
+    private static long cellCount(int[] dimensions) {
+        long n = 1;
+        for (int dimension : dimensions) {
+            n *= dimension;
+        }
+        return n;
+    }
+
+    /**
+     * Splits the remaining cells of this cursor. Returns a cursor over the
+     * first half of the remaining cells, and this cursor continues with the
+     * second half. Returns null, and does not modify this cursor, if fewer
+     * than two cells remain.
+     *
+     * @return Cursor over first half of remaining cells, or null
+     */
+    public CellCursor trySplit() {
+        final long start = started ? ordinal + 1 : ordinal;
+        final long mid = start + (end - start) / 2;
+        if (end - start < 2) {
+            return null;
+        }
+        final CellCursor prefix =
+            new CellCursor(cellSet, dimensions, start, mid);
+        // Next call to next() moves to 'mid'.
+        this.ordinal = mid;
+        this.started = false;
+        return prefix;
+    }
+
+    /**
+     * Returns the number of cells that remain to be visited.
+     */
+    public long remaining() {
+        return started ? end - ordinal - 1 : end - ordinal;
+    }
+
+    /**
+     * Moves to the next cell.
+     *
+     * @return Whether there is a cell
+     */
+    public boolean next() {
+        if (!started) {
+            if (ordinal >= end) {
+                return false;
+            }
+            started = true;
+            long k = ordinal;
+            for (int i = 0; i < dimensions.length; i++) {
+                coordinates[i] = (int) (k % dimensions[i]);
+                k /= dimensions[i];
+            }
+            return true;
+        }
+        if (ordinal + 1 >= end) {
+            return false;
+        }
+        ++ordinal;
+        for (int i = 0; i < dimensions.length; i++) {
+            if (++coordinates[i] < dimensions[i]) {
+                break;
+            }
+            coordinates[i] = 0;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the ordinal of the current cell.
+     */
+    public long getOrdinal() {
+        return ordinal;
+    }
+
+    /**
+     * Returns the coordinate of the current cell on a given axis.
+     *
+     * @param axis Axis ordinal; 0 for columns, 1 for rows, etc.
+     * @return Ordinal of position on axis
+     */
+    public int getCoordinate(int axis) {
+        return coordinates[axis];
+    }
+
+    /**
+     * Returns the current cell.
+     */
+    public Cell getCell() {
+        return extendedCellSet.getCell(ordinal);
+    }
+
+    /**
+     * Returns the value of the current cell as a <code>double</code>, or 0
+     * if the cell is null.
+     *
+     * @return Value of current cell
+     * @throws OlapException if the value is not numeric
+     * @see Cell#getDoubleValue()
+     */
+    public double getDoubleValue() throws OlapException {
+        if (!inBlock()) {
+            readBlock();
+        }
+        final int i = (int) (ordinal - blockStart);
+        if (blockErrors.get(i)) {
+            // Not numeric; let the cell throw.
+            return getCell().getDoubleValue();
+        }
+        return block[i];
+    }
+
+    /**
+     * Returns whether the current cell is null.
+     *
+     * @return Whether current cell is null
+     * @see Cell#isNull()
+     */
+    public boolean isNull() {
+        if (!inBlock()) {
+            readBlock();
+        }
+        return blockNulls.get((int) (ordinal - blockStart));
+    }
+
+    private boolean inBlock() {
+        return block != null
+            && ordinal >= blockStart
+            && ordinal < blockStart + blockLength;
+    }
+
+    /**
+     * Reads the values of the current cell and the cells after it, up to
+     * the end of this cursor's range.
+     *
+     * <p>If a cell in the block is not numeric, reads the block again one
+     * cell at a time, and notes which cells are not numeric; only
+     * {@link #getDoubleValue()} on one of those cells fails.
+     */
+    private void readBlock() {
+        if (block == null) {
+            block = new double[(int) Math.min(BLOCK_SIZE, end - ordinal)];
+            blockNulls = new BitSet(block.length);
+            blockErrors = new BitSet(block.length);
+        }
+        blockStart = ordinal;
+        blockLength = (int) Math.min(block.length, end - ordinal);
+        blockErrors.clear();
+        try {
+            extendedCellSet.getDoubleValues(
+                blockStart, blockStart + blockLength, block, blockNulls);
+            return;
+        } catch (OlapException e) {
+            // fall through
+        } catch (RuntimeException e) {
+            // fall through; for example, NumberFormatException
+        }
+        for (int i = 0; i < blockLength; i++) {
+            final Cell cell = extendedCellSet.getCell(blockStart + i);
+            block[i] = 0d;
+            blockNulls.set(i, cell.isNull());
+            if (!cell.isNull()) {
+                try {
+                    block[i] = cell.getDoubleValue();
+                } catch (OlapException e) {
+                    blockErrors.set(i);
+                } catch (RuntimeException e) {
+                    blockErrors.set(i);
+                }
+            }
+        }
+    }
+}
+
+// End CellCursor.java
@@ -0,0 +1,175 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.impl;
+
+import org.olap4j.Cell;
+import org.olap4j.CellSet;
+import org.olap4j.OlapException;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Operations on a {@link CellSet} that read many cells at a time, or that
+ * allow cell sets with more than {@link Integer#MAX_VALUE} cells.
+ *
+ * <p>A provider may implement this interface on its cell sets, so that the
+ * operations do not create an object for each cell. Use
+ * {@link Olap4jUtil#extend(org.olap4j.CellSet)} to get an instance for any
+ * cell set: if the cell set does not implement this interface, the result
+ * implements the operations using the methods of {@link CellSet}.
+ *
+ * <p>This interface is not part of the olap4j specification, and
+ * providers are not required to implement it.
+ *
+ * @author jhyde
+ */
+public interface ExtendedCellSet {
+    /**
+     * Returns the Cell at an ordinal.
+     *
+     * <p>Equivalent to {@link CellSet#getCell(int)}, but allows ordinals of
+     * cell sets that have more than {@link Integer#MAX_VALUE} cells.
+     *
+     * @param ordinal 0-based ordinal of the cell
+     *
+     * @return Cell
+     *
+     * @throws IndexOutOfBoundsException if ordinal lies outside CellSet bounds
+     *
+     * @see #getCellCount()
+     */
+    Cell getCell(long ordinal);
+
+    /**
+     * Returns the Cell at a given set of coordinates.
+     *
+     * <p>Equivalent to {@link CellSet#getCell(java.util.List)}, but the
+     * coordinates do not need to be boxed.
+     *
+     * @param coordinates Array of 0-based coordinates of the cell
+     *
+     * @return Cell
+     *
+     * @throws IllegalArgumentException if coordinates does not have the same
+     * number of elements as the cell set has axes
+     *
+     * @throws IndexOutOfBoundsException if coordinates are outside CellSet
+     * bounds
+     */
+    Cell getCell(int[] coordinates);
+
+    /**
+     * Returns the number of cells in this cell set: the product of the
+     * number of positions on each axis. This may be larger than
+     * {@link Integer#MAX_VALUE}.
+     *
+     * @return Number of cells
+     */
+    long getCellCount();
+
+    /**
+     * Converts a cell ordinal to an array of cell coordinates.
+     *
+     * <p>Equivalent to {@link CellSet#ordinalToCoordinates(int)}, but allows
+     * ordinals larger than {@link Integer#MAX_VALUE}, and does not box the
+     * coordinates.
+     *
+     * @param ordinal Cell ordinal
+     * @return Cell coordinates
+     * @throws IndexOutOfBoundsException if ordinal lies outside CellSet bounds
+     */
+    int[] ordinalToCoordinates(long ordinal);
+
+    /**
+     * Converts an array of cell coordinates to a cell ordinal.
+     *
+     * <p>Equivalent to {@link CellSet#coordinatesToOrdinal(java.util.List)},
+     * but allows ordinals larger than {@link Integer#MAX_VALUE}, and does
+     * not require the coordinates to be boxed.
+     *
+     * @param coordinates Cell coordinates
+     * @return Cell ordinal
+     * @throws IndexOutOfBoundsException if coordinates are outside CellSet
+     * bounds
+     */
+    long coordinatesToOrdinal(int[] coordinates);
+
+    /**
+     * Copies the values of a range of cells, as <code>double</code> values,
+     * into an array.
+     *
+     * <p>The value of the cell whose ordinal is <code>fromOrdinal + i</code>
+     * is placed in <code>dst[i]</code>. If the cell is null, 0 is placed in
+     * <code>dst[i]</code> and, if <code>nulls</code> is not null, bit
+     * <code>i</code> of <code>nulls</code> is set; bits of non-null cells are
+     * cleared.
+     *
+     * <p>This method is equivalent to calling
+     * {@link org.olap4j.Cell#getDoubleValue()} on each cell in the range.
+     * The ordinals may be larger than {@link Integer#MAX_VALUE}, but the
+     * range may contain no more cells than <code>dst</code> can hold.
+     *
+     * @param fromOrdinal Ordinal of first cell
+     * @param toOrdinal Ordinal after last cell
+     * @param dst Array to receive values
+     * @param nulls Bit set to receive which cells are null, or null
+     *
+     * @throws OlapException if a cell does not have a numeric value
+     *
+     * @throws IndexOutOfBoundsException if the range lies outside CellSet
+     * bounds, or <code>dst</code> is too short
+     */
+    void getDoubleValues(
+        long fromOrdinal,
+        long toOrdinal,
+        double[] dst,
+        BitSet nulls)
+        throws OlapException;
+
+    /**
+     * Copies the values of a slice of cells along one axis, as
+     * <code>double</code> values, into an array. For example, if
+     * <code>axisOrdinal</code> is 0, copies a whole row.
+     *
+     * <p>The slice consists of the cells whose coordinates are the same as
+     * <code>coordinates</code>, except on axis <code>axisOrdinal</code>. The
+     * value of the cell whose coordinate on that axis is <code>i</code> is
+     * placed in <code>dst[i]</code>. Null cells are treated as in
+     * {@link #getDoubleValues(long, long, double[], java.util.BitSet)}.
+     *
+     * @param coordinates Coordinates of any cell in the slice; the
+     * coordinate on axis <code>axisOrdinal</code> is ignored
+     * @param axisOrdinal Ordinal of axis along which to slice
+     * @param dst Array to receive values
+     * @param nulls Bit set to receive which cells are null, or null
+     *
+     * @throws OlapException if a cell does not have a numeric value
+     *
+     * @throws IndexOutOfBoundsException if coordinates lie outside CellSet
+     * bounds, or <code>dst</code> is too short
+     */
+    void getDoubleValues(
+        List<Integer> coordinates,
+        int axisOrdinal,
+        double[] dst,
+        BitSet nulls)
+        throws OlapException;
+}
+
+// End ExtendedCellSet.java
@@ -0,0 +1,67 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.impl;
+
+import org.olap4j.OlapException;
+import org.olap4j.mdx.IdentifierSegment;
+import org.olap4j.metadata.Cube;
+import org.olap4j.metadata.Member;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Operations on a {@link Cube} that look up many members at a time.
+ *
+ * <p>A provider may implement this interface on its cubes, so that the
+ * members are looked up in one request to the server, or in several
+ * concurrent requests. Use {@link Olap4jUtil#extend(org.olap4j.metadata.Cube)}
+ * to get an instance for any cube: if the cube does not implement this
+ * interface, the result looks up one member at a time, using
+ * {@link Cube#lookupMembers(java.util.Set, java.util.List)}.
+ *
+ * <p>This interface is not part of the olap4j specification, and
+ * providers are not required to implement it.
+ *
+ * @author jhyde
+ */
+public interface ExtendedCube {
+    /**
+     * Finds, for each of a list of members, the members related to it.
+     *
+     * <p>The result is the same as calling
+     * {@link Cube#lookupMembers(java.util.Set, java.util.List)} for each
+     * name.
+     *
+     * @param treeOps Collection of tree operations to travel relative to
+     * each member in order to create its list of members
+     *
+     * @param namePartsList List of fully-qualified member names, each a list
+     * of components
+     *
+     * @return one list of members for each name, in the same order as
+     * <code>namePartsList</code>; a list is empty if its member is not found
+     *
+     * @throws OlapException if error occurs
+     */
+    List<List<Member>> lookupMemberRelatives(
+        Set<Member.TreeOp> treeOps,
+        List<List<IdentifierSegment>> namePartsList) throws OlapException;
+}
+
+// End ExtendedCube.java
@@ -0,0 +1,184 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.impl;
+
+import org.olap4j.*;
+import org.olap4j.mdx.SelectNode;
+import org.olap4j.metadata.Property;
+
+import java.util.List;
+
+/**
+ * Operations on an {@link OlapStatement} that a provider may support in
+ * addition to those of the olap4j specification.
+ *
+ * <p>Use {@link OlapStatement#isWrapperFor(Class)} to find out whether a
+ * statement supports these operations, and
+ * {@link OlapStatement#unwrap(Class)} to get an instance. The XML/A driver
+ * supports them.
+ *
+ * <p>This interface is not part of the olap4j specification, and
+ * providers are not required to implement it.
+ *
+ * @author jhyde
+ */
+public interface ExtendedStatement {
+    /**
+     * Executes a query that computes some positions of one axis of a
+     * previous cell set, and returns that cell set with the positions
+     * spliced in.
+     *
+     * <p>The other axes of <code>deltaQuery</code> must have the same
+     * positions as those of <code>previous</code>. On axis
+     * <code>axis</code>, the <code>removeCount</code> positions of
+     * <code>previous</code> starting at <code>positionOrdinal</code> are
+     * replaced by the positions computed by <code>deltaQuery</code>. The
+     * result is the same as re-executing the whole query, but only the new
+     * cells are computed by the server and sent to the client; a driver may
+     * share the positions and cells that did not change with
+     * <code>previous</code>.
+     *
+     * <p>Returns null if the driver cannot splice the result into
+     * <code>previous</code>; for example if <code>previous</code> was
+     * created by another driver, or if the other axes of the result of
+     * <code>deltaQuery</code> do not match those of <code>previous</code>.
+     * The caller should then execute the whole query.
+     *
+     * <p>As with the execute methods of {@link OlapStatement}, the cell set
+     * that was open on this statement is closed.
+     *
+     * @param deltaQuery Parse tree of MDX <code>SELECT</code> statement that
+     *   computes the new positions
+     * @param previous Previous cell set
+     * @param axis Axis whose positions are to be replaced; must not be the
+     *   filter axis
+     * @param positionOrdinal Ordinal of first position to replace
+     * @param removeCount Number of positions of <code>previous</code> to
+     *   remove
+     *
+     * @return Cell set, or null if the result cannot be spliced into
+     *   <code>previous</code>
+     *
+     * @throws OlapException if a database access error occurs,
+     * this method is called on a closed <code>OlapStatement</code>,
+     * the query times out (see
+     * {@link java.sql.Statement#setQueryTimeout(int)})
+     * or another thread cancels the statement (see
+     * {@link java.sql.Statement#cancel()})
+     */
+    CellSet executeOlapDeltaQuery(
+        SelectNode deltaQuery,
+        CellSet previous,
+        Axis axis,
+        int positionOrdinal,
+        int removeCount)
+        throws OlapException;
+
+    /**
+     * Sets the cell properties that cell sets executed by this statement are
+     * to contain.
+     *
+     * <p>If a query does not have its own <code>CELL PROPERTIES</code>
+     * clause, the statement adds one that lists these properties, and the
+     * server does not compute or send any others. Applies to subsequent
+     * executions, not to the cell set currently open.
+     *
+     * @param propertyList List of cell properties, or null to receive
+     *   whichever properties the server returns by default
+     *
+     * @throws OlapException if a property is not a cell property
+     *
+     * @see org.olap4j.metadata.Property.StandardCellProperty
+     */
+    void setCellProperties(List<Property> propertyList) throws OlapException;
+
+    /**
+     * Returns the cell properties that cell sets executed by this statement
+     * are to contain, or null if the statement does not restrict them.
+     *
+     * @return List of cell properties, or null
+     *
+     * @see #setCellProperties(java.util.List)
+     */
+    List<Property> getCellProperties();
+
+    /**
+     * Sets the member properties that cell sets executed by this statement
+     * are to contain for the members on each axis.
+     *
+     * <p>The statement adds a <code>DIMENSION PROPERTIES</code> clause to each
+     * axis that does not have its own. Applies to subsequent executions, not
+     * to the cell set currently open.
+     *
+     * @param propertyList List of member properties, or null to receive
+     *   whichever properties the server returns by default
+     *
+     * @throws OlapException if a property is not a member property
+     *
+     * @see org.olap4j.metadata.Property.StandardMemberProperty
+     */
+    void setDimensionProperties(List<Property> propertyList)
+        throws OlapException;
+
+    /**
+     * Returns the member properties that cell sets executed by this statement
+     * are to contain, or null if the statement does not restrict them.
+     *
+     * @return List of member properties, or null
+     *
+     * @see #setDimensionProperties(java.util.List)
+     */
+    List<Property> getDimensionProperties();
+
+    /**
+     * Sets the number of slices into which the statement splits the
+     * <code>ROWS</code> axis of a query.
+     *
+     * <p>If the count is greater than 1,
+     * {@link OlapStatement#executeOlapQuery(org.olap4j.mdx.SelectNode)}
+     * partitions the set on the <code>ROWS</code> axis into up to that many
+     * contiguous slices, executes a query for each slice concurrently, and
+     * merges the results into one cell set. The cell set has the same
+     * positions, cells and ordinals as if the query had been executed in one
+     * piece.
+     *
+     * <p>A query is executed in one piece if the driver cannot split it
+     * safely; for example, if an axis other than <code>ROWS</code> is
+     * <code>NON EMPTY</code>, because then that axis depends on all of the
+     * rows. Queries executed from a string are not split. Applies to
+     * subsequent executions, not to the cell set currently open.
+     *
+     * @param sliceCount Number of slices; 1, the default, means that queries
+     *   are not split
+     *
+     * @throws OlapException if the slice count is less than 1
+     */
+    void setRowSliceCount(int sliceCount) throws OlapException;
+
+    /**
+     * Returns the number of slices into which the statement splits the
+     * <code>ROWS</code> axis of a query.
+     *
+     * @return Number of slices
+     *
+     * @see #setRowSliceCount(int)
+     */
+    int getRowSliceCount();
+}
+
+// End ExtendedStatement.java
@@ -0,0 +1,757 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.impl;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.text.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Formatter for cell values, compiled from an MDX format string such as
+ * "#,##0.00", "Currency" or "yyyy-mm-dd".
+ *
+ * <p>The syntax is that of the <code>FORMAT_STRING</code> cell property,
+ * which in turn follows the Visual Basic <code>Format</code> function. A
+ * format string has up to four sections, separated by semicolons, for
+ * positive, negative, zero and null values.
+ *
+ * <p>A numeric section may contain digit placeholders ('0' and '#'), a
+ * decimal point, thousands separators (','), '%', an exponent ("E+0" or
+ * "E-0"), and literal text, either in double-quotes or escaped with '\'.
+ * Commas immediately to the left of the decimal point divide the value by
+ * 1,000. Literal text between digit placeholders is printed after the
+ * number.
+ *
+ * <p>A date section may contain the tokens 'y', 'm', 'd', 'h', 'n' (minute),
+ * 's' and "AM/PM". Numeric values are converted to dates as OLE Automation
+ * dates, that is, days since 30 December 1899.
+ *
+ * <p>The named formats "General Number", "Standard", "Fixed", "Currency",
+ * "Percent", "Scientific", "Yes/No", "True/False", "On/Off",
+ * "General Date", "Long Date", "Medium Date", "Short Date", "Long Time",
+ * "Medium Time" and "Short Time" are also recognized. "Standard" is
+ * "#,##0", the same as Mondrian's.
+ *
+ * <p>Compiling a format string is much more expensive than applying it, so
+ * {@link #compile(String, java.util.Locale)} keeps a cache of compiled
+ * formats. Lookups do not lock, so statements executing concurrently do not
+ * contend for the cache; when it is full it is simply emptied. A compiled
+ * format is safe to use from several threads.
+ *
+ * @author jhyde
+ */
+public class FormatString {
+    private static final int CACHE_SIZE = 1000;
+
+    private static final ConcurrentMap<Pair<String, Locale>, FormatString>
+        CACHE = new ConcurrentHashMap<Pair<String, Locale>, FormatString>();
+
+    private static final String GENERAL = "0.###############";
+
+    private static final Map<String, String> NAMED_FORMATS =
+        new HashMap<String, String>();
+
+    static {
+        NAMED_FORMATS.put("general number", GENERAL);
+        NAMED_FORMATS.put("general", GENERAL);
+        NAMED_FORMATS.put("standard", "#,##0");
+        NAMED_FORMATS.put("fixed", "0.00");
+        NAMED_FORMATS.put("percent", "0.00%");
+        NAMED_FORMATS.put("scientific", "0.00E+00");
+        NAMED_FORMATS.put("medium date", "dd-mmm-yy");
+        NAMED_FORMATS.put("medium time", "hh:nn AM/PM");
+        NAMED_FORMATS.put("short time", "hh:nn");
+    }
+
+    private final String formatString;
+    private final Section[] sections;
+
+    /**
+     * Creates a FormatString. Use {@link #compile(String, java.util.Locale)}.
+     *
+     * @param formatString Format string
+     * @param locale Locale
+     */
+    private FormatString(String formatString, Locale locale) {
+        this.formatString = formatString;
+        final Section named = named(formatString, locale);
+        if (named != null) {
+            this.sections = new Section[] {named};
+            return;
+        }
+        final List<String> texts = split(formatString);
+        this.sections = new Section[texts.size()];
+        for (int i = 0; i < texts.size(); i++) {
+            final String text = texts.get(i);
+            if (text.length() > 0) {
+                sections[i] = parse(text, locale);
+            } else if (i == 0) {
+                sections[i] = new NumericSection(GENERAL, locale);
+            }
+        }
+    }
+
+    /**
+     * Returns a compiled format, from the cache if possible.
+     *
+     * @param formatString Format string; null means "General Number"
+     * @param locale Locale that determines separators, currency and the
+     *     names of months and days
+     * @return Compiled format
+     */
+    public static FormatString compile(String formatString, Locale locale) {
+        if (formatString == null) {
+            formatString = "";
+        }
+        final Pair<String, Locale> key =
+            new Pair<String, Locale>(formatString, locale);
+        FormatString format = CACHE.get(key);
+        if (format == null) {
+            // Several threads may compile the same format; that is harmless,
+            // and cheaper than holding a lock while compiling.
+            if (CACHE.size() >= CACHE_SIZE) {
+                CACHE.clear();
+            }
+            format = new FormatString(formatString, locale);
+            final FormatString existing = CACHE.putIfAbsent(key, format);
+            if (existing != null) {
+                format = existing;
+            }
+        }
+        return format;
+    }
+
+    /**
+     * Returns a compiled format for a locale identifier (LCID), such as
+     * the <code>LocaleIdentifier</code> property of an XMLA request.
+     *
+     * @param formatString Format string; null means "General Number"
+     * @param lcid Locale identifier
+     * @return Compiled format
+     */
+    public static FormatString compile(String formatString, short lcid) {
+        return compile(formatString, LcidLocale.lcidToLocale(lcid));
+    }
+
+    /**
+     * Returns the format string this format was compiled from.
+     *
+     * @return Format string
+     */
+    public String getFormatString() {
+        return formatString;
+    }
+
+    /**
+     * Formats a value.
+     *
+     * <p>Numbers, booleans and dates are formatted according to the
+     * appropriate section; strings are returned unchanged.
+     *
+     * @param value Value; may be null
+     * @return Formatted value, never null
+     */
+    public String format(Object value) {
+        if (value == null) {
+            return sections.length > 3 && sections[3] != null
+                ? sections[3].format(null, false)
+                : "";
+        }
+        if (value instanceof String) {
+            return (String) value;
+        }
+        if (value instanceof Calendar) {
+            value = ((Calendar) value).getTime();
+        }
+        if (value instanceof Date) {
+            return sections[0].format(value, false);
+        }
+        if (value instanceof Boolean) {
+            // As in Visual Basic, true is -1.
+            value = ((Boolean) value) ? -1 : 0;
+        }
+        if (!(value instanceof Number)) {
+            return String.valueOf(value);
+        }
+        if (value instanceof Double || value instanceof Float) {
+            final double d = ((Number) value).doubleValue();
+            if (Double.isNaN(d) || Double.isInfinite(d)) {
+                return String.valueOf(value);
+            }
+        }
+        final BigDecimal decimal = toBigDecimal((Number) value);
+        final int signum = decimal.signum();
+        if (signum == 0 && sections.length > 2 && sections[2] != null) {
+            return sections[2].format(decimal, false);
+        }
+        if (signum < 0 && sections.length > 1 && sections[1] != null) {
+            return sections[1].format(decimal.negate(), false);
+        }
+        return sections[0].format(decimal.abs(), signum < 0);
+    }
+
+    public String toString() {
+        return formatString;
+    }
+
+    private static BigDecimal toBigDecimal(Number number) {
+        if (number instanceof BigDecimal) {
+            return (BigDecimal) number;
+        }
+        if (number instanceof BigInteger) {
+            return new BigDecimal((BigInteger) number);
+        }
+        if (number instanceof Integer
+            || number instanceof Long
+            || number instanceof Short
+            || number instanceof Byte)
+        {
+            return BigDecimal.valueOf(number.longValue());
+        }
+        try {
+            // Double.toString gives the shortest decimal that round-trips,
+            // so 0.1 becomes 0.1, not 0.1000000000000000055511151231257827.
+            return new BigDecimal(number.toString());
+        } catch (NumberFormatException e) {
+            return new BigDecimal(number.doubleValue());
+        }
+    }
+
+    /**
+     * Splits a format string into sections, on semicolons that are not
+     * quoted or escaped.
+     */
+    private static List<String> split(String formatString) {
+        final List<String> list = new ArrayList<String>();
+        int start = 0;
+        boolean quoted = false;
+        for (int i = 0; i < formatString.length(); i++) {
+            switch (formatString.charAt(i)) {
+            case '"':
+                quoted = !quoted;
+                break;
+            case '\\':
+                ++i;
+                break;
+            case ';':
+                if (!quoted) {
+                    list.add(formatString.substring(start, i));
+                    start = i + 1;
+                }
+                break;
+            }
+        }
+        list.add(formatString.substring(start));
+        return list;
+    }
+
+    /**
+     * Returns a section for a named format, or null if the format string is
+     * not the name of a format.
+     */
+    private static Section named(String formatString, Locale locale) {
+        final String name = formatString.trim().toLowerCase();
+        final String pattern = NAMED_FORMATS.get(name);
+        if (pattern != null) {
+            return parse(pattern, locale);
+        }
+        if (name.equals("currency")) {
+            return currency(locale);
+        }
+        if (name.equals("yes/no")) {
+            return new BooleanSection("Yes", "No");
+        }
+        if (name.equals("true/false")) {
+            return new BooleanSection("True", "False");
+        }
+        if (name.equals("on/off")) {
+            return new BooleanSection("On", "Off");
+        }
+        if (name.equals("general date")) {
+            return new DateSection(
+                DateFormat.getDateTimeInstance(
+                    DateFormat.SHORT, DateFormat.MEDIUM, locale));
+        }
+        if (name.equals("long date")) {
+            return new DateSection(
+                DateFormat.getDateInstance(DateFormat.FULL, locale));
+        }
+        if (name.equals("short date")) {
+            return new DateSection(
+                DateFormat.getDateInstance(DateFormat.SHORT, locale));
+        }
+        if (name.equals("long time")) {
+            return new DateSection(
+                DateFormat.getTimeInstance(DateFormat.MEDIUM, locale));
+        }
+        return null;
+    }
+
+    /**
+     * Creates a section for the "Currency" format, using the symbol,
+     * position and number of decimal places of the locale's currency.
+     */
+    private static Section currency(Locale locale) {
+        final NumberFormat numberFormat =
+            NumberFormat.getCurrencyInstance(locale);
+        String prefix = "$";
+        String suffix = "";
+        if (numberFormat instanceof DecimalFormat) {
+            prefix = ((DecimalFormat) numberFormat).getPositivePrefix();
+            suffix = ((DecimalFormat) numberFormat).getPositiveSuffix();
+        }
+        final StringBuilder buf = new StringBuilder();
+        escape(buf, prefix);
+        buf.append("#,##0");
+        final int fractionDigits = numberFormat.getMaximumFractionDigits();
+        if (fractionDigits > 0) {
+            buf.append('.');
+            for (int i = 0; i < fractionDigits; i++) {
+                buf.append('0');
+            }
+        }
+        escape(buf, suffix);
+        return new NumericSection(buf.toString(), locale);
+    }
+
+    private static void escape(StringBuilder buf, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            buf.append('\\').append(s.charAt(i));
+        }
+    }
+
+    /**
+     * Parses a section. It is a numeric section if it contains a digit
+     * placeholder, otherwise a date section if it contains a date token,
+     * otherwise literal text.
+     */
+    private static Section parse(String text, Locale locale) {
+        boolean date = false;
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            switch (c) {
+            case '"':
+                final int end = text.indexOf('"', i + 1);
+                i = end < 0 ? text.length() : end;
+                break;
+            case '\\':
+                ++i;
+                break;
+            case '0':
+            case '#':
+                return new NumericSection(text, locale);
+            default:
+                if ("yYmMdDhHnNsS".indexOf(c) >= 0) {
+                    date = true;
+                }
+            }
+        }
+        if (date) {
+            return new DateSection(
+                new SimpleDateFormat(toDatePattern(text), locale));
+        }
+        return new NumericSection(text, locale);
+    }
+
+    /**
+     * Converts a date section to a {@link SimpleDateFormat} pattern.
+     *
+     * <p>For example, "dddd, mmm d yyyy hh:nn AM/PM" becomes
+     * "EEEE', 'MMM' 'd' 'yyyy' 'hh':'mm' 'a".
+     */
+    private static String toDatePattern(String text) {
+        final String lower = text.toLowerCase();
+        final boolean twelveHour =
+            lower.contains("am/pm") || lower.contains("a/p");
+        final StringBuilder buf = new StringBuilder();
+        final StringBuilder literal = new StringBuilder();
+        char previous = 0;
+        for (int i = 0; i < text.length();) {
+            final char c = text.charAt(i);
+            final char lc = Character.toLowerCase(c);
+            if (c == '"') {
+                int end = text.indexOf('"', i + 1);
+                if (end < 0) {
+                    end = text.length();
+                }
+                literal.append(text, i + 1, end);
+                i = end + 1;
+                continue;
+            }
+            if (c == '\\') {
+                if (i + 1 < text.length()) {
+                    literal.append(text.charAt(i + 1));
+                }
+                i += 2;
+                continue;
+            }
+            if (lower.startsWith("am/pm", i) || lower.startsWith("a/p", i)) {
+                flush(buf, literal);
+                buf.append('a');
+                i += lower.startsWith("am/pm", i) ? 5 : 3;
+                continue;
+            }
+            if ("ymdhns".indexOf(lc) < 0) {
+                literal.append(c);
+                ++i;
+                continue;
+            }
+            flush(buf, literal);
+            int count = 1;
+            while (i + count < text.length()
+                && lower.charAt(i + count) == lc)
+            {
+                ++count;
+            }
+            switch (lc) {
+            case 'y':
+                repeat(buf, count >= 3 ? "yyyy" : count == 2 ? "yy" : "D", 1);
+                break;
+            case 'm':
+                if (count >= 3) {
+                    repeat(buf, "M", Math.min(count, 4));
+                } else if (previous == 'h' || nextToken(lower, i + count)
+                    == 's')
+                {
+                    // "m" after an hour or before a second means minutes
+                    repeat(buf, "m", count);
+                } else {
+                    repeat(buf, "M", count);
+                }
+                break;
+            case 'd':
+                repeat(buf, count >= 3 ? "E" : "d", Math.min(count, 4));
+                break;
+            case 'h':
+                repeat(buf, twelveHour ? "h" : "H", Math.min(count, 2));
+                break;
+            case 'n':
+                repeat(buf, "m", Math.min(count, 2));
+                break;
+            case 's':
+                repeat(buf, "s", Math.min(count, 2));
+                break;
+            }
+            previous = lc;
+            i += count;
+        }
+        flush(buf, literal);
+        return buf.toString();
+    }
+
+    private static char nextToken(String lower, int i) {
+        for (; i < lower.length(); i++) {
+            final char c = lower.charAt(i);
+            if (Character.isLetter(c)) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    private static void repeat(StringBuilder buf, String s, int count) {
+        for (int i = 0; i < count; i++) {
+            buf.append(s);
+        }
+    }
+
+    /**
+     * Appends pending literal text to a pattern, quoted, and clears it.
+     */
+    private static void flush(StringBuilder buf, StringBuilder literal) {
+        if (literal.length() > 0) {
+            buf.append('\'')
+                .append(literal.toString().replace("'", "''"))
+                .append('\'');
+            literal.setLength(0);
+        }
+    }
+
+    /**
+     * Section of a format string.
+     */
+    private static abstract class Section {
+        /**
+         * Formats a value.
+         *
+         * @param value Absolute value of a number (as a {@link BigDecimal}),
+         *     a {@link Date}, or null
+         * @param negative Whether the original number was negative and this
+         *     section must print the sign
+         * @return Formatted value
+         */
+        abstract String format(Object value, boolean negative);
+    }
+
+    /**
+     * Section that formats numbers using digit placeholders.
+     */
+    private static class NumericSection extends Section {
+        private final StringBuilder prefix = new StringBuilder();
+        private final StringBuilder suffix = new StringBuilder();
+        private final char decimalSeparator;
+        private final char groupingSeparator;
+        private boolean hasDigits;
+        private int integerPlaces;
+        private int integerZeros;
+        private int minFraction;
+        private int maxFraction;
+        private boolean grouping;
+        private int thousandScale;
+        private boolean percent;
+        private boolean exponent;
+        private char exponentChar;
+        private boolean exponentPlus;
+        private int exponentDigits;
+
+        NumericSection(String text, Locale locale) {
+            final DecimalFormatSymbols symbols =
+                new DecimalFormatSymbols(locale);
+            decimalSeparator = symbols.getDecimalSeparator();
+            groupingSeparator = symbols.getGroupingSeparator();
+            boolean started = false;
+            boolean fraction = false;
+            for (int i = 0; i < text.length(); i++) {
+                final char c = text.charAt(i);
+                switch (c) {
+                case '"':
+                    int end = text.indexOf('"', i + 1);
+                    if (end < 0) {
+                        end = text.length();
+                    }
+                    (started ? suffix : prefix).append(
+                        text.substring(i + 1, end));
+                    i = end;
+                    break;
+                case '\\':
+                    if (i + 1 < text.length()) {
+                        (started ? suffix : prefix).append(text.charAt(++i));
+                    }
+                    break;
+                case '0':
+                case '#':
+                    started = true;
+                    if (exponent) {
+                        ++exponentDigits;
+                    } else if (fraction) {
+                        ++maxFraction;
+                        if (c == '0') {
+                            minFraction = maxFraction;
+                        }
+                    } else {
+                        hasDigits = true;
+                        ++integerPlaces;
+                        if (c == '0') {
+                            ++integerZeros;
+                        }
+                    }
+                    break;
+                case '.':
+                    if (!fraction && !exponent) {
+                        started = true;
+                        fraction = true;
+                        hasDigits = true;
+                    } else {
+                        (started ? suffix : prefix).append(c);
+                    }
+                    break;
+                case ',':
+                    if (hasDigits && !exponent) {
+                        final char next =
+                            i + 1 < text.length() ? text.charAt(i + 1) : 0;
+                        if (!fraction && (next == '0' || next == '#')) {
+                            grouping = true;
+                        } else {
+                            ++thousandScale;
+                        }
+                    } else {
+                        (started ? suffix : prefix).append(c);
+                    }
+                    break;
+                case '%':
+                    percent = true;
+                    (started ? suffix : prefix).append(c);
+                    break;
+                case 'E':
+                case 'e':
+                    if (hasDigits
+                        && !exponent
+                        && i + 1 < text.length()
+                        && (text.charAt(i + 1) == '+'
+                            || text.charAt(i + 1) == '-'))
+                    {
+                        exponent = true;
+                        exponentChar = c;
+                        exponentPlus = text.charAt(++i) == '+';
+                    } else {
+                        (started ? suffix : prefix).append(c);
+                    }
+                    break;
+                default:
+                    (started ? suffix : prefix).append(c);
+                }
+            }
+        }
+
+        String format(Object value, boolean negative) {
+            if (!(value instanceof BigDecimal)) {
+                return value == null
+                    ? prefix.toString() + suffix
+                    : String.valueOf(value);
+            }
+            if (!hasDigits) {
+                return prefix.toString() + suffix;
+            }
+            BigDecimal x = (BigDecimal) value;
+            if (percent) {
+                x = x.movePointRight(2);
+            }
+            if (thousandScale > 0) {
+                x = x.movePointLeft(3 * thousandScale);
+            }
+            int exp = 0;
+            if (exponent && x.signum() != 0) {
+                final int places = Math.max(integerPlaces, 1);
+                exp = x.precision() - x.scale() - places;
+                x = x.movePointLeft(exp)
+                    .setScale(maxFraction, RoundingMode.HALF_UP);
+                if (x.precision() - x.scale() > places) {
+                    // Rounding carried into a new digit, e.g. 9.999 to 10.00
+                    ++exp;
+                    x = x.movePointLeft(1)
+                        .setScale(maxFraction, RoundingMode.HALF_UP);
+                }
+            } else {
+                x = x.setScale(maxFraction, RoundingMode.HALF_UP);
+            }
+            final String plain = x.toPlainString();
+            final int point = plain.indexOf('.');
+            String integerPart = point < 0 ? plain : plain.substring(0, point);
+            int fractionEnd = point < 0 ? point : plain.length();
+            while (fractionEnd - point - 1 > minFraction
+                && plain.charAt(fractionEnd - 1) == '0')
+            {
+                --fractionEnd;
+            }
+            if (integerPart.equals("0")) {
+                integerPart = "";
+            }
+            final StringBuilder buf = new StringBuilder();
+            if (negative && x.signum() != 0) {
+                buf.append('-');
+            }
+            buf.append(prefix);
+            int integerLength = Math.max(integerPart.length(), integerZeros);
+            if (integerLength == 0 && fractionEnd <= point + 1) {
+                integerLength = 1;
+            }
+            final int padding = integerLength - integerPart.length();
+            for (int i = 0; i < integerLength; i++) {
+                if (grouping && i > 0 && (integerLength - i) % 3 == 0) {
+                    buf.append(groupingSeparator);
+                }
+                buf.append(
+                    i < padding ? '0' : integerPart.charAt(i - padding));
+            }
+            if (fractionEnd > point + 1) {
+                buf.append(decimalSeparator)
+                    .append(plain, point + 1, fractionEnd);
+            }
+            if (exponent) {
+                buf.append(exponentChar);
+                if (exp < 0) {
+                    buf.append('-');
+                } else if (exponentPlus) {
+                    buf.append('+');
+                }
+                final String digits = Integer.toString(Math.abs(exp));
+                for (int i = digits.length(); i < exponentDigits; i++) {
+                    buf.append('0');
+                }
+                buf.append(digits);
+            }
+            buf.append(suffix);
+            return buf.toString();
+        }
+    }
+
+    /**
+     * Section that formats dates, and numbers as OLE Automation dates.
+     */
+    private static class DateSection extends Section {
+        private final DateFormat dateFormat;
+
+        DateSection(DateFormat dateFormat) {
+            this.dateFormat = dateFormat;
+        }
+
+        String format(Object value, boolean negative) {
+            final Date date;
+            if (value instanceof Date) {
+                date = (Date) value;
+            } else if (value instanceof BigDecimal) {
+                BigDecimal days = (BigDecimal) value;
+                if (negative) {
+                    days = days.negate();
+                }
+                final long millis =
+                    Math.round(days.doubleValue() * 86400000d);
+                final Calendar calendar = Calendar.getInstance();
+                calendar.clear();
+                calendar.set(1899, Calendar.DECEMBER, 30);
+                calendar.add(Calendar.DATE, (int) (millis / 86400000L));
+                calendar.add(Calendar.MILLISECOND, (int) (millis % 86400000L));
+                date = calendar.getTime();
+            } else {
+                return "";
+            }
+            // DateFormat is not thread-safe.
+            synchronized (dateFormat) {
+                return dateFormat.format(date);
+            }
+        }
+    }
+
+    /**
+     * Section that formats non-zero numbers as one string, zero as another.
+     */
+    private static class BooleanSection extends Section {
+        private final String trueText;
+        private final String falseText;
+
+        BooleanSection(String trueText, String falseText) {
+            this.trueText = trueText;
+            this.falseText = falseText;
+        }
+
+        String format(Object value, boolean negative) {
+            if (value instanceof BigDecimal) {
+                return ((BigDecimal) value).signum() != 0
+                    ? trueText
+                    : falseText;
+            }
+            return value == null ? "" : String.valueOf(value);
+        }
+    }
+}
+
+// End FormatString.java
@@ -0,0 +1,61 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.impl;
+
+import org.olap4j.mdx.ParseTreeNode;
+
+/**
+ * Parse tree node that can be made immutable.
+ *
+ * <p>All of the node classes in the {@link org.olap4j.mdx} package implement
+ * this interface. Other implementations of {@link ParseTreeNode} need not;
+ * the parser, validator and transforms treat such nodes as mutable.
+ *
+ * <p>This interface is not part of the olap4j specification, and
+ * providers are not required to implement it.
+ *
+ * @author jhyde
+ */
+public interface Freezable {
+    /**
+     * Makes this node, and all of its descendants, immutable.
+     *
+     * <p>After a node is frozen, any attempt to modify it throws
+     * {@link IllegalStateException}, and its hash code is computed only
+     * once. A frozen sub-tree can be safely shared between several parse
+     * trees; rewriting a frozen tree needs to copy only the nodes on the path
+     * to the node being changed.
+     *
+     * <p>Freezing an already-frozen node does nothing, and does not visit
+     * its descendants. Leaf nodes, which are immutable, are always frozen.
+     *
+     * @return This node
+     */
+    ParseTreeNode freeze();
+
+    /**
+     * Returns whether this node is frozen.
+     *
+     * @see #freeze()
+     *
+     * @return Whether this node is frozen
+     */
+    boolean isFrozen();
+}
+
+// End Freezable.java
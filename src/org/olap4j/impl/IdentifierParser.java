@@ -41,7 +41,14 @@ public class IdentifierParser {
     private static final int AFTER_SEG = 3;
     private static final int IN_SEG = 4;
 
-    private static char charAt(String s, int pos) {
+    /**
+     * Table of recently parsed segments. Member names share many segments,
+     * such as dimension, hierarchy and level names, so parsing them need not
+     * create new segments each time.
+     */
+    private static final SegmentTable SEGMENT_TABLE = new SegmentTable(1024);
+
+    private static char charAt(CharSequence s, int pos) {
         return pos < s.length() ? s.charAt(pos) : 0;
     }
 
@@ -54,7 +61,7 @@ public class IdentifierParser {
      */
     public static void parseTupleList(
         Builder builder,
-        String string)
+        CharSequence string)
     {
         int i = 0;
         char c;
@@ -78,6 +85,19 @@ public class IdentifierParser {
         }
     }
 
+    /**
+     * Parses a list of tuples.
+     *
+     * <p>Same as {@link #parseTupleList(Builder, CharSequence)}; retained so
+     * that code compiled against earlier versions still links.
+     *
+     * @param builder Builder
+     * @param string String to parse
+     */
+    public static void parseTupleList(Builder builder, String string) {
+        parseTupleList(builder, (CharSequence) string);
+    }
+
     /**
      * Parses a tuple, of the form '(member, member, ...)', and calls builder
      * methods when finding a segment, member or tuple.
@@ -89,7 +109,7 @@ public class IdentifierParser {
      */
     public static int parseTuple(
         Builder builder,
-        String string,
+        CharSequence string,
         int i)
     {
         char c;
@@ -112,9 +132,24 @@ public class IdentifierParser {
         return i;
     }
 
+    /**
+     * Parses a tuple, calling builder methods.
+     *
+     * <p>Same as {@link #parseTuple(Builder, CharSequence, int)}; retained so
+     * that code compiled against earlier versions still links.
+     *
+     * @param builder Builder
+     * @param string String to parse
+     * @param i Position to start parsing in string
+     * @return Position where parsing ended in string
+     */
+    public static int parseTuple(Builder builder, String string, int i) {
+        return parseTuple(builder, (CharSequence) string, i);
+    }
+
     public static void parseMemberList(
         Builder builder,
-        String string)
+        CharSequence string)
     {
         int i = 0;
         char c = charAt(string, i);
@@ -155,9 +190,22 @@ public class IdentifierParser {
         }
     }
 
+    /**
+     * Parses a list of members.
+     *
+     * <p>Same as {@link #parseMemberList(Builder, CharSequence)}; retained so
+     * that code compiled against earlier versions still links.
+     *
+     * @param builder Builder
+     * @param string String to parse
+     */
+    public static void parseMemberList(Builder builder, String string) {
+        parseMemberList(builder, (CharSequence) string);
+    }
+
     public static int parseMember(
         Builder builder,
-        String string,
+        CharSequence string,
         int i)
     {
         int k = string.length();
@@ -216,29 +264,20 @@ public class IdentifierParser {
                 case ')':
                 case '}':
                 case 0:
-                    builder.segmentComplete(
-                        null,
-                        string.substring(start, i).trim(),
-                        Quoting.UNQUOTED,
-                        syntax);
+                    segmentComplete(
+                        builder, string, start, i, Quoting.UNQUOTED, syntax);
                     state = AFTER_SEG;
                     break loop;
                 case '.':
-                    builder.segmentComplete(
-                        null,
-                        string.substring(start, i).trim(),
-                        Quoting.UNQUOTED,
-                        syntax);
+                    segmentComplete(
+                        builder, string, start, i, Quoting.UNQUOTED, syntax);
                     syntax = Builder.Syntax.NAME;
                     state = BEFORE_SEG;
                     ++i;
                     break;
                 case '&':
-                    builder.segmentComplete(
-                        null,
-                        string.substring(start, i).trim(),
-                        Quoting.UNQUOTED,
-                        syntax);
+                    segmentComplete(
+                        builder, string, start, i, Quoting.UNQUOTED, syntax);
                     syntax = Builder.Syntax.NEXT_KEY;
                     state = BEFORE_SEG;
                     ++i;
@@ -258,11 +297,8 @@ public class IdentifierParser {
                         ++i;
                         // fall through
                     } else {
-                        builder.segmentComplete(
-                            null,
-                            Olap4jUtil.replace(
-                                string.substring(start, i), "]]", "]"),
-                            Quoting.QUOTED,
+                        segmentComplete(
+                            builder, string, start, i, Quoting.QUOTED,
                             syntax);
                         ++i;
                         state = AFTER_SEG;
@@ -324,8 +360,70 @@ public class IdentifierParser {
         return i;
     }
 
+    /**
+     * Parses a member, calling builder methods.
+     *
+     * <p>Same as {@link #parseMember(Builder, CharSequence, int)}; retained
+     * so that code compiled against earlier versions still links.
+     *
+     * @param builder Builder
+     * @param string String to parse
+     * @param i Position to start parsing in string
+     * @return Position where parsing ended in string
+     */
+    public static int parseMember(Builder builder, String string, int i) {
+        return parseMember(builder, (CharSequence) string, i);
+    }
+
+    /**
+     * Calls the builder for a segment that occupies a given range of a
+     * string. The range of a quoted segment excludes the brackets.
+     */
+    private static void segmentComplete(
+        Builder builder,
+        CharSequence string,
+        int start,
+        int end,
+        Quoting quoting,
+        Builder.Syntax syntax)
+    {
+        if (quoting == Quoting.UNQUOTED) {
+            // Trim, as String.trim() would.
+            while (start < end && string.charAt(start) <= ' ') {
+                ++start;
+            }
+            while (end > start && string.charAt(end - 1) <= ' ') {
+                --end;
+            }
+        }
+        if (builder instanceof MemberBuilder) {
+            ((MemberBuilder) builder).segmentComplete(
+                string, start, end, quoting, syntax);
+        } else {
+            builder.segmentComplete(
+                null, name(string, start, end, quoting), quoting, syntax);
+        }
+    }
+
+    /**
+     * Returns the name of a segment that occupies a given range of a string,
+     * converting "]]" in a quoted segment to "]".
+     */
+    private static String name(
+        CharSequence string,
+        int start,
+        int end,
+        Quoting quoting)
+    {
+        final String name = string.subSequence(start, end).toString();
+        if (quoting == Quoting.QUOTED && name.indexOf(']') >= 0) {
+            return Olap4jUtil.replace(name, "]]", "]");
+        }
+        return name;
+    }
+
     private static IllegalArgumentException fail(
-        String string,
+        CharSequence string,
         int i,
         String expecting)
     {
@@ -341,7 +439,7 @@ public class IdentifierParser {
      * @param s MDX identifier
      * @return List of segments
      */
-    public static List<IdentifierSegment> parseIdentifier(String s)  {
+    public static List<IdentifierSegment> parseIdentifier(CharSequence s) {
         final MemberBuilder builder = new MemberBuilder();
         int i = parseMember(builder, s, 0);
         if (i < s.length()) {
@@ -351,6 +449,19 @@ public class IdentifierParser {
         return builder.segmentList;
     }
 
+    /**
+     * Parses an MDX identifier.
+     *
+     * <p>Same as {@link #parseIdentifier(CharSequence)}; retained so that
+     * code compiled against earlier versions still links.
+     *
+     * @param s MDX identifier
+     * @return List of segments
+     */
+    public static List<IdentifierSegment> parseIdentifier(String s) {
+        return parseIdentifier((CharSequence) s);
+    }
+
     /**
      * Parses a string consisting of a sequence of MDX identifiers and returns
      * the result as a list of compound identifiers, each of which is a list
@@ -367,13 +478,97 @@ public class IdentifierParser {
      * @return List of lists of segments
      */
     public static List<List<IdentifierSegment>> parseIdentifierList(
-        String s)
+        CharSequence s)
     {
         final MemberListBuilder builder = new MemberListBuilder();
         parseMemberList(builder, s);
         return builder.list;
     }
 
+    /**
+     * Parses a sequence of MDX identifiers.
+     *
+     * <p>Same as {@link #parseIdentifierList(CharSequence)}; retained so
+     * that code compiled against earlier versions still links.
+     *
+     * @param s MDX identifier list
+     * @return List of lists of segments
+     */
+    public static List<List<IdentifierSegment>> parseIdentifierList(
+        String s)
+    {
+        return parseIdentifierList((CharSequence) s);
+    }
+
+    /**
+     * Returns the unique name of the parent of a member, given the member's
+     * unique name; or null if the unique name has only one segment.
+     *
+     * <p>For example, <code>parentOf("[Time].[1997].[Q1]")</code> returns
+     * <code>"[Time].[1997]"</code>, and
+     * <code>parentOf("[Time].&[1997]&[1]")</code> returns
+     * <code>"[Time]"</code>.
+     *
+     * <p>If every segment is quoted, as in the unique names that a server
+     * returns, this method scans the name once and returns a prefix of it.
+     * Otherwise it parses the name, and unparses all but the last segment.
+     *
+     * @param uniqueName Unique name of member
+     * @return Unique name of parent member, or null
+     */
+    public static String parentOf(String uniqueName) {
+        final int k = uniqueName.length();
+        int end = -1;
+        int i = 0;
+        while (i < k) {
+            char c = uniqueName.charAt(i);
+            if (c == '&' && i + 1 < k && uniqueName.charAt(i + 1) == '[') {
+                ++i;
+                continue;
+            }
+            if (c != '[') {
+                return parentOfSlow(uniqueName);
+            }
+            // Skip to the closing bracket, including any "]]".
+            while (true) {
+                i = uniqueName.indexOf(']', i + 1);
+                if (i < 0) {
+                    return parentOfSlow(uniqueName);
+                }
+                if (i + 1 < k && uniqueName.charAt(i + 1) == ']') {
+                    ++i;
+                } else {
+                    break;
+                }
+            }
+            ++i;
+            if (i < k) {
+                switch (uniqueName.charAt(i)) {
+                case '.':
+                    end = i;
+                    if (++i == k) {
+                        return parentOfSlow(uniqueName);
+                    }
+                    break;
+                case '&':
+                    break;
+                default:
+                    return parentOfSlow(uniqueName);
+                }
+            }
+        }
+        return end < 0 ? null : uniqueName.substring(0, end);
+    }
+
+    private static String parentOfSlow(String uniqueName) {
+        final List<IdentifierSegment> segments = parseIdentifier(uniqueName);
+        if (segments.size() < 2) {
+            return null;
+        }
+        return new IdentifierNode(segments.subList(0, segments.size() - 1))
+            .toString();
+    }
+
     /**
      * Callback that is called on completion of a structural element like a
      * member or tuple.
@@ -454,9 +649,26 @@ public class IdentifierParser {
             Quoting quoting,
             Syntax syntax)
         {
-            final NameSegment segment =
-                new NameSegment(
-                    region, name, quoting);
+            segmentComplete(new NameSegment(region, name, quoting), syntax);
+        }
+
+        /**
+         * Called when a segment that occupies a range of the source string
+         * is complete. Uses a segment from the table of recent segments if
+         * possible, and therefore does not need to create a string.
+         */
+        void segmentComplete(
+            CharSequence string,
+            int start,
+            int end,
+            Quoting quoting,
+            Syntax syntax)
+        {
+            segmentComplete(
+                SEGMENT_TABLE.lookup(string, start, end, quoting), syntax);
+        }
+
+        private void segmentComplete(NameSegment segment, Syntax syntax) {
             if (syntax != Syntax.NEXT_KEY) {
                 // If we were building a previous key, write it out.
                 // E.g. [Foo].&1&2.&3&4&5.
@@ -486,6 +698,85 @@ public class IdentifierParser {
             segmentList.clear();
         }
     }
+
+    /**
+     * Table of name segments, indexed by the hash of their source text.
+     *
+     * <p>A slot holds the segment most recently stored in it. Segments are
+     * immutable, so threads may share the table without locking; a thread
+     * that does not see another thread's write just creates a new segment.
+     */
+    static class SegmentTable {
+        private final NameSegment[] segments;
+
+        /**
+         * Creates a SegmentTable.
+         *
+         * @param size Number of slots; must be a power of 2
+         */
+        SegmentTable(int size) {
+            assert Integer.bitCount(size) == 1;
+            segments = new NameSegment[size];
+        }
+
+        /**
+         * Returns a segment with the name in a given range of a string,
+         * creating it if it is not in the table.
+         *
+         * @param string Source string
+         * @param start Start of the range, inclusive
+         * @param end End of the range, exclusive
+         * @param quoting Quoting; if quoted, the range excludes the brackets
+         * and may contain "]]"
+         * @return Segment
+         */
+        NameSegment lookup(
+            CharSequence string,
+            int start,
+            int end,
+            Quoting quoting)
+        {
+            int h = quoting.ordinal();
+            for (int i = start; i < end; i++) {
+                h = 31 * h + string.charAt(i);
+            }
+            h ^= h >>> 16;
+            final int slot = h & (segments.length - 1);
+            NameSegment segment = segments[slot];
+            if (segment == null
+                || segment.getQuoting() != quoting
+                || !matches(segment.getName(), string, start, end, quoting))
+            {
+                segment =
+                    new NameSegment(
+                        null, name(string, start, end, quoting), quoting);
+                segments[slot] = segment;
+            }
+            return segment;
+        }
+
+        private static boolean matches(
+            String name,
+            CharSequence string,
+            int start,
+            int end,
+            Quoting quoting)
+        {
+            int j = 0;
+            final int n = name.length();
+            for (int i = start; i < end; i++, j++) {
+                final char c = string.charAt(i);
+                if (j >= n || name.charAt(j) != c) {
+                    return false;
+                }
+                if (c == ']' && quoting == Quoting.QUOTED) {
+                    // Skip the second ']' of "]]".
+                    ++i;
+                }
+            }
+            return j == n;
+        }
+    }
 }
 
 // End IdentifierParser.java
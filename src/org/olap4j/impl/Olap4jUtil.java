@@ -17,8 +17,12 @@
 */
 package org.olap4j.impl;
 
-import org.olap4j.metadata.NamedList;
+import org.olap4j.*;
+import org.olap4j.mdx.IdentifierSegment;
+import org.olap4j.mdx.SelectNode;
+import org.olap4j.metadata.*;
 
+import java.sql.SQLException;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -608,9 +612,282 @@ public class Olap4jUtil {
         return formattedValue;
     }
 
+    /**
+     * Returns the bulk operations of a cell set. If the cell set implements
+     * {@link ExtendedCellSet}, returns it; otherwise returns an object that
+     * implements the operations one cell at a time.
+     *
+     * @param cellSet Cell set
+     * @return Extended operations on cell set
+     */
+    public static ExtendedCellSet extend(CellSet cellSet) {
+        try {
+            if (cellSet.isWrapperFor(ExtendedCellSet.class)) {
+                return cellSet.unwrap(ExtendedCellSet.class);
+            }
+        } catch (SQLException e) {
+            // Not a wrapper; use the generic implementation.
+        } catch (UnsupportedOperationException e) {
+            // Some providers do not implement unwrap.
+        }
+        return new GenericExtendedCellSet(cellSet);
+    }
+
+    /**
+     * Returns the bulk member lookup operations of a cube. If the cube
+     * implements {@link ExtendedCube}, or wraps an object that does, returns
+     * it; otherwise returns an object that looks up one member at a time.
+     *
+     * @param cube Cube
+     * @return Extended operations on cube
+     */
+    public static ExtendedCube extend(Cube cube) {
+        if (cube instanceof ExtendedCube) {
+            return (ExtendedCube) cube;
+        }
+        if (cube instanceof OlapWrapper) {
+            final OlapWrapper wrapper = (OlapWrapper) cube;
+            try {
+                if (wrapper.isWrapperFor(ExtendedCube.class)) {
+                    return wrapper.unwrap(ExtendedCube.class);
+                }
+            } catch (SQLException e) {
+                // Not a wrapper; use the generic implementation.
+            }
+        }
+        return new GenericExtendedCube(cube);
+    }
+
+    /**
+     * Returns the extended operations of a statement. If the statement
+     * implements {@link ExtendedStatement}, or wraps an object that does,
+     * returns it; otherwise returns an object whose
+     * {@link ExtendedStatement#executeOlapDeltaQuery} always returns null, so
+     * that the caller executes the whole query.
+     *
+     * @param statement Statement
+     * @return Extended operations on statement
+     */
+    public static ExtendedStatement extend(OlapStatement statement) {
+        if (statement instanceof ExtendedStatement) {
+            return (ExtendedStatement) statement;
+        }
+        try {
+            if (statement.isWrapperFor(ExtendedStatement.class)) {
+                return statement.unwrap(ExtendedStatement.class);
+            }
+        } catch (SQLException e) {
+            // Not a wrapper; use the generic implementation.
+        }
+        return GenericExtendedStatement.INSTANCE;
+    }
+
     private enum DummyEnum {
     }
 
+    /**
+     * Implementation of {@link ExtendedStatement} for a statement that does
+     * not implement it; cannot splice, so never executes a delta query,
+     * never projects cell or member properties, and never splits a query
+     * into slices.
+     */
+    private static class GenericExtendedStatement
+        implements ExtendedStatement
+    {
+        static final GenericExtendedStatement INSTANCE =
+            new GenericExtendedStatement();
+
+        public CellSet executeOlapDeltaQuery(
+            SelectNode deltaQuery,
+            CellSet previous,
+            Axis axis,
+            int positionOrdinal,
+            int removeCount)
+        {
+            return null;
+        }
+
+        public void setCellProperties(List<Property> propertyList) {
+            // The statement cannot project properties; ignore.
+        }
+
+        public List<Property> getCellProperties() {
+            return null;
+        }
+
+        public void setDimensionProperties(List<Property> propertyList) {
+            // The statement cannot project properties; ignore.
+        }
+
+        public List<Property> getDimensionProperties() {
+            return null;
+        }
+
+        public void setRowSliceCount(int sliceCount) throws OlapException {
+            if (sliceCount < 1) {
+                throw new OlapException(
+                    "Slice count must be at least 1: " + sliceCount);
+            }
+            // The statement cannot split queries; ignore.
+        }
+
+        public int getRowSliceCount() {
+            return 1;
+        }
+    }
+
+    /**
+     * Implementation of {@link ExtendedCube} for a cube that does not
+     * implement it; looks up one member at a time, using the methods of
+     * {@link Cube}.
+     */
+    private static class GenericExtendedCube implements ExtendedCube {
+        private final Cube cube;
+
+        GenericExtendedCube(Cube cube) {
+            this.cube = cube;
+        }
+
+        public List<List<Member>> lookupMemberRelatives(
+            Set<Member.TreeOp> treeOps,
+            List<List<IdentifierSegment>> namePartsList)
+            throws OlapException
+        {
+            final List<List<Member>> lists = new ArrayList<List<Member>>();
+            for (List<IdentifierSegment> nameParts : namePartsList) {
+                lists.add(cube.lookupMembers(treeOps, nameParts));
+            }
+            return lists;
+        }
+    }
+
+    /**
+     * Implementation of {@link ExtendedCellSet} for a cell set that does not
+     * implement it; reads one cell at a time, using the methods of
+     * {@link CellSet}.
+     */
+    private static class GenericExtendedCellSet implements ExtendedCellSet {
+        private final CellSet cellSet;
+
+        GenericExtendedCellSet(CellSet cellSet) {
+            this.cellSet = cellSet;
+        }
+
+        public Cell getCell(long ordinal) {
+            if (ordinal >= 0 && ordinal <= Integer.MAX_VALUE) {
+                return cellSet.getCell((int) ordinal);
+            }
+            return getCell(ordinalToCoordinates(ordinal));
+        }
+
+        public Cell getCell(int[] coordinates) {
+            final List<Integer> list =
+                new ArrayList<Integer>(coordinates.length);
+            for (int coordinate : coordinates) {
+                list.add(coordinate);
+            }
+            return cellSet.getCell(list);
+        }
+
+        public long getCellCount() {
+            long n = 1;
+            for (CellSetAxis axis : cellSet.getAxes()) {
+                n *= axis.getPositionCount();
+            }
+            return n;
+        }
+
+        public int[] ordinalToCoordinates(long ordinal) {
+            if (ordinal < 0 || ordinal >= getCellCount()) {
+                throw new IndexOutOfBoundsException(
+                    "Cell ordinal " + ordinal
+                    + " lies outside CellSet bounds");
+            }
+            final List<CellSetAxis> axes = cellSet.getAxes();
+            final int[] coordinates = new int[axes.size()];
+            for (int i = 0; i < coordinates.length; i++) {
+                final int positionCount = axes.get(i).getPositionCount();
+                coordinates[i] = (int) (ordinal % positionCount);
+                ordinal /= positionCount;
+            }
+            return coordinates;
+        }
+
+        public long coordinatesToOrdinal(int[] coordinates) {
+            final List<CellSetAxis> axes = cellSet.getAxes();
+            if (coordinates.length != axes.size()) {
+                throw new IllegalArgumentException(
+                    "Coordinates have different dimension "
+                    + coordinates.length + " than axes " + axes.size());
+            }
+            long ordinal = 0;
+            long stride = 1;
+            for (int i = 0; i < coordinates.length; i++) {
+                final int positionCount = axes.get(i).getPositionCount();
+                if (coordinates[i] < 0 || coordinates[i] >= positionCount) {
+                    throw new IndexOutOfBoundsException(
+                        "Coordinate " + coordinates[i] + " of axis " + i
+                        + " is out of range");
+                }
+                ordinal += coordinates[i] * stride;
+                stride *= positionCount;
+            }
+            return ordinal;
+        }
+
+        public void getDoubleValues(
+            long fromOrdinal,
+            long toOrdinal,
+            double[] dst,
+            BitSet nulls)
+            throws OlapException
+        {
+            if (dst.length < toOrdinal - fromOrdinal) {
+                throw new IndexOutOfBoundsException(
+                    "Array has length " + dst.length + ", needs "
+                    + (toOrdinal - fromOrdinal));
+            }
+            final int count = (int) (toOrdinal - fromOrdinal);
+            for (int i = 0; i < count; i++) {
+                set(getCell(fromOrdinal + i), i, dst, nulls);
+            }
+        }
+
+        public void getDoubleValues(
+            List<Integer> coordinates,
+            int axisOrdinal,
+            double[] dst,
+            BitSet nulls)
+            throws OlapException
+        {
+            final int n =
+                cellSet.getAxes().get(axisOrdinal).getPositionCount();
+            if (dst.length < n) {
+                throw new IndexOutOfBoundsException(
+                    "Array has length " + dst.length + ", needs " + n);
+            }
+            final List<Integer> list = new ArrayList<Integer>(coordinates);
+            for (int i = 0; i < n; i++) {
+                list.set(axisOrdinal, i);
+                set(cellSet.getCell(list), i, dst, nulls);
+            }
+        }
+
+        private static void set(
+            Cell cell,
+            int i,
+            double[] dst,
+            BitSet nulls)
+            throws OlapException
+        {
+            final boolean isNull = cell.isNull();
+            dst[i] = isNull ? 0d : cell.getDoubleValue();
+            if (nulls != null) {
+                nulls.set(i, isNull);
+            }
+        }
+    }
+
     /**
      * Implementation of {@link NamedList} that is immutable and empty.
      */
@@ -0,0 +1,227 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.layout;
+
+import org.olap4j.*;
+import org.olap4j.metadata.Hierarchy;
+import org.olap4j.metadata.Member;
+
+import java.util.List;
+
+/**
+ * Presents a {@link CellSet} as a sequence of flat rows, for the benefit of
+ * exporters.
+ *
+ * <p>Each row has one column for each hierarchy on the rows axis and on any
+ * further axes (pages, chapters, ...), which hold members, followed by one
+ * column for each position on the columns axis, which hold cells. Rows are
+ * generated in cell ordinal order; pages are the outermost loop, rows the
+ * innermost.
+ *
+ * <p>The flattener does not copy the cell set. It reads positions and cells
+ * as the caller advances through the rows, by ordinal, so it needs memory
+ * only for one row; and it works against any implementation of
+ * {@link CellSet}, including one that fetches its cells on demand.
+ *
+ * <p>Not thread-safe.
+ *
+ * @author jhyde
+ */
+class CellSetFlattener {
+    private final CellSet cellSet;
+    private final List<CellSetAxis> axes;
+    private final int valueColumnCount;
+    private final int rowCount;
+
+    /**
+     * Ordinal of the first column within each axis 1, 2, ... of the member
+     * columns. Members of the outermost axis come first.
+     */
+    private final int[] axisColumnOffsets;
+
+    /**
+     * Current coordinate on each axis other than the columns axis.
+     */
+    private final int[] coords;
+
+    private final Member[] members;
+    private int row = -1;
+
+    /**
+     * Creates a CellSetFlattener.
+     *
+     * @param cellSet Cell set
+     */
+    CellSetFlattener(CellSet cellSet) {
+        this.cellSet = cellSet;
+        this.axes = cellSet.getAxes();
+        this.valueColumnCount =
+            axes.isEmpty()
+                ? 1
+                : axes.get(0).getPositionCount();
+        final int axisCount = Math.max(axes.size() - 1, 0);
+        this.coords = new int[axisCount];
+        this.axisColumnOffsets = new int[axisCount];
+        int memberColumnCount = 0;
+        int rowCount = 1;
+        for (int i = axisCount - 1; i >= 0; --i) {
+            final CellSetAxis axis = axes.get(i + 1);
+            axisColumnOffsets[i] = memberColumnCount;
+            memberColumnCount +=
+                axis.getAxisMetaData().getHierarchies().size();
+            rowCount *= axis.getPositionCount();
+        }
+        this.rowCount = rowCount;
+        this.members = new Member[memberColumnCount];
+    }
+
+    /**
+     * Returns the number of columns that hold members.
+     */
+    int getMemberColumnCount() {
+        return members.length;
+    }
+
+    /**
+     * Returns the number of columns that hold cells.
+     */
+    int getValueColumnCount() {
+        return valueColumnCount;
+    }
+
+    /**
+     * Returns the number of rows.
+     */
+    int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Returns the name of a member column: the unique name of its
+     * hierarchy.
+     *
+     * @param i Ordinal of member column
+     * @return Column name
+     */
+    String getMemberColumnName(int i) {
+        for (int a = axisColumnOffsets.length - 1; a >= 0; --a) {
+            final List<Hierarchy> hierarchies =
+                axes.get(a + 1).getAxisMetaData().getHierarchies();
+            final int offset = axisColumnOffsets[a];
+            if (i < offset + hierarchies.size()) {
+                return hierarchies.get(i - offset).getUniqueName();
+            }
+        }
+        throw new IndexOutOfBoundsException(String.valueOf(i));
+    }
+
+    /**
+     * Returns the name of a value column: the unique names of the members
+     * of its position on the columns axis, separated by commas. If the cell
+     * set has no axes, the only column's name is empty.
+     *
+     * @param i Ordinal of value column
+     * @return Column name
+     */
+    String getValueColumnName(int i) {
+        if (axes.isEmpty()) {
+            return "";
+        }
+        final StringBuilder buf = new StringBuilder();
+        final Position position = axes.get(0).getPositions().get(i);
+        for (Member member : position.getMembers()) {
+            if (buf.length() > 0) {
+                buf.append(", ");
+            }
+            buf.append(member.getUniqueName());
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Moves to the next row.
+     *
+     * @return Whether there is another row
+     */
+    boolean next() {
+        if (row + 1 >= rowCount) {
+            return false;
+        }
+        if (++row > 0) {
+            // Increment coordinates, axis 1 fastest.
+            for (int a = 0; a < coords.length; a++) {
+                if (++coords[a] < axes.get(a + 1).getPositionCount()) {
+                    break;
+                }
+                coords[a] = 0;
+            }
+        }
+        for (int a = 0; a < coords.length; a++) {
+            final Position position =
+                axes.get(a + 1).getPositions().get(coords[a]);
+            int k = axisColumnOffsets[a];
+            for (Member member : position.getMembers()) {
+                members[k++] = member;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the ordinal of the current row.
+     */
+    int getRow() {
+        return row;
+    }
+
+    /**
+     * Returns the member in a given column of the current row.
+     *
+     * @param i Ordinal of member column
+     * @return Member
+     */
+    Member getMember(int i) {
+        return members[i];
+    }
+
+    /**
+     * Returns the cell in a given column of the current row.
+     *
+     * @param i Ordinal of value column
+     * @return Cell
+     */
+    Cell getCell(int i) {
+        return cellSet.getCell(row * valueColumnCount + i);
+    }
+
+    /**
+     * Converts the value of a cell to a string that can be parsed back to
+     * the same value: {@link Number} and {@link Boolean} values use their
+     * {@code toString()}, and so do strings. Returns null if the cell is
+     * null.
+     *
+     * @param cell Cell
+     * @return Value as string, or null
+     */
+    static String toString(Cell cell) {
+        final Object value = cell.getValue();
+        return value == null ? null : value.toString();
+    }
+}
+
+// End CellSetFlattener.java
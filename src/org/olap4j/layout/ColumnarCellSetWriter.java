@@ -0,0 +1,275 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.layout;
+
+import org.olap4j.Cell;
+import org.olap4j.CellSet;
+import org.olap4j.metadata.Member;
+
+import java.io.*;
+
+/**
+ * Writes a {@link CellSet} in a compact binary columnar format.
+ *
+ * <p>The cell set is flattened as for {@link DelimitedCellSetFormatter}:
+ * member columns for the hierarchies on the rows axis (and any further
+ * axes), then one value column for each position on the columns axis. Rows
+ * are collected into blocks of a fixed number of rows, and each block is
+ * written column by column, so memory use depends on the block size and the
+ * number of columns, but not on the number of rows.
+ *
+ * <p>The format is as follows. Integers are big-endian, as written by
+ * {@link DataOutputStream}; strings are an <code>int</code> length followed
+ * by that many bytes of UTF-8.
+ *
+ * <pre>
+ * file     ::= "O4JC" version columnCount column* block* 0
+ * version  ::= int (currently 1)
+ * column   ::= kind:byte (0 = member, 1 = value) name:string
+ * block    ::= rowCount:int columnData*
+ * </pre>
+ *
+ * <p>For a member column, the data of a block is, for each row, either a
+ * byte 0 if the member is the same as in the previous row (within the same
+ * block or not), or a byte 1 followed by the unique name of the member.
+ *
+ * <p>For a value column, the data of a block is one tag byte for each row,
+ * followed by a payload for each row whose tag has one:
+ *
+ * <table border="1">
+ * <tr><th>Tag</th><th>Value</th><th>Payload</th></tr>
+ * <tr><td>0</td><td>null</td><td>none</td></tr>
+ * <tr><td>1</td><td>Double or Float</td><td>double</td></tr>
+ * <tr><td>2</td><td>Long, Integer, Short or Byte</td><td>long</td></tr>
+ * <tr><td>3</td><td>any other Number</td><td>string</td></tr>
+ * <tr><td>4</td><td>Boolean</td><td>byte</td></tr>
+ * <tr><td>5</td><td>anything else</td><td>string</td></tr>
+ * </table>
+ *
+ * <p><b>This class is experimental. It is not part of the olap4j
+ * specification and is subject to change without notice.</b></p>
+ *
+ * @author jhyde
+ */
+public class ColumnarCellSetWriter {
+    /**
+     * Number of rows per block if not specified.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 4096;
+
+    /** Magic number at the start of the format, "O4JC". */
+    static final int MAGIC = 0x4f344a43;
+
+    /** Version of the format. */
+    static final int VERSION = 1;
+
+    static final byte TAG_NULL = 0;
+    static final byte TAG_DOUBLE = 1;
+    static final byte TAG_LONG = 2;
+    static final byte TAG_DECIMAL = 3;
+    static final byte TAG_BOOLEAN = 4;
+    static final byte TAG_STRING = 5;
+
+    private final int blockSize;
+
+    /**
+     * Creates a ColumnarCellSetWriter with the default block size.
+     */
+    public ColumnarCellSetWriter() {
+        this(DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Creates a ColumnarCellSetWriter.
+     *
+     * @param blockSize Number of rows per block
+     */
+    public ColumnarCellSetWriter(int blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException(
+                "block size must be positive: " + blockSize);
+        }
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Writes a cell set to a stream. Does not close the stream.
+     *
+     * @param cellSet Cell set
+     * @param out Output stream
+     * @throws IOException on error
+     */
+    public void write(CellSet cellSet, OutputStream out) throws IOException {
+        final CellSetFlattener flattener = new CellSetFlattener(cellSet);
+        final int memberColumnCount = flattener.getMemberColumnCount();
+        final int valueColumnCount = flattener.getValueColumnCount();
+        final DataOutputStream data =
+            new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(memberColumnCount + valueColumnCount);
+        for (int i = 0; i < memberColumnCount; i++) {
+            data.writeByte(0);
+            writeString(data, flattener.getMemberColumnName(i));
+        }
+        for (int i = 0; i < valueColumnCount; i++) {
+            data.writeByte(1);
+            writeString(data, flattener.getValueColumnName(i));
+        }
+
+        // One buffer per column, reused for each block.
+        final Column[] columns = new Column[memberColumnCount];
+        for (int i = 0; i < memberColumnCount; i++) {
+            columns[i] = new Column(false, blockSize);
+        }
+        final Column[] valueColumns = new Column[valueColumnCount];
+        for (int i = 0; i < valueColumnCount; i++) {
+            valueColumns[i] = new Column(true, blockSize);
+        }
+        final Member[] prevMembers = new Member[memberColumnCount];
+        int rowCount = 0;
+        while (flattener.next()) {
+            for (int i = 0; i < memberColumnCount; i++) {
+                final Member member = flattener.getMember(i);
+                final DataOutputStream column = columns[i].payload;
+                if (member.equals(prevMembers[i])) {
+                    column.writeByte(0);
+                } else {
+                    column.writeByte(1);
+                    writeString(column, member.getUniqueName());
+                    prevMembers[i] = member;
+                }
+            }
+            for (int i = 0; i < valueColumnCount; i++) {
+                writeValue(valueColumns[i], flattener.getCell(i));
+            }
+            if (++rowCount == blockSize) {
+                writeBlock(data, rowCount, columns, valueColumns);
+                rowCount = 0;
+            }
+        }
+        if (rowCount > 0) {
+            writeBlock(data, rowCount, columns, valueColumns);
+        }
+        data.writeInt(0);
+        data.flush();
+    }
+
+    /**
+     * Writes the rows accumulated in the column buffers as a block, and
+     * empties the buffers.
+     */
+    private static void writeBlock(
+        DataOutputStream data,
+        int rowCount,
+        Column[] memberColumns,
+        Column[] valueColumns)
+        throws IOException
+    {
+        data.writeInt(rowCount);
+        for (Column column : memberColumns) {
+            column.writeTo(data);
+        }
+        for (Column column : valueColumns) {
+            column.writeTo(data);
+        }
+    }
+
+    /**
+     * Adds the value of a cell to a value column.
+     */
+    private static void writeValue(Column column, Cell cell)
+        throws IOException
+    {
+        final Object value = cell.getValue();
+        final DataOutputStream payload = column.payload;
+        if (value == null) {
+            column.tags.write(TAG_NULL);
+        } else if (value instanceof Double || value instanceof Float) {
+            column.tags.write(TAG_DOUBLE);
+            payload.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Long
+            || value instanceof Integer
+            || value instanceof Short
+            || value instanceof Byte)
+        {
+            column.tags.write(TAG_LONG);
+            payload.writeLong(((Number) value).longValue());
+        } else if (value instanceof Number) {
+            column.tags.write(TAG_DECIMAL);
+            writeString(payload, value.toString());
+        } else if (value instanceof Boolean) {
+            column.tags.write(TAG_BOOLEAN);
+            payload.writeByte((Boolean) value ? 1 : 0);
+        } else {
+            column.tags.write(TAG_STRING);
+            writeString(payload, value.toString());
+        }
+    }
+
+    /**
+     * Writes a string as its length in UTF-8 bytes followed by the bytes.
+     * Unlike {@link DataOutputStream#writeUTF(String)}, allows strings longer
+     * than 64KB.
+     */
+    private static void writeString(DataOutputStream data, String s)
+        throws IOException
+    {
+        final byte[] bytes = s.getBytes("UTF-8");
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+
+    /**
+     * Buffer for the contents of a column in the current block.
+     */
+    private static class Column {
+        /** Tag of each row. Used by value columns only. */
+        final ByteArrayOutputStream tags;
+        final ByteArrayOutputStream payloadBytes;
+        final DataOutputStream payload;
+
+        /**
+         * Creates a Column with buffers sized for a block of its kind. A
+         * value column has a tag byte and usually an 8-byte number for each
+         * row; a member column has no tags, and mostly one byte per row,
+         * because consecutive rows tend to share members.
+         *
+         * @param value Whether this is a value column
+         * @param blockSize Number of rows per block
+         */
+        Column(boolean value, int blockSize) {
+            tags = new ByteArrayOutputStream(value ? blockSize : 0);
+            payloadBytes =
+                new ByteArrayOutputStream(value ? blockSize * 8 : blockSize);
+            payload = new DataOutputStream(payloadBytes);
+        }
+
+        /**
+         * Writes the contents of this column and empties it.
+         */
+        void writeTo(OutputStream out) throws IOException {
+            tags.writeTo(out);
+            payloadBytes.writeTo(out);
+            tags.reset();
+            payloadBytes.reset();
+        }
+    }
+}
+
+// End ColumnarCellSetWriter.java
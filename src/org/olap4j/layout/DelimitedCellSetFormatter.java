@@ -0,0 +1,154 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.layout;
+
+import org.olap4j.CellSet;
+
+import java.io.PrintWriter;
+
+/**
+ * Formatter that exports a {@link CellSet} as delimited text, such as
+ * comma-separated values (CSV) or tab-separated values (TSV).
+ *
+ * <p>The cell set is flattened: each line has one field for each hierarchy
+ * on the rows axis (and any further axes), containing the unique name of
+ * the member, and one field for each position on the columns axis,
+ * containing the value of the cell. The first line, if enabled, contains
+ * column names. For example,
+ *
+ * <pre>
+ * [Store],"[Time].[1997].[Q1], [Measures].[Unit Sales]"
+ * [Store].[USA].[CA],16890.0
+ * [Store].[USA].[WA],30114.0
+ * </pre>
+ *
+ * <p>Values are not formatted. A null cell is an empty field. A field that
+ * contains the delimiter, a double-quote or a line break is enclosed in
+ * double-quotes, and its double-quotes are doubled, per RFC 4180.
+ *
+ * <p>Lines are written as they are generated, so memory use does not grow
+ * with the number of rows.
+ *
+ * <p><b>This class is experimental. It is not part of the olap4j
+ * specification and is subject to change without notice.</b></p>
+ *
+ * @author jhyde
+ */
+public class DelimitedCellSetFormatter implements CellSetFormatter {
+    private final char delimiter;
+    private final boolean header;
+
+    /**
+     * Creates a DelimitedCellSetFormatter.
+     *
+     * @param delimiter Field delimiter; typically ',' or '\t'
+     * @param header Whether to write a line of column names
+     */
+    public DelimitedCellSetFormatter(char delimiter, boolean header) {
+        if (delimiter == '"' || delimiter == '\r' || delimiter == '\n') {
+            throw new IllegalArgumentException(
+                "invalid delimiter '" + delimiter + "'");
+        }
+        this.delimiter = delimiter;
+        this.header = header;
+    }
+
+    /**
+     * Creates a DelimitedCellSetFormatter that writes a line of column
+     * names.
+     *
+     * @param delimiter Field delimiter; typically ',' or '\t'
+     */
+    public DelimitedCellSetFormatter(char delimiter) {
+        this(delimiter, true);
+    }
+
+    public void format(CellSet cellSet, PrintWriter pw) {
+        final CellSetFlattener flattener = new CellSetFlattener(cellSet);
+        final int memberColumnCount = flattener.getMemberColumnCount();
+        final int valueColumnCount = flattener.getValueColumnCount();
+        if (header) {
+            for (int i = 0; i < memberColumnCount; i++) {
+                if (i > 0) {
+                    pw.print(delimiter);
+                }
+                printField(pw, flattener.getMemberColumnName(i));
+            }
+            for (int i = 0; i < valueColumnCount; i++) {
+                if (i > 0 || memberColumnCount > 0) {
+                    pw.print(delimiter);
+                }
+                printField(pw, flattener.getValueColumnName(i));
+            }
+            pw.println();
+        }
+        while (flattener.next()) {
+            for (int i = 0; i < memberColumnCount; i++) {
+                if (i > 0) {
+                    pw.print(delimiter);
+                }
+                printField(pw, flattener.getMember(i).getUniqueName());
+            }
+            for (int i = 0; i < valueColumnCount; i++) {
+                if (i > 0 || memberColumnCount > 0) {
+                    pw.print(delimiter);
+                }
+                final String value =
+                    CellSetFlattener.toString(flattener.getCell(i));
+                if (value != null) {
+                    printField(pw, value);
+                }
+            }
+            pw.println();
+        }
+    }
+
+    /**
+     * Prints a field, quoting it if necessary.
+     *
+     * @param pw Print writer
+     * @param s Field value
+     */
+    private void printField(PrintWriter pw, String s) {
+        if (!needsQuote(s)) {
+            pw.print(s);
+            return;
+        }
+        pw.print('"');
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if (c == '"') {
+                pw.print('"');
+            }
+            pw.print(c);
+        }
+        pw.print('"');
+    }
+
+    private boolean needsQuote(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if (c == delimiter || c == '"' || c == '\r' || c == '\n') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
+
+// End DelimitedCellSetFormatter.java
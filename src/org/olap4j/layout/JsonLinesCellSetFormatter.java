@@ -0,0 +1,163 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.layout;
+
+import org.olap4j.Cell;
+import org.olap4j.CellSet;
+
+import java.io.PrintWriter;
+
+/**
+ * Formatter that exports a {@link CellSet} as JSON Lines: one JSON object
+ * per line.
+ *
+ * <p>The cell set is flattened as for {@link DelimitedCellSetFormatter}.
+ * Each object has one property for each hierarchy on the rows axis (and any
+ * further axes), whose value is the unique name of the member, and one
+ * property for each position on the columns axis, whose value is the value
+ * of the cell. For example,
+ *
+ * <pre>
+ * {"[Store]":"[Store].[USA].[CA]","[Measures].[Unit Sales]":16890.0}
+ * {"[Store]":"[Store].[USA].[WA]","[Measures].[Unit Sales]":30114.0}
+ * </pre>
+ *
+ * <p>Numeric values are written as JSON numbers, except infinities and NaN,
+ * which JSON cannot represent, and which are written as strings. Boolean
+ * values are written as JSON booleans, null cells as <code>null</code>, and
+ * all other values as strings.
+ *
+ * <p>Lines are written as they are generated, so memory use does not grow
+ * with the number of rows.
+ *
+ * <p><b>This class is experimental. It is not part of the olap4j
+ * specification and is subject to change without notice.</b></p>
+ *
+ * @author jhyde
+ */
+public class JsonLinesCellSetFormatter implements CellSetFormatter {
+    /**
+     * Creates a JsonLinesCellSetFormatter.
+     */
+    public JsonLinesCellSetFormatter() {
+    }
+
+    public void format(CellSet cellSet, PrintWriter pw) {
+        final CellSetFlattener flattener = new CellSetFlattener(cellSet);
+        final int memberColumnCount = flattener.getMemberColumnCount();
+        final int valueColumnCount = flattener.getValueColumnCount();
+
+        // Quote the property names once, not once per line.
+        final String[] names = new String[memberColumnCount + valueColumnCount];
+        final StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < names.length; i++) {
+            buf.setLength(0);
+            buf.append(i == 0 ? "{" : ",");
+            quote(
+                buf,
+                i < memberColumnCount
+                    ? flattener.getMemberColumnName(i)
+                    : flattener.getValueColumnName(i - memberColumnCount));
+            buf.append(':');
+            names[i] = buf.toString();
+        }
+
+        while (flattener.next()) {
+            for (int i = 0; i < memberColumnCount; i++) {
+                buf.setLength(0);
+                buf.append(names[i]);
+                quote(buf, flattener.getMember(i).getUniqueName());
+                pw.print(buf);
+            }
+            for (int i = 0; i < valueColumnCount; i++) {
+                buf.setLength(0);
+                buf.append(names[memberColumnCount + i]);
+                value(buf, flattener.getCell(i));
+                pw.print(buf);
+            }
+            pw.println(names.length == 0 ? "{}" : "}");
+        }
+    }
+
+    /**
+     * Appends the value of a cell as JSON.
+     *
+     * @param buf Buffer
+     * @param cell Cell
+     */
+    private static void value(StringBuilder buf, Cell cell) {
+        final Object value = cell.getValue();
+        if (value == null) {
+            buf.append("null");
+        } else if (value instanceof Double || value instanceof Float) {
+            final double d = ((Number) value).doubleValue();
+            if (Double.isNaN(d) || Double.isInfinite(d)) {
+                quote(buf, value.toString());
+            } else {
+                buf.append(value);
+            }
+        } else if (value instanceof Number) {
+            buf.append(value);
+        } else if (value instanceof Boolean) {
+            buf.append(value);
+        } else {
+            quote(buf, value.toString());
+        }
+    }
+
+    /**
+     * Appends a string as a JSON string literal.
+     *
+     * @param buf Buffer
+     * @param s String
+     */
+    static void quote(StringBuilder buf, String s) {
+        buf.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            switch (c) {
+            case '"':
+                buf.append("\\\"");
+                break;
+            case '\\':
+                buf.append("\\\\");
+                break;
+            case '\n':
+                buf.append("\\n");
+                break;
+            case '\r':
+                buf.append("\\r");
+                break;
+            case '\t':
+                buf.append("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    buf.append("\\u00");
+                    buf.append(Character.forDigit(c >> 4, 16));
+                    buf.append(Character.forDigit(c & 0xf, 16));
+                } else {
+                    buf.append(c);
+                }
+            }
+        }
+        buf.append('"');
+    }
+}
+
+// End JsonLinesCellSetFormatter.java
@@ -55,6 +55,14 @@ import java.util.*;
  *     CA Fresno          12        34.5         13       35.60
  * </pre>
  *
+ * <p>The formatter does not build the grid in memory. It makes one pass
+ * over the cells to compute the width of each column, then a second pass
+ * that prints each row as soon as it has been formatted; the only state
+ * proportional to the size of the cell set is the column headers and an
+ * array of column widths. For very large cell sets, use
+ * {@link #RectangularCellSetFormatter(boolean, int)} to compute column
+ * widths from the first few rows, and skip the first pass.
+ *
  * <p><b>This class is experimental. It is not part of the olap4j
  * specification and is subject to change without notice.</b></p>
  *
@@ -63,6 +71,7 @@ import java.util.*;
 */
 public class RectangularCellSetFormatter implements CellSetFormatter {
     private final boolean compact;
+    private final int sampleRowCount;
 
     /**
      * Creates a RectangularCellSetFormatter.
@@ -70,7 +79,25 @@ public class RectangularCellSetFormatter implements CellSetFormatter {
      * @param compact Whether to generate compact output
      */
     public RectangularCellSetFormatter(boolean compact) {
+        this(compact, -1);
+    }
+
+    /**
+     * Creates a RectangularCellSetFormatter that computes column widths from
+     * a sample of the rows.
+     *
+     * <p>Column widths are computed from the column headers and the first
+     * <code>sampleRowCount</code> rows; if a later row contains a wider
+     * value, the value is printed in full, and that row is not aligned with
+     * the others.
+     *
+     * @param compact Whether to generate compact output
+     * @param sampleRowCount Number of rows from which to compute column
+     * widths, or -1 to compute widths from all rows
+     */
+    public RectangularCellSetFormatter(boolean compact, int sampleRowCount) {
         this.compact = compact;
+        this.sampleRowCount = sampleRowCount;
     }
 
     public void format(CellSet cellSet, PrintWriter pw) {
@@ -94,6 +121,10 @@ public class RectangularCellSetFormatter implements CellSetFormatter {
         }
         AxisInfo rowsAxisInfo = computeAxisInfo(rowsAxis);
 
+        // Column headers are the same on every page.
+        final ColumnHeaders columnHeaders =
+            new ColumnHeaders(columnsAxis, columnsAxisInfo);
+
         if (cellSet.getAxes().size() > 2) {
             int[] dimensions = new int[cellSet.getAxes().size() - 2];
             for (int i = 2; i < cellSet.getAxes().size(); i++) {
@@ -105,8 +136,7 @@ public class RectangularCellSetFormatter implements CellSetFormatter {
                     cellSet,
                     pw,
                     pageCoords,
-                    columnsAxis,
-                    columnsAxisInfo,
+                    columnHeaders,
                     rowsAxis,
                     rowsAxisInfo);
             }
@@ -115,8 +145,7 @@ public class RectangularCellSetFormatter implements CellSetFormatter {
                 cellSet,
                 pw,
                 new int[] {},
-                columnsAxis,
-                columnsAxisInfo,
+                columnHeaders,
                 rowsAxis,
                 rowsAxisInfo);
         }
@@ -128,8 +157,7 @@ public class RectangularCellSetFormatter implements CellSetFormatter {
      * @param cellSet Cell set
      * @param pw Print writer
      * @param pageCoords Coordinates of page [page, chapter, section, ...]
-     * @param columnsAxis Columns axis
-     * @param columnsAxisInfo Description of columns axis
+     * @param columnHeaders Captions of columns axis
      * @param rowsAxis Rows axis
      * @param rowsAxisInfo Description of rows axis
      */
@@ -137,8 +165,7 @@ public class RectangularCellSetFormatter implements CellSetFormatter {
         CellSet cellSet,
         PrintWriter pw,
         int[] pageCoords,
-        CellSetAxis columnsAxis,
-        AxisInfo columnsAxisInfo,
+        ColumnHeaders columnHeaders,
         CellSetAxis rowsAxis,
         AxisInfo rowsAxisInfo)
     {
@@ -162,224 +189,132 @@ public class RectangularCellSetFormatter implements CellSetFormatter {
         }
         // Figure out the dimensions of the blank rectangle in the top left
         // corner.
-        final int yOffset = columnsAxisInfo.getWidth();
-        final int xOffsset = rowsAxisInfo.getWidth();
-
-        // Populate a string matrix
-        Matrix matrix =
-            new Matrix(
-                xOffsset
-                + (columnsAxis == null
-                    ? 1
-                    : columnsAxis.getPositions().size()),
-                yOffset
-                + (rowsAxis == null
-                    ? 1
-                    : rowsAxis.getPositions().size()));
+        final int yOffset = columnHeaders.height;
+        final int xOffset = rowsAxisInfo.getWidth();
+        final int columnCount = columnHeaders.columnCount;
+        final int rowCount =
+            rowsAxis == null
+                ? 1
+                : rowsAxis.getPositions().size();
+        final int width = xOffset + columnCount;
+
+        // Ordinal of the first cell of the page. Cells are numbered with
+        // the columns axis varying fastest, then rows, then pages.
+        int pageOrdinal = 0;
+        int stride = columnCount * rowCount;
+        for (int i = 0; i < pageCoords.length; i++) {
+            pageOrdinal += pageCoords[i] * stride;
+            stride *= cellSet.getAxes().get(2 + i).getPositions().size();
+        }
 
-        // Populate corner
-        for (int x = 0; x < xOffsset; x++) {
-            for (int y = 0; y < yOffset; y++) {
-                matrix.set(x, y, "", false, x > 0);
+        // First pass: compute column widths. The corner is blank.
+        final int[] columnWidths = new int[width];
+        for (int y = 0; y < yOffset; y++) {
+            for (int i = 0; i < columnCount; i++) {
+                columnWidths[xOffset + i] =
+                    Math.max(
+                        columnWidths[xOffset + i],
+                        columnHeaders.captions[y][i].length());
             }
         }
-
-        // Populate matrix with cells representing axes
-        //noinspection SuspiciousNameCombination
-        populateAxis(
-            matrix, columnsAxis, columnsAxisInfo, true, xOffsset);
-        populateAxis(
-            matrix, rowsAxis, rowsAxisInfo, false, yOffset);
-
-        // Populate cell values
-        for (Cell cell : cellIter(pageCoords, cellSet)) {
-            final List<Integer> coordList = cell.getCoordinateList();
-            int x = xOffsset;
-            if (coordList.size() > 0) {
-                x += coordList.get(0);
+        final String[] rowCaptions = new String[xOffset];
+        final RowHeaders rowHeaders = new RowHeaders(rowsAxis, rowsAxisInfo);
+        final int sampleCount =
+            sampleRowCount < 0
+                ? rowCount
+                : Math.min(sampleRowCount, rowCount);
+        for (int r = 0; r < sampleCount; r++) {
+            rowHeaders.captions(r, rowCaptions);
+            for (int x = 0; x < xOffset; x++) {
+                columnWidths[x] =
+                    Math.max(columnWidths[x], rowCaptions[x].length());
             }
-            int y = yOffset;
-            if (coordList.size() > 1) {
-                y += coordList.get(1);
+            final int rowOrdinal = pageOrdinal + r * columnCount;
+            for (int i = 0; i < columnCount; i++) {
+                final String value =
+                    cellSet.getCell(rowOrdinal + i).getFormattedValue();
+                columnWidths[xOffset + i] =
+                    Math.max(columnWidths[xOffset + i], value.length());
             }
-            matrix.set(
-                x, y, cell.getFormattedValue(), true, false);
         }
-
-        int[] columnWidths = new int[matrix.width];
         int widestWidth = 0;
-        for (int x = 0; x < matrix.width; x++) {
-            int columnWidth = 0;
-            for (int y = 0; y < matrix.height; y++) {
-                MatrixCell cell = matrix.get(x, y);
-                if (cell != null) {
-                    columnWidth =
-                        Math.max(columnWidth, cell.value.length());
-                }
-            }
-            columnWidths[x] = columnWidth;
+        for (int columnWidth : columnWidths) {
             widestWidth = Math.max(columnWidth, widestWidth);
         }
 
         // Create a large array of spaces, for efficient printing.
-        char[] spaces = new char[widestWidth + 1];
-        Arrays.fill(spaces, ' ');
-        char[] equals = new char[widestWidth + 1];
-        Arrays.fill(equals, '=');
-        char[] dashes = new char[widestWidth + 3];
-        Arrays.fill(dashes, '-');
-
-        if (compact) {
-            for (int y = 0; y < matrix.height; y++) {
-                for (int x = 0; x < matrix.width; x++) {
-                    if (x > 0) {
-                        pw.print(' ');
-                    }
-                    final MatrixCell cell = matrix.get(x, y);
-                    final int len;
-                    if (cell != null) {
-                        if (cell.sameAsPrev) {
-                            len = 0;
-                        } else {
-                            if (cell.right) {
-                                int padding =
-                                    columnWidths[x] - cell.value.length();
-                                pw.write(spaces, 0, padding);
-                                pw.print(cell.value);
-                                continue;
-                            }
-                            pw.print(cell.value);
-                            len = cell.value.length();
-                        }
-                    } else {
-                        len = 0;
-                    }
-                    if (x == matrix.width - 1) {
-                        // at last column; don't bother to print padding
-                        break;
-                    }
-                    int padding = columnWidths[x] - len;
-                    pw.write(spaces, 0, padding);
-                }
-                pw.println();
-                if (y == yOffset - 1) {
-                    for (int x = 0; x < matrix.width; x++) {
-                        if (x > 0) {
-                            pw.write(' ');
-                        }
-                        pw.write(equals, 0, columnWidths[x]);
-                    }
-                    pw.println();
-                }
+        final Printer printer = new Printer(pw, columnWidths, widestWidth);
+
+        // Second pass: print the column headers, then each row as soon as it
+        // has been formatted.
+        for (int y = 0; y < yOffset; y++) {
+            for (int x = 0; x < xOffset; x++) {
+                printer.cell(x, "", false, x > 0);
             }
-        } else {
-            for (int y = 0; y < matrix.height; y++) {
-                for (int x = 0; x < matrix.width; x++) {
-                    final MatrixCell cell = matrix.get(x, y);
-                    final int len;
-                    if (cell != null) {
-                        if (cell.sameAsPrev) {
-                            pw.print("  ");
-                            len = 0;
-                        } else {
-                            pw.print("| ");
-                            if (cell.right) {
-                                int padding =
-                                    columnWidths[x] - cell.value.length();
-                                pw.write(spaces, 0, padding);
-                                pw.print(cell.value);
-                                pw.print(' ');
-                                continue;
-                            }
-                            pw.print(cell.value);
-                            len = cell.value.length();
-                        }
-                    } else {
-                        pw.print("| ");
-                        len = 0;
-                    }
-                    int padding = columnWidths[x] - len;
-                    ++padding;
-                    pw.write(spaces, 0, padding);
-                }
-                pw.println('|');
-                if (y == yOffset - 1) {
-                    for (int x = 0; x < matrix.width; x++) {
-                        pw.write('+');
-                        pw.write(dashes, 0, columnWidths[x] + 2);
-                    }
-                    pw.println('+');
-                }
+            for (int i = 0; i < columnCount; i++) {
+                printer.cell(
+                    xOffset + i,
+                    columnHeaders.captions[y][i],
+                    false,
+                    columnHeaders.sameAsPrev[y][i]);
+            }
+            printer.endRow();
+            if (y == yOffset - 1) {
+                printer.separator();
             }
         }
+        rowHeaders.reset();
+        for (int r = 0; r < rowCount; r++) {
+            rowHeaders.captions(r, rowCaptions);
+            for (int x = 0; x < xOffset; x++) {
+                printer.cell(x, rowCaptions[x], false, false);
+            }
+            final int rowOrdinal = pageOrdinal + r * columnCount;
+            for (int i = 0; i < columnCount; i++) {
+                printer.cell(
+                    xOffset + i,
+                    cellSet.getCell(rowOrdinal + i).getFormattedValue(),
+                    true,
+                    false);
+            }
+            printer.endRow();
+        }
     }
 
     /**
-     * Populates cells in the matrix corresponding to a particular axis.
+     * Computes the members to display for a position on an axis. The member
+     * at each level of each hierarchy, down to the member itself, is
+     * placed in the corresponding slot of <code>members</code>; other slots
+     * are set to null.
      *
-     * @param matrix Matrix to populate
-     * @param axis Axis
+     * @param position Position
      * @param axisInfo Description of axis
-     * @param isColumns True if columns, false if rows
-     * @param offset Ordinal of first cell to populate in matrix
+     * @param members Array to populate, length {@link AxisInfo#getWidth()}
      */
-    private void populateAxis(
-        Matrix matrix,
-        CellSetAxis axis,
+    private static void computeMembers(
+        Position position,
         AxisInfo axisInfo,
-        boolean isColumns,
-        int offset)
+        Member[] members)
     {
-        if (axis == null) {
-            return;
-        }
-        Member[] prevMembers = new Member[axisInfo.getWidth()];
-        Member[] members = new Member[axisInfo.getWidth()];
-        for (int i = 0; i < axis.getPositions().size(); i++) {
-            final int x = offset + i;
-            Position position = axis.getPositions().get(i);
-            int yOffset = 0;
-            final List<Member> memberList = position.getMembers();
-            for (int j = 0; j < memberList.size(); j++) {
-                Member member = memberList.get(j);
-                final AxisOrdinalInfo ordinalInfo =
-                    axisInfo.ordinalInfos.get(j);
-                while (member != null) {
-                    if (member.getDepth() < ordinalInfo.minDepth) {
-                        break;
-                    }
-                    final int y =
-                        yOffset
-                        + member.getDepth()
-                        - ordinalInfo.minDepth;
-                    members[y] = member;
-                    member = member.getParentMember();
+        Arrays.fill(members, null);
+        int yOffset = 0;
+        final List<Member> memberList = position.getMembers();
+        for (int j = 0; j < memberList.size(); j++) {
+            Member member = memberList.get(j);
+            final AxisOrdinalInfo ordinalInfo =
+                axisInfo.ordinalInfos.get(j);
+            while (member != null) {
+                if (member.getDepth() < ordinalInfo.minDepth) {
+                    break;
                 }
-                yOffset += ordinalInfo.getWidth();
-            }
-            boolean same = true;
-            for (int y = 0; y < members.length; y++) {
-                Member member = members[y];
-                same =
-                    same
-                    && i > 0
-                    && Olap4jUtil.equal(prevMembers[y], member);
-                String value =
-                    member == null
-                        ? ""
-                        : member.getCaption();
-                if (isColumns) {
-                    matrix.set(x, y, value, false, same);
-                } else {
-                    if (same) {
-                        value = "";
-                    }
-                    //noinspection SuspiciousNameCombination
-                    matrix.set(y, x, value, false, false);
-                }
-                prevMembers[y] = member;
-                members[y] = null;
+                final int y =
+                    yOffset
+                    + member.getDepth()
+                    - ordinalInfo.minDepth;
+                members[y] = member;
+                member = member.getParentMember();
             }
+            yOffset += ordinalInfo.getWidth();
         }
     }
 
@@ -424,54 +359,6 @@ public class RectangularCellSetFormatter implements CellSetFormatter {
         return axisInfo;
     }
 
-    /**
-     * Returns an iterator over cells in a result.
-     */
-    private static Iterable<Cell> cellIter(
-        final int[] pageCoords,
-        final CellSet cellSet)
-    {
-        return new Iterable<Cell>() {
-            public Iterator<Cell> iterator() {
-                int[] axisDimensions =
-                    new int[cellSet.getAxes().size() - pageCoords.length];
-                assert pageCoords.length <= axisDimensions.length;
-                for (int i = 0; i < axisDimensions.length; i++) {
-                    CellSetAxis axis = cellSet.getAxes().get(i);
-                    axisDimensions[i] = axis.getPositions().size();
-                }
-                final CoordinateIterator coordIter =
-                    new CoordinateIterator(axisDimensions, true);
-                return new Iterator<Cell>() {
-                    public boolean hasNext() {
-                        return coordIter.hasNext();
-                    }
-
-                    public Cell next() {
-                        final int[] ints = coordIter.next();
-                        final AbstractList<Integer> intList =
-                            new AbstractList<Integer>() {
-                                public Integer get(int index) {
-                                    return index < ints.length
-                                        ? ints[index]
-                                        : pageCoords[index - ints.length];
-                                }
-
-                                public int size() {
-                                    return pageCoords.length + ints.length;
-                                }
-                            };
-                        return cellSet.getCell(intList);
-                    }
-
-                    public void remove() {
-                        throw new UnsupportedOperationException();
-                    }
-                };
-            }
-        };
-    }
-
     /**
      * Description of a particular hierarchy mapped to an axis.
      */
@@ -522,96 +409,248 @@ public class RectangularCellSetFormatter implements CellSetFormatter {
     }
 
     /**
-     * Two-dimensional collection of string values.
+     * Captions of the columns axis, indexed by header row and position
+     * ordinal.
      */
-    private class Matrix {
-        private final Map<List<Integer>, MatrixCell> map =
-            new HashMap<List<Integer>, MatrixCell>();
-        private final int width;
-        private final int height;
+    private static class ColumnHeaders {
+        final int height;
+        final int columnCount;
+        final String[][] captions;
 
         /**
-         * Creats a Matrix.
+         * Whether each caption is the same as the caption to its left, and
+         * so spans both columns.
+         */
+        final boolean[][] sameAsPrev;
+
+        /**
+         * Creates a ColumnHeaders.
          *
-         * @param width Width of matrix
-         * @param height Height of matrix
+         * @param axis Columns axis, or null if the cell set has no axes
+         * @param axisInfo Description of columns axis
          */
-        public Matrix(int width, int height) {
-            this.width = width;
-            this.height = height;
+        ColumnHeaders(CellSetAxis axis, AxisInfo axisInfo) {
+            this.height = axisInfo.getWidth();
+            this.columnCount =
+                axis == null
+                    ? 1
+                    : axis.getPositions().size();
+            this.captions = new String[height][columnCount];
+            this.sameAsPrev = new boolean[height][columnCount];
+            if (axis == null) {
+                return;
+            }
+            Member[] prevMembers = new Member[height];
+            Member[] members = new Member[height];
+            for (int i = 0; i < columnCount; i++) {
+                computeMembers(axis.getPositions().get(i), axisInfo, members);
+                boolean same = true;
+                for (int y = 0; y < height; y++) {
+                    Member member = members[y];
+                    same =
+                        same
+                        && i > 0
+                        && Olap4jUtil.equal(prevMembers[y], member);
+                    captions[y][i] =
+                        member == null
+                            ? ""
+                            : member.getCaption();
+                    sameAsPrev[y][i] = same;
+                }
+                Member[] tmp = prevMembers;
+                prevMembers = members;
+                members = tmp;
+            }
         }
+    }
+
+    /**
+     * Generates the captions of the rows axis, one row at a time. A caption
+     * that is the same as the one above it is blank.
+     */
+    private static class RowHeaders {
+        private final CellSetAxis axis;
+        private final AxisInfo axisInfo;
+        private Member[] prevMembers;
+        private Member[] members;
+        private int prevOrdinal;
 
         /**
-         * Sets the value at a particular coordinate
+         * Creates a RowHeaders.
          *
-         * @param x X coordinate
-         * @param y Y coordinate
-         * @param value Value
+         * @param axis Rows axis, or null if the cell set has fewer than two
+         *     axes
+         * @param axisInfo Description of rows axis
          */
-        void set(int x, int y, String value) {
-            set(x, y, value, false, false);
+        RowHeaders(CellSetAxis axis, AxisInfo axisInfo) {
+            this.axis = axis;
+            this.axisInfo = axisInfo;
+            this.prevMembers = new Member[axisInfo.getWidth()];
+            this.members = new Member[axisInfo.getWidth()];
+            reset();
         }
 
         /**
-         * Sets the value at a particular coordinate
-         *
-         * @param x X coordinate
-         * @param y Y coordinate
-         * @param value Value
-         * @param right Whether value is right-justified
-         * @param sameAsPrev Whether value is the same as the previous value.
-         * If true, some formats separators between cells
+         * Prepares to generate captions starting from the first row.
          */
-        void set(
-            int x,
-            int y,
-            String value,
-            boolean right,
-            boolean sameAsPrev)
-        {
-            map.put(
-                Arrays.asList(x, y),
-                new MatrixCell(value, right, sameAsPrev));
-            assert x >= 0 && x < width : x;
-            assert y >= 0 && y < height : y;
+        void reset() {
+            Arrays.fill(prevMembers, null);
+            prevOrdinal = -1;
         }
 
         /**
-         * Returns the cell at a particular coordinate.
+         * Computes the captions of a row. Rows must be requested in order.
          *
-         * @param x X coordinate
-         * @param y Y coordinate
-         * @return Cell
+         * @param i Ordinal of position on rows axis
+         * @param captions Array to populate
          */
-        public MatrixCell get(int x, int y) {
-            return map.get(Arrays.asList(x, y));
+        void captions(int i, String[] captions) {
+            if (axis == null) {
+                return;
+            }
+            assert i == prevOrdinal + 1 : i;
+            prevOrdinal = i;
+            computeMembers(axis.getPositions().get(i), axisInfo, members);
+            boolean same = true;
+            for (int y = 0; y < members.length; y++) {
+                Member member = members[y];
+                same =
+                    same
+                    && i > 0
+                    && Olap4jUtil.equal(prevMembers[y], member);
+                captions[y] =
+                    member == null || same
+                        ? ""
+                        : member.getCaption();
+            }
+            Member[] tmp = prevMembers;
+            prevMembers = members;
+            members = tmp;
         }
     }
 
     /**
-     * Contents of a cell in a matrix.
+     * Prints cells, padded to the width of their column, and the separator
+     * between the column headers and the rows.
      */
-    private static class MatrixCell {
-        final String value;
-        final boolean right;
-        final boolean sameAsPrev;
+    private class Printer {
+        private final PrintWriter pw;
+        private final int[] columnWidths;
+        private final char[] spaces;
+        private final char[] equals;
+        private final char[] dashes;
+
+        /**
+         * Creates a Printer.
+         *
+         * @param pw Print writer
+         * @param columnWidths Width of each column
+         * @param widestWidth Width of widest column
+         */
+        Printer(PrintWriter pw, int[] columnWidths, int widestWidth) {
+            this.pw = pw;
+            this.columnWidths = columnWidths;
+            spaces = new char[widestWidth + 1];
+            Arrays.fill(spaces, ' ');
+            equals = new char[widestWidth + 1];
+            Arrays.fill(equals, '=');
+            dashes = new char[widestWidth + 3];
+            Arrays.fill(dashes, '-');
+        }
 
         /**
-         * Creates a matrix cell.
+         * Prints a cell.
          *
+         * @param x Column ordinal
          * @param value Value
          * @param right Whether value is right-justified
          * @param sameAsPrev Whether value is the same as the previous value.
          * If true, some formats separators between cells
          */
-        MatrixCell(
-            String value,
-            boolean right,
-            boolean sameAsPrev)
-        {
-            this.value = value;
-            this.right = right;
-            this.sameAsPrev = sameAsPrev;
+        void cell(int x, String value, boolean right, boolean sameAsPrev) {
+            if (compact) {
+                if (x > 0) {
+                    pw.print(' ');
+                }
+                final int len;
+                if (sameAsPrev) {
+                    len = 0;
+                } else {
+                    if (right) {
+                        pad(columnWidths[x] - value.length());
+                        pw.print(value);
+                        return;
+                    }
+                    pw.print(value);
+                    len = value.length();
+                }
+                if (x == columnWidths.length - 1) {
+                    // at last column; don't bother to print padding
+                    return;
+                }
+                pad(columnWidths[x] - len);
+            } else {
+                final int len;
+                if (sameAsPrev) {
+                    pw.print("  ");
+                    len = 0;
+                } else {
+                    pw.print("| ");
+                    if (right) {
+                        pad(columnWidths[x] - value.length());
+                        pw.print(value);
+                        pw.print(' ');
+                        return;
+                    }
+                    pw.print(value);
+                    len = value.length();
+                }
+                pad(columnWidths[x] - len + 1);
+            }
+        }
+
+        /**
+         * Prints padding. Does nothing if the value was wider than the
+         * column, which can happen if widths were computed from a sample.
+         *
+         * @param padding Number of spaces
+         */
+        private void pad(int padding) {
+            if (padding > 0) {
+                pw.write(spaces, 0, padding);
+            }
+        }
+
+        /**
+         * Ends a row.
+         */
+        void endRow() {
+            if (compact) {
+                pw.println();
+            } else {
+                pw.println('|');
+            }
+        }
+
+        /**
+         * Prints the line between the column headers and the rows.
+         */
+        void separator() {
+            if (compact) {
+                for (int x = 0; x < columnWidths.length; x++) {
+                    if (x > 0) {
+                        pw.write(' ');
+                    }
+                    pw.write(equals, 0, columnWidths[x]);
+                }
+                pw.println();
+            } else {
+                for (int x = 0; x < columnWidths.length; x++) {
+                    pw.write('+');
+                    pw.write(dashes, 0, columnWidths[x] + 2);
+                }
+                pw.println('+');
+            }
         }
     }
 }
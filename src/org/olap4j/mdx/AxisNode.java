@@ -18,6 +18,8 @@
 package org.olap4j.mdx;
 
 import org.olap4j.Axis;
+import org.olap4j.impl.Freezable;
+import org.olap4j.impl.Olap4jUtil;
 import org.olap4j.type.Type;
 
 import java.io.PrintWriter;
@@ -28,14 +30,16 @@ import java.util.List;
  * An axis in an MDX query. For example, the typical MDX query has two axes,
  * which appear as the "ON COLUMNS" and "ON ROWS" clauses.
  */
-public class AxisNode implements ParseTreeNode {
+public class AxisNode implements ParseTreeNode, Freezable {
 
     private final ParseRegion region;
     private boolean nonEmpty;
     private ParseTreeNode expression;
     private final Axis axis;
 
-    private final List<IdentifierNode> dimensionProperties;
+    private List<IdentifierNode> dimensionProperties;
+    private boolean frozen;
+    private int hash;
 
     /**
      * Creates an axis.
@@ -107,6 +111,7 @@ public class AxisNode implements ParseTreeNode {
      * @param nonEmpty whether the axis is NON EMPTY
      */
     public void setNonEmpty(boolean nonEmpty) {
+        MdxUtil.checkNotFrozen(this);
         this.nonEmpty = nonEmpty;
     }
 
@@ -127,6 +132,7 @@ public class AxisNode implements ParseTreeNode {
      * axis
      */
     public void setExpression(ParseTreeNode expr) {
+        MdxUtil.checkNotFrozen(this);
         this.expression = expr;
     }
 
@@ -176,6 +182,53 @@ public class AxisNode implements ParseTreeNode {
             MdxUtil.deepCopyList(dimensionProperties),
             this.expression != null ? this.expression.deepCopy() : null);
     }
+
+    public AxisNode freeze() {
+        if (!frozen) {
+            if (expression != null) {
+                MdxUtil.freeze(expression);
+            }
+            dimensionProperties = MdxUtil.freezeList(dimensionProperties);
+            frozen = true;
+        }
+        return this;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    @Override
+    public int hashCode() {
+        if (hash != 0) {
+            return hash;
+        }
+        int result = axis.hashCode();
+        result = 31 * result + (nonEmpty ? 1 : 0);
+        result = 31 * result
+            + (expression == null ? 0 : expression.hashCode());
+        result = 31 * result + dimensionProperties.hashCode();
+        if (frozen) {
+            hash = result;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof AxisNode)) {
+            return false;
+        }
+        final AxisNode that = (AxisNode) obj;
+        return MdxUtil.maybeEqual(this, that)
+            && axis.equals(that.axis)
+            && nonEmpty == that.nonEmpty
+            && Olap4jUtil.equal(expression, that.expression)
+            && dimensionProperties.equals(that.dimensionProperties);
+    }
 }
 
 // End AxisNode.java
@@ -17,6 +17,7 @@
 */
 package org.olap4j.mdx;
 
+import org.olap4j.impl.Freezable;
 import org.olap4j.type.Type;
 
 import java.util.Arrays;
@@ -42,13 +43,15 @@ import java.util.List;
  * @author jhyde
  * @since Jan 6, 2006
  */
-public class CallNode implements ParseTreeNode {
+public class CallNode implements ParseTreeNode, Freezable {
 
     private final String name;
     private final Syntax syntax;
-    private final List<ParseTreeNode> argList;
+    private List<ParseTreeNode> argList;
     private final ParseRegion region;
     private Type type;
+    private boolean frozen;
+    private int hash;
 
     /**
      * Creates a CallNode.
@@ -141,6 +144,7 @@ public class CallNode implements ParseTreeNode {
      * @param type Result type of this call
      */
     public void setType(Type type) {
+        MdxUtil.checkNotFrozen(this);
         this.type = type;
     }
 
@@ -182,6 +186,8 @@ public class CallNode implements ParseTreeNode {
     /**
      * Returns the list of arguments to this call.
      *
+     * <p>If this node is frozen, the list is unmodifiable.
+     *
      * @return list of arguments
      */
     public List<ParseTreeNode> getArgList() {
@@ -196,13 +202,31 @@ public class CallNode implements ParseTreeNode {
             MdxUtil.deepCopyList(argList));
     }
 
+    public CallNode freeze() {
+        if (!frozen) {
+            argList = MdxUtil.freezeList(argList);
+            frozen = true;
+        }
+        return this;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
     @Override
     public int hashCode() {
+        if (hash != 0) {
+            return hash;
+        }
         final int prime = 31;
         int result = 1;
         result = prime * result + ((argList == null) ? 0 : argList.hashCode());
         result = prime * result + ((name == null) ? 0 : name.hashCode());
         result = prime * result + ((syntax == null) ? 0 : syntax.hashCode());
+        if (frozen) {
+            hash = result;
+        }
         return result;
     }
 
@@ -218,6 +242,9 @@ public class CallNode implements ParseTreeNode {
             return false;
         }
         CallNode other = (CallNode) obj;
+        if (!MdxUtil.maybeEqual(this, other)) {
+            return false;
+        }
         if (argList == null) {
             if (other.argList != null) {
                 return false;
@@ -17,6 +17,7 @@
 */
 package org.olap4j.mdx;
 
+import org.olap4j.impl.Freezable;
 import org.olap4j.metadata.Cube;
 import org.olap4j.type.CubeType;
 import org.olap4j.type.Type;
@@ -28,7 +29,7 @@ import org.olap4j.type.Type;
  * @author jhyde
  * @since Jun 4, 2007
  */
-public class CubeNode implements ParseTreeNode {
+public class CubeNode implements ParseTreeNode, Freezable {
     private final ParseRegion region;
     private final Cube cube;
 
@@ -80,6 +81,27 @@ public class CubeNode implements ParseTreeNode {
         return this;
     }
 
+    public CubeNode freeze() {
+        // CubeNode is immutable
+        return this;
+    }
+
+    public boolean isFrozen() {
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return cube.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj == this
+            || obj instanceof CubeNode
+            && cube.equals(((CubeNode) obj).cube);
+    }
+
 }
 
 // End CubeNode.java
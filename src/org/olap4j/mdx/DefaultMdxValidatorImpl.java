@@ -17,218 +17,1075 @@
 */
 package org.olap4j.mdx;
 
-import org.olap4j.OlapException;
+import org.olap4j.*;
+import org.olap4j.impl.ExtendedCube;
+import org.olap4j.impl.Olap4jUtil;
 import org.olap4j.mdx.parser.MdxValidator;
-import org.olap4j.type.Type;
-import org.olap4j.type.TypeUtil;
+import org.olap4j.metadata.*;
+import org.olap4j.type.*;
 
-import java.util.List;
-import java.util.Stack;
+import java.util.*;
 
 /**
- * Visitor which passes over a tree of MDX nodes, checks that they are valid,
- * and assigns a type to each.
+ * Validator which checks that a parse tree of an MDX statement is valid
+ * against the metadata of a connection, and assigns a type to each
+ * expression.
+ *
+ * <p>Validation does not execute the statement on the server. It reads the
+ * metadata of the cube in the <code>FROM</code> clause, which drivers
+ * generally cache. First, the validator collects all of the identifiers in
+ * the statement and resolves them together: identifiers of dimensions,
+ * hierarchies, levels and measures are resolved from the cube's metadata,
+ * and all remaining members are looked up using one call to
+ * {@link ExtendedCube#lookupMemberRelatives}.
+ * Then it replaces each identifier with a {@link MemberNode},
+ * {@link LevelNode}, {@link HierarchyNode}, {@link DimensionNode} or
+ * {@link CubeNode}, and derives the type of each {@link CallNode} from the
+ * types of its arguments.
+ *
+ * <p>Identifiers that refer to calculated members and sets defined in the
+ * <code>WITH</code> clause, or to the named sets of the cube, are not
+ * replaced. The validator does not know every function of every server;
+ * a call to a function it does not know is allowed, and its type is null.
+ *
+ * <p>If the statement is frozen, the validator validates a copy of it.
  *
  * <p>NOTE: This class is experimental. Not part of the public olap4j API.
  *
  * @author jhyde
  * @since Jun 4, 2007
  */
-class DefaultMdxValidatorImpl
-    implements ParseTreeVisitor<ParseTreeNode>, MdxValidator
-{
-    private Stack<Boolean> scalarStack = new Stack<Boolean>();
-    private final SelectNode selectNode;
+public class DefaultMdxValidatorImpl implements MdxValidator {
+    private static final MemberType UNKNOWN_MEMBER =
+        new MemberType(null, null, null, null);
+
+    private static final Set<String> SAME_SET_FUNCTIONS =
+        new HashSet<String>(
+            Arrays.asList(
+                "ADDCALCULATEDMEMBERS", "BOTTOMCOUNT", "BOTTOMPERCENT",
+                "BOTTOMSUM", "DISTINCT", "DRILLDOWNLEVEL",
+                "DRILLDOWNLEVELBOTTOM", "DRILLDOWNLEVELTOP",
+                "DRILLDOWNMEMBER", "DRILLDOWNMEMBERBOTTOM",
+                "DRILLDOWNMEMBERTOP", "DRILLUPLEVEL", "DRILLUPMEMBER",
+                "EXCEPT", "FILTER", "HEAD", "HIERARCHIZE", "INTERSECT",
+                "NONEMPTY", "ORDER", "STRIPCALCULATEDMEMBERS", "SUBSET",
+                "TAIL", "TOGGLEDRILLSTATE", "TOPCOUNT", "TOPPERCENT",
+                "TOPSUM", "UNION", "UNORDER", "VISUALTOTALS"));
+
+    private static final Set<String> MEMBER_SET_FUNCTIONS =
+        new HashSet<String>(
+            Arrays.asList(
+                "ALLMEMBERS", "ANCESTORS", "ASCENDANTS", "LASTPERIODS",
+                "MEMBERS", "MTD", "PERIODSTODATE", "QTD", "WTD", "YTD"));
+
+    private static final Set<String> MEMBER_FUNCTIONS =
+        new HashSet<String>(
+            Arrays.asList(
+                "ANCESTOR", "CLOSINGPERIOD", "COUSIN", "LINKMEMBER",
+                "OPENINGPERIOD", "PARALLELPERIOD"));
+
+    private static final Set<String> NUMERIC_FUNCTIONS =
+        new HashSet<String>(
+            Arrays.asList(
+                "ABS", "AGGREGATE", "AVG", "CDBL", "CORRELATION", "COUNT",
+                "COVARIANCE", "COVARIANCEN", "DISTINCTCOUNT", "INSTR", "INT",
+                "LEN", "LINREGINTERCEPT", "LINREGPOINT", "LINREGR2",
+                "LINREGSLOPE", "LINREGVARIANCE", "MAX", "MEDIAN", "MIN",
+                "RANK", "ROUND", "STDDEV", "STDDEVP", "STDEV", "STDEVP", "SUM",
+                "VAL", "VAR", "VARIANCE", "VARIANCEP", "VARP"));
+
+    private static final Set<String> BOOLEAN_FUNCTIONS =
+        new HashSet<String>(
+            Arrays.asList(
+                "ISANCESTOR", "ISEMPTY", "ISGENERATION", "ISLEAF",
+                "ISSIBLING"));
+
+    private static final Set<String> STRING_FUNCTIONS =
+        new HashSet<String>(
+            Arrays.asList(
+                "CSTR", "FORMAT", "LCASE", "LEFT", "LTRIM", "MID", "RIGHT",
+                "RTRIM", "SETTOSTR", "TRIM", "TUPLETOSTR", "UCASE"));
+
+    private static final Set<String> BOOLEAN_OPERATORS =
+        new HashSet<String>(
+            Arrays.asList(
+                "=", "<>", "<", ">", "<=", ">=", "AND", "OR", "XOR", "NOT",
+                "IS", "IN", "NOT IN", "MATCHES", "NOT MATCHES"));
+
+    /**
+     * Flags that are arguments to functions, such as the
+     * <code>BDESC</code> in <code>Order(s, e, BDESC)</code>.
+     */
+    private static final Set<String> RESERVED_WORDS =
+        new HashSet<String>(
+            Arrays.asList(
+                "AFTER", "ALL", "ASC", "BASC", "BDESC", "BEFORE",
+                "BEFORE_AND_AFTER", "DESC", "EXCLUDEEMPTY", "INCLUDEEMPTY",
+                "LEAVES", "POST", "PRE", "RECURSIVE", "SELF", "SELF_AND_AFTER",
+                "SELF_AND_BEFORE", "SELF_BEFORE_AFTER"));
+
+    /**
+     * Properties that the parser may leave as the last segment of an
+     * identifier, such as the <code>Members</code> in
+     * <code>[Customers].[City].Members</code>.
+     */
+    private static final Set<String> PROPERTY_SEGMENTS =
+        new HashSet<String>(
+            Arrays.asList(
+                "ALLMEMBERS", "CAPTION", "CHILDREN", "COUNT", "CURRENT",
+                "CURRENTMEMBER", "DATAMEMBER", "DEFAULTMEMBER", "DIMENSION",
+                "FIRSTCHILD", "FIRSTSIBLING", "HIERARCHY", "LASTCHILD",
+                "LASTSIBLING", "LEVEL", "MEMBERS", "NAME", "NEXTMEMBER",
+                "ORDINAL", "PARENT", "PREVMEMBER", "SIBLINGS", "UNIQUENAME"));
+
+    private final OlapConnection connection;
 
     /**
      * Creates a DefaultMdxValidatorImpl.
      *
-     * @param selectNode Root of parse tree
+     * @param connection Connection whose metadata to validate against
      */
-    protected DefaultMdxValidatorImpl(SelectNode selectNode) {
-        this.selectNode = selectNode;
+    public DefaultMdxValidatorImpl(OlapConnection connection) {
+        this.connection = connection;
     }
 
     public SelectNode validateSelect(SelectNode selectNode)
         throws OlapException
     {
-        return null;
+        if (containsFrozen(selectNode)) {
+            selectNode = selectNode.deepCopy();
+        }
+        new Scope().validate(selectNode);
+        return selectNode;
     }
 
-    public ParseTreeNode visit(SelectNode selectNode) {
-        if (false) {
-            return null;
+    /**
+     * Returns whether a node, or any node reachable from it, is frozen and
+     * therefore cannot be modified by validation. A mutable tree may share
+     * frozen sub-trees; for example, a tree built by a transform. Leaf
+     * nodes, which are always frozen but which validation never modifies,
+     * do not count.
+     *
+     * @param node Node, or null
+     * @return Whether validating the node would modify a frozen node
+     */
+    private static boolean containsFrozen(ParseTreeNode node) {
+        if (node instanceof SelectNode) {
+            final SelectNode select = (SelectNode) node;
+            if (select.isFrozen()) {
+                return true;
+            }
+            for (ParseTreeNode with : select.getWithList()) {
+                if (containsFrozen(with)) {
+                    return true;
+                }
+            }
+            for (AxisNode axis : select.getAxisList()) {
+                if (containsFrozen(axis)) {
+                    return true;
+                }
+            }
+            return containsFrozen(select.getFilterAxis());
+        } else if (node instanceof AxisNode) {
+            final AxisNode axis = (AxisNode) node;
+            return axis.isFrozen() || containsFrozen(axis.getExpression());
+        } else if (node instanceof WithMemberNode) {
+            final WithMemberNode member = (WithMemberNode) node;
+            if (member.isFrozen() || containsFrozen(member.getExpression())) {
+                return true;
+            }
+            for (PropertyValueNode property : properties(member)) {
+                if (containsFrozen(property)) {
+                    return true;
+                }
+            }
+            return false;
+        } else if (node instanceof WithSetNode) {
+            final WithSetNode set = (WithSetNode) node;
+            return set.isFrozen() || containsFrozen(set.getExpression());
+        } else if (node instanceof PropertyValueNode) {
+            final PropertyValueNode property = (PropertyValueNode) node;
+            return property.isFrozen()
+                || containsFrozen(property.getExpression());
+        } else if (node instanceof CallNode) {
+            final CallNode call = (CallNode) node;
+            if (call.isFrozen()) {
+                return true;
+            }
+            for (ParseTreeNode arg : call.getArgList()) {
+                if (containsFrozen(arg)) {
+                    return true;
+                }
+            }
+            return false;
+        } else if (node instanceof ParameterNode) {
+            final ParameterNode parameter = (ParameterNode) node;
+            return parameter.isFrozen()
+                || containsFrozen(parameter.getDefaultValueExpression());
+        } else {
+            return false;
         }
-        throw new UnsupportedOperationException();
     }
 
-    public ParseTreeNode visit(AxisNode axis) {
-        if (false) {
-            return null;
+    /**
+     * Creates an exception for an invalid statement.
+     *
+     * @param message Description of the error
+     * @return Exception
+     */
+    private static OlapException error(String message) {
+        return new OlapException(
+            "Validation error", new OlapException(message));
+    }
+
+    private static boolean isUnknown(Type type) {
+        return type instanceof MemberType && type.getDimension() == null;
+    }
+
+    private static SetType setOf(Type elementType) {
+        return new SetType(elementType == null ? UNKNOWN_MEMBER : elementType);
+    }
+
+    /**
+     * Returns the type of a member in the same hierarchy as a value of a
+     * given type.
+     */
+    private static MemberType hierarchyMember(Type type) throws OlapException {
+        final MemberType memberType = TypeUtil.toMemberType(type);
+        if (memberType == null || memberType.getDimension() == null) {
+            return UNKNOWN_MEMBER;
         }
-        throw new UnsupportedOperationException();
+        return new MemberType(
+            memberType.getDimension(), memberType.getHierarchy(), null, null);
     }
 
-    public ParseTreeNode visit(WithMemberNode withMemberNode) {
-        ParseTreeNode expression = acceptScalar(withMemberNode.getExpression());
-        withMemberNode.setExpression(expression);
-        final Type type = expression.getType();
-        if (!TypeUtil.canEvaluate(type)) {
-            throw new RuntimeException(
-                "'Member expression '" + MdxUtil.toString(expression)
-                + "' must not be a set'");
+    /**
+     * Returns the type of a member whose level is a given number of levels
+     * below the level of a value of a given type. If that level is not known,
+     * returns the type of a member of the hierarchy.
+     */
+    private static MemberType levelMember(Type type, int offset)
+        throws OlapException
+    {
+        final MemberType memberType = TypeUtil.toMemberType(type);
+        if (memberType == null || memberType.getLevel() == null) {
+            return hierarchyMember(type);
         }
-        for (PropertyValueNode prop : withMemberNode.getMemberPropertyList()) {
-            prop.accept(this);
+        final Hierarchy hierarchy = memberType.getHierarchy();
+        final NamedList<Level> levels = hierarchy.getLevels();
+        final int depth = memberType.getLevel().getDepth() + offset;
+        if (depth < 0 || depth >= levels.size()) {
+            return hierarchyMember(type);
         }
-        return withMemberNode;
+        return new MemberType(
+            memberType.getDimension(), hierarchy, levels.get(depth), null);
     }
 
-    public ParseTreeNode visit(WithSetNode withSetNode) {
-        ParseTreeNode expression = acceptScalar(withSetNode.getExpression());
-        withSetNode.setExpression(expression);
-        final Type type = expression.getType();
-        if (!TypeUtil.isSet(type)) {
-            final IdentifierNode id = withSetNode.getIdentifier();
-            final String idString = MdxUtil.toString(id);
-            throw new RuntimeException(
-                "Set expression '" + idString + "' must be a set");
-        }
-        return withSetNode;
+    /**
+     * Returns the element type of the set that a value of a given type
+     * converts to, or null if it does not convert to a set.
+     */
+    private static Type elementType(Type type) throws OlapException {
+        final SetType setType = TypeUtil.toSetType(type);
+        return setType == null ? null : setType.getElementType();
     }
 
-    public ParseTreeNode visit(CallNode call) {
-        if (false) {
-            return null;
+    /**
+     * Adds the types of the members of a tuple or member type to a list.
+     */
+    private static void flatten(Type type, List<Type> list) {
+        if (type instanceof TupleType) {
+            list.addAll(((TupleType) type).getElementTypes());
+        } else {
+            list.add(type);
         }
-        throw new UnsupportedOperationException();
     }
 
-    public ParseTreeNode visit(IdentifierNode id) {
-        if (false) {
-            return null;
+    /**
+     * Returns the hierarchies of the members in a set, tuple or member
+     * type. Hierarchies that are not known are omitted.
+     */
+    private static List<Hierarchy> hierarchies(Type type) throws OlapException {
+        final List<Type> types = new ArrayList<Type>();
+        flatten(elementType(type), types);
+        final List<Hierarchy> list = new ArrayList<Hierarchy>();
+        for (Type t : types) {
+            if (t != null && t.getHierarchy() != null) {
+                list.add(t.getHierarchy());
+            }
         }
-        throw new UnsupportedOperationException();
+        return list;
     }
 
-    public ParseTreeNode visit(ParameterNode parameterNode) {
-        if (false) {
+    /**
+     * Derives the type of a call from the types of its arguments. Returns
+     * null if the function is not known.
+     *
+     * @param call Call
+     * @param types Types of arguments; an element is null if the type of that
+     *   argument is not known
+     * @return Type of call, or null
+     * @throws OlapException if the arguments are invalid
+     */
+    private static Type deriveType(CallNode call, List<Type> types)
+        throws OlapException
+    {
+        final String name = call.getOperatorName().toUpperCase();
+        final Type type0 = types.isEmpty() ? null : types.get(0);
+        final Type type1 = types.size() < 2 ? null : types.get(1);
+        switch (call.getSyntax()) {
+        case Braces:
+            Type element = null;
+            for (int i = 0; i < types.size(); i++) {
+                final Type type = types.get(i);
+                if (type == null) {
+                    continue;
+                }
+                final Type argElement = elementType(type);
+                if (argElement == null) {
+                    throw error(
+                        "Element '"
+                        + MdxUtil.toString(call.getArgList().get(i))
+                        + "' of set must be a member, tuple or set");
+                }
+                if (element == null || isUnknown(element)) {
+                    element = argElement;
+                } else if (!isUnknown(argElement)
+                    && !TypeUtil.isUnionCompatible(element, argElement))
+                {
+                    throw error(
+                        "Members of set '" + MdxUtil.toString(call)
+                        + "' must have the same hierarchies");
+                }
+            }
+            return setOf(element);
+
+        case Parentheses:
+            if (types.size() == 1) {
+                return type0;
+            }
+            final List<Type> memberTypes = new ArrayList<Type>();
+            for (int i = 0; i < types.size(); i++) {
+                final Type type = types.get(i);
+                if (type == null) {
+                    memberTypes.add(UNKNOWN_MEMBER);
+                } else if (type instanceof TupleType) {
+                    flatten(type, memberTypes);
+                } else {
+                    final MemberType memberType =
+                        type instanceof SetType
+                            ? null
+                            : TypeUtil.toMemberType(type);
+                    if (memberType == null) {
+                        throw error(
+                            "Element '"
+                            + MdxUtil.toString(call.getArgList().get(i))
+                            + "' of tuple must be a member");
+                    }
+                    memberTypes.add(memberType);
+                }
+            }
+            final Set<String> hierarchyNames = new HashSet<String>();
+            for (Type memberType : memberTypes) {
+                final Hierarchy hierarchy = memberType.getHierarchy();
+                if (hierarchy != null
+                    && !hierarchyNames.add(hierarchy.getUniqueName()))
+                {
+                    throw error(
+                        "Tuple '" + MdxUtil.toString(call)
+                        + "' has more than one member of hierarchy '"
+                        + hierarchy.getUniqueName() + "'");
+                }
+            }
+            return new TupleType(
+                memberTypes.toArray(new Type[memberTypes.size()]));
+
+        case Property:
+            if (name.equals("CHILDREN")) {
+                return setOf(levelMember(type0, 1));
+            } else if (name.equals("MEMBERS")
+                || name.equals("ALLMEMBERS"))
+            {
+                return setOf(
+                    type0 instanceof LevelType
+                        ? levelMember(type0, 0)
+                        : hierarchyMember(type0));
+            } else if (name.equals("SIBLINGS")) {
+                return setOf(levelMember(type0, 0));
+            } else if (name.equals("CURRENTMEMBER")
+                || name.equals("DEFAULTMEMBER"))
+            {
+                return hierarchyMember(type0);
+            } else if (name.equals("PARENT")) {
+                return levelMember(type0, -1);
+            } else if (name.equals("FIRSTCHILD")
+                || name.equals("LASTCHILD"))
+            {
+                return levelMember(type0, 1);
+            } else if (name.equals("PREVMEMBER")
+                || name.equals("NEXTMEMBER")
+                || name.equals("FIRSTSIBLING")
+                || name.equals("LASTSIBLING")
+                || name.equals("DATAMEMBER"))
+            {
+                return levelMember(type0, 0);
+            } else if (name.equals("CURRENT")) {
+                return type0 instanceof SetType
+                    ? ((SetType) type0).getElementType()
+                    : null;
+            } else if (name.equals("LEVEL")) {
+                final MemberType memberType = hierarchyMember(type0);
+                final Level level =
+                    type0 == null ? null : type0.getLevel();
+                return new LevelType(
+                    memberType.getDimension(),
+                    memberType.getHierarchy(),
+                    type0 instanceof MemberType ? level : null);
+            } else if (name.equals("HIERARCHY")) {
+                final MemberType memberType = hierarchyMember(type0);
+                return new HierarchyType(
+                    memberType.getDimension(), memberType.getHierarchy());
+            } else if (name.equals("DIMENSION")) {
+                return new DimensionType(
+                    type0 == null ? null : type0.getDimension());
+            } else if (name.equals("NAME")
+                || name.equals("UNIQUENAME")
+                || name.equals("CAPTION"))
+            {
+                return new StringType();
+            } else if (name.equals("ORDINAL")
+                || name.equals("COUNT"))
+            {
+                return new NumericType();
+            }
+            // A member property, such as "VALUE".
+            return new ScalarType();
+
+        case Method:
+            if (name.equals("LAG") || name.equals("LEAD")) {
+                return levelMember(type0, 0);
+            } else if (name.equals("ITEM")) {
+                if (type0 instanceof SetType) {
+                    return ((SetType) type0).getElementType();
+                } else if (type0 instanceof TupleType) {
+                    return UNKNOWN_MEMBER;
+                }
+            } else if (name.equals("PROPERTIES")) {
+                return new ScalarType();
+            }
             return null;
-        }
-        throw new UnsupportedOperationException();
-    }
 
-    public ParseTreeNode visit(CubeNode cubeNode) {
-        if (false) {
+        case Function:
+            if (SAME_SET_FUNCTIONS.contains(name)) {
+                return setOf(elementType(type0));
+            } else if (MEMBER_SET_FUNCTIONS.contains(name)) {
+                return setOf(hierarchyMember(firstMember(types)));
+            } else if (MEMBER_FUNCTIONS.contains(name)) {
+                return hierarchyMember(firstMember(types));
+            } else if (name.equals("DESCENDANTS")) {
+                return setOf(
+                    type1 instanceof LevelType
+                        ? levelMember(type1, 0)
+                        : hierarchyMember(type0));
+            } else if (name.equals("CROSSJOIN")
+                || name.equals("NONEMPTYCROSSJOIN"))
+            {
+                return crossJoinType(types);
+            } else if (name.equals("GENERATE")) {
+                final Type element1 = elementType(type1);
+                return element1 == null && type1 != null
+                    ? new StringType()
+                    : setOf(element1);
+            } else if (name.equals("STRTOSET")) {
+                return setOf(null);
+            } else if (name.equals("STRTOMEMBER")) {
+                return UNKNOWN_MEMBER;
+            } else if (name.equals("IIF")) {
+                return type1 != null
+                    ? type1
+                    : types.size() < 3 ? null : types.get(2);
+            } else if (name.equals("COALESCEEMPTY")) {
+                return type0;
+            } else if (NUMERIC_FUNCTIONS.contains(name)) {
+                return new NumericType();
+            } else if (BOOLEAN_FUNCTIONS.contains(name)) {
+                return new BooleanType();
+            } else if (STRING_FUNCTIONS.contains(name)) {
+                return new StringType();
+            }
             return null;
-        }
-        throw new UnsupportedOperationException();
-    }
 
-    public ParseTreeNode visit(DimensionNode dimensionNode) {
-        if (false) {
+        case Infix:
+            if (BOOLEAN_OPERATORS.contains(name)) {
+                return new BooleanType();
+            } else if (name.equals(":")) {
+                return setOf(levelMember(type0, 0));
+            } else if (name.equals("||")) {
+                return new StringType();
+            } else if (type0 instanceof SetType
+                || type1 instanceof SetType)
+            {
+                if (name.equals("*")) {
+                    return crossJoinType(types);
+                } else if (name.equals("+") || name.equals("-")) {
+                    return setOf(elementType(type0));
+                }
+            } else if (name.equals("+")
+                || name.equals("-")
+                || name.equals("*")
+                || name.equals("/"))
+            {
+                return new NumericType();
+            }
             return null;
-        }
-        throw new UnsupportedOperationException();
-    }
 
-    public ParseTreeNode visit(HierarchyNode hierarchyNode) {
-        if (false) {
+        case Prefix:
+            if (name.equals("NOT")) {
+                return new BooleanType();
+            } else if (name.equals("-") || name.equals("+")) {
+                return new NumericType();
+            }
             return null;
-        }
-        throw new UnsupportedOperationException();
-    }
 
-    public ParseTreeNode visit(LevelNode levelExpr) {
-        if (false) {
+        case Postfix:
+            if (name.startsWith("IS")) {
+                return new BooleanType();
+            }
             return null;
-        }
-        throw new UnsupportedOperationException();
-    }
 
-    public ParseTreeNode visit(MemberNode memberNode) {
-        if (false) {
+        default:
             return null;
         }
-        throw new UnsupportedOperationException();
     }
 
-    public ParseTreeNode visit(LiteralNode literalNode) {
-        if (false) {
-            return null;
+    private static Type firstMember(List<Type> types) throws OlapException {
+        for (Type type : types) {
+            if (type instanceof MemberType
+                || type instanceof HierarchyType
+                || type instanceof DimensionType)
+            {
+                return type;
+            }
         }
-        throw new UnsupportedOperationException();
+        return null;
     }
 
-    public ParseTreeNode visit(PropertyValueNode propertyValueNode) {
-        if (false) {
-            return null;
+    private static SetType crossJoinType(List<Type> types)
+        throws OlapException
+    {
+        final List<Type> memberTypes = new ArrayList<Type>();
+        for (Type type : types) {
+            final Type element = elementType(type);
+            flatten(element == null ? UNKNOWN_MEMBER : element, memberTypes);
         }
-        throw new UnsupportedOperationException();
+        return new SetType(
+            new TupleType(memberTypes.toArray(new Type[memberTypes.size()])));
     }
 
-    public ParseTreeNode visit(DrillThroughNode drillThroughNode) {
-        if (false) {
-            return null;
+    /**
+     * State of the validation of one SELECT statement.
+     */
+    private class Scope {
+        private Cube cube;
+
+        /**
+         * Calculated members defined in the WITH clause, keyed by name, and
+         * their types.
+         */
+        private final Map<String, Type> calculatedMembers =
+            new HashMap<String, Type>();
+
+        /**
+         * Sets defined in the WITH clause, keyed by name.
+         */
+        private final Map<String, WithSetNode> sets =
+            new HashMap<String, WithSetNode>();
+
+        /**
+         * Resolved form of each identifier in the statement.
+         */
+        private final Map<IdentifierNode, ParseTreeNode> resolved =
+            new HashMap<IdentifierNode, ParseTreeNode>();
+
+        /**
+         * Types of identifiers that remain in the validated statement.
+         */
+        private final Map<IdentifierNode, Type> types =
+            new HashMap<IdentifierNode, Type>();
+
+        /**
+         * Sets that identifiers refer to.
+         */
+        private final Map<IdentifierNode, WithSetNode> setReferences =
+            new HashMap<IdentifierNode, WithSetNode>();
+
+        void validate(SelectNode select) throws OlapException {
+            resolveCube(select);
+
+            final List<IdentifierNode> identifiers =
+                new ArrayList<IdentifierNode>();
+            for (ParseTreeNode with : select.getWithList()) {
+                if (with instanceof WithMemberNode) {
+                    final WithMemberNode member = (WithMemberNode) with;
+                    calculatedMembers.put(
+                        key(member.getIdentifier().getSegmentList()),
+                        calculatedMemberType(member.getIdentifier()));
+                    collect(member.getExpression(), identifiers);
+                    for (PropertyValueNode property : properties(member)) {
+                        collect(property.getExpression(), identifiers);
+                    }
+                } else if (with instanceof WithSetNode) {
+                    final WithSetNode set = (WithSetNode) with;
+                    sets.put(key(set.getIdentifier().getSegmentList()), set);
+                    collect(set.getExpression(), identifiers);
+                }
+            }
+            for (AxisNode axis : select.getAxisList()) {
+                collect(axis.getExpression(), identifiers);
+            }
+            collect(select.getFilterAxis().getExpression(), identifiers);
+            resolve(identifiers);
+
+            for (ParseTreeNode with : select.getWithList()) {
+                if (with instanceof WithMemberNode) {
+                    final WithMemberNode member = (WithMemberNode) with;
+                    final ParseTreeNode exp =
+                        validate(member.getExpression());
+                    member.setExpression(exp);
+                    final Type type = typeOf(exp);
+                    if (type != null && !TypeUtil.canEvaluate(type)) {
+                        throw error(
+                            "Member expression '" + MdxUtil.toString(exp)
+                            + "' must not be a set");
+                    }
+                    for (PropertyValueNode property : properties(member)) {
+                        validate(property.getExpression());
+                    }
+                } else if (with instanceof WithSetNode) {
+                    final WithSetNode set = (WithSetNode) with;
+                    final ParseTreeNode exp = validate(set.getExpression());
+                    set.setExpression(exp);
+                    final Type type = typeOf(exp);
+                    if (type != null && TypeUtil.toSetType(type) == null) {
+                        throw error(
+                            "Set expression '"
+                            + MdxUtil.toString(set.getIdentifier())
+                            + "' must be a set");
+                    }
+                }
+            }
+
+            final Set<String> axisNames = new HashSet<String>();
+            final Map<String, Axis> hierarchyAxes =
+                new HashMap<String, Axis>();
+            for (AxisNode axis : select.getAxisList()) {
+                if (!axisNames.add(axis.getAxis().name())) {
+                    throw error(
+                        "Duplicate axis name '" + axis.getAxis().name()
+                        + "'.");
+                }
+                validateAxis(axis, hierarchyAxes);
+            }
+            validateAxis(select.getFilterAxis(), hierarchyAxes);
         }
-        throw new UnsupportedOperationException();
-    }
 
-    public void accept(AxisNode axis) {
-        ParseTreeNode exp = axis.getExpression().accept(this);
-        final Type type = exp.getType();
-        if (!TypeUtil.isSet(type)) {
-            throw new RuntimeException(
-                "Axis '" + axis.getAxis().name() + "' expression is not a set");
+        private void validateAxis(
+            AxisNode axis,
+            Map<String, Axis> hierarchyAxes)
+            throws OlapException
+        {
+            if (axis.getExpression() == null) {
+                return;
+            }
+            ParseTreeNode exp = validate(axis.getExpression());
+            final Type type = typeOf(exp);
+            if (type != null) {
+                final SetType setType = TypeUtil.toSetType(type);
+                if (setType == null) {
+                    throw error(
+                        "Axis '" + axis.getAxis().name()
+                        + "' expression is not a set");
+                }
+                if (axis.getAxis() != Axis.FILTER
+                    && !(type instanceof SetType))
+                {
+                    final CallNode call =
+                        new CallNode(null, "{}", Syntax.Braces, exp);
+                    call.setType(setType);
+                    exp = call;
+                }
+                for (Hierarchy hierarchy : hierarchies(type)) {
+                    final Axis previous =
+                        hierarchyAxes.put(
+                            hierarchy.getUniqueName(), axis.getAxis());
+                    if (previous != null && previous != axis.getAxis()) {
+                        throw error(
+                            "Hierarchy '" + hierarchy.getUniqueName()
+                            + "' appears in more than one independent "
+                            + "axis.");
+                    }
+                }
+            }
+            axis.setExpression(exp);
         }
-    }
 
-    public ParseTreeNode acceptScalar(ParseTreeNode node) {
-        scalarStack.push(Boolean.TRUE);
-        try {
-            return node.accept(this);
-        } finally {
-            scalarStack.pop();
+        private void resolveCube(SelectNode select) throws OlapException {
+            final ParseTreeNode from = select.getFrom();
+            if (from instanceof CubeNode) {
+                cube = ((CubeNode) from).getCube();
+            } else if (from instanceof SelectNode) {
+                final Scope scope = new Scope();
+                scope.validate((SelectNode) from);
+                cube = scope.cube;
+            } else if (from instanceof IdentifierNode) {
+                final List<IdentifierSegment> segments =
+                    ((IdentifierNode) from).getSegmentList();
+                final String name =
+                    segments.get(segments.size() - 1).getName();
+                for (Cube c : connection.getOlapSchema().getCubes()) {
+                    if (c.getName().equalsIgnoreCase(name)) {
+                        cube = c;
+                        break;
+                    }
+                }
+                if (cube == null) {
+                    throw error(
+                        "Cube '" + MdxUtil.toString(from) + "' not found");
+                }
+                select.setFrom(new CubeNode(from.getRegion(), cube));
+            } else {
+                throw error(
+                    "Invalid FROM clause '" + MdxUtil.toString(from) + "'");
+            }
         }
-    }
 
-    // from IdentifierNode
-    public ParseTreeNode accept(IdentifierNode identifier) {
-        if (identifier.getSegmentList().size() == 1) {
-            final IdentifierSegment s = identifier.getSegmentList().get(0);
-            if (s.getQuoting() == Quoting.UNQUOTED
-                && isReserved(s.getName()))
+        /**
+         * Adds the identifiers in an expression to a list.
+         */
+        private void collect(
+            ParseTreeNode exp,
+            List<IdentifierNode> identifiers)
+        {
+            if (exp instanceof IdentifierNode) {
+                final IdentifierNode prefix =
+                    propertyPrefix((IdentifierNode) exp);
+                if (prefix != null) {
+                    collect(prefix, identifiers);
+                } else {
+                    identifiers.add((IdentifierNode) exp);
+                }
+            } else if (exp instanceof CallNode) {
+                for (ParseTreeNode arg : ((CallNode) exp).getArgList()) {
+                    collect(arg, identifiers);
+                }
+            } else if (exp instanceof ParameterNode) {
+                collect(
+                    ((ParameterNode) exp).getDefaultValueExpression(),
+                    identifiers);
+            }
+        }
+
+        /**
+         * If an identifier ends with an unquoted property name, such as
+         * <code>[Customers].[City].Members</code>, returns the identifier
+         * that the property applies to; otherwise returns null.
+         */
+        private IdentifierNode propertyPrefix(IdentifierNode id) {
+            final List<IdentifierSegment> segments = id.getSegmentList();
+            final IdentifierSegment last = segments.get(segments.size() - 1);
+            if (segments.size() < 2
+                || last.getQuoting() != Quoting.UNQUOTED
+                || !PROPERTY_SEGMENTS.contains(last.getName().toUpperCase())
+                || calculatedMembers.containsKey(key(segments))
+                || sets.containsKey(key(segments)))
             {
-                return LiteralNode.createSymbol(
-                    s.getRegion(),
-                    s.getName().toUpperCase());
+                return null;
+            }
+            return new IdentifierNode(
+                segments.subList(0, segments.size() - 1));
+        }
+
+        /**
+         * Resolves a list of identifiers. Looks up all members that are not
+         * in the cube's metadata in a single call. A member that the server
+         * does not return remains an identifier, whose type has the
+         * member's hierarchy if known.
+         */
+        private void resolve(List<IdentifierNode> identifiers)
+            throws OlapException
+        {
+            final Set<IdentifierNode> memberIds =
+                new LinkedHashSet<IdentifierNode>();
+            for (IdentifierNode id : identifiers) {
+                if (resolved.containsKey(id) || memberIds.contains(id)) {
+                    continue;
+                }
+                final ParseTreeNode node = resolveLocally(id);
+                if (node != null) {
+                    resolved.put(id, node);
+                } else {
+                    memberIds.add(id);
+                }
+            }
+            if (memberIds.isEmpty()) {
+                return;
+            }
+            final List<List<IdentifierSegment>> memberNames =
+                new ArrayList<List<IdentifierSegment>>();
+            for (IdentifierNode id : memberIds) {
+                memberNames.add(id.getSegmentList());
+            }
+            final List<List<Member>> memberLists =
+                Olap4jUtil.extend(cube).lookupMemberRelatives(
+                    EnumSet.of(Member.TreeOp.SELF), memberNames);
+            int i = 0;
+            for (IdentifierNode id : memberIds) {
+                final List<Member> members = memberLists.get(i++);
+                if (members.isEmpty()) {
+                    // Perhaps a calculated member defined in the schema or
+                    // in a script; the server does not list those. Leave it
+                    // for the server to check.
+                    types.put(id, calculatedMemberType(id));
+                    resolved.put(id, id);
+                    continue;
+                }
+                resolved.put(
+                    id, new MemberNode(id.getRegion(), members.get(0)));
             }
         }
-        final ParseTreeNode element =
-            lookup(selectNode, identifier.getSegmentList(), true);
-        if (element == null) {
+
+        /**
+         * Resolves an identifier without looking up members on the server.
+         * Returns null if the identifier is a member which must be looked up.
+         */
+        private ParseTreeNode resolveLocally(IdentifierNode id)
+            throws OlapException
+        {
+            final List<IdentifierSegment> segments = id.getSegmentList();
+            if (segments.size() == 1) {
+                final IdentifierSegment segment = segments.get(0);
+                if (segment.getQuoting() == Quoting.UNQUOTED
+                    && RESERVED_WORDS.contains(
+                        segment.getName().toUpperCase()))
+                {
+                    return LiteralNode.createSymbol(
+                        segment.getRegion(),
+                        segment.getName().toUpperCase());
+                }
+            }
+            final String key = key(segments);
+            final Type calculatedMemberType = calculatedMembers.get(key);
+            if (calculatedMemberType != null) {
+                types.put(id, calculatedMemberType);
+                return id;
+            }
+            final WithSetNode set = sets.get(key);
+            if (set != null) {
+                setReferences.put(id, set);
+                return id;
+            }
+
+            int n = 0;
+            Hierarchy hierarchy = null;
+            Dimension dimension = null;
+            if (segments.size() >= 2) {
+                hierarchy = lookupHierarchy(segments.subList(0, 2));
+                n = 2;
+            }
+            if (hierarchy == null) {
+                hierarchy = lookupHierarchy(segments.subList(0, 1));
+                n = 1;
+            }
+            if (hierarchy == null) {
+                final String name = segments.get(0).getName();
+                if (name != null) {
+                    dimension = lookup(cube.getDimensions(), name);
+                }
+                if (dimension != null) {
+                    hierarchy = dimension.getDefaultHierarchy();
+                }
+            }
+            if (hierarchy == null) {
+                if (segments.size() == 1) {
+                    final IdentifierSegment segment = segments.get(0);
+                    final NamedSet namedSet =
+                        lookup(cube.getSets(), segment.getName());
+                    if (namedSet != null) {
+                        types.put(id, setOf(null));
+                        return id;
+                    }
+                    if (segment.getQuoting() == Quoting.UNQUOTED) {
+                        // Perhaps a keyword that this validator does not
+                        // know. Leave it for the server to check.
+                        return LiteralNode.createSymbol(
+                            segment.getRegion(), segment.getName());
+                    }
+                }
+                throw error(
+                    "MDX object '" + id + "' not found in cube '"
+                    + cube.getName() + "'");
+            }
+            if (segments.size() == n) {
+                return dimension != null
+                    ? new DimensionNode(id.getRegion(), dimension)
+                    : new HierarchyNode(id.getRegion(), hierarchy);
+            }
+            final String name = segments.get(n).getName();
+            if (segments.size() == n + 1 && name != null) {
+                final Level level = lookup(hierarchy.getLevels(), name);
+                if (level != null) {
+                    return new LevelNode(id.getRegion(), level);
+                }
+                if (hierarchy.getDimension().getDimensionType()
+                    == Dimension.Type.MEASURE)
+                {
+                    final Measure measure = lookup(cube.getMeasures(), name);
+                    if (measure == null) {
+                        throw error(
+                            "Measure '" + id + "' not found in cube '"
+                            + cube.getName() + "'");
+                    }
+                    return new MemberNode(id.getRegion(), measure);
+                }
+            }
             return null;
         }
-        return element.accept(this);
-    }
 
-    public ParseTreeNode accept(LiteralNode literalNode) {
-        return literalNode;
+        private Hierarchy lookupHierarchy(List<IdentifierSegment> segments) {
+            final List<NameSegment> quotedSegments =
+                new ArrayList<NameSegment>();
+            for (IdentifierSegment segment : segments) {
+                if (segment.getName() == null) {
+                    return null;
+                }
+                quotedSegments.add(new NameSegment(segment.getName()));
+            }
+            final String uniqueName =
+                IdentifierNode.unparseIdentifierList(quotedSegments);
+            for (Hierarchy hierarchy : cube.getHierarchies()) {
+                if (hierarchy.getUniqueName().equalsIgnoreCase(uniqueName)) {
+                    return hierarchy;
+                }
+            }
+            return null;
+        }
+
+        private <E extends MetadataElement> E lookup(
+            List<E> list,
+            String name)
+        {
+            for (E e : list) {
+                if (e.getName().equalsIgnoreCase(name)) {
+                    return e;
+                }
+            }
+            return null;
+        }
+
+        private Type calculatedMemberType(IdentifierNode id) {
+            final List<IdentifierSegment> segments = id.getSegmentList();
+            Hierarchy hierarchy = null;
+            if (segments.size() > 2) {
+                hierarchy = lookupHierarchy(segments.subList(0, 2));
+            }
+            if (hierarchy == null && segments.size() > 1) {
+                hierarchy = lookupHierarchy(segments.subList(0, 1));
+                if (hierarchy == null && segments.get(0).getName() != null) {
+                    final Dimension dimension =
+                        lookup(cube.getDimensions(), segments.get(0).getName());
+                    if (dimension != null) {
+                        hierarchy = dimension.getDefaultHierarchy();
+                    }
+                }
+            }
+            return hierarchy == null
+                ? UNKNOWN_MEMBER
+                : new MemberType(
+                    hierarchy.getDimension(), hierarchy, null, null);
+        }
+
+        /**
+         * Validates an expression, returning the expression with identifiers
+         * replaced by their resolved form.
+         */
+        private ParseTreeNode validate(ParseTreeNode exp)
+            throws OlapException
+        {
+            if (exp instanceof IdentifierNode) {
+                final IdentifierNode id = (IdentifierNode) exp;
+                final IdentifierNode prefix = propertyPrefix(id);
+                if (prefix == null) {
+                    return resolved.get(id);
+                }
+                final List<IdentifierSegment> segments = id.getSegmentList();
+                final CallNode call =
+                    new CallNode(
+                        id.getRegion(),
+                        segments.get(segments.size() - 1).getName(),
+                        Syntax.Property,
+                        validate(prefix));
+                call.setType(
+                    deriveType(
+                        call,
+                        Collections.singletonList(
+                            typeOf(call.getArgList().get(0)))));
+                return call;
+            } else if (exp instanceof CallNode) {
+                final CallNode call = (CallNode) exp;
+                final List<ParseTreeNode> args = call.getArgList();
+                final List<Type> argTypes = new ArrayList<Type>(args.size());
+                for (int i = 0; i < args.size(); i++) {
+                    final ParseTreeNode arg = args.get(i);
+                    final ParseTreeNode validArg = validate(arg);
+                    if (validArg != arg) {
+                        args.set(i, validArg);
+                    }
+                    argTypes.add(typeOf(validArg));
+                }
+                call.setType(deriveType(call, argTypes));
+            } else if (exp instanceof ParameterNode) {
+                final ParameterNode parameter = (ParameterNode) exp;
+                parameter.setDefaultValueExpression(
+                    validate(parameter.getDefaultValueExpression()));
+            }
+            return exp;
+        }
+
+        private Type typeOf(ParseTreeNode exp) throws OlapException {
+            if (exp instanceof IdentifierNode) {
+                final WithSetNode set = setReferences.get(exp);
+                if (set != null) {
+                    final Type type = typeOf(set.getExpression());
+                    return type == null
+                        ? setOf(null)
+                        : TypeUtil.toSetType(type);
+                }
+                return types.get(exp);
+            } else if (exp instanceof ParameterNode) {
+                return null;
+            }
+            return exp.getType();
+        }
     }
 
-    public boolean isReserved(String name) {
-        // todo: implement
-        throw new UnsupportedOperationException();
+    private static List<PropertyValueNode> properties(WithMemberNode member) {
+        final List<PropertyValueNode> list = member.getMemberPropertyList();
+        return list == null
+            ? Collections.<PropertyValueNode>emptyList()
+            : list;
     }
 
-    private ParseTreeNode lookup(
-        SelectNode select,
-        List<IdentifierSegment> segments,
-        boolean allowProp)
-    {
-        // todo: something like this:
-        //  final Exp element = Util.lookup(select, names, true);
-        throw new UnsupportedOperationException();
+    private static String key(List<IdentifierSegment> segments) {
+        final StringBuilder buf = new StringBuilder();
+        for (IdentifierSegment segment : segments) {
+            final String name = segment.getName();
+            buf.append(
+                name == null
+                    ? segment.toString()
+                    : name.toUpperCase())
+                .append('.');
+        }
+        return buf.toString();
     }
 }
 
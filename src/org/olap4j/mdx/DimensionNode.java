@@ -17,6 +17,7 @@
 */
 package org.olap4j.mdx;
 
+import org.olap4j.impl.Freezable;
 import org.olap4j.metadata.Dimension;
 import org.olap4j.type.DimensionType;
 import org.olap4j.type.Type;
@@ -28,7 +29,7 @@ import org.olap4j.type.Type;
  * @author jhyde
  * @since Jun 4, 2007
  */
-public class DimensionNode implements ParseTreeNode {
+public class DimensionNode implements ParseTreeNode, Freezable {
     private final ParseRegion region;
     private final Dimension dimension;
 
@@ -79,6 +80,27 @@ public class DimensionNode implements ParseTreeNode {
         // DimensionNode is immutable
         return this;
     }
+
+    public DimensionNode freeze() {
+        // DimensionNode is immutable
+        return this;
+    }
+
+    public boolean isFrozen() {
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return dimension.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj == this
+            || obj instanceof DimensionNode
+            && dimension.equals(((DimensionNode) obj).dimension);
+    }
 }
 
 // End DimensionNode.java
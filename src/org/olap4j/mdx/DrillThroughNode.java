@@ -17,6 +17,8 @@
 */
 package org.olap4j.mdx;
 
+import org.olap4j.impl.Freezable;
+import org.olap4j.impl.Olap4jUtil;
 import org.olap4j.type.Type;
 
 import java.io.PrintWriter;
@@ -29,12 +31,14 @@ import java.util.List;
  * @author jhyde
  * @since Feb 24, 2012
  */
-public class DrillThroughNode implements ParseTreeNode {
+public class DrillThroughNode implements ParseTreeNode, Freezable {
     private final ParseRegion region;
     private final SelectNode select;
     private final int maxRowCount;
     private final int firstRowOrdinal;
-    private final List<ParseTreeNode> returnList;
+    private List<ParseTreeNode> returnList;
+    private boolean frozen;
+    private int hash;
 
     /**
      * Creates a DrillThroughNode.
@@ -105,6 +109,50 @@ public class DrillThroughNode implements ParseTreeNode {
             firstRowOrdinal,
             MdxUtil.deepCopyList(returnList));
     }
+
+    public DrillThroughNode freeze() {
+        if (!frozen) {
+            select.freeze();
+            returnList = MdxUtil.freezeList(returnList);
+            frozen = true;
+        }
+        return this;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    @Override
+    public int hashCode() {
+        if (hash != 0) {
+            return hash;
+        }
+        int result = select.hashCode();
+        result = 31 * result + maxRowCount;
+        result = 31 * result + firstRowOrdinal;
+        result = 31 * result + (returnList == null ? 0 : returnList.hashCode());
+        if (frozen) {
+            hash = result;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof DrillThroughNode)) {
+            return false;
+        }
+        final DrillThroughNode that = (DrillThroughNode) obj;
+        return MdxUtil.maybeEqual(this, that)
+            && select.equals(that.select)
+            && maxRowCount == that.maxRowCount
+            && firstRowOrdinal == that.firstRowOrdinal
+            && Olap4jUtil.equal(returnList, that.returnList);
+    }
 }
 
 // End DrillThroughNode.java
@@ -17,6 +17,7 @@
 */
 package org.olap4j.mdx;
 
+import org.olap4j.impl.Freezable;
 import org.olap4j.metadata.Hierarchy;
 import org.olap4j.type.HierarchyType;
 import org.olap4j.type.Type;
@@ -28,7 +29,7 @@ import org.olap4j.type.Type;
  * @author jhyde
  * @since Jun 4, 2007
  */
-public class HierarchyNode implements ParseTreeNode {
+public class HierarchyNode implements ParseTreeNode, Freezable {
     private final ParseRegion region;
     private final Hierarchy hierarchy;
 
@@ -81,6 +82,27 @@ public class HierarchyNode implements ParseTreeNode {
         // HierarchyNode is immutable
         return this;
     }
+
+    public HierarchyNode freeze() {
+        // HierarchyNode is immutable
+        return this;
+    }
+
+    public boolean isFrozen() {
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return hierarchy.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj == this
+            || obj instanceof HierarchyNode
+            && hierarchy.equals(((HierarchyNode) obj).hierarchy);
+    }
 }
 
 // End HierarchyNode.java
@@ -76,7 +76,7 @@ import java.util.*;
  * @author jhyde
  */
 public class IdentifierNode
-    implements ParseTreeNode
+    implements ParseTreeNode, Freezable
 {
     private final List<IdentifierSegment> segments;
 
@@ -180,6 +180,27 @@ public class IdentifierNode
         return this;
     }
 
+    public IdentifierNode freeze() {
+        // IdentifierNode is immutable
+        return this;
+    }
+
+    public boolean isFrozen() {
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return segments.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj == this
+            || obj instanceof IdentifierNode
+            && segments.equals(((IdentifierNode) obj).segments);
+    }
+
     /**
      * Parses an MDX identifier string into an
      * {@link org.olap4j.mdx.IdentifierNode}.
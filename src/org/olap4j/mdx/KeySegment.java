@@ -91,6 +91,18 @@ public class KeySegment implements IdentifierSegment {
     public List<NameSegment> getKeyParts() {
         return subSegmentList;
     }
+
+    @Override
+    public int hashCode() {
+        return subSegmentList.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj == this
+            || obj instanceof KeySegment
+            && subSegmentList.equals(((KeySegment) obj).subSegmentList);
+    }
 }
 
 // End KeySegment.java
@@ -17,6 +17,7 @@
 */
 package org.olap4j.mdx;
 
+import org.olap4j.impl.Freezable;
 import org.olap4j.metadata.Level;
 import org.olap4j.type.LevelType;
 import org.olap4j.type.Type;
@@ -28,7 +29,7 @@ import org.olap4j.type.Type;
  * @author jhyde
  * @since Jun 4, 2007
  */
-public class LevelNode implements ParseTreeNode {
+public class LevelNode implements ParseTreeNode, Freezable {
     private final ParseRegion region;
     private final Level level;
 
@@ -83,6 +84,27 @@ public class LevelNode implements ParseTreeNode {
         return this;
     }
 
+    public LevelNode freeze() {
+        // LevelNode is immutable
+        return this;
+    }
+
+    public boolean isFrozen() {
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return level.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj == this
+            || obj instanceof LevelNode
+            && level.equals(((LevelNode) obj).level);
+    }
+
 }
 
 // End LevelNode.java
@@ -17,6 +17,7 @@
 */
 package org.olap4j.mdx;
 
+import org.olap4j.impl.Freezable;
 import org.olap4j.impl.Olap4jUtil;
 import org.olap4j.type.*;
 
@@ -34,7 +35,7 @@ import java.math.BigDecimal;
  *
  * @author jhyde
  */
-public class LiteralNode implements ParseTreeNode {
+public class LiteralNode implements ParseTreeNode, Freezable {
 
     // Data members.
 
@@ -183,6 +184,34 @@ public class LiteralNode implements ParseTreeNode {
         return this;
     }
 
+    public LiteralNode freeze() {
+        // No need to freeze: literal nodes are immutable.
+        return this;
+    }
+
+    public boolean isFrozen() {
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return (value == null ? 0 : value.hashCode())
+            ^ type.getClass().hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof LiteralNode)) {
+            return false;
+        }
+        final LiteralNode that = (LiteralNode) obj;
+        return Olap4jUtil.equal(value, that.value)
+            && type.getClass() == that.type.getClass();
+    }
+
 }
 
 // End LiteralNode.java
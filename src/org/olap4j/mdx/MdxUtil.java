@@ -17,6 +17,8 @@
 */
 package org.olap4j.mdx;
 
+import org.olap4j.impl.Freezable;
+
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.*;
@@ -95,6 +97,74 @@ class MdxUtil {
         return listCopy;
     }
 
+    /**
+     * Freezes a node, if it is of a class that can be frozen; see
+     * {@link Freezable#freeze()}.
+     *
+     * @param node Node
+     */
+    static void freeze(ParseTreeNode node) {
+        if (node instanceof Freezable) {
+            ((Freezable) node).freeze();
+        }
+    }
+
+    /**
+     * Returns whether a node is frozen. A node whose class cannot be frozen
+     * is never frozen.
+     *
+     * @param node Node
+     * @return Whether node is frozen
+     */
+    static boolean isFrozen(ParseTreeNode node) {
+        return node instanceof Freezable && ((Freezable) node).isFrozen();
+    }
+
+    /**
+     * Freezes each element of a list, and returns an unmodifiable copy of
+     * the list.
+     *
+     * @param list List of nodes, or null
+     * @return Unmodifiable list, or null if list was null
+     */
+    static <E extends ParseTreeNode> List<E> freezeList(List<E> list) {
+        if (list == null || list == Collections.EMPTY_LIST) {
+            return list;
+        }
+        for (E e : list) {
+            freeze(e);
+        }
+        return Collections.unmodifiableList(new ArrayList<E>(list));
+    }
+
+    /**
+     * Throws if a node is frozen. Called by methods that modify a node.
+     *
+     * @param node Node about to be modified
+     * @throws IllegalStateException if node is frozen
+     */
+    static void checkNotFrozen(ParseTreeNode node) {
+        if (isFrozen(node)) {
+            throw new IllegalStateException(
+                "Cannot modify frozen parse tree node: " + toString(node));
+        }
+    }
+
+    /**
+     * Returns whether two nodes may be equal, comparing their memoized hash
+     * codes if both are frozen. If the hash codes differ, the caller need
+     * not compare the nodes' sub-trees.
+     *
+     * @param node1 First node
+     * @param node2 Second node
+     * @return false if the nodes are definitely not equal
+     */
+    static boolean maybeEqual(ParseTreeNode node1, ParseTreeNode node2) {
+        return !isFrozen(node1)
+            || !isFrozen(node2)
+            || node1.hashCode() == node2.hashCode();
+    }
+
     static void unparseList(
         ParseTreeWriter writer,
         List<ParseTreeNode> argList,
@@ -17,6 +17,7 @@
 */
 package org.olap4j.mdx;
 
+import org.olap4j.impl.Freezable;
 import org.olap4j.metadata.Member;
 import org.olap4j.type.MemberType;
 import org.olap4j.type.Type;
@@ -28,7 +29,7 @@ import org.olap4j.type.Type;
  * @author jhyde
  * @since Jun 4, 2007
  */
-public class MemberNode implements ParseTreeNode {
+public class MemberNode implements ParseTreeNode, Freezable {
     private final ParseRegion region;
     private final Member member;
 
@@ -83,6 +84,27 @@ public class MemberNode implements ParseTreeNode {
         // MemberNode is immutable
         return this;
     }
+
+    public MemberNode freeze() {
+        // MemberNode is immutable
+        return this;
+    }
+
+    public boolean isFrozen() {
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return member.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj == this
+            || obj instanceof MemberNode
+            && member.equals(((MemberNode) obj).member);
+    }
 }
 
 // End MemberNode.java
@@ -104,6 +104,24 @@ public class NameSegment implements IdentifierSegment {
     public List<NameSegment> getKeyParts() {
         return null;
     }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode() ^ quoting.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof NameSegment)) {
+            return false;
+        }
+        final NameSegment that = (NameSegment) obj;
+        return name.equals(that.name)
+            && quoting == that.quoting;
+    }
 }
 
 // End NameSegment.java
@@ -17,6 +17,7 @@
 */
 package org.olap4j.mdx;
 
+import org.olap4j.impl.Freezable;
 import org.olap4j.type.Type;
 
 import java.io.PrintWriter;
@@ -34,11 +35,13 @@ import java.io.PrintWriter;
  * <code>ParamRef(name)</code> creates a reference to a parameter defined
  * elsewhere in the query.
  */
-public class ParameterNode implements ParseTreeNode {
+public class ParameterNode implements ParseTreeNode, Freezable {
     private String name;
     private Type type;
     private ParseTreeNode defaultValueExpression;
     private final ParseRegion region;
+    private boolean frozen;
+    private int hash;
 
     /**
      * Creates a ParameterNode.
@@ -109,6 +112,7 @@ public class ParameterNode implements ParseTreeNode {
      * @param name Parameter name
      */
     public void setName(String name) {
+        MdxUtil.checkNotFrozen(this);
         this.name = name;
     }
 
@@ -118,6 +122,7 @@ public class ParameterNode implements ParseTreeNode {
      * @param type Type
      */
     public void setType(Type type) {
+        MdxUtil.checkNotFrozen(this);
         this.type = type;
     }
 
@@ -138,6 +143,7 @@ public class ParameterNode implements ParseTreeNode {
      */
     public void setDefaultValueExpression(ParseTreeNode defaultValueExpression)
     {
+        MdxUtil.checkNotFrozen(this);
         this.defaultValueExpression = defaultValueExpression;
     }
 
@@ -148,6 +154,46 @@ public class ParameterNode implements ParseTreeNode {
             this.type, // types are immutable
             this.defaultValueExpression.deepCopy());
     }
+
+    public ParameterNode freeze() {
+        if (!frozen) {
+            MdxUtil.freeze(defaultValueExpression);
+            frozen = true;
+        }
+        return this;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    @Override
+    public int hashCode() {
+        if (hash != 0) {
+            return hash;
+        }
+        final int result =
+            name.hashCode() * 31 + defaultValueExpression.hashCode();
+        if (frozen) {
+            hash = result;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof ParameterNode)) {
+            return false;
+        }
+        final ParameterNode that = (ParameterNode) obj;
+        return MdxUtil.maybeEqual(this, that)
+            && name.equals(that.name)
+            && type.toString().equals(that.type.toString())
+            && defaultValueExpression.equals(that.defaultValueExpression);
+    }
 }
 
 // End ParameterNode.java
@@ -17,6 +17,7 @@
 */
 package org.olap4j.mdx;
 
+import org.olap4j.impl.Freezable;
 import org.olap4j.type.Type;
 
 /**
@@ -36,11 +37,13 @@ import org.olap4j.type.Type;
  *
  * @author jhyde
  */
-public class PropertyValueNode implements ParseTreeNode {
+public class PropertyValueNode implements ParseTreeNode, Freezable {
 
     private final ParseRegion region;
     private final String name;
-    private ParseTreeNode expression;
+    private final ParseTreeNode expression;
+    private boolean frozen;
+    private int hash;
 
     /**
      * Creates a PropertyValueNode.
@@ -100,6 +103,44 @@ public class PropertyValueNode implements ParseTreeNode {
             this.name,
             this.expression.deepCopy());
     }
+
+    public PropertyValueNode freeze() {
+        if (!frozen) {
+            MdxUtil.freeze(expression);
+            frozen = true;
+        }
+        return this;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    @Override
+    public int hashCode() {
+        if (hash != 0) {
+            return hash;
+        }
+        final int result = name.hashCode() * 31 + expression.hashCode();
+        if (frozen) {
+            hash = result;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof PropertyValueNode)) {
+            return false;
+        }
+        final PropertyValueNode that = (PropertyValueNode) obj;
+        return MdxUtil.maybeEqual(this, that)
+            && name.equals(that.name)
+            && expression.equals(that.expression);
+    }
 }
 
 // End PropertyValueNode.java
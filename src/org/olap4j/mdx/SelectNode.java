@@ -18,6 +18,8 @@
 package org.olap4j.mdx;
 
 import org.olap4j.Axis;
+import org.olap4j.impl.Freezable;
+import org.olap4j.impl.Olap4jUtil;
 import org.olap4j.type.Type;
 
 import java.io.PrintWriter;
@@ -30,13 +32,15 @@ import java.util.*;
  * @author jhyde
  * @since Jun 4, 2007
  */
-public class SelectNode implements ParseTreeNode {
+public class SelectNode implements ParseTreeNode, Freezable {
     private final ParseRegion region;
-    private final List<ParseTreeNode> withList;
-    private final List<AxisNode> axisList;
+    private List<ParseTreeNode> withList;
+    private List<AxisNode> axisList;
     private final AxisNode filterAxis;
-    private final List<IdentifierNode> cellPropertyList;
+    private List<IdentifierNode> cellPropertyList;
     private ParseTreeNode from;
+    private boolean frozen;
+    private int hash;
 
     /**
      * Creates a SelectNode.
@@ -235,6 +239,7 @@ public class SelectNode implements ParseTreeNode {
      * @param from FROM clause
      */
     public void setFrom(ParseTreeNode from) {
+        MdxUtil.checkNotFrozen(this);
         this.from = from;
     }
 
@@ -258,6 +263,57 @@ public class SelectNode implements ParseTreeNode {
             this.filterAxis.deepCopy(),
             MdxUtil.deepCopyList(cellPropertyList));
     }
+
+    public SelectNode freeze() {
+        if (!frozen) {
+            withList = MdxUtil.freezeList(withList);
+            axisList = MdxUtil.freezeList(axisList);
+            if (from != null) {
+                MdxUtil.freeze(from);
+            }
+            filterAxis.freeze();
+            cellPropertyList = MdxUtil.freezeList(cellPropertyList);
+            frozen = true;
+        }
+        return this;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    @Override
+    public int hashCode() {
+        if (hash != 0) {
+            return hash;
+        }
+        int result = withList.hashCode();
+        result = 31 * result + axisList.hashCode();
+        result = 31 * result + (from == null ? 0 : from.hashCode());
+        result = 31 * result + filterAxis.hashCode();
+        result = 31 * result + cellPropertyList.hashCode();
+        if (frozen) {
+            hash = result;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof SelectNode)) {
+            return false;
+        }
+        final SelectNode that = (SelectNode) obj;
+        return MdxUtil.maybeEqual(this, that)
+            && withList.equals(that.withList)
+            && axisList.equals(that.axisList)
+            && Olap4jUtil.equal(from, that.from)
+            && filterAxis.equals(that.filterAxis)
+            && cellPropertyList.equals(that.cellPropertyList);
+    }
 }
 
 // End SelectNode.java
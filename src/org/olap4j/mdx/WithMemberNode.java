@@ -17,6 +17,8 @@
 */
 package org.olap4j.mdx;
 
+import org.olap4j.impl.Freezable;
+import org.olap4j.impl.Olap4jUtil;
 import org.olap4j.type.Type;
 
 import java.io.PrintWriter;
@@ -28,7 +30,7 @@ import java.util.List;
  *
  * @author jhyde
  */
-public class WithMemberNode implements ParseTreeNode {
+public class WithMemberNode implements ParseTreeNode, Freezable {
 
     private final ParseRegion region;
 
@@ -39,7 +41,9 @@ public class WithMemberNode implements ParseTreeNode {
     private ParseTreeNode expression;
 
     // properties of member, such as SOLVE_ORDER
-    private final List<PropertyValueNode> memberPropertyList;
+    private List<PropertyValueNode> memberPropertyList;
+    private boolean frozen;
+    private int hash;
 
     /**
      * Constructs a formula specifying a member.
@@ -110,6 +114,7 @@ public class WithMemberNode implements ParseTreeNode {
      * @param expression Expression
      */
     public void setExpression(ParseTreeNode expression) {
+        MdxUtil.checkNotFrozen(this);
         this.expression = expression;
     }
 
@@ -145,6 +150,49 @@ public class WithMemberNode implements ParseTreeNode {
             this.expression.deepCopy(),
             MdxUtil.deepCopyList(memberPropertyList));
     }
+
+    public WithMemberNode freeze() {
+        if (!frozen) {
+            MdxUtil.freeze(expression);
+            memberPropertyList = MdxUtil.freezeList(memberPropertyList);
+            frozen = true;
+        }
+        return this;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    @Override
+    public int hashCode() {
+        if (hash != 0) {
+            return hash;
+        }
+        int result = name.hashCode();
+        result = 31 * result + expression.hashCode();
+        result = 31 * result
+            + (memberPropertyList == null ? 0 : memberPropertyList.hashCode());
+        if (frozen) {
+            hash = result;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof WithMemberNode)) {
+            return false;
+        }
+        final WithMemberNode that = (WithMemberNode) obj;
+        return MdxUtil.maybeEqual(this, that)
+            && name.equals(that.name)
+            && expression.equals(that.expression)
+            && Olap4jUtil.equal(memberPropertyList, that.memberPropertyList);
+    }
 }
 
 // End WithMemberNode.java
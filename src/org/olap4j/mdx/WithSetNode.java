@@ -17,6 +17,7 @@
 */
 package org.olap4j.mdx;
 
+import org.olap4j.impl.Freezable;
 import org.olap4j.type.Type;
 
 import java.io.PrintWriter;
@@ -27,7 +28,7 @@ import java.io.PrintWriter;
  *
  * @author jhyde
  */
-public class WithSetNode implements ParseTreeNode {
+public class WithSetNode implements ParseTreeNode, Freezable {
 
     private final ParseRegion region;
     /** name of set */
@@ -35,6 +36,8 @@ public class WithSetNode implements ParseTreeNode {
 
     /** defining expression */
     private ParseTreeNode expression;
+    private boolean frozen;
+    private int hash;
 
     /**
      * Creates a declaration of a named set.
@@ -91,6 +94,7 @@ public class WithSetNode implements ParseTreeNode {
      * @param expression expression which calculates the set
      */
     public void setExpression(ParseTreeNode expression) {
+        MdxUtil.checkNotFrozen(this);
         this.expression = expression;
     }
 
@@ -112,6 +116,44 @@ public class WithSetNode implements ParseTreeNode {
             this.name.deepCopy(),
             this.expression.deepCopy());
     }
+
+    public WithSetNode freeze() {
+        if (!frozen) {
+            MdxUtil.freeze(expression);
+            frozen = true;
+        }
+        return this;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    @Override
+    public int hashCode() {
+        if (hash != 0) {
+            return hash;
+        }
+        final int result = name.hashCode() * 31 + expression.hashCode();
+        if (frozen) {
+            hash = result;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof WithSetNode)) {
+            return false;
+        }
+        final WithSetNode that = (WithSetNode) obj;
+        return MdxUtil.maybeEqual(this, that)
+            && name.equals(that.name)
+            && expression.equals(that.expression);
+    }
 }
 
 // End WithSetNode.java
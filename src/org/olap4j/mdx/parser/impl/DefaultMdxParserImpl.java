@@ -24,23 +24,61 @@ import org.olap4j.mdx.SelectNode;
 import org.olap4j.mdx.parser.MdxParseException;
 import org.olap4j.mdx.parser.MdxParser;
 
+import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  * Default implementation of {@link org.olap4j.mdx.parser.MdxParser MDX Parser}.
  *
+ * <p>Applications often parse the same statements many times, so the parser
+ * keeps a cache of the parse trees of recently parsed <code>SELECT</code>
+ * statements, keyed by their text. Parse trees are mutable, so each call
+ * returns a deep copy of the cached tree, which is much cheaper than parsing.
+ *
+ * <p>Instances of the generated parser are kept in a small pool, and are
+ * re-initialized for each statement rather than created afresh; that saves
+ * allocating a token manager and its buffers on every call. The pool is a
+ * static field, not a thread-local, so that threads that outlive this class
+ * (for example, the worker threads of an application server) do not keep
+ * its class loader alive; and a parser that has just parsed a long
+ * statement is not returned to the pool, so the pool does not keep large
+ * buffers.
+ *
  * @author jhyde
  * @since Aug 22, 2006
  */
 public class DefaultMdxParserImpl implements MdxParser {
-    private boolean debug = false;
-    private final FunTable funTable = new FunTable() {
+    private static final int CACHE_SIZE = 1000;
+
+    /** Maximum number of idle parsers in {@link #PARSER_POOL}. */
+    private static final int POOL_SIZE = 8;
+
+    /**
+     * Length of the longest statement after which a parser is returned to
+     * {@link #PARSER_POOL}.
+     */
+    private static final int POOL_MAX_LENGTH = 10000;
+
+    private static final FunTable FUN_TABLE = new FunTable() {
         public boolean isProperty(String s) {
             return s.equalsIgnoreCase("CHILDREN");
         }
     };
 
+    /**
+     * Parse trees of recently parsed SELECT statements. The trees are frozen,
+     * and are never given to a caller; only copies of them.
+     */
+    private static final Map<String, SelectNode> CACHE =
+        new LruMap<String, SelectNode>(CACHE_SIZE);
+
+    /**
+     * Idle parsers. Guarded by its own monitor.
+     */
+    private static final LinkedList<MdxParserImpl> PARSER_POOL =
+        new LinkedList<MdxParserImpl>();
+
     /**
      * Creates a DefaultMdxParserImpl.
      */
@@ -49,23 +87,77 @@ public class DefaultMdxParserImpl implements MdxParser {
     }
 
     public SelectNode parseSelect(String mdx) {
-        try {
-            return new MdxParserImpl(mdx, debug, funTable, false)
-                .selectStatement();
-        } catch (TokenMgrError e) {
-            throw convertException(mdx, e);
-        } catch (ParseException e) {
-            throw convertException(mdx, e);
+        SelectNode selectNode;
+        synchronized (CACHE) {
+            selectNode = CACHE.get(mdx);
         }
+        if (selectNode == null) {
+            final MdxParserImpl parser = parser(mdx);
+            try {
+                selectNode = parser.selectStatement().freeze();
+            } catch (TokenMgrError e) {
+                throw convertException(mdx, e);
+            } catch (ParseException e) {
+                throw convertException(mdx, e);
+            } finally {
+                release(parser, mdx);
+            }
+            synchronized (CACHE) {
+                CACHE.put(mdx, selectNode);
+            }
+        }
+        return selectNode.deepCopy();
     }
 
     public ParseTreeNode parseExpression(String mdx) {
+        final MdxParserImpl parser = parser(mdx);
         try {
-            return new MdxParserImpl(mdx, debug, funTable, false).expression();
+            return parser.expression();
         } catch (TokenMgrError e) {
             throw convertException(mdx, e);
         } catch (ParseException e) {
             throw convertException(mdx, e);
+        } finally {
+            release(parser, mdx);
+        }
+    }
+
+    /**
+     * Takes a parser from the pool, or creates one if the pool is empty, and
+     * readies it to parse a given string. The caller must give it back by
+     * calling {@link #release}.
+     *
+     * @param mdx MDX string
+     * @return Parser
+     */
+    private static MdxParserImpl parser(String mdx) {
+        MdxParserImpl parser;
+        synchronized (PARSER_POOL) {
+            parser = PARSER_POOL.poll();
+        }
+        if (parser == null) {
+            parser = new MdxParserImpl("", false, FUN_TABLE, false);
+        }
+        parser.reset(mdx);
+        return parser;
+    }
+
+    /**
+     * Returns a parser to the pool, unless the pool is full or the parser
+     * has just parsed a long statement and may hold large buffers.
+     *
+     * @param parser Parser
+     * @param mdx MDX string that the parser has just parsed
+     */
+    private static void release(MdxParserImpl parser, String mdx) {
+        if (mdx.length() > POOL_MAX_LENGTH) {
+            return;
+        }
+        parser.reset("");
+        synchronized (PARSER_POOL) {
+            if (PARSER_POOL.size() < POOL_SIZE) {
+                PARSER_POOL.add(parser);
+            }
         }
     }
 
@@ -130,6 +222,28 @@ public class DefaultMdxParserImpl implements MdxParser {
     interface FunTable {
         boolean isProperty(String s);
     }
+
+    /**
+     * Map that holds at most a given number of entries, evicting the least
+     * recently accessed entry when full.
+     *
+     * @param <K> Key type
+     * @param <V> Value type
+     */
+    private static class LruMap<K, V> extends LinkedHashMap<K, V> {
+        private static final long serialVersionUID = 1L;
+
+        private final int maxSize;
+
+        LruMap(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > maxSize;
+        }
+    }
 }
 
 // End DefaultMdxParserImpl.java
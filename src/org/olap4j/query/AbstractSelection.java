@@ -33,6 +33,26 @@ abstract class AbstractSelection extends QueryNodeImpl implements Selection {
     Dimension dimension;
     List<Selection> selectionContext;
 
+    /**
+     * Forwards changes to the selections in this selection's context to
+     * this selection's listeners, because the MDX generated for this
+     * selection depends on them.
+     */
+    private final QueryNodeListener contextListener =
+        new QueryNodeListener() {
+            public void childrenRemoved(QueryEvent event) {
+                notifyChange(AbstractSelection.this, -1);
+            }
+
+            public void childrenAdded(QueryEvent event) {
+                notifyChange(AbstractSelection.this, -1);
+            }
+
+            public void selectionChanged(QueryEvent event) {
+                notifyChange(AbstractSelection.this, -1);
+            }
+        };
+
     public AbstractSelection(
         Dimension dimension,
         Operator operator)
@@ -67,10 +87,15 @@ abstract class AbstractSelection extends QueryNodeImpl implements Selection {
             selectionContext = new ArrayList<Selection>();
         }
         selectionContext.add(selection);
+        selection.addQueryNodeListener(contextListener);
+        notifyChange(this, -1);
     }
 
     public void removeContext(Selection selection) {
-        selectionContext.remove(selection);
+        if (selectionContext.remove(selection)) {
+            selection.removeQueryNodeListener(contextListener);
+            notifyChange(this, -1);
+        }
     }
 
     public String getUniqueName() {
@@ -26,6 +26,16 @@ import java.util.*;
 
 /**
  * Utility class to convert a Query object to a SelectNode.
+ *
+ * <p>The parse tree of each axis, and of each dimension on it, is kept on
+ * the {@link QueryAxis} and {@link QueryDimension} that it was generated
+ * from, and is regenerated only after that node, or one of its selections,
+ * has changed. Regenerating the MDX of a query whose dimensions have many
+ * selections is therefore cheap if only one dimension has changed.
+ *
+ * <p>Fragments are shared between the trees returned by successive calls,
+ * and within a tree; callers that hand a tree to a client should copy it
+ * first.
  */
 abstract class Olap4jNodeConverter {
 
@@ -140,9 +150,88 @@ abstract class Olap4jNodeConverter {
         List<Selection> selsWithContext,
         List<List<ParseTreeNode>> contextUnions)
     {
-        ParseTreeNode exceptSet = null;
         QueryDimension qDim = axis.getDimensions().get(dim);
+        final List<ParseTreeNode> inclusionNodes = toInclusionNodes(qDim);
+        for (int k = 0; k < inclusionNodes.size(); k++) {
+            final Selection sel = qDim.getInclusions().get(k);
+            final ParseTreeNode selectionNode = inclusionNodes.get(k);
+            if (sel.getSelectionContext() != null
+                && sel.getSelectionContext().size() > 0)
+            {
+                // selections that have a context are treated
+                // differently than the rest of the MDX generation
+                if (!selsWithContext.contains(sel)) {
+                    ArrayList<ParseTreeNode> sels =
+                        new ArrayList<ParseTreeNode>();
+                    for (int i = 0; i < axis.getDimensions().size(); i++) {
+                        if (dim == i) {
+                            sels.add(selectionNode);
+                        } else {
+                            // return the selections in the correct
+                            // dimensional order
+                            QueryDimension dimension =
+                                axis.getDimensions().get(i);
 
+                            boolean found = false;
+                            for (Selection selection
+                                : sel.getSelectionContext())
+                            {
+                                if (selection.getDimension().equals(
+                                        dimension.getDimension()))
+                                {
+                                    sels.add(toOlap4j(selection));
+                                    found = true;
+                                }
+                            }
+                            if (!found) {
+                                // add the first selection of the dimension
+                                if (dimension.getInclusions().size() > 0) {
+                                    sels.add(toOlap4j(
+                                        dimension.getInclusions().get(0)));
+                                }
+                            }
+                        }
+                    }
+                    contextUnions.add(sels);
+                    selsWithContext.add(sel);
+                }
+            } else {
+                List<ParseTreeNode> ncurr = new ArrayList<ParseTreeNode>();
+                if (curr != null) {
+                    ncurr.addAll(curr);
+                }
+                ncurr.add(selectionNode);
+                if (dim == axis.getDimensions().size() - 1) {
+                    // last dimension
+                    unions.add(ncurr);
+                } else {
+                    generateUnionsRecursively(
+                        axis, dim + 1, ncurr, unions, selsWithContext,
+                        contextUnions);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the expression for each inclusion of a dimension, for use in
+     * a crossjoin with other dimensions; generates the expressions if the
+     * dimension has changed since they were last generated.
+     */
+    private static List<ParseTreeNode> toInclusionNodes(QueryDimension qDim) {
+        List<ParseTreeNode> inclusionNodes = qDim.inclusionNodes;
+        if (inclusionNodes == null) {
+            inclusionNodes =
+                Collections.unmodifiableList(generateInclusionNodes(qDim));
+            qDim.inclusionNodes = inclusionNodes;
+        }
+        return inclusionNodes;
+    }
+
+    private static List<ParseTreeNode> generateInclusionNodes(
+        QueryDimension qDim)
+    {
+        ParseTreeNode exceptSet = null;
         List<Selection> exclusionSelections = qDim.getExclusions();
         List<ParseTreeNode> exclusionNodes = new ArrayList<ParseTreeNode>();
 
@@ -155,22 +244,23 @@ abstract class Olap4jNodeConverter {
             exceptSet = generateListSetCall(exclusionNodes);
         }
 
+        ConsistencyFilter consistencyFilter = null;
+        if (qDim.isHierarchyConsistent()
+            && qDim.getInclusions().size() > 1)
+        {
+            consistencyFilter = new ConsistencyFilter(qDim);
+        }
+
+        final List<ParseTreeNode> inclusionNodes =
+            new ArrayList<ParseTreeNode>(qDim.getInclusions().size());
         for (Selection sel : qDim.getInclusions()) {
             ParseTreeNode selectionNode = toOlap4j(sel);
             // If a the querydimension should return only hierarchy
             // consistent results, generate a filter that checks
             // inclusions for ancestors in higher levels
-            if (qDim.isHierarchyConsistent()
-                    && qDim.getInclusions().size() > 1)
-            {
-                Integer currentDepth = null;
-                if (sel.getRootElement() instanceof Member) {
-                    currentDepth = ((Member)sel.getRootElement()).getDepth();
-                } else if (sel.getRootElement() instanceof Level) {
-                    currentDepth = ((Level)sel.getRootElement()).getDepth();
-                }
+            if (consistencyFilter != null) {
                 selectionNode =
-                   toHierarchyConsistentNode(selectionNode, currentDepth, qDim);
+                    consistencyFilter.apply(selectionNode, depth(sel));
             }
             // If a sort Order was specified for this dimension
             // apply it for this inclusion
@@ -209,62 +299,22 @@ abstract class Olap4jNodeConverter {
                         generateSetCall(selectionNode),
                         exceptSet);
             }
-            if (sel.getSelectionContext() != null
-                && sel.getSelectionContext().size() > 0)
-            {
-                // selections that have a context are treated
-                // differently than the rest of the MDX generation
-                if (!selsWithContext.contains(sel)) {
-                    ArrayList<ParseTreeNode> sels =
-                        new ArrayList<ParseTreeNode>();
-                    for (int i = 0; i < axis.getDimensions().size(); i++) {
-                        if (dim == i) {
-                            sels.add(selectionNode);
-                        } else {
-                            // return the selections in the correct
-                            // dimensional order
-                            QueryDimension dimension =
-                                axis.getDimensions().get(i);
+            inclusionNodes.add(selectionNode);
+        }
+        return inclusionNodes;
+    }
 
-                            boolean found = false;
-                            for (Selection selection
-                                : sel.getSelectionContext())
-                            {
-                                if (selection.getDimension().equals(
-                                        dimension.getDimension()))
-                                {
-                                    sels.add(toOlap4j(selection));
-                                    found = true;
-                                }
-                            }
-                            if (!found) {
-                                // add the first selection of the dimension
-                                if (dimension.getInclusions().size() > 0) {
-                                    sels.add(toOlap4j(
-                                        dimension.getInclusions().get(0)));
-                                }
-                            }
-                        }
-                    }
-                    contextUnions.add(sels);
-                    selsWithContext.add(sel);
-                }
-            } else {
-                List<ParseTreeNode> ncurr = new ArrayList<ParseTreeNode>();
-                if (curr != null) {
-                    ncurr.addAll(curr);
-                }
-                ncurr.add(selectionNode);
-                if (dim == axis.getDimensions().size() - 1) {
-                    // last dimension
-                    unions.add(ncurr);
-                } else {
-                    generateUnionsRecursively(
-                        axis, dim + 1, ncurr, unions, selsWithContext,
-                        contextUnions);
-                }
-            }
+    /**
+     * Returns the depth of the root element of a selection, or 0 if it is
+     * neither a member nor a level.
+     */
+    private static int depth(Selection selection) {
+        if (selection.getRootElement() instanceof Member) {
+            return ((Member) selection.getRootElement()).getDepth();
+        } else if (selection.getRootElement() instanceof Level) {
+            return ((Level) selection.getRootElement()).getDepth();
         }
+        return 0;
     }
 
     /**
@@ -274,11 +324,26 @@ abstract class Olap4jNodeConverter {
      * It might return null if there are no dimensions placed on the axis.
      */
     private static AxisNode toOlap4j(QueryAxis axis) {
+        if (axis.getDimensions().isEmpty()) {
+            return null;
+        }
+        ParseTreeNode expression = axis.expression;
+        if (expression == null) {
+            expression = generateAxisExpression(axis);
+            axis.expression = expression;
+        }
+        return new AxisNode(
+            null,
+            axis.isNonEmpty(),
+            axis.getLocation(),
+            new ArrayList<IdentifierNode>(),
+            expression);
+    }
+
+    private static ParseTreeNode generateAxisExpression(QueryAxis axis) {
         CallNode callNode = null;
         int numDimensions = axis.getDimensions().size();
-        if (numDimensions == 0) {
-            return null;
-        } else if (numDimensions == 1) {
+        if (numDimensions == 1) {
             QueryDimension dimension = axis.getDimensions().get(0);
             List<ParseTreeNode> members = toOlap4j(dimension);
             callNode = generateListSetCall(members);
@@ -368,16 +433,27 @@ abstract class Olap4jNodeConverter {
         } else {
             sortedNode = limitedNode;
         }
-
-        return new AxisNode(
-            null,
-            axis.isNonEmpty(),
-            axis.getLocation(),
-            new ArrayList<IdentifierNode>(),
-            sortedNode);
+        return sortedNode;
     }
 
+    /**
+     * Returns the expressions for a dimension that is alone on its axis;
+     * generates them if the dimension has changed since they were last
+     * generated.
+     */
     private static List<ParseTreeNode> toOlap4j(QueryDimension dimension) {
+        List<ParseTreeNode> setNodes = dimension.setNodes;
+        if (setNodes == null) {
+            setNodes =
+                Collections.unmodifiableList(generateSetNodes(dimension));
+            dimension.setNodes = setNodes;
+        }
+        return setNodes;
+    }
+
+    private static List<ParseTreeNode> generateSetNodes(
+        QueryDimension dimension)
+    {
         // Let's build a first list of included members.
         List<ParseTreeNode> includeList = new ArrayList<ParseTreeNode>();
         Map<Integer, List<ParseTreeNode>> levelNodes =
@@ -390,12 +466,7 @@ abstract class Olap4jNodeConverter {
             if (dimension.isHierarchyConsistent()
                 && dimension.getInclusions().size() > 1)
             {
-                Integer curdepth = 0;
-                if (selection.getRootElement() instanceof Member) {
-                    curdepth = ((Member)selection.getRootElement()).getDepth();
-                } else if (selection.getRootElement() instanceof Level) {
-                    curdepth = ((Level)selection.getRootElement()).getDepth();
-                }
+                Integer curdepth = depth(selection);
 
                 if (levelNodes.get(curdepth) != null) {
                     levelNodes.get(curdepth).add(selectionNode);
@@ -417,12 +488,13 @@ abstract class Olap4jNodeConverter {
 
             Arrays.sort(levelDepths);
 
+            final ConsistencyFilter consistencyFilter =
+                new ConsistencyFilter(dimension);
             for (Integer depth : levelDepths) {
                 ParseTreeNode levelNode =
                     generateListSetCall(levelNodes.get(depth));
 
-                levelNode =
-                    toHierarchyConsistentNode(levelNode, depth, dimension);
+                levelNode = consistencyFilter.apply(levelNode, depth);
                 includeList.add(levelNode);
             }
         }
@@ -606,29 +678,50 @@ abstract class Olap4jNodeConverter {
         for (QueryAxis axis : axes) {
             AxisNode axisNode = toOlap4j(axis);
             if (axisNode != null) {
-                axisList.add(toOlap4j(axis));
+                axisList.add(axisNode);
             }
         }
         return axisList;
     }
 
-    private static ParseTreeNode toHierarchyConsistentNode(
-        ParseTreeNode selectionNode,
-        Integer maxDepth,
-        QueryDimension qDim)
-    {
-        // If a the querydimension should return only hierarchy
-        // consistent results, generate a filter that checks
-        // inclusions for ancestors in higher levels
-        if (qDim.getInclusions().size() > 1) {
+    /**
+     * Filter that keeps only the members of a set whose ancestors are among
+     * the inclusions of a dimension, as required by
+     * {@link QueryDimension#setHierarchyConsistent(boolean)}.
+     *
+     * <p>The condition for each level is built once per dimension, and
+     * shared by the filters of all of its selections.
+     */
+    private static class ConsistencyFilter {
+        /**
+         * Depths of the levels that have an inclusion, ascending, excluding
+         * the deepest.
+         */
+        private final List<Integer> depths = new ArrayList<Integer>();
+
+        /**
+         * Condition for each element of {@link #depths}; null if that level
+         * has no member inclusions, or is an 'all' level.
+         */
+        private final List<CallNode> conditions = new ArrayList<CallNode>();
+
+        ConsistencyFilter(QueryDimension qDim) {
             Map<Integer, Level> levels = new HashMap<Integer, Level>();
+            Map<Level, List<ParseTreeNode>> ancestorLists =
+                new HashMap<Level, List<ParseTreeNode>>();
             for (Selection s : qDim.getInclusions()) {
                 if (s.getRootElement() instanceof Member) {
                     Integer d = ((Member)s.getRootElement()).getDepth();
+                    Level lvl = ((Member)s.getRootElement()).getLevel();
                     if (!levels.containsKey(d)) {
-                        Level lvl = ((Member)s.getRootElement()).getLevel();
                         levels.put(d, lvl);
                     }
+                    List<ParseTreeNode> ancestorList = ancestorLists.get(lvl);
+                    if (ancestorList == null) {
+                        ancestorList = new ArrayList<ParseTreeNode>();
+                        ancestorLists.put(lvl, ancestorList);
+                    }
+                    ancestorList.add(s.visit());
                 } else if (s.getRootElement() instanceof Level) {
                     Integer d = ((Level)s.getRootElement()).getDepth();
                     if (!levels.containsKey(d)) {
@@ -643,11 +736,13 @@ abstract class Olap4jNodeConverter {
 
             Arrays.sort(levelDepths);
 
-            List<CallNode> inConditions = new ArrayList<CallNode>();
-            for (Integer i = 0; i < levelDepths.length - 1; i++) {
+            for (int i = 0; i < levelDepths.length - 1; i++) {
                 Level currentLevel = levels.get(levelDepths[i]);
-                if (levelDepths[i] < maxDepth
-                    && currentLevel.getLevelType() != Level.Type.ALL)
+                List<ParseTreeNode> ancestorList =
+                    ancestorLists.get(currentLevel);
+                CallNode condition = null;
+                if (currentLevel.getLevelType() != Level.Type.ALL
+                    && ancestorList != null)
                 {
                     CallNode currentMemberNode =
                         new CallNode(
@@ -666,64 +761,64 @@ abstract class Olap4jNodeConverter {
                             currentMemberNode,
                             new LevelNode(null, currentLevel));
 
-                    List <ParseTreeNode> ancestorList =
-                        new ArrayList<ParseTreeNode>();
-
-                    for (Selection anc : qDim.getInclusions()) {
-                        if (anc.getRootElement() instanceof Member) {
-                            Level l = ((Member)anc.getRootElement()).getLevel();
-                            if (l.equals(levels.get(levelDepths[i]))) {
-                                ancestorList.add(anc.visit());
-                            }
-                        }
-                    }
-                    if (ancestorList.size() > 0) {
-                        CallNode ancestorSet =
-                            generateListSetCall(ancestorList);
-                        CallNode inClause = new CallNode(
+                    CallNode ancestorSet =
+                        generateListSetCall(ancestorList);
+                    CallNode inClause = new CallNode(
+                        null,
+                        "Exists",
+                        Syntax.Function,
+                        ancestorNode,
+                        ancestorSet);
+                    CallNode count =
+                        new CallNode(
                             null,
-                            "Exists",
-                            Syntax.Function,
-                            ancestorNode,
-                            ancestorSet);
-                        CallNode count =
-                            new CallNode(
-                                null,
-                                "Count",
-                                Syntax.Property,
-                                inClause);
-                        CallNode greaterZero =
-                            new CallNode(
-                                null,
-                                " > 0",
-                                Syntax.Postfix,
-                                count);
-                        inConditions.add(greaterZero);
-                    }
+                            "Count",
+                            Syntax.Property,
+                            inClause);
+                    condition =
+                        new CallNode(
+                            null,
+                            " > 0",
+                            Syntax.Postfix,
+                            count);
                 }
+                depths.add(levelDepths[i]);
+                conditions.add(condition);
             }
-            if (inConditions.size() > 0) {
-                CallNode chainedIn = inConditions.get(0);
-                if (inConditions.size() > 1) {
-                    for (int c = 1;c < inConditions.size();c++) {
+        }
+
+        /**
+         * Wraps a set in a filter that checks the ancestors of its members
+         * at each level above {@code maxDepth}. Returns the set unchanged if
+         * there is nothing to check.
+         */
+        ParseTreeNode apply(ParseTreeNode selectionNode, int maxDepth) {
+            CallNode chainedIn = null;
+            for (int i = 0; i < depths.size(); i++) {
+                final CallNode condition = conditions.get(i);
+                if (depths.get(i) < maxDepth && condition != null) {
+                    if (chainedIn == null) {
+                        chainedIn = condition;
+                    } else {
                         chainedIn = new CallNode(
                             null,
                             "AND",
                             Syntax.Infix,
                             chainedIn,
-                            inConditions.get(c));
+                            condition);
                     }
                 }
-
-                return new CallNode(
-                    null,
-                    "Filter",
-                    Syntax.Function,
-                    generateSetCall(selectionNode),
-                    chainedIn);
             }
+            if (chainedIn == null) {
+                return selectionNode;
+            }
+            return new CallNode(
+                null,
+                "Filter",
+                Syntax.Function,
+                generateSetCall(selectionNode),
+                chainedIn);
         }
-        return selectionNode;
     }
 }
 
@@ -18,6 +18,8 @@
 package org.olap4j.query;
 
 import org.olap4j.*;
+import org.olap4j.impl.*;
+import org.olap4j.mdx.IdentifierSegment;
 import org.olap4j.mdx.SelectNode;
 import org.olap4j.metadata.*;
 
@@ -85,10 +87,14 @@ public class Query extends QueryNodeImpl {
      * Returns the MDX parse tree behind this Query. The returned object is
      * generated for each call to this function. Altering the returned
      * SelectNode object won't affect the query itself.
+     *
+     * <p>Only the parts of the tree whose axes or dimensions have changed
+     * since the previous call are regenerated.
+     *
      * @return A SelectNode object representing the current query structure.
      */
     public SelectNode getSelect() {
-        return Olap4jNodeConverter.toOlap4j(this);
+        return Olap4jNodeConverter.toOlap4j(this).deepCopy();
     }
 
     /**
@@ -271,12 +277,73 @@ public class Query extends QueryNodeImpl {
             }
 
             // Try to build a select tree.
-            this.getSelect();
+            Olap4jNodeConverter.toOlap4j(this);
         } catch (Exception e) {
             throw new OlapException("Query validation failed.", e);
         }
     }
 
+    /**
+     * Resolves selections into the members they select.
+     *
+     * <p>The result is the same as calling
+     * {@link QueryDimension#resolve(Selection)} for each selection, but
+     * selections whose operators need the same tree operations are resolved
+     * together, by one call to {@link ExtendedCube#lookupMemberRelatives}.
+     * The driver may answer each such call with one request to the server,
+     * or with several concurrent ones, and may answer it from its member
+     * cache.
+     *
+     * @param selections Selections to resolve
+     * @return Map from each selection to the members it selects
+     * @throws OlapException If a selection's operator is not supported, or
+     * if an error occurs while looking up members in the underlying cube.
+     */
+    public Map<Selection, List<Member>> resolve(
+        Collection<? extends Selection> selections)
+        throws OlapException
+    {
+        final Map<Set<Member.TreeOp>, List<Selection>> groups =
+            new LinkedHashMap<Set<Member.TreeOp>, List<Selection>>();
+        for (Selection selection : selections) {
+            final Set<Member.TreeOp> treeOps =
+                QueryDimension.treeOps(selection);
+            List<Selection> group = groups.get(treeOps);
+            if (group == null) {
+                group = new ArrayList<Selection>();
+                groups.put(treeOps, group);
+            }
+            group.add(selection);
+        }
+        final Map<Selection, List<Member>> map =
+            new HashMap<Selection, List<Member>>();
+        for (Entry<Set<Member.TreeOp>, List<Selection>> entry
+            : groups.entrySet())
+        {
+            final List<Selection> group = entry.getValue();
+            final List<List<Member>> memberLists;
+            try {
+                final List<List<IdentifierSegment>> namePartsList =
+                    new ArrayList<List<IdentifierSegment>>();
+                for (Selection selection : group) {
+                    namePartsList.add(
+                        IdentifierParser.parseIdentifier(
+                            selection.getUniqueName()));
+                }
+                memberLists =
+                    Olap4jUtil.extend(cube).lookupMemberRelatives(
+                        entry.getKey(), namePartsList);
+            } catch (Exception e) {
+                throw new OlapException(
+                    "Error while resolving selections " + group, e);
+            }
+            for (int i = 0; i < group.size(); i++) {
+                map.put(group.get(i), memberLists.get(i));
+            }
+        }
+        return map;
+    }
+
     /**
      * Executes the query against the current OlapConnection and returns
      * a CellSet object representation of the data.
@@ -288,7 +355,9 @@ public class Query extends QueryNodeImpl {
      *     a stale connection. Look at the root cause for more details.
      */
     public CellSet execute() throws OlapException {
-        SelectNode mdx = getSelect();
+        // The tree is not handed to the caller, so there is no need to copy
+        // it.
+        SelectNode mdx = Olap4jNodeConverter.toOlap4j(this);
         final Catalog catalog = cube.getSchema().getCatalog();
         try {
             this.connection.setCatalog(catalog.getName());
@@ -20,6 +20,7 @@ package org.olap4j.query;
 import org.olap4j.Axis;
 import org.olap4j.OlapException;
 import org.olap4j.mdx.IdentifierSegment;
+import org.olap4j.mdx.ParseTreeNode;
 import org.olap4j.metadata.Measure;
 import org.olap4j.metadata.Member;
 
@@ -48,6 +49,14 @@ public class QueryAxis extends QueryNodeImpl {
     private BigDecimal limitFunctionN = null;
     private String limitFunctionSortLiteral = null;
     private String filterCondition = null;
+
+    /**
+     * Set expression that {@link Olap4jNodeConverter} generated for this
+     * axis, or null if it has not been generated since the axis, or one of
+     * its dimensions, last changed.
+     */
+    ParseTreeNode expression;
+
     /**
      * Creates a QueryAxis.
      *
@@ -192,6 +201,13 @@ public class QueryAxis extends QueryNodeImpl {
         this.nonEmpty = nonEmpty;
     }
 
+    /**
+     * Discards the set expression generated for this axis.
+     */
+    void invalidate() {
+        expression = null;
+    }
+
     /**
      * List of QueryDimension objects. The list is active: when a dimension
      * is added to the list, it is removed from its previous axis.
@@ -215,6 +231,7 @@ public class QueryAxis extends QueryNodeImpl {
                 dimension.getAxis().getDimensions().remove(dimension);
             }
             dimension.setAxis(QueryAxis.this);
+            invalidate();
             return list.set(index, dimension);
         }
 
@@ -235,11 +252,13 @@ public class QueryAxis extends QueryNodeImpl {
             } else {
                 list.add(index, dimension);
             }
+            invalidate();
         }
 
         public QueryDimension remove(int index) {
             QueryDimension dimension = list.remove(index);
             dimension.setAxis(null);
+            invalidate();
             return dimension;
         }
     }
@@ -326,6 +345,7 @@ public class QueryAxis extends QueryNodeImpl {
         assert sortEvaluationLiteral != null;
         this.sortOrder = order;
         this.sortEvaluationLiteral = sortEvaluationLiteral;
+        invalidate();
     }
 
     /**
@@ -334,6 +354,7 @@ public class QueryAxis extends QueryNodeImpl {
     public void clearSort() {
         this.sortEvaluationLiteral = null;
         this.sortOrder = null;
+        invalidate();
     }
 
     /**
@@ -364,6 +385,7 @@ public class QueryAxis extends QueryNodeImpl {
     public void topCount(BigDecimal n) {
         this.limitFunction = LimitFunction.TopCount;
         this.limitFunctionN = n;
+        invalidate();
     }
 
     /**
@@ -374,6 +396,7 @@ public class QueryAxis extends QueryNodeImpl {
     public void bottomCount(BigDecimal n) {
         this.limitFunction = LimitFunction.BottomCount;
         this.limitFunctionN = n;
+        invalidate();
     }
 
     /**
@@ -387,6 +410,7 @@ public class QueryAxis extends QueryNodeImpl {
         this.limitFunction = function;
         this.limitFunctionN = n;
         this.limitFunctionSortLiteral = limitSortLiteral;
+        invalidate();
     }
 
     /**
@@ -396,6 +420,7 @@ public class QueryAxis extends QueryNodeImpl {
         this.limitFunction = null;
         this.limitFunctionN = null;
         this.limitFunctionSortLiteral = null;
+        invalidate();
     }
 
     /**
@@ -430,6 +455,7 @@ public class QueryAxis extends QueryNodeImpl {
      */
     public void filter(String filterCondition) {
         this.filterCondition = filterCondition;
+        invalidate();
     }
 
     /**
@@ -445,6 +471,7 @@ public class QueryAxis extends QueryNodeImpl {
      */
     public void clearFilter() {
         this.filterCondition = null;
+        invalidate();
     }
 }
 
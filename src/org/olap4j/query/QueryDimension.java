@@ -20,6 +20,7 @@ package org.olap4j.query;
 import org.olap4j.OlapException;
 import org.olap4j.impl.IdentifierParser;
 import org.olap4j.mdx.IdentifierSegment;
+import org.olap4j.mdx.ParseTreeNode;
 import org.olap4j.metadata.*;
 
 import java.util.*;
@@ -46,6 +47,35 @@ public class QueryDimension extends QueryNodeImpl {
     private HierarchizeMode hierarchizeMode = null;
     private boolean hierarchyConsistent = false;
 
+    /**
+     * Parse tree fragments that {@link Olap4jNodeConverter} generated for
+     * this dimension, or null if they have not been generated since the
+     * dimension last changed. {@code setNodes} is the dimension's set when
+     * it is alone on its axis; {@code inclusionNodes} holds one expression
+     * per inclusion, for axes that crossjoin several dimensions.
+     */
+    List<ParseTreeNode> setNodes;
+    List<ParseTreeNode> inclusionNodes;
+
+    /**
+     * Listens to this dimension's selections, and discards the generated
+     * fragments when one of them changes.
+     */
+    private final QueryNodeListener selectionListener =
+        new QueryNodeListener() {
+            public void childrenRemoved(QueryEvent event) {
+                invalidate();
+            }
+
+            public void childrenAdded(QueryEvent event) {
+                invalidate();
+            }
+
+            public void selectionChanged(QueryEvent event) {
+                invalidate();
+            }
+        };
+
     public QueryDimension(Query query, Dimension dimension) {
         super();
         this.query = query;
@@ -367,6 +397,10 @@ public class QueryDimension extends QueryNodeImpl {
     /**
      * Resolves a selection of members into an actual list
      * of the root member and it's relatives selected by the Selection object.
+     *
+     * <p>To resolve many selections, {@link Query#resolve(Collection)} is
+     * more efficient.
+     *
      * @param selection The selection of members to resolve.
      * @return A list of the actual members selected by the selection object.
      * @throws OlapException If resolving the selections triggers an exception
@@ -375,6 +409,32 @@ public class QueryDimension extends QueryNodeImpl {
     public List<Member> resolve(Selection selection) throws OlapException
     {
         assert selection != null;
+        final Set<Member.TreeOp> set = treeOps(selection);
+        try {
+            return
+                query.getCube().lookupMembers(
+                    set,
+                    IdentifierParser.parseIdentifier(
+                        selection.getUniqueName()));
+        } catch (Exception e) {
+            throw new OlapException(
+                "Error while resolving selection " + selection.toString(),
+                e);
+        }
+    }
+
+    /**
+     * Returns the tree operations that find the members of a selection,
+     * relative to its root member.
+     *
+     * @param selection Selection
+     * @return Set of tree operations
+     * @throws OlapException if the selection's operator cannot be resolved
+     * by tree operations
+     */
+    static Set<Member.TreeOp> treeOps(Selection selection)
+        throws OlapException
+    {
         final Member.TreeOp op;
         Member.TreeOp secondOp = null;
         switch (selection.getOperator()) {
@@ -400,17 +460,7 @@ public class QueryDimension extends QueryNodeImpl {
         if (secondOp != null) {
             set.add(secondOp);
         }
-        try {
-            return
-                query.getCube().lookupMembers(
-                    set,
-                    IdentifierParser.parseIdentifier(
-                        selection.getUniqueName()));
-        } catch (Exception e) {
-            throw new OlapException(
-                "Error while resolving selection " + selection.toString(),
-                e);
-        }
+        return set;
     }
 
     /**
@@ -458,6 +508,7 @@ public class QueryDimension extends QueryNodeImpl {
      */
     public void setDimension(Dimension dimension) {
         this.dimension = dimension;
+        invalidate();
     }
 
     /**
@@ -467,6 +518,7 @@ public class QueryDimension extends QueryNodeImpl {
      */
     public void sort(SortOrder order) {
         this.sortOrder = order;
+        invalidate();
     }
 
     /**
@@ -483,6 +535,7 @@ public class QueryDimension extends QueryNodeImpl {
      */
     public void clearSort() {
         this.sortOrder = null;
+        invalidate();
     }
 
     /**
@@ -516,6 +569,7 @@ public class QueryDimension extends QueryNodeImpl {
      */
     public void setHierarchizeMode(HierarchizeMode hierarchizeMode) {
         this.hierarchizeMode = hierarchizeMode;
+        invalidate();
     }
 
     /**
@@ -527,6 +581,7 @@ public class QueryDimension extends QueryNodeImpl {
      */
     public void clearHierarchizeMode() {
         this.hierarchizeMode = null;
+        invalidate();
     }
 
     /**
@@ -542,6 +597,7 @@ public class QueryDimension extends QueryNodeImpl {
      */
     public void setHierarchyConsistent(boolean consistent) {
         this.hierarchyConsistent = consistent;
+        invalidate();
     }
 
     /**
@@ -551,6 +607,24 @@ public class QueryDimension extends QueryNodeImpl {
         return this.hierarchyConsistent;
     }
 
+    /**
+     * Discards the parse tree fragments generated for this dimension, and
+     * for the axis it is placed on. Called whenever the dimension, or one of
+     * its selections, changes.
+     */
+    void invalidate() {
+        setNodes = null;
+        inclusionNodes = null;
+        if (axis != null) {
+            axis.invalidate();
+        }
+    }
+
+    /**
+     * List of selections. The list is active: the dimension listens to the
+     * selections in it, and discards its generated fragments when the list
+     * or a selection changes.
+     */
     private class SelectionList extends AbstractList<Selection> {
         private final List<Selection> list = new ArrayList<Selection>();
 
@@ -563,7 +637,11 @@ public class QueryDimension extends QueryNodeImpl {
         }
 
         public Selection set(int index, Selection selection) {
-            return list.set(index, selection);
+            final Selection previous = list.set(index, selection);
+            unlisten(previous);
+            listen(selection);
+            invalidate();
+            return previous;
         }
 
         public void add(int index, Selection selection) {
@@ -572,10 +650,25 @@ public class QueryDimension extends QueryNodeImpl {
                     "dimension already contains selection");
             }
             list.add(index, selection);
+            listen(selection);
+            invalidate();
         }
 
         public Selection remove(int index) {
-            return list.remove(index);
+            final Selection selection = list.remove(index);
+            unlisten(selection);
+            invalidate();
+            return selection;
+        }
+
+        private void listen(Selection selection) {
+            selection.addQueryNodeListener(selectionListener);
+        }
+
+        private void unlisten(Selection selection) {
+            if (selection != null) {
+                selection.removeQueryNodeListener(selectionListener);
+            }
         }
     }
 
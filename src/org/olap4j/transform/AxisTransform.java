@@ -17,9 +17,12 @@
 */
 package org.olap4j.transform;
 
-import org.olap4j.Axis;
+import org.olap4j.*;
 import org.olap4j.mdx.*;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Abstract representation of an MDX query transform acting on
  * a single query axis (e.g. drill-down on member, roll-up, ...)
@@ -36,6 +39,48 @@ public abstract class AxisTransform implements MdxQueryTransform {
     }
 
     public SelectNode apply(SelectNode sn) {
+        return replaceAxisExp(sn, null);
+    }
+
+    /**
+     * Returns a copy of a query whose expression on this transform's axis is
+     * replaced.
+     *
+     * <p>If the query is frozen, the copy shares every node of the query
+     * except the select node and the axis node being changed, and is itself
+     * frozen. Otherwise the copy is a deep copy.
+     *
+     * @param sn Query
+     * @param axisExp New axis expression, or null to apply
+     *   {@link #processAxisExp(ParseTreeNode, boolean)} to the existing
+     *   expression
+     * @return Copy of query
+     */
+    protected SelectNode replaceAxisExp(SelectNode sn, ParseTreeNode axisExp) {
+        if (sn.isFrozen()) {
+            final List<AxisNode> axisList = new ArrayList<AxisNode>();
+            for (AxisNode an : sn.getAxisList()) {
+                if (an.getAxis() == axis) {
+                    an = new AxisNode(
+                        an.getRegion(),
+                        an.isNonEmpty(),
+                        axis,
+                        an.getDimensionProperties(),
+                        axisExp != null
+                            ? axisExp
+                            : processAxisExp(an.getExpression(), true));
+                }
+                axisList.add(an);
+            }
+            return new SelectNode(
+                sn.getRegion(),
+                sn.getWithList(),
+                axisList,
+                sn.getFrom(),
+                sn.getFilterAxis(),
+                sn.getCellPropertyList()).freeze();
+        }
+
         // do a deep copy of the existing query SelectNode before
         // modifying it:
         SelectNode newSelectNode = sn.deepCopy();
@@ -48,7 +93,9 @@ public abstract class AxisTransform implements MdxQueryTransform {
 
                 // apply the drill operation
                 ParseTreeNode newAxisExp =
-                    processAxisExp(initialAxisExp);
+                    axisExp != null
+                        ? axisExp
+                        : processAxisExp(initialAxisExp, false);
 
                 // replace the expression in the axis by the new generated one
                 an.setExpression(newAxisExp);
@@ -57,8 +104,47 @@ public abstract class AxisTransform implements MdxQueryTransform {
         return newSelectNode;
     }
 
+    /**
+     * Applies this transform to a query and executes the result.
+     *
+     * <p>Equivalent to executing <code>apply(sn)</code>, but a transform
+     * that knows the cell set of the original query may execute a smaller
+     * query and re-use the rest of that cell set.
+     *
+     * @param statement Statement
+     * @param sn Query to transform
+     * @return Cell set of the transformed query
+     * @throws OlapException on error
+     */
+    public CellSet execute(OlapStatement statement, SelectNode sn)
+        throws OlapException
+    {
+        return statement.executeOlapQuery(apply(sn));
+    }
+
     protected abstract ParseTreeNode processAxisExp(ParseTreeNode axisExp);
 
+    /**
+     * Transforms the expression on this transform's axis, knowing whether
+     * it belongs to a frozen query.
+     *
+     * <p>The expression of a frozen query is frozen too, and the result may
+     * share it, or any of its sub-trees, without copying. The default
+     * implementation ignores <code>frozen</code> and calls
+     * {@link #processAxisExp(ParseTreeNode)}.
+     *
+     * @param axisExp Axis expression
+     * @param frozen Whether the query, and therefore the expression, is
+     *   frozen
+     * @return New axis expression
+     */
+    protected ParseTreeNode processAxisExp(
+        ParseTreeNode axisExp,
+        boolean frozen)
+    {
+        return processAxisExp(axisExp);
+    }
+
 }
 
 // End AxisTransform.java
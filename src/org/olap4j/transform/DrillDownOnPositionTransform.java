@@ -18,16 +18,17 @@
 package org.olap4j.transform;
 
 import org.olap4j.*;
+import org.olap4j.impl.ExtendedStatement;
+import org.olap4j.impl.Olap4jUtil;
 import org.olap4j.mdx.*;
 import org.olap4j.metadata.Member;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Drill down on position transform
  *
- * <p>TODO: transform to be completed, not working for now.</p>
- *
  * <p>Description: Adds the children of a member at a specific position on an
  * axis. The member to drill is identified from a CellSet with the axis,
  * positionOrdinalInAxis and memberOrdinalInPosition arguments. The drilled
@@ -42,6 +43,12 @@ import java.util.List;
  * that are drillable, i.e. non-leaf members. The CellSet resulting from the
  * execution of the initial MDX query must also be available.
  *
+ * <p>The children are inserted on the axis immediately after the position.
+ * Since only those positions are new, {@link #execute} asks the server for
+ * just their cells, and splices them into the initial CellSet, provided
+ * that the statement supports
+ * {@link ExtendedStatement#executeOlapDeltaQuery}.
+ *
  * @author etdub
  * @author jhyde
  * @since Jul 30, 2008
@@ -51,6 +58,15 @@ public class DrillDownOnPositionTransform extends AxisTransform {
     private final Position positionToDrill;
     private final Member memberToDrill;
     private final List<Member> pathToMember;
+    private final int memberOrdinalInPosition;
+    private final CellSet cellSet;
+
+    /**
+     * Ordinal on the axis of the first position whose members are the same
+     * as those of the position to drill. Rank in the transformed query finds
+     * this position too.
+     */
+    private final int positionOrdinal;
 
     /**
      * Creates a DrillDownOnPositionTransform.
@@ -75,6 +91,28 @@ public class DrillDownOnPositionTransform extends AxisTransform {
         pathToMember = TransformUtil.getPathToMember(
             positionToDrill,
             memberOrdinalInPosition);
+        this.memberOrdinalInPosition = memberOrdinalInPosition;
+        this.cellSet = cellSet;
+        positionOrdinal = firstOrdinal(
+            TransformUtil.getCellSetAxisFromCellSet(axis, cellSet),
+            positionToDrill);
+    }
+
+    private static int firstOrdinal(CellSetAxis cellSetAxis, Position p) {
+        final List<Member> members = p.getMembers();
+        outer:
+        for (Position position : cellSetAxis.getPositions()) {
+            final List<Member> positionMembers = position.getMembers();
+            for (int i = 0; i < members.size(); i++) {
+                if (!positionMembers.get(i).getUniqueName().equals(
+                        members.get(i).getUniqueName()))
+                {
+                    continue outer;
+                }
+            }
+            return position.getOrdinal();
+        }
+        return p.getOrdinal();
     }
 
     public String getName() {
@@ -87,9 +125,91 @@ public class DrillDownOnPositionTransform extends AxisTransform {
 
     @Override
     protected ParseTreeNode processAxisExp(ParseTreeNode exp) {
-        // TODO: implement me!
+        return processAxisExp(exp, false);
+    }
 
-        return null;
+    @Override
+    protected ParseTreeNode processAxisExp(ParseTreeNode exp, boolean frozen) {
+        // {Head(exp, Rank(t, exp)), <children of t>, Subset(exp, Rank(t, exp))}
+        final List<ParseTreeNode> tupleMembers = new ArrayList<ParseTreeNode>();
+        for (Member member : positionToDrill.getMembers()) {
+            tupleMembers.add(MdxHelper.makeMemberNode(member));
+        }
+        final ParseTreeNode tuple =
+            tupleMembers.size() == 1
+                ? tupleMembers.get(0)
+                : MdxHelper.makeTupleCallNode(tupleMembers);
+        return MdxHelper.makeSetCallNode(
+            MdxHelper.makeHeadCallNode(
+                exp,
+                MdxHelper.makeRankCallNode(tuple, share(exp, frozen))),
+            makeChildTuples(),
+            MdxHelper.makeSubsetCallNode(
+                share(exp, frozen),
+                MdxHelper.makeRankCallNode(
+                    tuple.deepCopy(), share(exp, frozen))));
+    }
+
+    /**
+     * Returns a node that can be used in another place in a parse tree: the
+     * node itself if it is frozen, otherwise a deep copy.
+     */
+    private static ParseTreeNode share(ParseTreeNode node, boolean frozen) {
+        return frozen ? node : node.deepCopy();
+    }
+
+    /**
+     * Creates an expression for the tuples that this transform adds to the
+     * axis: the position to drill, with the member to drill replaced by each
+     * of its children in turn.
+     */
+    private ParseTreeNode makeChildTuples() {
+        final List<Member> members = positionToDrill.getMembers();
+        ParseTreeNode node = null;
+        for (int i = members.size() - 1; i >= 0; i--) {
+            final MemberNode memberNode =
+                MdxHelper.makeMemberNode(members.get(i));
+            final ParseTreeNode set =
+                i == memberOrdinalInPosition
+                    ? MdxHelper.makeChildrenCallNode(memberNode)
+                    : MdxHelper.makeSetCallNode(memberNode);
+            node =
+                node == null
+                    ? set
+                    : MdxHelper.makeCrossJoinCallNode(set, node);
+        }
+        return MdxHelper.makeSetCallNode(node);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The query must be the one whose execution created the CellSet
+     * given to the constructor. Unless an axis other than the drilled one is
+     * <code>NON EMPTY</code>, in which case the new positions might add
+     * positions to that axis, executes only a query for the new positions.
+     */
+    @Override
+    public CellSet execute(OlapStatement statement, SelectNode sn)
+        throws OlapException
+    {
+        boolean delta = true;
+        for (AxisNode an : sn.getAxisList()) {
+            if (an.getAxis() != axis && an.isNonEmpty()) {
+                delta = false;
+            }
+        }
+        if (delta) {
+            final SelectNode deltaQuery =
+                replaceAxisExp(sn, makeChildTuples());
+            final CellSet newCellSet =
+                Olap4jUtil.extend(statement).executeOlapDeltaQuery(
+                    deltaQuery, cellSet, axis, positionOrdinal + 1, 0);
+            if (newCellSet != null) {
+                return newCellSet;
+            }
+        }
+        return super.execute(statement, sn);
     }
 
 
@@ -75,6 +75,49 @@ class MdxHelper {
         return makeSetCallNode(nodesList);
     }
 
+    public static CallNode makeTupleCallNode(List<ParseTreeNode> nodes) {
+        return new CallNode(null, "()", Syntax.Parentheses, nodes);
+    }
+
+    private static CallNode _makeFunCallNode(
+        String funcName,
+        ParseTreeNode... nodes)
+    {
+        List<ParseTreeNode> callArgs = new ArrayList<ParseTreeNode>();
+        for (ParseTreeNode n : nodes) {
+            callArgs.add(n);
+        }
+        return new CallNode(null, funcName, Syntax.Function, callArgs);
+    }
+
+    public static CallNode makeCrossJoinCallNode(
+        ParseTreeNode node1,
+        ParseTreeNode node2)
+    {
+        return _makeFunCallNode("CrossJoin", node1, node2);
+    }
+
+    public static CallNode makeRankCallNode(
+        ParseTreeNode tuple,
+        ParseTreeNode set)
+    {
+        return _makeFunCallNode("Rank", tuple, set);
+    }
+
+    public static CallNode makeHeadCallNode(
+        ParseTreeNode set,
+        ParseTreeNode count)
+    {
+        return _makeFunCallNode("Head", set, count);
+    }
+
+    public static CallNode makeSubsetCallNode(
+        ParseTreeNode set,
+        ParseTreeNode start)
+    {
+        return _makeFunCallNode("Subset", set, start);
+    }
+
     public static CallNode makeHierarchizeCallNode(ParseTreeNode node) {
         List<ParseTreeNode> callArgs = new ArrayList<ParseTreeNode>();
         callArgs.add(node);
@@ -0,0 +1,874 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.transform;
+
+import org.olap4j.*;
+import org.olap4j.mdx.*;
+import org.olap4j.metadata.Hierarchy;
+import org.olap4j.metadata.Member;
+import org.olap4j.type.SetType;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Transform that rewrites a query into a simpler query, before it is sent to
+ * the server.
+ *
+ * <p>Each rewrite is a {@link Rule}, and the caller chooses which rules to
+ * apply. The rules in {@link #DEFAULT_RULES} do not change the result of the
+ * query; the other rules change the shape of the result, and a caller must
+ * ask for them explicitly. The optimizer counts how many times each rule
+ * has rewritten a query; see {@link #getRewriteCount(Rule)}.
+ *
+ * <p>Some rules need to know the members in the query. They apply only to
+ * {@link MemberNode}s, such as those generated by
+ * {@link org.olap4j.query.Query} or by the validator, and leave identifiers
+ * alone.
+ *
+ * <p>Like other transforms, the optimizer does not modify the query it is
+ * given. If the query is frozen, the result shares the unchanged parts of
+ * the query and is also frozen.
+ *
+ * @author agent
+ * @since Oct 19, 2026
+ */
+public class QueryOptimizer implements MdxQueryTransform {
+
+    /**
+     * Rewrite rule.
+     */
+    public enum Rule {
+        /**
+         * Flattens nested set braces, <code>{{a, b}, c}</code> to
+         * <code>{a, b, c}</code>, and removes braces around a single set,
+         * <code>{[Store].Children}</code> to
+         * <code>[Store].Children</code>.
+         */
+        FLATTEN_SETS,
+
+        /**
+         * Converts nested unions, <code>Union(a, Union(b, c))</code>, to
+         * <code>Distinct({a, b, c})</code>, and
+         * <code>Union(a, b, ALL)</code> to <code>{a, b}</code>.
+         */
+        FLATTEN_UNIONS,
+
+        /**
+         * Removes <code>Hierarchize</code> calls whose order is discarded
+         * because they are inside another <code>Hierarchize</code> call.
+         * For example, <code>Hierarchize(Union(Hierarchize(a), b))</code>
+         * becomes <code>Hierarchize(Union(a, b))</code>.
+         */
+        REMOVE_NESTED_HIERARCHIZE,
+
+        /**
+         * Removes a calculated member or set from the <code>WITH</code>
+         * clause if an identical one occurs earlier.
+         */
+        REMOVE_DUPLICATE_WITH,
+
+        /**
+         * Evaluates arithmetic on numeric literals, and concatenation of
+         * string literals; for example, <code>2 * 3</code> becomes
+         * <code>6</code>.
+         */
+        FOLD_CONSTANTS,
+
+        /**
+         * Moves single members out of the top-level <code>CrossJoin</code> of
+         * an axis and into the <code>WHERE</code> clause. For example,
+         * <code>CrossJoin({[Gender].[M]}, [Store].Children) ON ROWS</code>
+         * becomes <code>[Store].Children ON ROWS ... WHERE
+         * [Gender].[M]</code>. The cell values do not change, but the
+         * positions of the axis no longer contain the member.
+         *
+         * <p>Applies only if the member's hierarchy occurs nowhere else in
+         * the query.
+         */
+        SLICE_SINGLE_MEMBERS,
+
+        /**
+         * Makes every axis <code>NON EMPTY</code>.
+         */
+        NON_EMPTY
+    }
+
+    /**
+     * Rules that do not change the result of a query.
+     */
+    public static final Set<Rule> DEFAULT_RULES =
+        Collections.unmodifiableSet(
+            EnumSet.of(
+                Rule.FLATTEN_SETS,
+                Rule.FLATTEN_UNIONS,
+                Rule.REMOVE_NESTED_HIERARCHIZE,
+                Rule.REMOVE_DUPLICATE_WITH,
+                Rule.FOLD_CONSTANTS));
+
+    /**
+     * Names of functions whose result is a set.
+     */
+    private static final Set<String> SET_FUNCTIONS =
+        new HashSet<String>(
+            Arrays.asList(
+                "BOTTOMCOUNT", "CROSSJOIN", "DESCENDANTS", "DISTINCT",
+                "EXCEPT", "FILTER", "HEAD", "HIERARCHIZE", "INTERSECT",
+                "NONEMPTY", "NONEMPTYCROSSJOIN", "ORDER", "SUBSET", "TAIL",
+                "TOPCOUNT", "UNION"));
+
+    /**
+     * Names of properties whose result is a set.
+     */
+    private static final Set<String> SET_PROPERTIES =
+        new HashSet<String>(
+            Arrays.asList("ALLMEMBERS", "CHILDREN", "MEMBERS", "SIBLINGS"));
+
+    /**
+     * Names of functions that do not depend on the order of their set
+     * arguments, other than through the order of their result.
+     */
+    private static final Set<String> ORDER_INDEPENDENT_FUNCTIONS =
+        new HashSet<String>(
+            Arrays.asList("DISTINCT", "EXCEPT", "INTERSECT", "UNION"));
+
+    private static final int MAX_PASSES = 10;
+
+    private final Set<Rule> rules;
+    private final Map<Rule, AtomicInteger> rewriteCounts =
+        new EnumMap<Rule, AtomicInteger>(Rule.class);
+
+    /**
+     * Creates a QueryOptimizer that applies the {@link #DEFAULT_RULES}.
+     */
+    public QueryOptimizer() {
+        this(DEFAULT_RULES);
+    }
+
+    /**
+     * Creates a QueryOptimizer that applies a given set of rules.
+     *
+     * @param rules Rules to apply
+     */
+    public QueryOptimizer(Set<Rule> rules) {
+        this.rules =
+            rules.isEmpty()
+                ? EnumSet.noneOf(Rule.class)
+                : EnumSet.copyOf(rules);
+        for (Rule rule : Rule.values()) {
+            rewriteCounts.put(rule, new AtomicInteger());
+        }
+    }
+
+    public String getName() {
+        return "Optimize query";
+    }
+
+    public String getDescription() {
+        return "Rewrite a query into a simpler query with the same result";
+    }
+
+    /**
+     * Returns the number of times that a rule has rewritten part of a query
+     * since this optimizer was created.
+     *
+     * @param rule Rule
+     * @return Number of rewrites
+     */
+    public int getRewriteCount(Rule rule) {
+        return rewriteCounts.get(rule).get();
+    }
+
+    public SelectNode apply(SelectNode sn) {
+        final boolean frozen = sn.isFrozen();
+        if (!frozen) {
+            sn = sn.deepCopy();
+        }
+        List<ParseTreeNode> withList = sn.getWithList();
+        if (rules.contains(Rule.REMOVE_DUPLICATE_WITH)) {
+            withList = removeDuplicates(withList);
+        }
+        final List<ParseTreeNode> newWithList =
+            new ArrayList<ParseTreeNode>();
+        for (ParseTreeNode with : withList) {
+            newWithList.add(rewriteWith(with));
+        }
+        final List<AxisNode> axisList = new ArrayList<AxisNode>();
+        for (AxisNode axis : sn.getAxisList()) {
+            axisList.add(rewriteAxis(axis));
+        }
+        AxisNode filterAxis = rewriteAxis(sn.getFilterAxis());
+        if (rules.contains(Rule.SLICE_SINGLE_MEMBERS)) {
+            filterAxis = sliceSingleMembers(newWithList, axisList, filterAxis);
+        }
+        final SelectNode select =
+            new SelectNode(
+                sn.getRegion(),
+                newWithList,
+                axisList,
+                sn.getFrom(),
+                filterAxis,
+                sn.getCellPropertyList());
+        return frozen ? select.freeze() : select;
+    }
+
+    /**
+     * Optimizes a query and executes the result.
+     *
+     * @param statement Statement
+     * @param sn Query to optimize
+     * @return Cell set of the optimized query
+     * @throws OlapException on error
+     */
+    public CellSet execute(OlapStatement statement, SelectNode sn)
+        throws OlapException
+    {
+        return statement.executeOlapQuery(apply(sn));
+    }
+
+    private void count(Rule rule) {
+        rewriteCounts.get(rule).incrementAndGet();
+    }
+
+    private List<ParseTreeNode> removeDuplicates(List<ParseTreeNode> list) {
+        final List<ParseTreeNode> newList = new ArrayList<ParseTreeNode>();
+        final Set<ParseTreeNode> seen = new HashSet<ParseTreeNode>();
+        for (ParseTreeNode node : list) {
+            if (seen.add(node)) {
+                newList.add(node);
+            } else {
+                count(Rule.REMOVE_DUPLICATE_WITH);
+            }
+        }
+        return newList;
+    }
+
+    private ParseTreeNode rewriteWith(ParseTreeNode with) {
+        if (with instanceof WithMemberNode) {
+            final WithMemberNode member = (WithMemberNode) with;
+            final ParseTreeNode exp = rewrite(member.getExpression());
+            if (exp != member.getExpression()) {
+                return new WithMemberNode(
+                    member.getRegion(),
+                    member.getIdentifier(),
+                    exp,
+                    member.getMemberPropertyList());
+            }
+        } else if (with instanceof WithSetNode) {
+            final WithSetNode set = (WithSetNode) with;
+            final ParseTreeNode exp = rewrite(set.getExpression());
+            if (exp != set.getExpression()) {
+                return new WithSetNode(
+                    set.getRegion(), set.getIdentifier(), exp);
+            }
+        }
+        return with;
+    }
+
+    private AxisNode rewriteAxis(AxisNode axis) {
+        final ParseTreeNode exp =
+            axis.getExpression() == null
+                ? null
+                : rewrite(axis.getExpression());
+        final boolean nonEmpty =
+            axis.isNonEmpty()
+            || rules.contains(Rule.NON_EMPTY)
+            && axis.getAxis() != Axis.FILTER;
+        if (nonEmpty != axis.isNonEmpty()) {
+            count(Rule.NON_EMPTY);
+        }
+        if (exp == axis.getExpression() && nonEmpty == axis.isNonEmpty()) {
+            return axis;
+        }
+        return new AxisNode(
+            axis.getRegion(),
+            nonEmpty,
+            axis.getAxis(),
+            axis.getDimensionProperties(),
+            exp);
+    }
+
+    /**
+     * Rewrites an expression. Returns the expression itself if no rule
+     * applies to it or to any of its descendants.
+     */
+    private ParseTreeNode rewrite(ParseTreeNode node) {
+        if (!(node instanceof CallNode)) {
+            return node;
+        }
+        CallNode call = rewriteArgs((CallNode) node);
+        for (int pass = 0; pass < MAX_PASSES; pass++) {
+            final ParseTreeNode newNode = rewriteCall(call);
+            if (newNode == call) {
+                return call;
+            }
+            if (!(newNode instanceof CallNode)) {
+                return newNode;
+            }
+            // A rule may have created new arguments, such as the set of
+            // operands of a flattened union; rewrite those too.
+            call = rewriteArgs((CallNode) newNode);
+        }
+        return call;
+    }
+
+    /**
+     * Rewrites the arguments of a call. Returns the call itself if no rule
+     * applies to any of its arguments, otherwise a copy.
+     */
+    private CallNode rewriteArgs(CallNode call) {
+        final List<ParseTreeNode> args = call.getArgList();
+        List<ParseTreeNode> newArgs = null;
+        for (int i = 0; i < args.size(); i++) {
+            final ParseTreeNode arg = args.get(i);
+            final ParseTreeNode newArg = rewrite(arg);
+            if (newArg != arg && newArgs == null) {
+                newArgs = new ArrayList<ParseTreeNode>(args);
+            }
+            if (newArgs != null) {
+                newArgs.set(i, newArg);
+            }
+        }
+        return newArgs == null ? call : copy(call, newArgs);
+    }
+
+    /**
+     * Applies the first rule that matches a call, and returns the result; or
+     * returns the call if no rule matches.
+     */
+    private ParseTreeNode rewriteCall(CallNode call) {
+        final String name = call.getOperatorName().toUpperCase();
+        final List<ParseTreeNode> args = call.getArgList();
+        switch (call.getSyntax()) {
+        case Braces:
+            if (rules.contains(Rule.FLATTEN_SETS)) {
+                if (args.size() == 1 && isSet(args.get(0))) {
+                    count(Rule.FLATTEN_SETS);
+                    return args.get(0);
+                }
+                boolean nested = false;
+                final List<ParseTreeNode> newArgs =
+                    new ArrayList<ParseTreeNode>();
+                for (ParseTreeNode arg : args) {
+                    if (isCall(arg, Syntax.Braces, "{}")) {
+                        newArgs.addAll(((CallNode) arg).getArgList());
+                        nested = true;
+                    } else {
+                        newArgs.add(arg);
+                    }
+                }
+                if (nested) {
+                    count(Rule.FLATTEN_SETS);
+                    return copy(call, newArgs);
+                }
+            }
+            break;
+
+        case Function:
+            if (name.equals("UNION")
+                && rules.contains(Rule.FLATTEN_UNIONS))
+            {
+                if (args.size() == 3 && isAll(args.get(2))) {
+                    count(Rule.FLATTEN_UNIONS);
+                    return braces(call, args.subList(0, 2));
+                }
+                final List<ParseTreeNode> operands =
+                    new ArrayList<ParseTreeNode>();
+                if (args.size() == 2
+                    && (isUnion(args.get(0)) || isUnion(args.get(1))))
+                {
+                    addUnionOperands(call, operands);
+                    count(Rule.FLATTEN_UNIONS);
+                    final CallNode distinct =
+                        new CallNode(
+                            call.getRegion(), "Distinct", Syntax.Function,
+                            braces(null, operands));
+                    distinct.setType(call.getType());
+                    return distinct;
+                }
+            }
+            if (name.equals("HIERARCHIZE")
+                && !args.isEmpty()
+                && rules.contains(Rule.REMOVE_NESTED_HIERARCHIZE))
+            {
+                final ParseTreeNode arg = removeHierarchize(args.get(0));
+                if (arg != args.get(0)) {
+                    final List<ParseTreeNode> newArgs =
+                        new ArrayList<ParseTreeNode>(args);
+                    newArgs.set(0, arg);
+                    return copy(call, newArgs);
+                }
+            }
+            break;
+
+        case Infix:
+            if (args.size() == 2 && rules.contains(Rule.FOLD_CONSTANTS)) {
+                final ParseTreeNode folded =
+                    fold(call, name, args.get(0), args.get(1));
+                if (folded != null) {
+                    count(Rule.FOLD_CONSTANTS);
+                    return folded;
+                }
+            }
+            break;
+
+        case Prefix:
+            if (name.equals("-")
+                && args.size() == 1
+                && isNumber(args.get(0))
+                && rules.contains(Rule.FOLD_CONSTANTS))
+            {
+                count(Rule.FOLD_CONSTANTS);
+                return LiteralNode.createNumeric(
+                    call.getRegion(), number(args.get(0)).negate(), false);
+            }
+            break;
+
+        case Parentheses:
+            if (args.size() == 1
+                && args.get(0) instanceof LiteralNode
+                && rules.contains(Rule.FOLD_CONSTANTS))
+            {
+                count(Rule.FOLD_CONSTANTS);
+                return args.get(0);
+            }
+            break;
+        }
+        return call;
+    }
+
+    /**
+     * Removes calls to Hierarchize from an expression whose order does not
+     * matter.
+     */
+    private ParseTreeNode removeHierarchize(ParseTreeNode node) {
+        if (isCall(node, Syntax.Function, "Hierarchize")) {
+            count(Rule.REMOVE_NESTED_HIERARCHIZE);
+            return removeHierarchize(((CallNode) node).getArgList().get(0));
+        }
+        if (!(node instanceof CallNode)) {
+            return node;
+        }
+        final CallNode call = (CallNode) node;
+        if (!(call.getSyntax() == Syntax.Braces
+            || call.getSyntax() == Syntax.Function
+            && ORDER_INDEPENDENT_FUNCTIONS.contains(
+                call.getOperatorName().toUpperCase())))
+        {
+            return node;
+        }
+        final List<ParseTreeNode> args = call.getArgList();
+        List<ParseTreeNode> newArgs = null;
+        for (int i = 0; i < args.size(); i++) {
+            final ParseTreeNode arg = args.get(i);
+            final ParseTreeNode newArg = removeHierarchize(arg);
+            if (newArg != arg && newArgs == null) {
+                newArgs = new ArrayList<ParseTreeNode>(args);
+            }
+            if (newArgs != null) {
+                newArgs.set(i, newArg);
+            }
+        }
+        return newArgs == null ? node : copy(call, newArgs);
+    }
+
+    private void addUnionOperands(
+        ParseTreeNode node,
+        List<ParseTreeNode> operands)
+    {
+        if (isUnion(node)) {
+            for (ParseTreeNode arg : ((CallNode) node).getArgList()) {
+                addUnionOperands(arg, operands);
+            }
+        } else {
+            operands.add(node);
+        }
+    }
+
+    private static boolean isUnion(ParseTreeNode node) {
+        return isCall(node, Syntax.Function, "Union")
+            && ((CallNode) node).getArgList().size() == 2;
+    }
+
+    private static boolean isAll(ParseTreeNode node) {
+        return (node instanceof IdentifierNode || node instanceof LiteralNode)
+            && node.toString().equalsIgnoreCase("ALL");
+    }
+
+    /**
+     * Returns whether an expression is definitely a set.
+     */
+    private static boolean isSet(ParseTreeNode node) {
+        if (!(node instanceof CallNode)) {
+            return false;
+        }
+        final CallNode call = (CallNode) node;
+        if (call.getType() != null) {
+            return call.getType() instanceof SetType;
+        }
+        final String name = call.getOperatorName().toUpperCase();
+        switch (call.getSyntax()) {
+        case Braces:
+            return true;
+        case Function:
+            return SET_FUNCTIONS.contains(name);
+        case Property:
+            return SET_PROPERTIES.contains(name);
+        default:
+            return false;
+        }
+    }
+
+    private static boolean isCall(
+        ParseTreeNode node,
+        Syntax syntax,
+        String name)
+    {
+        return node instanceof CallNode
+            && ((CallNode) node).getSyntax() == syntax
+            && ((CallNode) node).getOperatorName().equalsIgnoreCase(name);
+    }
+
+    private static boolean isNumber(ParseTreeNode node) {
+        return node instanceof LiteralNode
+            && ((LiteralNode) node).getValue() instanceof BigDecimal;
+    }
+
+    private static BigDecimal number(ParseTreeNode node) {
+        return (BigDecimal) ((LiteralNode) node).getValue();
+    }
+
+    private static boolean isString(ParseTreeNode node) {
+        return node instanceof LiteralNode
+            && node.getType() instanceof org.olap4j.type.StringType;
+    }
+
+    /**
+     * Evaluates an infix operator whose arguments are literals, or returns
+     * null if it cannot.
+     */
+    private static LiteralNode fold(
+        CallNode call,
+        String name,
+        ParseTreeNode left,
+        ParseTreeNode right)
+    {
+        if (isString(left) && isString(right) && name.equals("||")) {
+            return LiteralNode.createString(
+                call.getRegion(),
+                (String) ((LiteralNode) left).getValue()
+                + ((LiteralNode) right).getValue());
+        }
+        if (!isNumber(left) || !isNumber(right)) {
+            return null;
+        }
+        final BigDecimal x = number(left);
+        final BigDecimal y = number(right);
+        BigDecimal result;
+        if (name.equals("+")) {
+            result = x.add(y);
+        } else if (name.equals("-")) {
+            result = x.subtract(y);
+        } else if (name.equals("*")) {
+            result = x.multiply(y);
+        } else if (name.equals("/") && y.signum() != 0) {
+            result = x.divide(y, MathContext.DECIMAL64);
+        } else {
+            return null;
+        }
+        if (result.scale() < 0) {
+            // Avoid exponential notation, such as "1E+3", when unparsed.
+            result = result.setScale(0);
+        }
+        return LiteralNode.createNumeric(call.getRegion(), result, false);
+    }
+
+    private static CallNode copy(CallNode call, List<ParseTreeNode> args) {
+        final CallNode newCall =
+            new CallNode(
+                call.getRegion(),
+                call.getOperatorName(),
+                call.getSyntax(),
+                args);
+        newCall.setType(call.getType());
+        return newCall;
+    }
+
+    private static CallNode braces(
+        CallNode call,
+        List<ParseTreeNode> args)
+    {
+        final CallNode braces =
+            new CallNode(
+                call == null ? null : call.getRegion(),
+                "{}",
+                Syntax.Braces,
+                new ArrayList<ParseTreeNode>(args));
+        if (call != null) {
+            braces.setType(call.getType());
+        }
+        return braces;
+    }
+
+    /**
+     * Moves members which are crossjoined with an axis into the slicer,
+     * replacing the axes in the list, and returns the new filter axis.
+     */
+    private AxisNode sliceSingleMembers(
+        List<ParseTreeNode> withList,
+        List<AxisNode> axisList,
+        AxisNode filterAxis)
+    {
+        final List<MemberNode> slicerMembers = new ArrayList<MemberNode>();
+        final ParseTreeNode slicer = filterAxis.getExpression();
+        if (slicer != null) {
+            if (slicer instanceof MemberNode) {
+                slicerMembers.add((MemberNode) slicer);
+            } else if (isCall(slicer, Syntax.Parentheses, "()")) {
+                for (ParseTreeNode arg : ((CallNode) slicer).getArgList()) {
+                    if (!(arg instanceof MemberNode)) {
+                        return filterAxis;
+                    }
+                    slicerMembers.add((MemberNode) arg);
+                }
+            } else {
+                return filterAxis;
+            }
+        }
+
+        // Count the occurrences of each hierarchy in the query. If the query
+        // contains an identifier, we cannot know which hierarchies it uses.
+        // The name of a calculated member or set is an identifier too, but
+        // it does not refer to a hierarchy, so visit only the expressions.
+        final HierarchyCounter counter = new HierarchyCounter();
+        for (ParseTreeNode with : withList) {
+            if (with instanceof WithMemberNode) {
+                final WithMemberNode member = (WithMemberNode) with;
+                member.getExpression().accept(counter);
+                for (PropertyValueNode property
+                    : member.getMemberPropertyList())
+                {
+                    property.getExpression().accept(counter);
+                }
+            } else if (with instanceof WithSetNode) {
+                ((WithSetNode) with).getExpression().accept(counter);
+            } else {
+                with.accept(counter);
+            }
+        }
+        for (AxisNode axis : axisList) {
+            axis.accept(counter);
+        }
+        for (MemberNode member : slicerMembers) {
+            member.accept(counter);
+        }
+        if (counter.identifiers > 0) {
+            return filterAxis;
+        }
+
+        final int slicerSize = slicerMembers.size();
+        for (int i = 0; i < axisList.size(); i++) {
+            final AxisNode axis = axisList.get(i);
+            final List<ParseTreeNode> operands =
+                new ArrayList<ParseTreeNode>();
+            addCrossJoinOperands(axis.getExpression(), operands);
+            if (operands.size() < 2) {
+                continue;
+            }
+            final List<ParseTreeNode> remaining =
+                new ArrayList<ParseTreeNode>();
+            for (ParseTreeNode operand : operands) {
+                final MemberNode member = singleMember(operand);
+                if (member != null
+                    && !member.getMember().isCalculated()
+                    && counter.count(member.getMember().getHierarchy()) == 1
+                    && (!remaining.isEmpty()
+                        || operand != operands.get(operands.size() - 1)))
+                {
+                    // Keep at least one operand on the axis.
+                    slicerMembers.add(member);
+                    count(Rule.SLICE_SINGLE_MEMBERS);
+                } else {
+                    remaining.add(operand);
+                }
+            }
+            if (remaining.size() == operands.size()) {
+                continue;
+            }
+            ParseTreeNode exp = remaining.get(remaining.size() - 1);
+            if (!isSet(exp)) {
+                exp = braces(null, Collections.singletonList(exp));
+            }
+            for (int j = remaining.size() - 2; j >= 0; j--) {
+                exp =
+                    new CallNode(
+                        null, "CrossJoin", Syntax.Function,
+                        remaining.get(j), exp);
+            }
+            axisList.set(
+                i,
+                new AxisNode(
+                    axis.getRegion(),
+                    axis.isNonEmpty(),
+                    axis.getAxis(),
+                    axis.getDimensionProperties(),
+                    exp));
+        }
+        if (slicerMembers.size() == slicerSize) {
+            return filterAxis;
+        }
+        final ParseTreeNode newSlicer;
+        if (slicerMembers.size() == 1) {
+            newSlicer = slicerMembers.get(0);
+        } else {
+            newSlicer =
+                new CallNode(
+                    slicer == null ? null : slicer.getRegion(),
+                    "()",
+                    Syntax.Parentheses,
+                    new ArrayList<ParseTreeNode>(slicerMembers));
+        }
+        return new AxisNode(
+            filterAxis.getRegion(),
+            false,
+            Axis.FILTER,
+            filterAxis.getDimensionProperties(),
+            newSlicer);
+    }
+
+    private static void addCrossJoinOperands(
+        ParseTreeNode node,
+        List<ParseTreeNode> operands)
+    {
+        if ((isCall(node, Syntax.Function, "CrossJoin")
+             || isCall(node, Syntax.Infix, "*"))
+            && ((CallNode) node).getArgList().size() == 2)
+        {
+            for (ParseTreeNode arg : ((CallNode) node).getArgList()) {
+                addCrossJoinOperands(arg, operands);
+            }
+        } else {
+            operands.add(node);
+        }
+    }
+
+    /**
+     * Returns the member if an expression is a single member, or a set that
+     * contains a single member; otherwise null.
+     */
+    private static MemberNode singleMember(ParseTreeNode node) {
+        if (isCall(node, Syntax.Braces, "{}")
+            && ((CallNode) node).getArgList().size() == 1)
+        {
+            node = ((CallNode) node).getArgList().get(0);
+        }
+        return node instanceof MemberNode ? (MemberNode) node : null;
+    }
+
+    /**
+     * Visitor that counts the occurrences of each hierarchy in a parse tree.
+     */
+    private static class HierarchyCounter
+        implements ParseTreeVisitor<Object>
+    {
+        private final Map<String, Integer> counts =
+            new HashMap<String, Integer>();
+        int identifiers;
+
+        int count(Hierarchy hierarchy) {
+            final Integer count = counts.get(hierarchy.getUniqueName());
+            return count == null ? 0 : count;
+        }
+
+        private void add(Hierarchy hierarchy) {
+            if (hierarchy != null) {
+                counts.put(hierarchy.getUniqueName(), count(hierarchy) + 1);
+            }
+        }
+
+        public Object visit(SelectNode selectNode) {
+            return null;
+        }
+
+        public Object visit(AxisNode axis) {
+            return null;
+        }
+
+        public Object visit(WithMemberNode calcMemberNode) {
+            return null;
+        }
+
+        public Object visit(WithSetNode calcSetNode) {
+            return null;
+        }
+
+        public Object visit(CallNode call) {
+            return null;
+        }
+
+        public Object visit(IdentifierNode id) {
+            ++identifiers;
+            return null;
+        }
+
+        public Object visit(ParameterNode parameterNode) {
+            return null;
+        }
+
+        public Object visit(CubeNode cubeNode) {
+            return null;
+        }
+
+        public Object visit(DimensionNode dimensionNode) {
+            ++identifiers;
+            return null;
+        }
+
+        public Object visit(HierarchyNode hierarchyNode) {
+            add(hierarchyNode.getHierarchy());
+            return null;
+        }
+
+        public Object visit(LevelNode levelNode) {
+            add(levelNode.getLevel().getHierarchy());
+            return null;
+        }
+
+        public Object visit(MemberNode memberNode) {
+            final Member member = memberNode.getMember();
+            add(member.getHierarchy());
+            return null;
+        }
+
+        public Object visit(LiteralNode literalNode) {
+            return null;
+        }
+
+        public Object visit(PropertyValueNode propertyValueNode) {
+            return null;
+        }
+
+        public Object visit(DrillThroughNode drillThroughNode) {
+            return null;
+        }
+    }
+}
+
+// End QueryOptimizer.java
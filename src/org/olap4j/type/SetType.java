@@ -50,6 +50,10 @@ public class SetType implements Type {
         return elementType;
     }
 
+    public String toString() {
+        return "SetType<" + elementType + ">";
+    }
+
     public boolean usesDimension(Dimension dimension, boolean maybe) {
         if (elementType == null) {
             return maybe;
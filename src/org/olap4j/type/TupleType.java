@@ -20,6 +20,8 @@ package org.olap4j.type;
 import org.olap4j.OlapException;
 import org.olap4j.metadata.*;
 
+import java.util.*;
+
 /**
  * Tuple type.
  *
@@ -55,6 +57,15 @@ public class TupleType implements Type {
         return digest;
     }
 
+    /**
+     * Returns the types of the fields of this tuple.
+     *
+     * @return list of field types
+     */
+    public List<Type> getElementTypes() {
+        return Collections.unmodifiableList(Arrays.asList(elementTypes));
+    }
+
     public boolean usesDimension(Dimension dimension, boolean maybe) {
         for (Type elementType : elementTypes) {
             if (elementType.usesDimension(dimension, maybe)) {
@@ -61,8 +61,12 @@ public class TypeUtil {
      * If it is a dimension, hierarchy or level type, converts it to
      * a member type.
      * If it is a tuple, number, string, or boolean, returns null.
+     *
+     * @param type Type
+     * @return Member type, or null
+     * @throws OlapException on error
      */
-    static MemberType toMemberType(Type type) throws OlapException {
+    public static MemberType toMemberType(Type type) throws OlapException {
         type = stripSetType(type);
         if (type instanceof MemberType) {
             return (MemberType) type;
@@ -86,7 +90,7 @@ public class TypeUtil {
      * @return Whether types are union-compatible
      * @throws OlapException on error
      */
-    static boolean isUnionCompatible(
+    public static boolean isUnionCompatible(
         Type type1,
         Type type2)
         throws OlapException
@@ -160,6 +164,31 @@ public class TypeUtil {
         return type instanceof SetType;
     }
 
+    /**
+     * Converts a type to a set type, applying the implicit conversions that
+     * MDX applies when an expression is used where a set is expected.
+     *
+     * <p>A set type is returned unchanged. A member or tuple type becomes a
+     * set of that type. A dimension, hierarchy or level type becomes a set of
+     * its members. Any other type (such as number, string, boolean or cube)
+     * cannot be converted, and the method returns null.
+     *
+     * @param type Type
+     * @return Set type, or null if a value of this type cannot be converted
+     *   to a set
+     * @throws OlapException on error
+     */
+    public static SetType toSetType(Type type) throws OlapException {
+        if (type instanceof SetType) {
+            return (SetType) type;
+        } else if (type instanceof TupleType) {
+            return new SetType(type);
+        } else {
+            final MemberType memberType = toMemberType(type);
+            return memberType == null ? null : new SetType(memberType);
+        }
+    }
+
     private static boolean couldBeMember(Type type) {
         return type instanceof MemberType
             || type instanceof HierarchyType
@@ -17,14 +17,12 @@
 */
 package org.olap4j;
 
-import org.olap4j.layout.RectangularCellSetFormatter;
-import org.olap4j.layout.TraditionalCellSetFormatter;
+import org.olap4j.layout.*;
 import org.olap4j.test.TestContext;
 
 import junit.framework.TestCase;
 
-import java.io.PrintWriter;
-import java.io.StringWriter;
+import java.io.*;
 import java.sql.Connection;
 import java.sql.SQLException;
 
@@ -34,6 +32,9 @@ import java.sql.SQLException;
  * @see org.olap4j.layout.CellSetFormatter
  * @see org.olap4j.layout.RectangularCellSetFormatter
  * @see org.olap4j.layout.TraditionalCellSetFormatter
+ * @see org.olap4j.layout.DelimitedCellSetFormatter
+ * @see org.olap4j.layout.JsonLinesCellSetFormatter
+ * @see org.olap4j.layout.ColumnarCellSetWriter
  *
  * @author jhyde
  */
@@ -119,6 +120,15 @@ public class CellSetFormatterTest extends TestCase {
                 format == Format.COMPACT_RECTANGULAR)
                 .format(cellSet, pw);
             break;
+        case SAMPLED_RECTANGULAR:
+            new RectangularCellSetFormatter(false, 1).format(cellSet, pw);
+            break;
+        case CSV:
+            new DelimitedCellSetFormatter(',').format(cellSet, pw);
+            break;
+        case JSON_LINES:
+            new JsonLinesCellSetFormatter().format(cellSet, pw);
+            break;
         }
         pw.flush();
         return sw.toString();
@@ -140,7 +150,23 @@ public class CellSetFormatterTest extends TestCase {
          * Rectangular format that uses vertical bars and hyphens to draw a
          * grid.
          */
-        RECTANGULAR
+        RECTANGULAR,
+
+        /**
+         * Rectangular format that computes column widths from the first row,
+         * and does not align later rows that are wider.
+         */
+        SAMPLED_RECTANGULAR,
+
+        /**
+         * Comma-separated values, one line per row.
+         */
+        CSV,
+
+        /**
+         * JSON Lines, one object per row.
+         */
+        JSON_LINES
     }
 
     // ~ Tests follow ==========================================================
@@ -202,6 +228,167 @@ public class CellSetFormatterTest extends TestCase {
             + "|     | CA | San Francisco |        439 |      936.51 |        149 |      327.33 |\n");
     }
 
+    /**
+     * Tests a formatter that computes column widths from the first row.
+     * "San Francisco" is wider than "Los Angeles" and overflows its column.
+     */
+    public void testQuery1SampledRectangular() throws SQLException {
+        assertFormat(
+            query1,
+            Format.SAMPLED_RECTANGULAR,
+            "|                        |"
+            + " 1997                                                |\n"
+            + "|                        | Q1                       |"
+            + " Q2                       |\n"
+            + "|                        |                          |"
+            + " 4                        |\n"
+            + "|                        | Unit Sales | Store Sales |"
+            + " Unit Sales | Store Sales |\n"
+            + "+-----+----+-------------+------------+-------------+"
+            + "------------+-------------+\n"
+            + "| USA | CA | Los Angeles |      6,373 |   13,736.97 |"
+            + "      1,865 |    3,917.49 |\n"
+            + "|     | WA | Seattle     |      6,098 |   12,760.64 |"
+            + "      2,121 |    4,444.06 |\n"
+            + "|     | CA | San Francisco|        439 |      936.51 |"
+            + "        149 |      327.33 |\n");
+    }
+
+    public void testQuery1Csv() throws SQLException {
+        assertFormat(
+            query1,
+            Format.CSV,
+            "[Store],\"[Time].[1997].[Q1], [Measures].[Unit Sales]\","
+            + "\"[Time].[1997].[Q1], [Measures].[Store Sales]\","
+            + "\"[Time].[1997].[Q2].[4], [Measures].[Unit Sales]\","
+            + "\"[Time].[1997].[Q2].[4], [Measures].[Store Sales]\"\n"
+            + "[Store].[USA].[CA].[Los Angeles],6373.0,13736.97,1865.0,"
+            + "3917.49\n"
+            + "[Store].[USA].[WA].[Seattle],6098.0,12760.64,2121.0,4444.06\n"
+            + "[Store].[USA].[CA].[San Francisco],439.0,936.51,149.0,327.33\n");
+    }
+
+    public void testQuery1JsonLines() throws SQLException {
+        assertFormat(
+            query1,
+            Format.JSON_LINES,
+            "{\"[Store]\":\"[Store].[USA].[CA].[Los Angeles]\","
+            + "\"[Time].[1997].[Q1], [Measures].[Unit Sales]\":6373.0,"
+            + "\"[Time].[1997].[Q1], [Measures].[Store Sales]\":13736.97,"
+            + "\"[Time].[1997].[Q2].[4], [Measures].[Unit Sales]\":1865.0,"
+            + "\"[Time].[1997].[Q2].[4], [Measures].[Store Sales]\":3917.49}\n"
+            + "{\"[Store]\":\"[Store].[USA].[WA].[Seattle]\","
+            + "\"[Time].[1997].[Q1], [Measures].[Unit Sales]\":6098.0,"
+            + "\"[Time].[1997].[Q1], [Measures].[Store Sales]\":12760.64,"
+            + "\"[Time].[1997].[Q2].[4], [Measures].[Unit Sales]\":2121.0,"
+            + "\"[Time].[1997].[Q2].[4], [Measures].[Store Sales]\":4444.06}\n"
+            + "{\"[Store]\":\"[Store].[USA].[CA].[San Francisco]\","
+            + "\"[Time].[1997].[Q1], [Measures].[Unit Sales]\":439.0,"
+            + "\"[Time].[1997].[Q1], [Measures].[Store Sales]\":936.51,"
+            + "\"[Time].[1997].[Q2].[4], [Measures].[Unit Sales]\":149.0,"
+            + "\"[Time].[1997].[Q2].[4], [Measures].[Store Sales]\":327.33}\n");
+    }
+
+    /**
+     * Tests {@link ColumnarCellSetWriter}, with blocks small enough that the
+     * rows span more than one block.
+     */
+    public void testQuery1Columnar() throws Exception {
+        Connection connection = null;
+        try {
+            connection = tester.createConnection();
+            OlapConnection olapConnection =
+                tester.getWrapper().unwrap(
+                    connection,
+                    OlapConnection.class);
+            CellSet result =
+                olapConnection.prepareOlapStatement(query1).executeQuery();
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            new ColumnarCellSetWriter(2).write(result, out);
+            final DataInputStream in =
+                new DataInputStream(
+                    new ByteArrayInputStream(out.toByteArray()));
+            assertEquals(0x4f344a43, in.readInt());
+            assertEquals(1, in.readInt());
+            assertEquals(5, in.readInt());
+            assertEquals(0, in.readByte());
+            assertEquals("[Store]", readString(in));
+            for (int i = 0; i < 4; i++) {
+                assertEquals(1, in.readByte());
+                readString(in);
+            }
+
+            // First block: rows 0 and 1.
+            assertEquals(2, in.readInt());
+            assertEquals(1, in.readByte());
+            assertEquals("[Store].[USA].[CA].[Los Angeles]", readString(in));
+            assertEquals(1, in.readByte());
+            assertEquals("[Store].[USA].[WA].[Seattle]", readString(in));
+            final StringBuilder buf = new StringBuilder();
+            for (int i = 0; i < 4; i++) {
+                readValues(in, 2, buf);
+            }
+
+            // Second block: row 2.
+            assertEquals(1, in.readInt());
+            assertEquals(1, in.readByte());
+            assertEquals(
+                "[Store].[USA].[CA].[San Francisco]", readString(in));
+            for (int i = 0; i < 4; i++) {
+                readValues(in, 1, buf);
+            }
+            assertEquals(0, in.readInt());
+            assertEquals(-1, in.read());
+            assertEquals(
+                "6373.0;6098.0;13736.97;12760.64;1865.0;2121.0;3917.49;4444.06;"
+                + "439.0;936.51;149.0;327.33;",
+                buf.toString());
+        } finally {
+            if (connection != null) {
+                connection.close();
+            }
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    /**
+     * Reads the data of a value column in one block of the columnar format,
+     * and appends the values to a buffer.
+     */
+    private static void readValues(
+        DataInputStream in,
+        int rowCount,
+        StringBuilder buf) throws IOException
+    {
+        final byte[] tags = new byte[rowCount];
+        in.readFully(tags);
+        for (byte tag : tags) {
+            switch (tag) {
+            case 0:
+                buf.append("null");
+                break;
+            case 1:
+                buf.append(in.readDouble());
+                break;
+            case 2:
+                buf.append(in.readLong());
+                break;
+            case 4:
+                buf.append(in.readByte() != 0);
+                break;
+            default:
+                buf.append(readString(in));
+                break;
+            }
+            buf.append(';');
+        }
+    }
+
     public void testQueryAllRectangular() throws SQLException {
         // Similar query with an 'all' member on rows. Need an extra column.
         assertFormat(
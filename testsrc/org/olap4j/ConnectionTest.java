@@ -19,6 +19,8 @@ package org.olap4j;
 
 import org.olap4j.driver.xmla.XmlaOlap4jDriver;
 import org.olap4j.impl.Bug;
+import org.olap4j.impl.CellCursor;
+import org.olap4j.impl.ExtendedCellSet;
 import org.olap4j.impl.Olap4jUtil;
 import org.olap4j.mdx.*;
 import org.olap4j.mdx.parser.*;
@@ -313,6 +315,15 @@ public class ConnectionTest extends TestCase {
         olapConnection.setLocale(Locale.CANADA_FRENCH);
         assertEquals(olapConnection.getLocale(), Locale.CANADA_FRENCH);
 
+        // The XMLA driver keeps the metadata of each locale, and finds it
+        // again when the connection switches back.
+        if (tester.getFlavor() == TestContext.Tester.Flavor.XMLA) {
+            final Schema schema = olapConnection.getOlapSchema();
+            olapConnection.setLocale(Locale.GERMANY);
+            olapConnection.setLocale(Locale.CANADA_FRENCH);
+            assertSame(schema, olapConnection.getOlapSchema());
+        }
+
         // Against mondrian, Sales cube is localized.
         final OlapDatabaseMetaData metaData = olapConnection.getMetaData();
         final String databaseName = metaData.getDatabaseProductName();
@@ -346,8 +357,12 @@ public class ConnectionTest extends TestCase {
             // caption under the US locale.
             assertEquals("Sales", salesCubeUs.getCaption());
 
-            // Reset locale.
+            // Reset locale. Metadata read under a locale is kept, so
+            // switching back finds the same cube, without reading it again.
             olapConnection.setLocale(Locale.US);
+            assertSame(
+                salesCubeUs,
+                olapConnection.getOlapSchema().getCubes().get("Sales"));
         }
 
         // Try to set locale to null, should get error.
@@ -1313,6 +1328,195 @@ public class ConnectionTest extends TestCase {
         //     public List<Property> getProperties()
     }
 
+    /**
+     * Tests the methods of {@link ExtendedCellSet} that copy cell values
+     * into an array.
+     */
+    public void testCellDoubleValues() throws Exception {
+        connection = tester.createConnection();
+        Statement statement = connection.createStatement();
+        final OlapStatement olapStatement =
+            tester.getWrapper().unwrap(statement, OlapStatement.class);
+        CellSet cellSet =
+            olapStatement.executeOlapQuery(
+                "SELECT\n"
+                + " {[Measures].[Unit Sales],\n"
+                + "    [Measures].[Store Sales]} ON COLUMNS\n,"
+                + " Crossjoin({[Gender].[M]}, [Product].Children) ON ROWS\n"
+                + "FROM [Sales]\n"
+                + "WHERE [Time].[1997].[Q2]");
+        ExtendedCellSet extended = Olap4jUtil.extend(cellSet);
+        assertSame(cellSet, extended);
+        final double[] values = new double[6];
+        final BitSet nulls = new BitSet();
+        nulls.set(0, 10);
+        extended.getDoubleValues(0, 6, values, nulls);
+        for (int i = 0; i < 6; i++) {
+            assertEquals(cellSet.getCell(i).getDoubleValue(), values[i]);
+        }
+        assertEquals(12935.16, values[5]);
+        assertEquals(6, nulls.nextSetBit(0));
+
+        // A row, and a column.
+        final double[] row = new double[2];
+        extended.getDoubleValues(Arrays.asList(0, 2), 0, row, null);
+        assertEquals(values[4], row[0]);
+        assertEquals(values[5], row[1]);
+        final double[] column = new double[3];
+        extended.getDoubleValues(Arrays.asList(1, 2), 1, column, nulls);
+        assertEquals(values[1], column[0]);
+        assertEquals(values[3], column[1]);
+        assertEquals(values[5], column[2]);
+
+        // Overloads that take long ordinals and int[] coordinates.
+        assertEquals(6L, extended.getCellCount());
+        assertEquals(5L, extended.coordinatesToOrdinal(new int[] {1, 2}));
+        assertEquals(
+            "[1, 2]",
+            Arrays.toString(extended.ordinalToCoordinates(5L)));
+        assertEquals(5, extended.getCell(new int[] {1, 2}).getOrdinal());
+        assertEquals(12935.16, extended.getCell(5L).getDoubleValue());
+        try {
+            extended.getCell(new int[] {2, 1});
+            fail("expected exception");
+        } catch (IndexOutOfBoundsException e) {
+            // ok
+        }
+        try {
+            extended.getCell(6L);
+            fail("expected exception");
+        } catch (IndexOutOfBoundsException e) {
+            // ok
+        }
+
+        try {
+            extended.getDoubleValues(4, 7, values, null);
+            fail("expected exception");
+        } catch (IndexOutOfBoundsException e) {
+            // ok
+        }
+
+        // Null cells.
+        cellSet =
+            olapStatement.executeOlapQuery(
+                "with member [Measures].[X] as\n"
+                + " 'IIF([Measures].[Store Sales]>10000,"
+                + "[Measures].[Store Sales],Null)'\n"
+                + "select\n"
+                + "{[Measures].[X]} on columns,\n"
+                + "{[Product].[Product Department].members} on rows\n"
+                + "from Sales");
+        extended = Olap4jUtil.extend(cellSet);
+        final int n = cellSet.getAxes().get(1).getPositionCount();
+        final double[] values2 = new double[n];
+        extended.getDoubleValues(0, n, values2, nulls);
+        for (int i = 0; i < n; i++) {
+            final Cell cell = cellSet.getCell(i);
+            assertEquals(cell.isNull(), nulls.get(i));
+            if (!cell.isNull()) {
+                assertEquals(cell.getDoubleValue(), values2[i]);
+            } else {
+                assertEquals(0d, values2[i]);
+            }
+        }
+        assertTrue(nulls.get(2));
+    }
+
+    /**
+     * Tests {@link CellCursor}, which visits cells in ordinal order, can be
+     * split to visit them in parallel, and reads values in bulk.
+     */
+    public void testCellCursor() throws Exception {
+        connection = tester.createConnection();
+        Statement statement = connection.createStatement();
+        final OlapStatement olapStatement =
+            tester.getWrapper().unwrap(statement, OlapStatement.class);
+        CellSet cellSet =
+            olapStatement.executeOlapQuery(
+                "SELECT\n"
+                + " {[Measures].[Unit Sales],\n"
+                + "    [Measures].[Store Sales]} ON COLUMNS\n,"
+                + " Crossjoin({[Gender].[M]}, [Product].Children) ON ROWS\n"
+                + "FROM [Sales]\n"
+                + "WHERE [Time].[1997].[Q2]");
+        final CellCursor cursor = new CellCursor(cellSet);
+        assertEquals(6, cursor.remaining());
+        int n = 0;
+        double total = 0;
+        while (cursor.next()) {
+            assertEquals(n, cursor.getOrdinal());
+            assertEquals(n, cursor.getCell().getOrdinal());
+            assertEquals(n % 2, cursor.getCoordinate(0));
+            assertEquals(n / 2, cursor.getCoordinate(1));
+            assertEquals(
+                cellSet.getCell(n).getDoubleValue(), cursor.getDoubleValue());
+            assertFalse(cursor.isNull());
+            total += cursor.getDoubleValue();
+            ++n;
+        }
+        assertEquals(6, n);
+        assertEquals(0, cursor.remaining());
+        assertFalse(cursor.next());
+
+        // Split after visiting a cell. Prefix gets [1, 3), this cursor
+        // continues with [3, 6).
+        final CellCursor cursor2 = new CellCursor(cellSet, 0, 6);
+        assertTrue(cursor2.next());
+        final CellCursor prefix = cursor2.trySplit();
+        assertEquals(2, prefix.remaining());
+        assertEquals(3, cursor2.remaining());
+        assertTrue(prefix.next());
+        assertEquals(1, prefix.getOrdinal());
+        assertEquals(1, prefix.getCoordinate(0));
+        assertTrue(cursor2.next());
+        assertEquals(3, cursor2.getOrdinal());
+        assertEquals(1, cursor2.getCoordinate(0));
+        assertEquals(1, cursor2.getCoordinate(1));
+
+        // Cannot split a single cell.
+        assertNull(new CellCursor(cellSet, 4, 5).trySplit());
+
+        // Split into parts, and check that every cell is visited once.
+        for (int parts : new int[] {1, 4, 6, 100}) {
+            final List<CellCursor> cursors = CellCursor.split(cellSet, parts);
+            assertEquals(Math.min(parts, 6), cursors.size());
+            double sum = 0;
+            int count = 0;
+            for (CellCursor c : cursors) {
+                while (c.next()) {
+                    sum += c.getDoubleValue();
+                    ++count;
+                }
+            }
+            assertEquals(6, count);
+            assertEquals(total, sum, 0.0001);
+        }
+
+        // Null cells are 0, and are not created.
+        cellSet =
+            olapStatement.executeOlapQuery(
+                "with member [Measures].[X] as\n"
+                + " 'IIF([Measures].[Store Sales]>10000,"
+                + "[Measures].[Store Sales],Null)'\n"
+                + "select\n"
+                + "{[Measures].[X]} on columns,\n"
+                + "{[Product].[Product Department].members} on rows\n"
+                + "from Sales");
+        final CellCursor cursor3 = new CellCursor(cellSet);
+        int nullCount = 0;
+        while (cursor3.next()) {
+            final Cell cell = cellSet.getCell((int) cursor3.getOrdinal());
+            assertEquals(cell.isNull(), cursor3.isNull());
+            if (cursor3.isNull()) {
+                ++nullCount;
+                assertEquals(0d, cursor3.getDoubleValue());
+            } else {
+                assertEquals(cell.getDoubleValue(), cursor3.getDoubleValue());
+            }
+        }
+        assertTrue(nullCount > 0);
+    }
+
     /**
      * Tests different scrolling characteristics.
      *
@@ -1388,12 +1592,6 @@ public class ConnectionTest extends TestCase {
                 "select {[Gender]} on columns, {[Store].Children} on columns\n"
                 + "from [sales]");
 
-        if (tester.getFlavor() == TestContext.Tester.Flavor.XMLA
-                || tester.getFlavor() != Tester.Flavor.XMLA)
-        {
-            // This test requires validator support.
-            return;
-        }
         MdxValidator validator =
             olapConnection.getParserFactory().createMdxValidator(
                 olapConnection);
@@ -2365,12 +2563,6 @@ public class ConnectionTest extends TestCase {
      * @throws Throwable on error
      */
     public void testCubeType() throws Throwable {
-        if (tester.getFlavor() == TestContext.Tester.Flavor.XMLA
-                || tester.getFlavor() == TestContext.Tester.Flavor.REMOTE_XMLA)
-        {
-            // This test requires validator support.
-            return;
-        }
         Class.forName(tester.getDriverClassName());
         connection = tester.createConnection();
         OlapConnection olapConnection =
@@ -2434,12 +2626,6 @@ public class ConnectionTest extends TestCase {
      * @throws Throwable on error
      */
     public void testAxisType() throws Throwable {
-        if (tester.getFlavor() == TestContext.Tester.Flavor.XMLA
-                || tester.getFlavor() == TestContext.Tester.Flavor.REMOTE_XMLA)
-        {
-            // This test requires validator support.
-            return;
-        }
         Class.forName(tester.getDriverClassName());
 
         // connect using properties and no username/password
@@ -2523,18 +2709,22 @@ public class ConnectionTest extends TestCase {
         assertNull(filterAxis.getType());
         final Type filterType = filterAxis.getExpression().getType();
         assertTrue(filterType instanceof TupleType);
+        // Unique names depend on the server, so get them from the members.
+        final List<ParseTreeNode> filterArgs =
+            ((CallNode) filterAxis.getExpression()).getArgList();
+        final Member q4 = ((MemberNode) filterArgs.get(0)).getMember();
+        final Member single = ((MemberNode) filterArgs.get(1)).getMember();
+        assertEquals("Q4", q4.getName());
+        assertEquals("Time", q4.getHierarchy().getName());
+        assertEquals("S", single.getName());
+        assertEquals("Marital Status", single.getHierarchy().getName());
         assertEquals(
-            "TupleType<MemberType<member=[Time].[Time].[1997].[Q4]>, MemberType<member=[Marital Status].[Marital Status].[S]>>",
+            "TupleType<MemberType<member=" + q4.getUniqueName()
+            + ">, MemberType<member=" + single.getUniqueName() + ">>",
             filterType.toString());
     }
 
     public void testParseQueryWithNoFilter() throws Exception {
-        if (tester.getFlavor() == TestContext.Tester.Flavor.XMLA
-                || tester.getFlavor() != Tester.Flavor.REMOTE_XMLA)
-        {
-            // This test requires validator support.
-            return;
-        }
         Class.forName(tester.getDriverClassName());
         connection = tester.createConnection();
         OlapConnection olapConnection =
@@ -2568,17 +2758,11 @@ public class ConnectionTest extends TestCase {
         } catch (RuntimeException e) {
             assertTrue(
                 TestContext.getStackTrace(e).indexOf(
-                    "Syntax error at [4:10], token ')'") >= 0);
+                    "Syntax error at line 4, column 8, token ')'") >= 0);
         }
     }
 
     public void testValidateError() throws Exception {
-        if (tester.getFlavor() == TestContext.Tester.Flavor.XMLA
-                || tester.getFlavor() != Tester.Flavor.XMLA)
-        {
-            // This test requires validator support.
-            return;
-        }
         Class.forName(tester.getDriverClassName());
         connection = tester.createConnection();
         OlapConnection olapConnection =
@@ -2614,6 +2798,148 @@ public class ConnectionTest extends TestCase {
         }
     }
 
+    /**
+     * Tests that the validator resolves identifiers and derives types, and
+     * rejects invalid queries without executing them. Builds the parse trees
+     * programmatically, so does not depend on the parser.
+     *
+     * @throws Exception on error
+     */
+    public void testValidateParseTree() throws Exception {
+        connection = tester.createConnection();
+        OlapConnection olapConnection =
+            tester.getWrapper().unwrap(connection, OlapConnection.class);
+        MdxValidator mdxValidator =
+            olapConnection.getParserFactory().createMdxValidator(
+                olapConnection);
+
+        // SELECT ([Gender], [Store]) ON COLUMNS,
+        //   [Customers].[City].Members ON ROWS
+        // FROM [Sales]
+        // WHERE [Time].[1997]
+        SelectNode select =
+            new SelectNode(
+                null,
+                new ArrayList<ParseTreeNode>(),
+                new ArrayList<AxisNode>(),
+                IdentifierNode.ofNames("Sales"),
+                new AxisNode(
+                    null, false, Axis.FILTER, null,
+                    IdentifierNode.ofNames("Time", "1997")),
+                new ArrayList<IdentifierNode>());
+        select.getAxisList().add(
+            new AxisNode(
+                null, false, Axis.COLUMNS, null,
+                new CallNode(
+                    null, "()", Syntax.Parentheses,
+                    IdentifierNode.ofNames("Gender"),
+                    IdentifierNode.ofNames("Store"))));
+        select.getAxisList().add(
+            new AxisNode(
+                null, false, Axis.ROWS, null,
+                new CallNode(
+                    null, "Members", Syntax.Property,
+                    IdentifierNode.ofNames("Customers", "City"))));
+        select = mdxValidator.validateSelect(select);
+
+        assertEquals(
+            "Sales",
+            ((CubeType) select.getFrom().getType()).getCube().getName());
+        final Type columnsType =
+            select.getAxisList().get(0).getExpression().getType();
+        assertEquals(
+            "SetType<TupleType<MemberType<hierarchy=[Gender]>, "
+            + "MemberType<hierarchy=[Store]>>>",
+            columnsType.toString());
+        final SetType rowsType =
+            (SetType) select.getAxisList().get(1).getExpression().getType();
+        assertEquals(
+            "City",
+            ((MemberType) rowsType.getElementType()).getLevel().getName());
+        final ParseTreeNode filter = select.getFilterAxis().getExpression();
+        assertTrue(filter instanceof MemberNode);
+        assertEquals(
+            "[Time].[1997]",
+            ((MemberNode) filter).getMember().getUniqueName());
+
+        // A mutable query may share a frozen sub-tree, as transforms build.
+        // The validator must leave the frozen sub-tree alone.
+        final CallNode frozenCall =
+            new CallNode(
+                null, "Members", Syntax.Property,
+                IdentifierNode.ofNames("Customers", "City")).freeze();
+        select =
+            new SelectNode(
+                null,
+                new ArrayList<ParseTreeNode>(),
+                new ArrayList<AxisNode>(),
+                IdentifierNode.ofNames("Sales"),
+                null,
+                new ArrayList<IdentifierNode>());
+        select.getAxisList().add(
+            new AxisNode(
+                null, false, Axis.ROWS, null,
+                new CallNode(
+                    null, "{}", Syntax.Braces, frozenCall)));
+        select = mdxValidator.validateSelect(select);
+        assertEquals(
+            "City",
+            ((MemberType)
+                ((SetType) select.getAxisList().get(0).getExpression()
+                    .getType()).getElementType())
+                .getLevel().getName());
+        assertTrue(frozenCall.isFrozen());
+        assertTrue(frozenCall.getArgList().get(0) instanceof IdentifierNode);
+
+        // The server does not list calculated members defined in the schema,
+        // so a member that it does not return remains an identifier.
+        select =
+            new SelectNode(
+                null,
+                new ArrayList<ParseTreeNode>(),
+                new ArrayList<AxisNode>(),
+                IdentifierNode.ofNames("Sales"),
+                null,
+                new ArrayList<IdentifierNode>());
+        select.getAxisList().add(
+            new AxisNode(
+                null, false, Axis.ROWS, null,
+                new CallNode(
+                    null, "{}", Syntax.Braces,
+                    IdentifierNode.ofNames("Store", "Calculated Store"))));
+        select = mdxValidator.validateSelect(select);
+        final CallNode rowSet =
+            (CallNode) select.getAxisList().get(0).getExpression();
+        assertTrue(rowSet.getArgList().get(0) instanceof IdentifierNode);
+        assertEquals(
+            "SetType<MemberType<hierarchy=[Store]>>",
+            rowSet.getType().toString());
+
+        // An unknown measure is an error.
+        select =
+            new SelectNode(
+                null,
+                new ArrayList<ParseTreeNode>(),
+                new ArrayList<AxisNode>(),
+                IdentifierNode.ofNames("Sales"),
+                null,
+                new ArrayList<IdentifierNode>());
+        select.getAxisList().add(
+            new AxisNode(
+                null, false, Axis.COLUMNS, null,
+                IdentifierNode.ofNames("Measures", "Unit Salez")));
+        try {
+            select = mdxValidator.validateSelect(select);
+            fail("expected error, got " + select);
+        } catch (OlapException e) {
+            assertEquals("Validation error", e.getMessage());
+            assertTrue(
+                TestContext.getStackTrace(e).contains(
+                    "Measure '[Measures].[Unit Salez]' not found in cube "
+                    + "'Sales'"));
+        }
+    }
+
     // TODO: test for HierarchyType
     // TODO: test for DimensionType
     // TODO: test for LevelType
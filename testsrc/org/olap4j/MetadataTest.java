@@ -701,6 +701,62 @@ public class MetadataTest extends TestCase {
         assertEquals(s, 1, linecount(s));
     }
 
+    /**
+     * Tests that metadata result sets, whose rows are read lazily, can be
+     * scrolled, and can be closed before all rows have been read.
+     */
+    public void testDatabaseMetaDataLazy() throws SQLException {
+        ResultSet resultSet =
+            olapDatabaseMetaData.getMeasures(
+                catalogName, null, "Sales", "%Sales", null);
+        assertEquals(ResultSet.TYPE_SCROLL_INSENSITIVE, resultSet.getType());
+        resultSet.setFetchSize(1);
+        assertEquals(1, resultSet.getFetchSize());
+        assertTrue(resultSet.isBeforeFirst());
+        assertTrue(resultSet.next());
+        assertTrue(resultSet.isFirst());
+        final String first = resultSet.getString("MEASURE_NAME");
+        assertTrue(first.endsWith("Sales"));
+        assertFalse(resultSet.previous());
+        assertTrue(resultSet.isBeforeFirst());
+        assertTrue(resultSet.next());
+        assertEquals(first, resultSet.getString("MEASURE_NAME"));
+        resultSet.close();
+
+        // jump to the end, then move backwards
+        resultSet =
+            olapDatabaseMetaData.getMeasures(
+                catalogName, null, "Sales", "%Sales", null);
+        assertTrue(resultSet.last());
+        assertEquals(3, resultSet.getRow());
+        assertTrue(resultSet.isLast());
+        assertTrue(resultSet.absolute(1));
+        assertEquals(first, resultSet.getString("MEASURE_NAME"));
+        assertFalse(resultSet.absolute(4));
+        resultSet.afterLast();
+        assertTrue(resultSet.isAfterLast());
+        assertTrue(resultSet.previous());
+        assertEquals(3, resultSet.getRow());
+        resultSet.close();
+
+        // read to the end
+        resultSet =
+            olapDatabaseMetaData.getMeasures(
+                catalogName, null, "Sales", "%Sales", null);
+        int n = 0;
+        while (resultSet.next()) {
+            ++n;
+            assertEquals(n, resultSet.getRow());
+            assertEquals(n == 3, resultSet.isLast());
+        }
+        assertEquals(3, n);
+        assertTrue(resultSet.isAfterLast());
+        assertFalse(resultSet.next());
+        assertTrue(resultSet.first());
+        assertEquals(first, resultSet.getString("MEASURE_NAME"));
+        resultSet.close();
+    }
+
     public void testDatabaseMetaDataGetMembers() throws SQLException {
         if (!Bug.BugMondrian1378Fixed) {
             // Member ordinal values can vary based on how the member
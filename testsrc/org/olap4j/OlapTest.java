@@ -30,6 +30,7 @@ import junit.framework.TestCase;
 import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.util.*;
 
 import static org.olap4j.test.TestContext.nameList;
 
@@ -1098,6 +1099,120 @@ public class OlapTest extends TestCase {
         assertEquals(originalMdxString, originalMdx.toString());
     }
 
+    /**
+     * Tests that the MDX of a query, which is regenerated only for the axes
+     * and dimensions that have changed, is the same as the MDX of a new
+     * query in the same state.
+     */
+    public void testIncrementalParseTree() throws Exception {
+        Cube cube = getFoodmartCube("Sales");
+        if (cube == null) {
+            fail("Could not find Sales cube");
+        }
+        Query query = new Query("my query", cube);
+        QueryDimension productDimension = query.getDimension("Product");
+        productDimension.include(
+            Selection.Operator.INCLUDE_CHILDREN,
+            nameList("Product", "Drink"));
+        QueryDimension genderDimension = query.getDimension("Gender");
+        Selection genderSelection =
+            genderDimension.include(
+                Operator.CHILDREN, nameList("Gender", "All Gender"));
+        QueryDimension measuresDimension = query.getDimension("Measures");
+        measuresDimension.include(nameList("Measures", "Store Sales"));
+        query.getAxis(Axis.ROWS).addDimension(productDimension);
+        query.getAxis(Axis.ROWS).addDimension(genderDimension);
+        query.getAxis(Axis.COLUMNS).addDimension(measuresDimension);
+
+        final String originalMdx = query.getSelect().toString();
+
+        // Altering the returned tree must not alter the cached fragments.
+        SelectNode select = query.getSelect();
+        select.getAxisList().get(0).setExpression(null);
+        assertEquals(originalMdx, query.getSelect().toString());
+
+        // Change one dimension, one selection, and one axis.
+        productDimension.sort(SortOrder.DESC);
+        genderSelection.setOperator(Operator.MEMBER);
+        query.getAxis(Axis.COLUMNS).filter("1 = 1");
+        final String mdx = query.getSelect().toString();
+        assertFalse(originalMdx.equals(mdx));
+
+        Query query2 = new Query("my query", cube);
+        QueryDimension productDimension2 = query2.getDimension("Product");
+        productDimension2.include(
+            Selection.Operator.INCLUDE_CHILDREN,
+            nameList("Product", "Drink"));
+        productDimension2.sort(SortOrder.DESC);
+        QueryDimension genderDimension2 = query2.getDimension("Gender");
+        genderDimension2.include(
+            Operator.MEMBER, nameList("Gender", "All Gender"));
+        QueryDimension measuresDimension2 = query2.getDimension("Measures");
+        measuresDimension2.include(nameList("Measures", "Store Sales"));
+        query2.getAxis(Axis.ROWS).addDimension(productDimension2);
+        query2.getAxis(Axis.ROWS).addDimension(genderDimension2);
+        query2.getAxis(Axis.COLUMNS).addDimension(measuresDimension2);
+        query2.getAxis(Axis.COLUMNS).filter("1 = 1");
+        assertEquals(query2.getSelect().toString(), mdx);
+
+        // Moving a dimension regenerates both axes.
+        query.getAxis(Axis.COLUMNS).addDimension(genderDimension);
+        query2.getAxis(Axis.COLUMNS).addDimension(genderDimension2);
+        assertEquals(
+            query2.getSelect().toString(),
+            query.getSelect().toString());
+    }
+
+    /**
+     * Tests that {@link Query#resolve(java.util.Collection)} resolves
+     * selections to the same members as resolving them one at a time.
+     */
+    public void testResolveSelections() throws Exception {
+        Cube cube = getFoodmartCube("Sales");
+        if (cube == null) {
+            fail("Could not find Sales cube");
+        }
+        Query query = new Query("my query", cube);
+        QueryDimension productDimension = query.getDimension("Product");
+        QueryDimension genderDimension = query.getDimension("Gender");
+        QueryDimension measuresDimension = query.getDimension("Measures");
+        final List<Selection> selections = new ArrayList<Selection>();
+        selections.add(
+            productDimension.include(
+                Selection.Operator.INCLUDE_CHILDREN,
+                nameList("Product", "Drink")));
+        selections.add(
+            productDimension.include(
+                Selection.Operator.CHILDREN,
+                nameList("Product", "Food", "Frozen Foods")));
+        selections.add(
+            productDimension.include(
+                Selection.Operator.CHILDREN,
+                nameList("Product", "Drink", "Beverages")));
+        selections.add(
+            genderDimension.include(
+                Selection.Operator.CHILDREN,
+                nameList("Gender", "All Gender")));
+        selections.add(
+            measuresDimension.include(nameList("Measures", "Store Sales")));
+        selections.add(
+            measuresDimension.include(nameList("Measures", "Unit Sales")));
+
+        final Map<Selection, List<Member>> map = query.resolve(selections);
+        assertEquals(selections.size(), map.size());
+        for (Selection selection : selections) {
+            final QueryDimension dimension =
+                query.getDimension(selection.getDimension().getName());
+            assertEquals(
+                selection.toString(),
+                dimension.resolve(selection),
+                map.get(selection));
+        }
+
+        assertTrue(
+            query.resolve(Collections.<Selection>emptyList()).isEmpty());
+    }
+
     public void testExclusionModes() throws Exception {
         Cube cube = getFoodmartCube("Sales");
         if (cube == null) {
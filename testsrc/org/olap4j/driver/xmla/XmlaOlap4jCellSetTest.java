@@ -18,6 +18,8 @@
 package org.olap4j.driver.xmla;
 
 import org.olap4j.*;
+import org.olap4j.impl.*;
+import org.olap4j.mdx.*;
 import org.olap4j.test.TestContext;
 
 import junit.framework.TestCase;
@@ -27,6 +29,7 @@ import java.lang.reflect.InvocationTargetException;
 import java.math.*;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 
 /**
@@ -112,6 +115,724 @@ public class XmlaOlap4jCellSetTest extends TestCase {
     }
 
 
+    /**
+     * Tests that values are decoded exactly, including values that do not
+     * fit into a long, and the XSD special values of double.
+     */
+    public void testDecodedValues() throws Exception {
+        final Object[] values = {
+            "xsd:double", "39431.6712", 39431.6712d,
+            "xsd:double", "-1.5E-3", -0.0015d,
+            "xsd:double", "INF", Double.POSITIVE_INFINITY,
+            "xsd:double", "0.1000000000000000055511151231257827", 0.1d,
+            "xsd:decimal", "-0.50", new BigDecimal("-0.50"),
+            "xsd:decimal", "12345678901234567890.5",
+            new BigDecimal("12345678901234567890.5"),
+            "xsd:integer", "9223372036854775808",
+            new BigInteger("9223372036854775808"),
+            "xsd:long", "-9223372036854775808", Long.MIN_VALUE,
+            "xsd:short", "-3943", (short) -3943,
+        };
+        MockOlap4jStatement statement = new MockOlap4jStatement(
+            (XmlaOlap4jConnection) new XmlaTester(TestContext.instance())
+                .createConnection());
+        XmlaOlap4jCellSet cellSet = new StubbedOlap4jCellSet(statement);
+        for (int i = 0; i < values.length; i += 3) {
+            statement.setResponse(
+                templateResponse.replace(
+                    "${VALUE}",
+                    "<Value xsi:type=\"" + values[i] + "\">" + values[i + 1]
+                    + "</Value>"));
+            cellSet.populate();
+            final Cell cell = cellSet.getCell(0);
+            assertEquals(
+                (String) values[i + 1], values[i + 2], cell.getValue());
+            assertEquals(
+                ((Number) values[i + 2]).doubleValue(),
+                cell.getDoubleValue());
+            // The boxed value is created once.
+            assertSame(cell.getValue(), cell.getValue());
+        }
+
+        // Servers differ in how they spell booleans.
+        final String[] booleans = {
+            "true", "True", "TRUE", "1", "false", "False", "0",
+        };
+        for (String b : booleans) {
+            statement.setResponse(
+                templateResponse.replace(
+                    "${VALUE}",
+                    "<Value xsi:type=\"xsd:boolean\">" + b + "</Value>"));
+            cellSet.populate();
+            assertEquals(
+                b,
+                Boolean.valueOf(b.equalsIgnoreCase("true") || b.equals("1")),
+                cellSet.getCell(0).getValue());
+        }
+
+        statement.setResponse(
+            templateResponse.replace(
+                "${VALUE}", "<Value xsi:type=\"xsd:byte\">300</Value>"));
+        try {
+            cellSet.populate();
+            fail("expected error");
+        } catch (OlapException e) {
+            assertTrue(
+                e.getMessage(),
+                e.getMessage().startsWith(
+                    "Error while casting a cell value"));
+        }
+    }
+
+    /**
+     * Tests that a cell formats its value from its format string if the
+     * server did not send the formatted value.
+     */
+    public void testClientFormatting() throws Exception {
+        MockOlap4jStatement statement = new MockOlap4jStatement(
+            (XmlaOlap4jConnection) new XmlaTester(TestContext.instance())
+                .createConnection());
+        statement.olap4jConnection.setLocale(Locale.US);
+        XmlaOlap4jCellSet cellSet = new StubbedOlap4jCellSet(statement);
+
+        statement.setResponse(
+            templateResponse.replace(
+                "${VALUE}",
+                "<Value xsi:type=\"xsd:double\">39431.6712</Value>\n"
+                + "<FormatString>Currency</FormatString>"));
+        cellSet.populate();
+        Cell cell = cellSet.getCell(0);
+        assertEquals("$39,431.67", cell.getFormattedValue());
+        assertEquals(
+            "$39,431.67",
+            cell.getPropertyValue(
+                org.olap4j.metadata.Property.StandardCellProperty
+                    .FORMATTED_VALUE));
+        assertEquals(
+            "Currency",
+            cell.getPropertyValue(
+                org.olap4j.metadata.Property.StandardCellProperty
+                    .FORMAT_STRING));
+
+        // If the server sends the formatted value, the cell uses it.
+        statement.setResponse(
+            templateResponse.replace(
+                "${VALUE}",
+                "<Value xsi:type=\"xsd:double\">39431.6712</Value>\n"
+                + "<FmtValue>39.4K</FmtValue>\n"
+                + "<FormatString>Currency</FormatString>"));
+        cellSet.populate();
+        assertEquals("39.4K", cellSet.getCell(0).getFormattedValue());
+    }
+
+    /**
+     * Tests that a statement's cell property projection limits which
+     * properties the cell set decodes, and that only cell properties may be
+     * projected. If the query has its own CELL PROPERTIES clause, the cell
+     * set keeps every property the server returns.
+     */
+    public void testCellPropertyProjection() throws Exception {
+        MockOlap4jStatement statement = new MockOlap4jStatement(
+            (XmlaOlap4jConnection) new XmlaTester(TestContext.instance())
+                .createConnection());
+        final ExtendedStatement extendedStatement =
+            Olap4jUtil.extend(statement);
+        assertNull(extendedStatement.getCellProperties());
+        extendedStatement.setCellProperties(
+            Arrays.<org.olap4j.metadata.Property>asList(
+                org.olap4j.metadata.Property.StandardCellProperty.VALUE));
+        assertEquals(1, extendedStatement.getCellProperties().size());
+        try {
+            extendedStatement.setCellProperties(
+                Arrays.<org.olap4j.metadata.Property>asList(
+                    org.olap4j.metadata.Property.StandardMemberProperty
+                        .MEMBER_KEY));
+            fail("expected error");
+        } catch (OlapException e) {
+            assertEquals(
+                "Property 'MEMBER_KEY' is not a cell property",
+                e.getMessage());
+        }
+        try {
+            extendedStatement.setDimensionProperties(
+                Arrays.<org.olap4j.metadata.Property>asList(
+                    org.olap4j.metadata.Property.StandardCellProperty
+                        .VALUE));
+            fail("expected error");
+        } catch (OlapException e) {
+            assertEquals(
+                "Property 'VALUE' is not a member property",
+                e.getMessage());
+        }
+
+        XmlaOlap4jCellSet cellSet = new StubbedOlap4jCellSet(statement);
+        cellSet.projection = statement.project("SELECT FROM [Sales]");
+        assertEquals(
+            "SELECT FROM [Sales]\nCELL PROPERTIES VALUE",
+            cellSet.projection.mdx);
+        statement.setResponse(
+            templateResponse.replace(
+                "${VALUE}",
+                "<Value xsi:type=\"xsd:int\">5</Value>\n"
+                + "<FmtValue>five</FmtValue>"));
+        cellSet.populate();
+        assertEquals(
+            1, cellSet.getMetaData().getCellProperties().size());
+        assertEquals(5, cellSet.getCell(0).getValue());
+        assertEquals("5", cellSet.getCell(0).getFormattedValue());
+
+        // The query asks for FORMATTED_VALUE itself, so it is not filtered.
+        final String mdx =
+            "SELECT FROM [Sales] CELL PROPERTIES VALUE, FORMATTED_VALUE";
+        cellSet = new StubbedOlap4jCellSet(statement);
+        cellSet.projection = statement.project(mdx);
+        assertEquals(mdx, cellSet.projection.mdx);
+        cellSet.populate();
+        assertEquals(
+            cellSet.getMetaData().getCellProperties().toString(),
+            3, cellSet.getMetaData().getCellProperties().size());
+        assertEquals("five", cellSet.getCell(0).getFormattedValue());
+    }
+
+    /**
+     * Tests a cell set with more than {@link Integer#MAX_VALUE} cells, whose
+     * cells arrive out of order and with a duplicate ordinal.
+     */
+    public void testLargeCellSet() throws Exception {
+        // Three axes of 1291 positions each: 2,151,685,171 cells.
+        final int n = 1291;
+        final long cellCount = (long) n * n * n;
+        final long last = cellCount - 1;
+        String response = templateResponse;
+        response =
+            repeatTuple(response, "[Measures].[Org Salary]", n);
+        // Axis 1 already has [All Products]; repeat [Drink] to make up n.
+        response = repeatTuple(response, "[Product].[Drink]", n - 1);
+        final String axisInfo =
+            "          <AxisInfo name=\"Axis2\">\n"
+            + "            <HierarchyInfo name=\"Time\">\n"
+            + "              <UName name=\"[Time].[MEMBER_UNIQUE_NAME]\"/>\n"
+            + "            </HierarchyInfo>\n"
+            + "          </AxisInfo>\n";
+        response =
+            response.replace(
+                "          <AxisInfo name=\"SlicerAxis\">",
+                axisInfo + "          <AxisInfo name=\"SlicerAxis\">");
+        final StringBuilder axis = new StringBuilder();
+        axis.append("        <Axis name=\"Axis2\">\n")
+            .append("          <Tuples>\n");
+        for (int i = 0; i < n; i++) {
+            axis.append(
+                "<Tuple><Member Hierarchy=\"Time\">"
+                + "<UName>[Time].[1997]</UName></Member></Tuple>\n");
+        }
+        axis.append("          </Tuples>\n")
+            .append("        </Axis>\n");
+        response =
+            response.replace(
+                "        <Axis name=\"SlicerAxis\">",
+                axis + "        <Axis name=\"SlicerAxis\">");
+        final long big = Integer.MAX_VALUE + 1L;
+        response =
+            response.replace(
+                "        <Cell CellOrdinal=\"0\">\n"
+                + "          ${VALUE}\n"
+                + "        </Cell>\n",
+                cell(last, 7) + cell(1, 1) + cell(5, 5) + cell(big, 8)
+                + cell(5, 6));
+
+        MockOlap4jStatement statement = new MockOlap4jStatement(
+            (XmlaOlap4jConnection) new XmlaTester(TestContext.instance())
+                .createConnection());
+        XmlaOlap4jCellSet cellSet = new StubbedOlap4jCellSet(statement);
+        statement.setResponse(response);
+        cellSet.populate();
+
+        final ExtendedCellSet extended = Olap4jUtil.extend(cellSet);
+        assertEquals(3, cellSet.getAxes().size());
+        assertEquals(cellCount, extended.getCellCount());
+
+        // Cells were sorted, and of the two cells with ordinal 5, the later
+        // one won.
+        assertEquals(1, cellSet.getCell(1).getValue());
+        assertEquals(6, cellSet.getCell(5).getValue());
+        assertTrue(cellSet.getCell(4).isNull());
+        final double[] values = new double[8];
+        final BitSet nulls = new BitSet();
+        extended.getDoubleValues(0, 8, values, nulls);
+        assertEquals(
+            "[0.0, 1.0, 0.0, 0.0, 0.0, 6.0, 0.0, 0.0]",
+            Arrays.toString(values));
+        assertEquals("{0, 2, 3, 4, 6, 7}", nulls.toString());
+
+        // Cells beyond the range of int.
+        final Cell lastCell = extended.getCell(last);
+        assertEquals(7, lastCell.getValue());
+        assertEquals(
+            Arrays.asList(n - 1, n - 1, n - 1),
+            lastCell.getCoordinateList());
+        try {
+            final int ordinal = lastCell.getOrdinal();
+            fail("expected error, got " + ordinal);
+        } catch (IndexOutOfBoundsException e) {
+            // ok
+        }
+        try {
+            final int ordinal =
+                cellSet.coordinatesToOrdinal(
+                    Arrays.asList(n - 1, n - 1, n - 1));
+            fail("expected error, got " + ordinal);
+        } catch (IndexOutOfBoundsException e) {
+            // ok
+        }
+        assertEquals(8, extended.getCell(big).getValue());
+        assertTrue(extended.getCell(big + 1).isNull());
+        final double[] bigValues = new double[3];
+        final BitSet bigNulls = new BitSet();
+        extended.getDoubleValues(big - 1, big + 2, bigValues, bigNulls);
+        assertEquals("[0.0, 8.0, 0.0]", Arrays.toString(bigValues));
+        assertEquals("{0, 2}", bigNulls.toString());
+        final int[] coordinates = extended.ordinalToCoordinates(big);
+        assertEquals(big, extended.coordinatesToOrdinal(coordinates));
+        assertEquals(
+            8, extended.getCell(coordinates).getValue());
+        try {
+            final Cell cell = extended.getCell(cellCount);
+            fail("expected error, got " + cell);
+        } catch (IndexOutOfBoundsException e) {
+            // ok
+        }
+
+        // A cursor over the last few cells.
+        final CellCursor cursor = new CellCursor(cellSet, last - 2, cellCount);
+        final StringBuilder buf = new StringBuilder();
+        while (cursor.next()) {
+            buf.append(cursor.isNull() ? "null" : cursor.getDoubleValue())
+                .append(' ');
+        }
+        assertEquals("null null 7.0 ", buf.toString());
+    }
+
+    /**
+     * Replaces the tuple of an axis of a response with copies of itself.
+     */
+    private static String repeatTuple(
+        String response,
+        String uniqueName,
+        int count)
+    {
+        final int i = response.indexOf("<UName>" + uniqueName + "</UName>");
+        final int start = response.lastIndexOf("<Tuple>", i);
+        final int end =
+            response.indexOf("</Tuple>", i) + "</Tuple>".length();
+        final String tuple = response.substring(start, end);
+        final StringBuilder buf = new StringBuilder();
+        for (int k = 0; k < count; k++) {
+            buf.append(tuple).append('\n');
+        }
+        return response.substring(0, start) + buf
+            + response.substring(end);
+    }
+
+    private static String cell(long ordinal, int value) {
+        return "<Cell CellOrdinal=\"" + ordinal + "\">"
+            + "<Value xsi:type=\"xsd:int\">" + value + "</Value>"
+            + "</Cell>\n";
+    }
+
+    /**
+     * Tests that a {@link CellCursor} reports an error for a cell that is not
+     * numeric, but not for its numeric neighbors, and that whether a cell is
+     * null does not depend on the other cells.
+     */
+    public void testCellCursorNonNumeric() throws Exception {
+        MockOlap4jStatement statement = new MockOlap4jStatement(
+            (XmlaOlap4jConnection) new XmlaTester(TestContext.instance())
+                .createConnection());
+        XmlaOlap4jCellSet cellSet = new StubbedOlap4jCellSet(statement);
+        statement.setResponse(
+            templateResponse.replace(
+                "<Cell CellOrdinal=\"0\">",
+                "<Cell CellOrdinal=\"1\">"
+                + "<Value xsi:type=\"xsd:int\">6</Value></Cell>\n"
+                + "<Cell CellOrdinal=\"0\">")
+                .replace(
+                    "${VALUE}",
+                    "<Value xsi:type=\"xsd:string\">abc</Value>"));
+        cellSet.populate();
+
+        final CellCursor cursor = new CellCursor(cellSet);
+        assertTrue(cursor.next());
+        assertFalse(cursor.isNull());
+        try {
+            final double value = cursor.getDoubleValue();
+            fail("expected error, got " + value);
+        } catch (NumberFormatException e) {
+            // ok
+        }
+        assertTrue(cursor.next());
+        assertFalse(cursor.isNull());
+        assertEquals(6d, cursor.getDoubleValue());
+        assertFalse(cursor.next());
+    }
+
+    /**
+     * Tests that a refresher notifies listeners when a cell set is opened and
+     * closed, and when the result of re-executing its query has changed,
+     * but not when it is the same.
+     */
+    public void testRefresh() throws Exception {
+        MockOlap4jStatement statement = new MockOlap4jStatement(
+            (XmlaOlap4jConnection) new XmlaTester(TestContext.instance())
+                .createConnection());
+        final List<Object> events = new ArrayList<Object>();
+        final XmlaOlap4jCellSetRefresher refresher =
+            new XmlaOlap4jCellSetRefresher(statement, 0);
+        refresher.addListener(
+            CellSetListener.Granularity.FINE,
+            new CellSetListener() {
+                public void cellSetOpened(CellSet cellSet) {
+                    events.add("opened");
+                }
+
+                public void cellSetClosed(CellSet cellSet) {
+                    events.add("closed");
+                }
+
+                public void cellSetChanged(CellSetChange cellSetChange) {
+                    events.add(cellSetChange);
+                }
+            });
+
+        final String response1 =
+            templateResponse.replace(
+                "${VALUE}", "<Value xsi:type=\"xsd:int\">5</Value>");
+        final String response2 =
+            templateResponse.replace(
+                "${VALUE}", "<Value xsi:type=\"xsd:int\">6</Value>");
+        statement.setResponse(response1);
+        XmlaOlap4jCellSet cellSet = new StubbedOlap4jCellSet(statement);
+        cellSet.populate();
+        refresher.opened(
+            cellSet, new XmlaOlap4jStatement.Projection("mdx"));
+        assertEquals(Collections.singletonList("opened"), events);
+
+        // Same result; no event.
+        events.clear();
+        refresher.refresh();
+        assertEquals(0, events.size());
+
+        // Cell 0 has changed.
+        statement.setResponse(response2);
+        refresher.refresh();
+        assertEquals(1, events.size());
+        CellSetListener.CellSetChange change =
+            (CellSetListener.CellSetChange) events.get(0);
+        assertSame(cellSet, change.getCellSet());
+        assertEquals(0, change.getAxisChanges().size());
+        assertEquals(1, change.getCellChanges().size());
+        final CellSetListener.CellChange cellChange =
+            change.getCellChanges().get(0);
+        assertEquals(0, cellChange.getAfterCell().getOrdinal());
+        assertEquals(5, cellChange.getBeforeCell().getValue());
+        assertEquals(6, cellChange.getAfterCell().getValue());
+
+        // Changes are relative to the previous refresh.
+        events.clear();
+        refresher.refresh();
+        assertEquals(0, events.size());
+
+        // A position has changed. The event describes the change to the axis,
+        // but not changes to cells.
+        statement.setResponse(
+            response2.replace("[Product].[Drink]", "[Product].[Food]"));
+        refresher.refresh();
+        assertEquals(1, events.size());
+        change = (CellSetListener.CellSetChange) events.get(0);
+        assertNull(change.getCellChanges());
+        assertEquals(2, change.getAxisChanges().size());
+        assertEquals(
+            "[Product].[Drink]",
+            change.getAxisChanges().get(0).getBeforePosition().getMembers()
+                .get(0).getUniqueName());
+        assertNull(change.getAxisChanges().get(0).getAfterPosition());
+        assertNull(change.getAxisChanges().get(1).getBeforePosition());
+
+        // Once the cell set is closed, there is nothing to refresh.
+        events.clear();
+        refresher.closed(cellSet);
+        refresher.refresh();
+        assertEquals(Collections.singletonList("closed"), events);
+    }
+
+    /**
+     * Tests that a refresher refreshes periodically only while its statement
+     * has an open cell set, and stops when the cell set, the statement or the
+     * connection is closed.
+     */
+    public void testRefreshSchedule() throws Exception {
+        final XmlaOlap4jConnection connection =
+            (XmlaOlap4jConnection) new XmlaTester(TestContext.instance())
+                .createConnection();
+        MockOlap4jStatement statement = new MockOlap4jStatement(connection);
+        final CountDownLatch changed = new CountDownLatch(1);
+        final XmlaOlap4jCellSetRefresher refresher =
+            new XmlaOlap4jCellSetRefresher(statement, 10);
+        refresher.addListener(
+            CellSetListener.Granularity.COARSE,
+            new CellSetListener() {
+                public void cellSetOpened(CellSet cellSet) {
+                }
+
+                public void cellSetClosed(CellSet cellSet) {
+                }
+
+                public void cellSetChanged(CellSetChange cellSetChange) {
+                    changed.countDown();
+                }
+            });
+        assertFalse(refresher.isScheduled());
+
+        statement.setResponse(
+            templateResponse.replace(
+                "${VALUE}", "<Value xsi:type=\"xsd:int\">5</Value>"));
+        XmlaOlap4jCellSet cellSet = new StubbedOlap4jCellSet(statement);
+        cellSet.populate();
+        final XmlaOlap4jStatement.Projection projection =
+            new XmlaOlap4jStatement.Projection("mdx");
+        refresher.opened(cellSet, projection);
+        assertTrue(refresher.isScheduled());
+
+        // The scheduler notices the change without a call to refresh().
+        statement.setResponse(
+            templateResponse.replace(
+                "${VALUE}", "<Value xsi:type=\"xsd:int\">6</Value>"));
+        assertTrue(changed.await(10, TimeUnit.SECONDS));
+
+        // Closing the cell set stops refreshing; opening another restarts.
+        refresher.closed(cellSet);
+        assertFalse(refresher.isScheduled());
+        refresher.opened(cellSet, projection);
+        assertTrue(refresher.isScheduled());
+
+        // Closing the connection closes the statement, and a scheduled run
+        // then stops refreshing.
+        connection.close();
+        assertTrue(statement.isClosed());
+        refresher.run();
+        assertFalse(refresher.isScheduled());
+    }
+
+    /**
+     * Tests that a statement with a row slice count executes a query for
+     * each slice of the ROWS axis and concatenates the results.
+     */
+    public void testRowSlices() throws Exception {
+        final SlicingOlap4jStatement statement =
+            new SlicingOlap4jStatement();
+        statement.responses.put("[Food]", sliceResponse2);
+        statement.responses.put("", sliceResponse1);
+        final ExtendedStatement extendedStatement =
+            statement.unwrap(ExtendedStatement.class);
+        assertEquals(1, extendedStatement.getRowSliceCount());
+        try {
+            extendedStatement.setRowSliceCount(0);
+            fail("expected error");
+        } catch (OlapException e) {
+            assertEquals("Slice count must be at least 1: 0", e.getMessage());
+        }
+        extendedStatement.setRowSliceCount(2);
+
+        // SELECT {[Measures].[Org Salary]} ON COLUMNS,
+        //   {[Product].[All Products], [Product].[Drink],
+        //    [Product].[All Products], [Product].[Food]} ON ROWS
+        // FROM [HR]
+        final SelectNode select =
+            sliceQuery(
+                false,
+                new CallNode(
+                    null, "{}", Syntax.Braces,
+                    IdentifierNode.ofNames("Product", "All Products"),
+                    IdentifierNode.ofNames("Product", "Drink"),
+                    IdentifierNode.ofNames("Product", "All Products"),
+                    IdentifierNode.ofNames("Product", "Food")));
+        final CellSet cellSet = statement.executeOlapQuery(select);
+        assertEquals(2, statement.mdxList.size());
+        checkSlicedCellSet(cellSet);
+    }
+
+    /**
+     * Tests that a statement splits a ROWS set that is not an enumeration by
+     * counting its tuples and executing a <code>Subset</code> of the set for
+     * each slice.
+     */
+    public void testRowSlicesSubset() throws Exception {
+        final SlicingOlap4jStatement statement =
+            new SlicingOlap4jStatement();
+        statement.responses.put(
+            "olap4j Row Count",
+            templateResponse.replace(
+                "${VALUE}", "<Value xsi:type=\"xsd:int\">4</Value>"));
+        statement.responses.put(", 2, 2)", sliceResponse2);
+        statement.responses.put(", 0, 2)", sliceResponse1);
+        statement.setRowSliceCount(2);
+
+        // SELECT {[Measures].[Org Salary]} ON COLUMNS,
+        //   [Product].Children ON ROWS
+        // FROM [HR]
+        final CellSet cellSet =
+            statement.executeOlapQuery(
+                sliceQuery(
+                    false,
+                    new CallNode(
+                        null, "Children", Syntax.Property,
+                        IdentifierNode.ofNames("Product"))));
+        assertEquals(3, statement.mdxList.size());
+        assertTrue(
+            statement.mdxList.get(0),
+            statement.mdxList.get(0).contains("Count([Product].Children)"));
+        assertTrue(
+            statement.mdxList.get(1),
+            statement.mdxList.get(1).contains(
+                "Subset([Product].Children, 0, 2)"));
+        checkSlicedCellSet(cellSet);
+    }
+
+    /**
+     * Tests that a statement executes a query in one piece if it cannot
+     * split the query safely, or if the slices do not agree on the columns.
+     */
+    public void testRowSlicesFallback() throws Exception {
+        final ParseTreeNode rowSet =
+            new CallNode(
+                null, "{}", Syntax.Braces,
+                IdentifierNode.ofNames("Product", "All Products"),
+                IdentifierNode.ofNames("Product", "Drink"));
+
+        // Whether a column is empty depends on every row.
+        SlicingOlap4jStatement statement = new SlicingOlap4jStatement();
+        statement.responses.put("", sliceResponse1);
+        statement.setRowSliceCount(2);
+        CellSet cellSet =
+            statement.executeOlapQuery(sliceQuery(true, rowSet));
+        assertEquals(1, statement.mdxList.size());
+        assertEquals(2, cellSet.getAxes().get(1).getPositionCount());
+
+        // A calculated member that refers to an axis would see only a slice.
+        statement = new SlicingOlap4jStatement();
+        statement.responses.put("", sliceResponse1);
+        statement.setRowSliceCount(2);
+        SelectNode select = sliceQuery(false, rowSet);
+        select.getWithList().add(
+            new WithMemberNode(
+                null,
+                IdentifierNode.ofNames("Measures", "Row Count"),
+                new CallNode(
+                    null, "Count", Syntax.Property,
+                    new CallNode(
+                        null, "Axis", Syntax.Function,
+                        LiteralNode.createNumeric(
+                            null, BigDecimal.ONE, false))),
+                Collections.<PropertyValueNode>emptyList()));
+        cellSet = statement.executeOlapQuery(select);
+        assertEquals(1, statement.mdxList.size());
+        assertEquals(2, cellSet.getAxes().get(1).getPositionCount());
+
+        // If the slices have different columns, the statement executes the
+        // whole query.
+        statement = new SlicingOlap4jStatement();
+        statement.responses.put(
+            "{[Product].[Drink]}",
+            sliceResponse2.replace("Org Salary", "Count"));
+        statement.responses.put("", sliceResponse1);
+        statement.setRowSliceCount(2);
+        cellSet = statement.executeOlapQuery(sliceQuery(false, rowSet));
+        assertEquals(3, statement.mdxList.size());
+        assertEquals(2, cellSet.getAxes().get(1).getPositionCount());
+        assertFalse(
+            cellSet.getAxes().get(0).getPositions().get(0).getMembers()
+                .get(0).getUniqueName().equals("[Measures].[Count]"));
+    }
+
+    /**
+     * Creates a query with {[Measures].[Org Salary]} on COLUMNS and a given
+     * set on ROWS.
+     */
+    private static SelectNode sliceQuery(
+        boolean nonEmptyColumns,
+        ParseTreeNode rowSet)
+    {
+        final SelectNode select = new SelectNode();
+        select.setFrom(IdentifierNode.ofNames("HR"));
+        select.getAxisList().add(
+            new AxisNode(
+                null, nonEmptyColumns, Axis.COLUMNS, null,
+                new CallNode(
+                    null, "{}", Syntax.Braces,
+                    IdentifierNode.ofNames("Measures", "Org Salary"))));
+        select.getAxisList().add(
+            new AxisNode(null, false, Axis.ROWS, null, rowSet));
+        return select;
+    }
+
+    /**
+     * Checks a cell set concatenated from {@link #sliceResponse1} and
+     * {@link #sliceResponse2}.
+     */
+    private static void checkSlicedCellSet(CellSet cellSet) {
+        final CellSetAxis rows = cellSet.getAxes().get(1);
+        assertEquals(4, rows.getPositionCount());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(i, rows.getPositions().get(i).getOrdinal());
+        }
+        assertEquals(
+            "[Product].[Food]",
+            rows.getPositions().get(3).getMembers().get(0).getUniqueName());
+        assertEquals(1, cellSet.getAxes().get(0).getPositionCount());
+        assertEquals(5, cellSet.getCell(0).getValue());
+        assertTrue(cellSet.getCell(2).isEmpty());
+        assertEquals(6, cellSet.getCell(3).getValue());
+        assertEquals(3, cellSet.getCell(3).getOrdinal());
+    }
+
+    /**
+     * Statement that records the MDX of each query it executes, and answers
+     * with the response whose key is the first that the MDX contains.
+     */
+    class SlicingOlap4jStatement extends MockOlap4jStatement {
+        final List<String> mdxList =
+            Collections.synchronizedList(new ArrayList<String>());
+        final Map<String, String> responses =
+            new LinkedHashMap<String, String>();
+
+        SlicingOlap4jStatement() throws Exception {
+            super(
+                (XmlaOlap4jConnection) new XmlaTester(TestContext.instance())
+                    .createConnection());
+        }
+
+        Future<byte[]> submit(XmlaOlap4jStatement.Projection projection) {
+            final String mdx = projection.mdx;
+            mdxList.add(mdx);
+            for (final Map.Entry<String, String> entry
+                : responses.entrySet()) {
+                if (mdx.contains(entry.getKey())) {
+                    setResponse(entry.getValue());
+                    final FutureTask<byte[]> task =
+                        new FutureTask<byte[]>(
+                            new Callable<byte[]>() {
+                                public byte[] call() {
+                                    return entry.getValue().getBytes();
+                                }
+                            });
+                    task.run();
+                    return task;
+                }
+            }
+            throw new AssertionError("no response for " + mdx);
+        }
+    }
+
     class MockOlap4jStatement extends XmlaOlap4jStatement {
 
         private String response;
@@ -128,6 +849,15 @@ public class XmlaOlap4jCellSetTest extends TestCase {
             return response.getBytes();
         }
 
+        XmlaOlap4jCellSet executeDetached(
+            XmlaOlap4jStatement.Projection projection)
+            throws OlapException
+        {
+            final XmlaOlap4jCellSet cellSet = new StubbedOlap4jCellSet(this);
+            cellSet.populate();
+            return cellSet;
+        }
+
         public void closeOnCompletion() throws SQLException {
         }
 
@@ -693,6 +1423,16 @@ public class XmlaOlap4jCellSetTest extends TestCase {
         + "</xmla:ExecuteResponse>"
         + "</soap:Body></soap:Envelope>\n";
 
+    private static final String sliceResponse1 =
+        templateResponse.replace(
+            "${VALUE}", "<Value xsi:type=\"xsd:int\">5</Value>");
+
+    private static final String sliceResponse2 =
+        sliceResponse1
+            .replace("[Product].[Drink]", "[Product].[Food]")
+            .replace("CellOrdinal=\"0\"", "CellOrdinal=\"1\"")
+            .replace(">5<", ">6<");
+
 }
 
 // End XmlaOlap4jCellSetTest.java
\ No newline at end of file
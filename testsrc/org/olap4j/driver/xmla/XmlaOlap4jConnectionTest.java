@@ -0,0 +1,489 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.driver.xmla;
+
+import org.olap4j.OlapConnection;
+import org.olap4j.XmlaTester;
+import org.olap4j.driver.xmla.proxy.XmlaOlap4jProxy;
+import org.olap4j.driver.xmla.proxy.XmlaOlap4jProxyException;
+import org.olap4j.impl.ExtendedCube;
+import org.olap4j.impl.Olap4jUtil;
+import org.olap4j.mdx.IdentifierNode;
+import org.olap4j.mdx.IdentifierSegment;
+import org.olap4j.metadata.*;
+import org.olap4j.test.TestContext;
+
+import junit.framework.TestCase;
+
+import java.io.UnsupportedEncodingException;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+
+/**
+ * Unit test for {@link XmlaOlap4jConnection}.
+ *
+ * <p>Requests go to the test's usual proxy, except those that a test chooses
+ * to answer with a canned response.</p>
+ *
+ * @author jhyde
+ */
+public class XmlaOlap4jConnectionTest extends TestCase {
+    private CannedProxy proxy;
+    private String cookie;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        final Connection connection =
+            new XmlaTester(TestContext.instance()).createConnection();
+        proxy =
+            new CannedProxy(
+                connection.unwrap(XmlaOlap4jConnection.class).proxy);
+        cookie = XmlaOlap4jDriver.nextCookie();
+        XmlaOlap4jDriver.PROXY_MAP.put(cookie, proxy);
+    }
+
+    protected void tearDown() throws Exception {
+        XmlaOlap4jDriver.PROXY_MAP.remove(cookie);
+        proxy = null;
+        super.tearDown();
+    }
+
+    /**
+     * Creates a connection via the canned proxy.
+     *
+     * @param extra Extra connect-string properties, e.g. ";Foo=bar"
+     * @return Connection
+     */
+    private XmlaOlap4jConnection connect(String extra) throws SQLException {
+        final Connection connection =
+            DriverManager.getConnection(
+                "jdbc:xmla:Server=http://foo;Catalog=FoodMart;"
+                + "TestProxyCookie=" + cookie + extra);
+        return connection.unwrap(XmlaOlap4jConnection.class);
+    }
+
+    /**
+     * Tests which server flavors are known to evaluate wildcards in
+     * metadata restrictions, and which must be asked.
+     */
+    public void testBackendFlavorWildcardRestrictions() {
+        assertEquals(
+            Boolean.FALSE,
+            XmlaOlap4jConnection.BackendFlavor.getFlavor(
+                "Provider=Mondrian;DataSource=MondrianFoodMart;",
+                "Mondrian", false).wildcardRestrictions);
+        assertEquals(
+            Boolean.FALSE,
+            XmlaOlap4jConnection.BackendFlavor.getFlavor(
+                "localhost", "Microsoft XML for Analysis",
+                false).wildcardRestrictions);
+        assertNull(
+            XmlaOlap4jConnection.BackendFlavor.getFlavor(
+                "localhost", "Essbase XMLA Provider",
+                false).wildcardRestrictions);
+        assertNull(
+            XmlaOlap4jConnection.BackendFlavor.getFlavor(
+                "localhost", "Acme OLAP", false).wildcardRestrictions);
+    }
+
+    /**
+     * Tests the probe that asks the server whether it evaluates wildcards.
+     */
+    public void testProbeWildcardRestrictions() throws SQLException {
+        final XmlaOlap4jConnection connection = connect("");
+        final Cube cube = connection.getOlapSchema().getCubes().get(0);
+        final String name = cube.getName();
+        final String pattern = name.substring(0, name.length() - 1) + "_";
+
+        // Server returns only cubes that match the pattern.
+        proxy.setResponse("MDSCHEMA_CUBES", cubesResponse(name));
+        assertTrue(connection.probeWildcardRestrictions());
+        assertEquals(1, proxy.requests.size());
+        assertTrue(
+            proxy.requests.get(0),
+            proxy.requests.get(0).contains(
+                "<CUBE_NAME>" + pattern + "</CUBE_NAME>"));
+
+        // Server matches exactly, so finds no cube called "Sale_".
+        proxy.setResponse("MDSCHEMA_CUBES", cubesResponse());
+        assertFalse(connection.probeWildcardRestrictions());
+
+        // Server ignores the restriction.
+        proxy.setResponse("MDSCHEMA_CUBES", cubesResponse(name, "Not " + name));
+        assertFalse(connection.probeWildcardRestrictions());
+
+        // Server rejects the request.
+        proxy.setResponse("MDSCHEMA_CUBES", "");
+        assertFalse(connection.probeWildcardRestrictions());
+        connection.close();
+    }
+
+    /**
+     * Tests the {@link XmlaOlap4jDriver.Property#WILDCARDRESTRICTIONS}
+     * property, and that rows are filtered on the client even when the
+     * server has been sent the pattern.
+     */
+    public void testWildcardRestrictionsProperty() throws SQLException {
+        // Mondrian does not evaluate wildcards, but the property overrides.
+        XmlaOlap4jConnection connection = connect(";WildcardRestrictions=true");
+        assertTrue(connection.supportsWildcardRestrictions());
+        proxy.setResponse(
+            "MDSCHEMA_CUBES",
+            cubesResponse("Sales", "Sales Ragged", "Warehouse"));
+        assertEquals(
+            "[Sales, Sales Ragged]",
+            cubeNames(connection, "Sal%").toString());
+        assertEquals(1, proxy.requests.size());
+        assertTrue(
+            proxy.requests.get(0),
+            proxy.requests.get(0).contains("<CUBE_NAME>Sal%</CUBE_NAME>"));
+        connection.close();
+
+        proxy.requests.clear();
+        proxy.setResponse("MDSCHEMA_CUBES", null);
+        connection = connect(";WildcardRestrictions=false");
+        assertFalse(connection.supportsWildcardRestrictions());
+        proxy.setResponse(
+            "MDSCHEMA_CUBES",
+            cubesResponse("Sales", "Sales Ragged", "Warehouse"));
+        assertEquals(
+            "[Sales, Sales Ragged]",
+            cubeNames(connection, "Sal%").toString());
+        assertEquals(1, proxy.requests.size());
+        assertFalse(
+            proxy.requests.get(0),
+            proxy.requests.get(0).contains("<CUBE_NAME>"));
+        connection.close();
+    }
+
+    /**
+     * Tests that a cube's hierarchies, which are populated by several
+     * threads at once, are all registered in the cube's lookup maps, even
+     * when several threads ask for them at the same time.
+     */
+    public void testConcurrentHierarchies() throws Exception {
+        final XmlaOlap4jConnection connection = connect("");
+        final XmlaOlap4jCube cube =
+            (XmlaOlap4jCube) connection.getOlapSchema().getCubes()
+                .get("Sales");
+        final List<Throwable> errors =
+            Collections.synchronizedList(new ArrayList<Throwable>());
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            final Thread thread =
+                new Thread() {
+                    public void run() {
+                        try {
+                            for (Hierarchy hierarchy
+                                : cube.getHierarchies())
+                            {
+                                hierarchy.getLevels().size();
+                            }
+                        } catch (Throwable e) {
+                            errors.add(e);
+                        }
+                    }
+                };
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(Collections.<Throwable>emptyList(), errors);
+
+        int levelCount = 0;
+        for (Hierarchy hierarchy : cube.getHierarchies()) {
+            assertSame(
+                hierarchy,
+                cube.hierarchiesByUname.get(hierarchy.getUniqueName()));
+            for (Level level : hierarchy.getLevels()) {
+                assertSame(
+                    level, cube.levelsByUname.get(level.getUniqueName()));
+                ++levelCount;
+            }
+        }
+        assertEquals(
+            cube.getHierarchies().size(), cube.hierarchiesByUname.size());
+        assertEquals(levelCount, cube.levelsByUname.size());
+        connection.close();
+    }
+
+    /**
+     * Tests that a batched lookup of the children of several members does
+     * not ask again for a member that has no children.
+     */
+    public void testLookupChildrenOfLeaf() throws Exception {
+        final XmlaOlap4jConnection connection = connect("");
+        final Cube cube = connection.getOlapSchema().getCubes().get("Sales");
+        final ExtendedCube extendedCube = Olap4jUtil.extend(cube);
+        assertSame(cube, extendedCube);
+        if (!connection.getOlapDatabase().getProviderName().equals(
+                "Mondrian"))
+        {
+            // Only Mondrian gets batched lookups.
+            return;
+        }
+        // Load the levels before the proxy starts answering member requests.
+        for (Level level : cube.getDimensions().get("Store").getHierarchies()
+                 .get(0).getLevels())
+        {
+            level.getUniqueName();
+        }
+        proxy.setResponse(
+            "MDSCHEMA_MEMBERS",
+            membersResponse(
+                "[Store].[USA].[CA]", "[Store].[USA]", "[Store].[Store State]",
+                "[Store].[USA].[CA].[Alameda]", "[Store].[USA].[CA]",
+                "[Store].[Store City]",
+                "[Store].[USA].[CA].[Alameda].[HQ]",
+                "[Store].[USA].[CA].[Alameda]",
+                "[Store].[Store Name]"));
+        final List<List<Member>> lists =
+            extendedCube.lookupMemberRelatives(
+                EnumSet.of(Member.TreeOp.CHILDREN),
+                Arrays.asList(
+                    IdentifierNode.parseIdentifier("[Store].[USA].[CA]")
+                        .getSegmentList(),
+                    IdentifierNode.parseIdentifier(
+                        "[Store].[USA].[CA].[Alameda].[HQ]")
+                        .getSegmentList()));
+        assertEquals(2, lists.size());
+        assertEquals(1, lists.get(0).size());
+        assertEquals(
+            "[Store].[USA].[CA].[Alameda]",
+            lists.get(0).get(0).getUniqueName());
+        assertEquals(0, lists.get(1).size());
+        assertEquals(1, proxy.requests.size());
+        connection.close();
+    }
+
+    /**
+     * Tests that the driver remembers that a member does not exist, and
+     * does not ask the server again.
+     */
+    public void testLookupMissingMembers() throws Exception {
+        final XmlaOlap4jConnection connection = connect("");
+        final Cube cube = connection.getOlapSchema().getCubes().get("Sales");
+        proxy.setResponse("MDSCHEMA_MEMBERS", membersResponse());
+        final List<List<IdentifierSegment>> names =
+            Arrays.asList(
+                IdentifierNode.parseIdentifier("[Store].[Atlantis]")
+                    .getSegmentList(),
+                IdentifierNode.parseIdentifier("[Store].[Lemuria]")
+                    .getSegmentList());
+        List<List<Member>> lists =
+            Olap4jUtil.extend(cube).lookupMemberRelatives(
+                EnumSet.of(Member.TreeOp.SELF), names);
+        assertEquals(
+            Arrays.asList(
+                Collections.<Member>emptyList(),
+                Collections.<Member>emptyList()),
+            lists);
+        assertFalse(proxy.requests.isEmpty());
+        proxy.requests.clear();
+
+        // Second time, no requests.
+        lists =
+            Olap4jUtil.extend(cube).lookupMemberRelatives(
+                EnumSet.of(Member.TreeOp.SELF), names);
+        assertEquals(
+            Arrays.asList(
+                Collections.<Member>emptyList(),
+                Collections.<Member>emptyList()),
+            lists);
+        assertNull(cube.lookupMember(names.get(0)));
+        assertEquals(0, proxy.requests.size());
+        connection.close();
+    }
+
+    private static List<String> cubeNames(
+        OlapConnection connection,
+        String pattern) throws SQLException
+    {
+        final ResultSet resultSet =
+            connection.getMetaData().getCubes("FoodMart", null, pattern);
+        final List<String> list = new ArrayList<String>();
+        while (resultSet.next()) {
+            list.add(resultSet.getString("CUBE_NAME"));
+        }
+        resultSet.close();
+        return list;
+    }
+
+    /**
+     * Returns a response to an MDSCHEMA_CUBES request.
+     *
+     * @param names Cube names
+     * @return Response
+     */
+    private static String cubesResponse(String... names) {
+        final StringBuilder buf = new StringBuilder();
+        for (String name : names) {
+            buf.append("<row><CATALOG_NAME>FoodMart</CATALOG_NAME>")
+                .append("<SCHEMA_NAME>FoodMart</SCHEMA_NAME>")
+                .append("<CUBE_NAME>").append(name).append("</CUBE_NAME>")
+                .append("</row>\n");
+        }
+        return discoverResponse(buf.toString());
+    }
+
+    /**
+     * Returns a response to an MDSCHEMA_MEMBERS request for members of the
+     * Store dimension.
+     *
+     * @param values Unique name, parent unique name and level unique name
+     * of each member
+     * @return Response
+     */
+    private static String membersResponse(String... values) {
+        final StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < values.length; i += 3) {
+            final List<IdentifierSegment> segments =
+                IdentifierNode.parseIdentifier(values[i]).getSegmentList();
+            final String name = segments.get(segments.size() - 1).getName();
+            buf.append("<row>")
+                .append("<DIMENSION_UNIQUE_NAME>[Store]")
+                .append("</DIMENSION_UNIQUE_NAME>")
+                .append("<HIERARCHY_UNIQUE_NAME>[Store]")
+                .append("</HIERARCHY_UNIQUE_NAME>")
+                .append("<LEVEL_UNIQUE_NAME>").append(values[i + 2])
+                .append("</LEVEL_UNIQUE_NAME>")
+                .append("<MEMBER_ORDINAL>").append(i / 3)
+                .append("</MEMBER_ORDINAL>")
+                .append("<MEMBER_NAME>").append(name)
+                .append("</MEMBER_NAME>")
+                .append("<MEMBER_UNIQUE_NAME>").append(values[i])
+                .append("</MEMBER_UNIQUE_NAME>")
+                .append("<MEMBER_TYPE>1</MEMBER_TYPE>")
+                .append("<MEMBER_CAPTION>").append(name)
+                .append("</MEMBER_CAPTION>")
+                .append("<CHILDREN_CARDINALITY>0</CHILDREN_CARDINALITY>")
+                .append("<PARENT_UNIQUE_NAME>").append(values[i + 1])
+                .append("</PARENT_UNIQUE_NAME>")
+                .append("</row>\n");
+        }
+        return discoverResponse(buf.toString());
+    }
+
+    /**
+     * Wraps rows in the envelope of a response to a Discover request.
+     *
+     * @param rows Row elements
+     * @return Response
+     */
+    private static String discoverResponse(String rows) {
+        final StringBuilder buf = new StringBuilder();
+        buf.append("<?xml version=\"1.0\"?>\n")
+            .append("<SOAP-ENV:Envelope xmlns:SOAP-ENV=")
+            .append("\"http://schemas.xmlsoap.org/soap/envelope/\">\n")
+            .append("<SOAP-ENV:Body>\n")
+            .append("<DiscoverResponse")
+            .append(" xmlns=\"urn:schemas-microsoft-com:xml-analysis\">\n")
+            .append("<return>\n")
+            .append("<root")
+            .append(" xmlns=\"urn:schemas-microsoft-com:xml-analysis:rowset\">")
+            .append('\n')
+            .append(rows)
+            .append("</root>\n")
+            .append("</return>\n")
+            .append("</DiscoverResponse>\n")
+            .append("</SOAP-ENV:Body>\n")
+            .append("</SOAP-ENV:Envelope>\n");
+        return buf.toString();
+    }
+
+    /**
+     * Proxy that answers Discover requests of given types with canned
+     * responses, and sends all other requests to an underlying proxy.
+     */
+    private static class CannedProxy implements XmlaOlap4jProxy {
+        private final XmlaOlap4jProxy proxy;
+
+        /** Requests that were answered with a canned response. */
+        final List<String> requests =
+            Collections.synchronizedList(new ArrayList<String>());
+
+        /** Canned responses, by request type. */
+        private final Map<String, String> cannedResponses =
+            new ConcurrentHashMap<String, String>();
+
+        CannedProxy(XmlaOlap4jProxy proxy) {
+            this.proxy = proxy;
+        }
+
+        /**
+         * Sets the response to requests of a given type.
+         *
+         * @param requestType Request type, e.g. "MDSCHEMA_CUBES"
+         * @param response Response; null to forward requests to the
+         *     underlying proxy; empty to fail
+         */
+        void setResponse(String requestType, String response) {
+            if (response == null) {
+                cannedResponses.remove(requestType);
+            } else {
+                cannedResponses.put(requestType, response);
+            }
+        }
+
+        public byte[] get(
+            XmlaOlap4jServerInfos serverInfos,
+            String request)
+            throws XmlaOlap4jProxyException
+        {
+            String cannedResponse = null;
+            for (Map.Entry<String, String> entry
+                : cannedResponses.entrySet())
+            {
+                if (request.contains(
+                        "<RequestType>" + entry.getKey() + "</RequestType>"))
+                {
+                    cannedResponse = entry.getValue();
+                }
+            }
+            if (cannedResponse == null) {
+                return proxy.get(serverInfos, request);
+            }
+            requests.add(request);
+            if (cannedResponse.length() == 0) {
+                throw new XmlaOlap4jProxyException("Request rejected", null);
+            }
+            try {
+                return cannedResponse.getBytes("UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        public Future<byte[]> submit(
+            XmlaOlap4jServerInfos serverInfos,
+            String request)
+        {
+            return proxy.submit(serverInfos, request);
+        }
+
+        public String getEncodingCharsetName() {
+            return proxy.getEncodingCharsetName();
+        }
+    }
+}
+
+// End XmlaOlap4jConnectionTest.java
@@ -19,12 +19,14 @@ package org.olap4j.driver.xmla.proxy;
 
 import org.olap4j.OlapException;
 import org.olap4j.driver.xmla.XmlaOlap4jDriver;
+import org.olap4j.driver.xmla.XmlaOlap4jServerInfos;
 import org.olap4j.driver.xmla.cache.XmlaOlap4jNamedMemoryCache;
 
 import junit.framework.TestCase;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.*;
+import java.net.*;
+import java.util.*;
 
 /**
  * <p>Tests both the CachedProxy implementation (HttpProxy) and the
@@ -335,6 +337,191 @@ public class XmlaCachedProxyTest extends TestCase {
     }
 
 
+
+    /**
+     * Tests that a request built from encoded templates has the same bytes
+     * as the equivalent string, and that the HTTP proxy sends it and caches
+     * the response.
+     */
+    public void testEncodedRequest() throws Exception {
+        final String text = "caf\u00e9 \u20ac \ud83d\ude00 <&>";
+        final XmlaOlap4jRequest request =
+            new XmlaOlap4jRequest("Discover", 4)
+                .append(
+                    XmlaOlap4jRequest.template(
+                        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                        + "<SOAP-ENV:Envelope><SOAP-ENV:Body>"
+                        + "<Discover xmlns=\"urn:schemas-microsoft-com:"
+                        + "xml-analysis\"><RequestType>"))
+                .append("MDSCHEMA_CUBES")
+                .append("</RequestType><Restrictions><RestrictionList>")
+                .append("<CUBE_NAME>")
+                .appendXml(text)
+                .append("</CUBE_NAME>")
+                .append(
+                    "</RestrictionList></Restrictions><Properties>"
+                    + "<PropertyList/></Properties></Discover>"
+                    + "</SOAP-ENV:Body></SOAP-ENV:Envelope>");
+        final String string = request.toString();
+        assertTrue(
+            string.contains("caf\u00e9 \u20ac \ud83d\ude00 &lt;&amp;&gt;"));
+        assertTrue(
+            Arrays.equals(string.getBytes("UTF-8"), request.getBytes()));
+        assertEquals(request.size(), request.getBytes().length);
+
+        final String response = "<?xml version=\"1.0\"?>\n<x/>";
+        final XmlaReplayProxy replayProxy = new XmlaReplayProxy();
+        replayProxy.record(string, response);
+        final XmlaReplayProxy.Endpoint endpoint =
+            replayProxy.startHttpEndpoint(0);
+        final XmlaOlap4jHttpProxy proxy = new XmlaOlap4jHttpProxy(dummyDriver);
+        final Map<String, String> driverParameters =
+            new HashMap<String, String>();
+        driverParameters.put(
+            XmlaOlap4jDriver.Property.CACHE.name(),
+            "org.olap4j.driver.xmla.cache.XmlaOlap4jNamedMemoryCache");
+        final Map<String, String> cacheProperties =
+            new HashMap<String, String>();
+        cacheProperties.put(
+            XmlaOlap4jNamedMemoryCache.Property.NAME.name(),
+            "testEncodedRequest");
+        proxy.setCache(driverParameters, cacheProperties);
+        final XmlaOlap4jServerInfos serverInfos =
+            serverInfos(new URL(endpoint.getUrl()));
+        try {
+            assertEquals(
+                response,
+                new String(proxy.get(serverInfos, request), "UTF-8"));
+        } finally {
+            endpoint.close();
+        }
+        assertEquals(1, replayProxy.getHitCount());
+
+        // The server has gone, so the response must come from the cache;
+        // the string form of the request has the same key.
+        assertEquals(
+            response,
+            new String(proxy.get(serverInfos, string), "UTF-8"));
+        assertEquals(1, replayProxy.getHitCount());
+    }
+
+    /**
+     * Tests that the HTTP proxy follows a redirect. The proxy streams
+     * requests, which cannot be replayed, so it must fall back to buffering
+     * them.
+     */
+    public void testRedirect() throws Exception {
+        final ServerSocket serverSocket = new ServerSocket(0);
+        final int port = serverSocket.getLocalPort();
+        final Thread thread = new Thread("testRedirect") {
+            public void run() {
+                try {
+                    while (!serverSocket.isClosed()) {
+                        final Socket socket = serverSocket.accept();
+                        try {
+                            serveRedirect(socket, port);
+                        } finally {
+                            socket.close();
+                        }
+                    }
+                } catch (IOException e) {
+                    // Socket was closed.
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+        try {
+            final XmlaOlap4jHttpProxy proxy =
+                new XmlaOlap4jHttpProxy(dummyDriver);
+            final URL url = new URL("http://localhost:" + port + "/old");
+            for (int i = 0; i < 2; i++) {
+                assertEquals(
+                    "/new <Discover/>",
+                    new String(
+                        proxy.getResponse(serverInfos(url), "<Discover/>"),
+                        "UTF-8"));
+            }
+        } finally {
+            serverSocket.close();
+        }
+    }
+
+    /**
+     * Answers one HTTP request: redirects "/old" to "/new", and echoes the
+     * path and body of any other request.
+     */
+    private static void serveRedirect(Socket socket, int port)
+        throws IOException
+    {
+        final DataInputStream in =
+            new DataInputStream(
+                new BufferedInputStream(socket.getInputStream()));
+        final String path = readLine(in).split(" ")[1];
+        int contentLength = 0;
+        String line;
+        while ((line = readLine(in)).length() > 0) {
+            if (line.toLowerCase().startsWith("content-length:")) {
+                contentLength =
+                    Integer.parseInt(line.substring(15).trim());
+            }
+        }
+        final byte[] body = new byte[contentLength];
+        in.readFully(body);
+        final String header;
+        byte[] response = {};
+        if (path.equals("/old")) {
+            header =
+                "HTTP/1.1 307 Temporary Redirect\r\n"
+                + "Location: http://localhost:" + port + "/new\r\n";
+        } else {
+            header = "HTTP/1.1 200 OK\r\n";
+            response =
+                (path + " " + new String(body, "UTF-8")).getBytes("UTF-8");
+        }
+        final OutputStream out = socket.getOutputStream();
+        out.write(
+            (header
+             + "Content-Length: " + response.length + "\r\n"
+             + "Connection: close\r\n"
+             + "\r\n").getBytes("ISO-8859-1"));
+        out.write(response);
+        out.flush();
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        final StringBuilder buf = new StringBuilder();
+        int c;
+        while ((c = in.read()) >= 0 && c != '\n') {
+            if (c != '\r') {
+                buf.append((char) c);
+            }
+        }
+        return buf.toString();
+    }
+
+    private static XmlaOlap4jServerInfos serverInfos(final URL url) {
+        return new XmlaOlap4jServerInfos() {
+            public URL getUrl() {
+                return url;
+            }
+
+            public String getUsername() {
+                return null;
+            }
+
+            public String getPassword() {
+                return null;
+            }
+
+            public String getSessionId() {
+                return null;
+            }
+
+            public void setSessionId(String sessionId) {
+            }
+        };
+    }
 }
 
 // End XmlaCachedProxyTest.java
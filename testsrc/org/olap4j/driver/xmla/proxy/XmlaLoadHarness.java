@@ -0,0 +1,344 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.driver.xmla.proxy;
+
+import org.olap4j.*;
+import org.olap4j.driver.xmla.XmlaOlap4jDriver;
+import org.olap4j.impl.ExtendedCellSet;
+import org.olap4j.impl.Olap4jUtil;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives concurrent olap4j connections through a mix of queries and reports
+ * latency, throughput and heap usage.
+ *
+ * <p>By default the harness runs against an {@link XmlaReplayProxy} loaded
+ * from the recording in the <code>xmla-cache</code> directory, and uses the
+ * recorded MDX statements as its query mix, so it needs neither Mondrian nor
+ * a remote server. The proxy's latency, jitter and bandwidth settings simulate
+ * the network; with <code>-http</code>, requests also go through the driver's
+ * HTTP proxy and a local socket.
+ *
+ * <p>Usage: <code>XmlaLoadHarness [-recording <i>file</i>]
+ * [-threads <i>n</i>] [-iterations <i>n</i>] [-latency <i>millis</i>]
+ * [-jitter <i>millis</i>] [-bandwidth <i>bytesPerSecond</i>] [-http]
+ * [-seed <i>n</i>]</code>
+ *
+ * @author jhyde
+ */
+public class XmlaLoadHarness {
+    private final String url;
+    private final List<String> queries;
+    private final int threadCount;
+    private final int iterationCount;
+    private final long seed;
+
+    private static final String DEFAULT_RECORDING =
+        "xmla-cache/xmla-cache-hsqldb-mondrian-3.3-SNAPSHOT.zip";
+
+    /**
+     * Creates an XmlaLoadHarness.
+     *
+     * @param url JDBC URL of the olap4j connections
+     * @param queries MDX statements to choose from
+     * @param threadCount Number of concurrent connections
+     * @param iterationCount Number of queries each connection executes
+     * @param seed Seed for choosing queries
+     */
+    public XmlaLoadHarness(
+        String url,
+        List<String> queries,
+        int threadCount,
+        int iterationCount,
+        long seed)
+    {
+        if (queries.isEmpty()) {
+            throw new IllegalArgumentException("no queries");
+        }
+        this.url = url;
+        this.queries = queries;
+        this.threadCount = threadCount;
+        this.iterationCount = iterationCount;
+        this.seed = seed;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String recording = DEFAULT_RECORDING;
+        int threadCount = 4;
+        int iterationCount = 50;
+        long latency = 0;
+        long jitter = 0;
+        long bandwidth = 0;
+        long seed = 0;
+        boolean http = false;
+        for (int i = 0; i < args.length; i++) {
+            final String arg = args[i];
+            if (arg.equals("-http")) {
+                http = true;
+            } else if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing value for " + arg);
+            } else if (arg.equals("-recording")) {
+                recording = args[++i];
+            } else if (arg.equals("-threads")) {
+                threadCount = Integer.parseInt(args[++i]);
+            } else if (arg.equals("-iterations")) {
+                iterationCount = Integer.parseInt(args[++i]);
+            } else if (arg.equals("-latency")) {
+                latency = Long.parseLong(args[++i]);
+            } else if (arg.equals("-jitter")) {
+                jitter = Long.parseLong(args[++i]);
+            } else if (arg.equals("-bandwidth")) {
+                bandwidth = Long.parseLong(args[++i]);
+            } else if (arg.equals("-seed")) {
+                seed = Long.parseLong(args[++i]);
+            } else {
+                throw new IllegalArgumentException("Unknown argument " + arg);
+            }
+        }
+        final XmlaReplayProxy proxy =
+            XmlaReplayProxy.create(new File(recording));
+        proxy.setLatency(latency);
+        proxy.setJitter(jitter);
+        proxy.setBandwidth(bandwidth);
+        Class.forName(XmlaOlap4jDriver.class.getName());
+        final String cookie = XmlaOlap4jDriver.nextCookie();
+        XmlaReplayProxy.Endpoint endpoint = null;
+        final String url;
+        if (http) {
+            endpoint = proxy.startHttpEndpoint(0);
+            url = "jdbc:xmla:Server=" + endpoint.getUrl()
+                + ";Catalog=FoodMart";
+        } else {
+            XmlaOlap4jDriver.PROXY_MAP.put(cookie, proxy);
+            url = "jdbc:xmla:Server=http://localhost;Catalog=FoodMart;"
+                + "TestProxyCookie=" + cookie;
+        }
+        try {
+            final XmlaLoadHarness harness =
+                new XmlaLoadHarness(
+                    url, proxy.getRecordedStatements(), threadCount,
+                    iterationCount, seed);
+            final Report report = harness.run();
+            System.out.println(report);
+            System.out.println(
+                "Proxy: hits=" + proxy.getHitCount()
+                + ", misses=" + proxy.getMissCount()
+                + ", bytes=" + proxy.getBytesServed());
+        } finally {
+            if (endpoint != null) {
+                endpoint.close();
+            }
+        }
+    }
+
+    /**
+     * Runs the load test and waits for it to finish.
+     *
+     * @return Report of latencies, throughput and heap usage
+     * @throws Exception on error
+     */
+    public Report run() throws Exception {
+        final ExecutorService executor =
+            Executors.newFixedThreadPool(threadCount);
+        final HeapSampler heapSampler = new HeapSampler();
+        final Thread samplerThread = new Thread(heapSampler, "HeapSampler");
+        samplerThread.setDaemon(true);
+        final List<Future<Worker>> futures = new ArrayList<Future<Worker>>();
+        final long start = System.nanoTime();
+        samplerThread.start();
+        try {
+            for (int i = 0; i < threadCount; i++) {
+                futures.add(executor.submit(new Worker(seed + i)));
+            }
+            final Report report = new Report();
+            for (Future<Worker> future : futures) {
+                report.add(future.get());
+            }
+            report.elapsedNanos = System.nanoTime() - start;
+            report.peakHeapBytes = heapSampler.peak.get();
+            return report;
+        } finally {
+            heapSampler.stop = true;
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Task that opens a connection and executes queries on it.
+     */
+    private class Worker implements Callable<Worker> {
+        private final Random random;
+        private final long[] latencies = new long[iterationCount];
+        private int errorCount;
+        private long cellCount;
+        private Throwable firstError;
+
+        Worker(long seed) {
+            this.random = new Random(seed);
+        }
+
+        public Worker call() throws Exception {
+            final Connection connection =
+                DriverManager.getConnection(url, new Properties());
+            try {
+                final OlapConnection olapConnection =
+                    ((OlapWrapper) connection).unwrap(OlapConnection.class);
+                for (int i = 0; i < iterationCount; i++) {
+                    final String mdx =
+                        queries.get(random.nextInt(queries.size()));
+                    final long t0 = System.nanoTime();
+                    try {
+                        final OlapStatement statement =
+                            olapConnection.createStatement();
+                        try {
+                            cellCount +=
+                                consume(statement.executeOlapQuery(mdx));
+                        } finally {
+                            statement.close();
+                        }
+                    } catch (OlapException e) {
+                        if (firstError == null) {
+                            firstError = e;
+                        }
+                        ++errorCount;
+                    }
+                    latencies[i] = System.nanoTime() - t0;
+                }
+            } finally {
+                connection.close();
+            }
+            return this;
+        }
+
+        /**
+         * Reads every cell of a cell set, as a client would.
+         */
+        private long consume(CellSet cellSet) {
+            final ExtendedCellSet extendedCellSet =
+                Olap4jUtil.extend(cellSet);
+            final long cellCount = extendedCellSet.getCellCount();
+            for (long i = 0; i < cellCount; i++) {
+                extendedCellSet.getCell(i).getValue();
+            }
+            return cellCount;
+        }
+    }
+
+    /**
+     * Samples the heap in use until told to stop, and remembers the peak.
+     */
+    private static class HeapSampler implements Runnable {
+        final AtomicLong peak = new AtomicLong();
+        volatile boolean stop;
+
+        public void run() {
+            final Runtime runtime = Runtime.getRuntime();
+            while (!stop) {
+                final long used = runtime.totalMemory() - runtime.freeMemory();
+                if (used > peak.get()) {
+                    peak.set(used);
+                }
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Results of a load test.
+     */
+    public static class Report {
+        private long[] latencies = new long[0];
+        private int errorCount;
+        private long cellCount;
+        private Throwable firstError;
+        long elapsedNanos;
+        long peakHeapBytes;
+
+        void add(Worker worker) {
+            final long[] merged =
+                new long[latencies.length + worker.latencies.length];
+            System.arraycopy(latencies, 0, merged, 0, latencies.length);
+            System.arraycopy(
+                worker.latencies, 0, merged, latencies.length,
+                worker.latencies.length);
+            Arrays.sort(merged);
+            latencies = merged;
+            errorCount += worker.errorCount;
+            cellCount += worker.cellCount;
+            if (firstError == null) {
+                firstError = worker.firstError;
+            }
+        }
+
+        /**
+         * Returns a latency percentile, in milliseconds.
+         *
+         * @param percent Percentile, between 0 and 100
+         * @return Latency in milliseconds
+         */
+        public double percentile(double percent) {
+            if (latencies.length == 0) {
+                return 0d;
+            }
+            int i = (int) Math.ceil(percent / 100d * latencies.length) - 1;
+            i = Math.max(0, Math.min(latencies.length - 1, i));
+            return latencies[i] / 1000000d;
+        }
+
+        /**
+         * Returns the number of queries executed per second.
+         *
+         * @return Throughput
+         */
+        public double throughput() {
+            return latencies.length * 1000000000d / elapsedNanos;
+        }
+
+        public int getErrorCount() {
+            return errorCount;
+        }
+
+        public Throwable getFirstError() {
+            return firstError;
+        }
+
+        public String toString() {
+            return "Queries: " + latencies.length
+                + ", errors: " + errorCount
+                + ", cells: " + cellCount
+                + "\nLatency (ms): p50=" + percentile(50)
+                + ", p99=" + percentile(99)
+                + ", max=" + percentile(100)
+                + "\nThroughput: " + throughput() + " queries/s"
+                + "\nPeak heap: " + (peakHeapBytes >> 20) + " MB"
+                + (firstError == null ? "" : "\nFirst error: " + firstError);
+        }
+    }
+}
+
+// End XmlaLoadHarness.java
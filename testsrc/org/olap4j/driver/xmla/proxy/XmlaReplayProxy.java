@@ -0,0 +1,753 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.driver.xmla.proxy;
+
+import org.olap4j.driver.xmla.XmlaOlap4jDriver;
+import org.olap4j.driver.xmla.XmlaOlap4jServerInfos;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Proxy which serves XMLA responses that were recorded earlier, without
+ * talking to a server.
+ *
+ * <p>Recordings are read from the HSQLDB script written by
+ * {@link org.olap4j.driver.xmla.cache.XmlaDatabaseCache} when it runs with
+ * <code>Cache.Record=true</code>; the archive in the <code>xmla-cache</code>
+ * directory is such a recording, made against Mondrian and FoodMart.
+ *
+ * <p>Requests are matched on what they ask for rather than on their exact
+ * text: the request type, restrictions and catalog of a Discover, or the
+ * statement and catalog of an Execute, each with whitespace normalized. This
+ * allows the recording to keep working as the driver changes the layout of
+ * its SOAP envelopes or adds properties to them.
+ *
+ * <p>To simulate a remote server, each response can be delayed by a fixed
+ * latency plus a random jitter, and throttled to a given bandwidth.
+ *
+ * <p>Besides being usable in-process, via
+ * {@link XmlaOlap4jDriver#PROXY_MAP}, the proxy can serve HTTP; see
+ * {@link #startHttpEndpoint(int)} and {@link #main(String[])}.
+ *
+ * @author jhyde
+ */
+public class XmlaReplayProxy implements XmlaOlap4jProxy {
+    private final Map<String, byte[]> responses =
+        new ConcurrentHashMap<String, byte[]>();
+    private final Map<String, String> memberRows =
+        new ConcurrentHashMap<String, String>();
+    private final Map<String, String[]> memberTemplates =
+        new ConcurrentHashMap<String, String[]>();
+    private final List<String> statements = new ArrayList<String>();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong bytesServed = new AtomicLong();
+    private final Random random = new Random();
+
+    private volatile long latencyMillis;
+    private volatile long jitterMillis;
+    private volatile long bytesPerSecond;
+
+    private static final String INSERT_PREFIX =
+        "INSERT INTO \"cache\" VALUES('";
+
+    /**
+     * Creates an empty XmlaReplayProxy. Use {@link #load(InputStream)} or
+     * {@link #record(String, String)} to populate it.
+     */
+    public XmlaReplayProxy() {
+    }
+
+    /**
+     * Creates an XmlaReplayProxy populated from a recording. The file may be
+     * an HSQLDB script or a zip archive containing one.
+     *
+     * @param file Recording
+     * @return Proxy
+     * @throws IOException on error
+     */
+    public static XmlaReplayProxy create(File file) throws IOException {
+        final XmlaReplayProxy proxy = new XmlaReplayProxy();
+        final InputStream is = new FileInputStream(file);
+        try {
+            if (file.getName().endsWith(".zip")) {
+                final ZipInputStream zis = new ZipInputStream(is);
+                ZipEntry entry;
+                while ((entry = zis.getNextEntry()) != null) {
+                    if (entry.getName().endsWith(".script")) {
+                        proxy.load(zis);
+                    }
+                }
+            } else {
+                proxy.load(is);
+            }
+        } finally {
+            is.close();
+        }
+        return proxy;
+    }
+
+    /**
+     * Reads the request/response pairs from an HSQLDB script.
+     *
+     * @param is Input stream; not closed by this method
+     * @throws IOException on error
+     */
+    public void load(InputStream is) throws IOException {
+        final BufferedReader reader =
+            new BufferedReader(new InputStreamReader(is, "ISO-8859-1"));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!line.startsWith(INSERT_PREFIX)) {
+                continue;
+            }
+            final StringBuilder buf = new StringBuilder();
+            int i = unquote(line, INSERT_PREFIX.length(), buf);
+            final String request = buf.toString();
+            if (!line.startsWith(",'", i)) {
+                throw new IOException("Malformed recording: " + line);
+            }
+            buf.setLength(0);
+            unquote(line, i + 2, buf);
+            record(request, buf.toString());
+        }
+    }
+
+    /**
+     * Decodes a string literal in an HSQLDB script, starting after its
+     * opening quote. Doubled quotes stand for a quote, and other characters
+     * outside the printable ASCII range are escaped as <code>\\uXXXX</code>.
+     *
+     * @param line Line of script
+     * @param start Offset of the first character of the literal
+     * @param buf Buffer to receive the decoded string
+     * @return Offset just after the closing quote
+     */
+    private static int unquote(String line, int start, StringBuilder buf) {
+        final int n = line.length();
+        for (int i = start; i < n; i++) {
+            final char c = line.charAt(i);
+            if (c == '\'') {
+                if (i + 1 < n && line.charAt(i + 1) == '\'') {
+                    buf.append('\'');
+                    ++i;
+                } else {
+                    return i + 1;
+                }
+            } else if (c == '\\'
+                && i + 5 < n
+                && line.charAt(i + 1) == 'u')
+            {
+                buf.append(
+                    (char) Integer.parseInt(line.substring(i + 2, i + 6), 16));
+                i += 5;
+            } else {
+                buf.append(c);
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Adds a recorded response.
+     *
+     * @param request SOAP request
+     * @param response SOAP response
+     */
+    public void record(String request, String response) {
+        try {
+            responses.put(
+                key(request), response.getBytes(declaredEncoding(response)));
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+        indexMembers(request, response);
+        if (request.contains("<Execute")) {
+            final String statement = extract(request, "Statement");
+            if (statement != null) {
+                synchronized (statements) {
+                    statements.add(statement);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the MDX statements of all recorded Execute requests, in the
+     * order they were recorded. This is a convenient, realistic query mix for
+     * load testing.
+     *
+     * @return List of MDX statements
+     */
+    public List<String> getRecordedStatements() {
+        synchronized (statements) {
+            return new ArrayList<String>(statements);
+        }
+    }
+
+    /**
+     * Returns the number of distinct recorded requests.
+     *
+     * @return Number of recorded requests
+     */
+    public int size() {
+        return responses.size();
+    }
+
+    /**
+     * Sets the fixed delay before each response.
+     *
+     * @param latencyMillis Latency in milliseconds
+     */
+    public void setLatency(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * Sets the maximum random deviation from the latency, in either direction.
+     *
+     * @param jitterMillis Jitter in milliseconds
+     */
+    public void setJitter(long jitterMillis) {
+        this.jitterMillis = jitterMillis;
+    }
+
+    /**
+     * Sets the simulated bandwidth of the link to the server.
+     *
+     * @param bytesPerSecond Bandwidth in bytes per second, or 0 for unlimited
+     */
+    public void setBandwidth(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getBytesServed() {
+        return bytesServed.get();
+    }
+
+    // implement XmlaOlap4jProxy
+
+    public byte[] get(
+        XmlaOlap4jServerInfos serverInfos,
+        String request)
+        throws XmlaOlap4jProxyException
+    {
+        final byte[] response = lookup(request);
+        if (response == null) {
+            missCount.incrementAndGet();
+            throw new XmlaOlap4jProxyException(
+                "No recorded response for request:\n" + request, null);
+        }
+        hitCount.incrementAndGet();
+        try {
+            simulateNetwork(response.length);
+        } catch (InterruptedException e) {
+            throw new XmlaOlap4jProxyException("Interrupted", e);
+        }
+        bytesServed.addAndGet(response.length);
+        return response;
+    }
+
+    public Future<byte[]> submit(
+        XmlaOlap4jServerInfos serverInfos,
+        String request)
+    {
+        return XmlaOlap4jDriver.getFuture(this, serverInfos, request);
+    }
+
+    public String getEncodingCharsetName() {
+        return "UTF-8";
+    }
+
+    /**
+     * Sleeps for as long as it would take a server with the configured
+     * latency, jitter and bandwidth to deliver a response.
+     *
+     * @param length Length of response in bytes
+     * @throws InterruptedException if interrupted
+     */
+    private void simulateNetwork(int length) throws InterruptedException {
+        long millis = latencyMillis;
+        final long jitter = jitterMillis;
+        if (jitter > 0) {
+            millis += (long) ((random.nextDouble() * 2d - 1d) * jitter);
+        }
+        final long bandwidth = bytesPerSecond;
+        if (bandwidth > 0) {
+            millis += length * 1000L / bandwidth;
+        }
+        if (millis > 0) {
+            Thread.sleep(millis);
+        }
+    }
+
+    /**
+     * Computes the key by which a request is matched to its recording.
+     *
+     * @param request SOAP request
+     * @return Key
+     */
+    static String key(String request) {
+        final StringBuilder buf = new StringBuilder();
+        if (request.contains("<Execute")) {
+            buf.append("Execute|");
+            normalize(extract(request, "Statement"), buf);
+            buf.append('|');
+            normalize(extract(request, "Catalog"), buf);
+            return buf.toString();
+        } else {
+            return discoverKey(
+                extract(request, "RequestType"),
+                extract(request, "RestrictionList"),
+                extract(request, "Catalog"));
+        }
+    }
+
+    private static String discoverKey(
+        String requestType,
+        String restrictionList,
+        String catalog)
+    {
+        final StringBuilder buf = new StringBuilder("Discover|");
+        normalize(requestType, buf);
+        buf.append('|');
+        normalize(restrictionList, buf);
+        buf.append('|');
+        normalize(catalog, buf);
+        return buf.toString();
+    }
+
+    /**
+     * Returns the recorded response to a request, or null.
+     *
+     * <p>If there is no recording of the request itself but it is an
+     * MDSCHEMA_MEMBERS request for members by unique name, builds a response
+     * from rows recorded for each member in other responses. (The driver
+     * batches member lookups, and the order of members in a batch varies
+     * between JDKs.)
+     *
+     * @param request SOAP request
+     * @return Response, or null
+     */
+    private byte[] lookup(String request) {
+        final byte[] response = responses.get(key(request));
+        if (response != null) {
+            return response;
+        }
+        final List<String> names = new ArrayList<String>();
+        final String prefix = memberLookupPrefix(request, names);
+        if (prefix == null) {
+            return null;
+        }
+        final String[] template = memberTemplates.get(prefix);
+        if (template == null) {
+            return null;
+        }
+        final StringBuilder buf = new StringBuilder(template[0]);
+        for (String name : new LinkedHashSet<String>(names)) {
+            final String row = memberRows.get(prefix + name);
+            if (row == null) {
+                return null;
+            }
+            buf.append(row);
+        }
+        buf.append(template[1]);
+        try {
+            return buf.toString().getBytes(template[2]);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Indexes the rows of a response to an MDSCHEMA_MEMBERS request by member
+     * unique name, so that {@link #lookup(String)} can combine them.
+     *
+     * @param request SOAP request
+     * @param response SOAP response
+     */
+    private void indexMembers(String request, String response) {
+        final String prefix =
+            memberLookupPrefix(request, new ArrayList<String>());
+        if (prefix == null) {
+            return;
+        }
+        int rowStart = response.indexOf("<row>");
+        if (rowStart < 0) {
+            return;
+        }
+        final int rowsEnd =
+            response.lastIndexOf("</row>") + "</row>".length();
+        if (!memberTemplates.containsKey(prefix)) {
+            memberTemplates.put(
+                prefix,
+                new String[] {
+                    response.substring(0, rowStart),
+                    response.substring(rowsEnd),
+                    declaredEncoding(response)
+                });
+        }
+        while (rowStart >= 0 && rowStart < rowsEnd) {
+            final int rowEnd =
+                response.indexOf("</row>", rowStart) + "</row>".length();
+            final String row = response.substring(rowStart, rowEnd);
+            final String name = extract(row, "MEMBER_UNIQUE_NAME");
+            if (name != null) {
+                memberRows.put(prefix + name, row);
+            }
+            rowStart = response.indexOf("<row>", rowEnd);
+        }
+    }
+
+    /**
+     * If a request is an MDSCHEMA_MEMBERS request for members by unique name,
+     * returns a key describing the catalog and cube, and adds the names to a
+     * list; otherwise returns null.
+     */
+    private static String memberLookupPrefix(
+        String request,
+        List<String> names)
+    {
+        if (!"MDSCHEMA_MEMBERS".equals(extract(request, "RequestType"))) {
+            return null;
+        }
+        final String restrictionList = extract(request, "RestrictionList");
+        if (restrictionList == null) {
+            return null;
+        }
+        final String treeOp = extract(restrictionList, "TREE_OP");
+        if (treeOp != null && !treeOp.equals("8")) {
+            return null;
+        }
+        final String startTag = "<MEMBER_UNIQUE_NAME>";
+        final String endTag = "</MEMBER_UNIQUE_NAME>";
+        int i = restrictionList.indexOf(startTag);
+        while (i >= 0) {
+            final int end = restrictionList.indexOf(endTag, i);
+            names.add(restrictionList.substring(i + startTag.length(), end));
+            i = restrictionList.indexOf(startTag, end);
+        }
+        if (names.isEmpty()) {
+            return null;
+        }
+        return extract(request, "Catalog")
+            + "|" + extract(restrictionList, "CUBE_NAME") + "|";
+    }
+
+    /**
+     * Returns the content of the first element with a given tag, stripped of
+     * any CDATA markers, or null if there is no such element.
+     */
+    private static String extract(String request, String tag) {
+        final int start = request.indexOf("<" + tag + ">");
+        if (start < 0) {
+            return null;
+        }
+        final int end = request.indexOf("</" + tag + ">", start);
+        if (end < 0) {
+            return null;
+        }
+        String s = request.substring(start + tag.length() + 2, end).trim();
+        if (s.startsWith("<![CDATA[") && s.endsWith("]]>")) {
+            s = s.substring("<![CDATA[".length(), s.length() - "]]>".length());
+        }
+        return s;
+    }
+
+    /**
+     * Appends a string to a buffer, removing whitespace between tags and
+     * collapsing all other runs of whitespace to a single space.
+     */
+    private static void normalize(String s, StringBuilder buf) {
+        if (s == null) {
+            return;
+        }
+        final int n = s.length();
+        boolean pendingSpace = false;
+        char prev = '>';
+        for (int i = 0; i < n; i++) {
+            final char c = s.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = true;
+                continue;
+            }
+            if (pendingSpace && prev != '>' && c != '<') {
+                buf.append(' ');
+            }
+            pendingSpace = false;
+            buf.append(c);
+            prev = c;
+        }
+    }
+
+    /**
+     * Returns the encoding declared in the prolog of an XML document, default
+     * UTF-8.
+     */
+    private static String declaredEncoding(String xml) {
+        if (xml.startsWith("<?xml")) {
+            final int end = xml.indexOf("?>");
+            final int start = xml.indexOf("encoding=\"");
+            if (start > 0 && start < end) {
+                final int valueStart = start + "encoding=\"".length();
+                return xml.substring(valueStart, xml.indexOf('"', valueStart));
+            }
+        }
+        return "UTF-8";
+    }
+
+    /**
+     * Starts serving the recorded responses over HTTP. Any path is accepted;
+     * point the driver at <code>Server=http://localhost:<i>port</i>/</code>.
+     *
+     * @param port Port to listen on, or 0 to choose a free port
+     * @return Endpoint, which must be closed when no longer needed
+     * @throws IOException on error
+     */
+    public Endpoint startHttpEndpoint(int port) throws IOException {
+        return new Endpoint(port);
+    }
+
+    /**
+     * Runs the proxy as a standalone HTTP server.
+     *
+     * <p>Usage: <code>XmlaReplayProxy <i>recording</i> <i>port</i>
+     * [<i>latencyMillis</i> [<i>jitterMillis</i>
+     * [<i>bytesPerSecond</i>]]]</code>
+     *
+     * @param args Command-line arguments
+     * @throws IOException on error
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println(
+                "Usage: XmlaReplayProxy recording port "
+                + "[latencyMillis [jitterMillis [bytesPerSecond]]]");
+            System.exit(1);
+        }
+        final XmlaReplayProxy proxy = create(new File(args[0]));
+        if (args.length > 2) {
+            proxy.setLatency(Long.parseLong(args[2]));
+        }
+        if (args.length > 3) {
+            proxy.setJitter(Long.parseLong(args[3]));
+        }
+        if (args.length > 4) {
+            proxy.setBandwidth(Long.parseLong(args[4]));
+        }
+        final Endpoint endpoint =
+            proxy.startHttpEndpoint(Integer.parseInt(args[1]));
+        System.out.println(
+            "Serving " + proxy.size() + " recorded responses at "
+            + endpoint.getUrl());
+    }
+
+    /**
+     * HTTP endpoint that serves the responses of an
+     * {@link XmlaReplayProxy}.
+     *
+     * <p>The endpoint understands just enough HTTP for the olap4j driver: it
+     * reads one POST per connection, and closes the connection after
+     * responding. A request with no recording gets a SOAP fault.
+     */
+    public class Endpoint {
+        private final ServerSocket serverSocket;
+        private final ExecutorService executor =
+            Executors.newCachedThreadPool(
+                new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        final Thread thread = new Thread(r, "XmlaReplay");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+
+        Endpoint(int port) throws IOException {
+            serverSocket = new ServerSocket(port);
+            executor.submit(
+                new Runnable() {
+                    public void run() {
+                        accept();
+                    }
+                });
+        }
+
+        /**
+         * Returns the port that the endpoint is listening on.
+         *
+         * @return Port
+         */
+        public int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        /**
+         * Returns the URL of the endpoint, suitable for the driver's
+         * <code>Server</code> property.
+         *
+         * @return URL
+         */
+        public String getUrl() {
+            return "http://localhost:" + getPort() + "/xmla";
+        }
+
+        /**
+         * Stops listening and releases the endpoint's threads.
+         *
+         * @throws IOException on error
+         */
+        public void close() throws IOException {
+            serverSocket.close();
+            executor.shutdownNow();
+        }
+
+        private void accept() {
+            while (!serverSocket.isClosed()) {
+                final Socket socket;
+                try {
+                    socket = serverSocket.accept();
+                } catch (IOException e) {
+                    // Socket was closed.
+                    return;
+                }
+                executor.submit(
+                    new Runnable() {
+                        public void run() {
+                            try {
+                                serve(socket);
+                            } catch (IOException e) {
+                                // Client went away; nothing to do.
+                            } finally {
+                                try {
+                                    socket.close();
+                                } catch (IOException e) {
+                                    // ignore
+                                }
+                            }
+                        }
+                    });
+            }
+        }
+
+        private void serve(Socket socket) throws IOException {
+            final InputStream in =
+                new BufferedInputStream(socket.getInputStream());
+            int contentLength = 0;
+            String line;
+            while ((line = readLine(in)) != null && line.length() > 0) {
+                final int colon = line.indexOf(':');
+                if (colon > 0
+                    && line.substring(0, colon).trim()
+                        .equalsIgnoreCase("Content-Length"))
+                {
+                    contentLength =
+                        Integer.parseInt(line.substring(colon + 1).trim());
+                }
+            }
+            final byte[] body = new byte[contentLength];
+            int offset = 0;
+            while (offset < contentLength) {
+                final int count = in.read(body, offset, contentLength - offset);
+                if (count < 0) {
+                    throw new EOFException();
+                }
+                offset += count;
+            }
+            final String request = new String(body, getEncodingCharsetName());
+            String status = "200 OK";
+            byte[] response;
+            try {
+                response = get(null, request);
+            } catch (XmlaOlap4jProxyException e) {
+                status = "500 Internal Server Error";
+                response = fault(e.getMessage()).getBytes("UTF-8");
+            }
+            final OutputStream out =
+                new BufferedOutputStream(socket.getOutputStream());
+            out.write(
+                ("HTTP/1.1 " + status + "\r\n"
+                 + "Content-Type: text/xml\r\n"
+                 + "Content-Length: " + response.length + "\r\n"
+                 + "Connection: close\r\n"
+                 + "\r\n").getBytes("ISO-8859-1"));
+            out.write(response);
+            out.flush();
+        }
+
+        private String readLine(InputStream in) throws IOException {
+            final StringBuilder buf = new StringBuilder();
+            int c;
+            while ((c = in.read()) >= 0) {
+                if (c == '\n') {
+                    break;
+                }
+                if (c != '\r') {
+                    buf.append((char) c);
+                }
+            }
+            return c < 0 && buf.length() == 0 ? null : buf.toString();
+        }
+
+        private String fault(String message) {
+            final StringBuilder buf = new StringBuilder();
+            for (char c : message.toCharArray()) {
+                switch (c) {
+                case '<':
+                    buf.append("&lt;");
+                    break;
+                case '>':
+                    buf.append("&gt;");
+                    break;
+                case '&':
+                    buf.append("&amp;");
+                    break;
+                default:
+                    buf.append(c);
+                }
+            }
+            return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<SOAP-ENV:Envelope"
+                + " xmlns:SOAP-ENV="
+                + "\"http://schemas.xmlsoap.org/soap/envelope/\">\n"
+                + "<SOAP-ENV:Body>\n"
+                + "<SOAP-ENV:Fault>\n"
+                + "<faultcode>SOAP-ENV:Server</faultcode>\n"
+                + "<faultstring>" + buf + "</faultstring>\n"
+                + "</SOAP-ENV:Fault>\n"
+                + "</SOAP-ENV:Body>\n"
+                + "</SOAP-ENV:Envelope>";
+        }
+    }
+}
+
+// End XmlaReplayProxy.java
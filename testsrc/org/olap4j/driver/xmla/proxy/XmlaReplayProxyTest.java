@@ -0,0 +1,170 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.driver.xmla.proxy;
+
+import junit.framework.TestCase;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Unit test for {@link XmlaReplayProxy}.
+ *
+ * @author jhyde
+ */
+public class XmlaReplayProxyTest extends TestCase {
+    private static final String DISCOVER =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+        + "<SOAP-ENV:Envelope>\n"
+        + "  <SOAP-ENV:Body>\n"
+        + "    <Discover xmlns=\"urn:schemas-microsoft-com:xml-analysis\">\n"
+        + "    <RequestType>MDSCHEMA_CUBES</RequestType>\n"
+        + "    <Restrictions>\n"
+        + "      <RestrictionList>\n"
+        + "        <CATALOG_NAME>FoodMart</CATALOG_NAME>\n"
+        + "      </RestrictionList>\n"
+        + "    </Restrictions>\n"
+        + "    <Properties>\n"
+        + "      <PropertyList>\n"
+        + "        <Catalog>FoodMart</Catalog>\n"
+        + "      </PropertyList>\n"
+        + "    </Properties>\n"
+        + "  </Discover>\n"
+        + "</SOAP-ENV:Body>\n"
+        + "</SOAP-ENV:Envelope>";
+
+    private static final String EXECUTE =
+        "<soapenv:Envelope><soapenv:Body>"
+        + "<Execute xmlns=\"urn:schemas-microsoft-com:xml-analysis\">"
+        + "<Command><Statement><![CDATA[select {[Measures].[Unit Sales]}\n"
+        + "  on 0 from [Sales]]]></Statement></Command>"
+        + "<Properties><PropertyList><Catalog>FoodMart</Catalog>"
+        + "</PropertyList></Properties>"
+        + "</Execute></soapenv:Body></soapenv:Envelope>";
+
+    private static final String RESPONSE =
+        "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\n<x>caf\u00e9</x>";
+
+    /**
+     * Tests that requests match recordings regardless of layout and of
+     * properties that do not affect the response.
+     */
+    public void testMatching() throws Exception {
+        final XmlaReplayProxy proxy = new XmlaReplayProxy();
+        proxy.record(DISCOVER, RESPONSE);
+        proxy.record(EXECUTE, RESPONSE);
+        assertEquals(2, proxy.size());
+        assertEquals(1, proxy.getRecordedStatements().size());
+
+        final String discover =
+            DISCOVER.replaceAll("\n *", "")
+                .replace(
+                    "</PropertyList>",
+                    "<LocaleIdentifier>1033</LocaleIdentifier></PropertyList>");
+        assertEquals(
+            RESPONSE,
+            new String(proxy.get(null, discover), "ISO-8859-1"));
+
+        final String execute =
+            EXECUTE.replace("\n  on 0", " on 0   ")
+                .replace("<![CDATA[", "<![CDATA[\n");
+        assertEquals(
+            RESPONSE,
+            new String(proxy.get(null, execute), "ISO-8859-1"));
+
+        try {
+            proxy.get(null, DISCOVER.replace("FoodMart", "Sampledata"));
+            fail("expected error");
+        } catch (XmlaOlap4jProxyException e) {
+            assertTrue(e.getMessage().startsWith("No recorded response"));
+        }
+        assertEquals(2, proxy.getHitCount());
+        assertEquals(1, proxy.getMissCount());
+    }
+
+    /**
+     * Tests that the proxy reads the HSQLDB script format.
+     */
+    public void testLoad() throws Exception {
+        final String script =
+            "CREATE MEMORY TABLE \"cache\"(\"request\" VARCHAR,"
+            + "\"response\" VARCHAR)\n"
+            + "INSERT INTO \"cache\" VALUES('"
+            + DISCOVER.replace("\n", "\\u000a")
+            + "','<?xml version=\"1.0\"?>\\u000a<x a=''b''>\\u00e9</x>')\n";
+        final XmlaReplayProxy proxy = new XmlaReplayProxy();
+        proxy.load(new ByteArrayInputStream(script.getBytes("ISO-8859-1")));
+        assertEquals(1, proxy.size());
+        assertEquals(
+            "<?xml version=\"1.0\"?>\n<x a='b'>\u00e9</x>",
+            new String(proxy.get(null, DISCOVER), "UTF-8"));
+    }
+
+    /**
+     * Tests the HTTP endpoint, including a request that has no recording.
+     */
+    public void testHttpEndpoint() throws Exception {
+        final XmlaReplayProxy proxy = new XmlaReplayProxy();
+        proxy.record(DISCOVER, RESPONSE);
+        final XmlaReplayProxy.Endpoint endpoint = proxy.startHttpEndpoint(0);
+        try {
+            HttpURLConnection connection = post(endpoint, DISCOVER);
+            assertEquals(200, connection.getResponseCode());
+            assertEquals(
+                RESPONSE,
+                new String(read(connection.getInputStream()), "ISO-8859-1"));
+
+            connection = post(endpoint, EXECUTE);
+            assertEquals(500, connection.getResponseCode());
+            final String fault =
+                new String(read(connection.getErrorStream()), "UTF-8");
+            assertTrue(fault, fault.contains("<SOAP-ENV:Fault>"));
+        } finally {
+            endpoint.close();
+        }
+    }
+
+    private HttpURLConnection post(
+        XmlaReplayProxy.Endpoint endpoint,
+        String request)
+        throws IOException
+    {
+        final HttpURLConnection connection =
+            (HttpURLConnection) new URL(endpoint.getUrl()).openConnection();
+        connection.setDoOutput(true);
+        connection.setRequestMethod("POST");
+        final OutputStream out = connection.getOutputStream();
+        out.write(request.getBytes("UTF-8"));
+        out.close();
+        return connection;
+    }
+
+    private byte[] read(InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buf = new byte[1024];
+        int count;
+        while ((count = in.read(buf)) > 0) {
+            out.write(buf, 0, count);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+}
+
+// End XmlaReplayProxyTest.java
@@ -0,0 +1,146 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.impl;
+
+import junit.framework.TestCase;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * Unit test for {@link FormatString}.
+ *
+ * @author jhyde
+ */
+public class FormatStringTest extends TestCase {
+    private void check(String formatString, Object value, String expected) {
+        check(formatString, Locale.US, value, expected);
+    }
+
+    private void check(
+        String formatString,
+        Locale locale,
+        Object value,
+        String expected)
+    {
+        assertEquals(
+            expected,
+            FormatString.compile(formatString, locale).format(value));
+    }
+
+    /**
+     * Tests the format strings, and values, that Mondrian's FoodMart
+     * schema uses.
+     */
+    public void testFoodMart() {
+        check("Standard", 266773d, "266,773");
+        check("Standard", 139d, "139");
+        check("#,###.00", 4291.2151d, "4,291.22");
+        check("#,###.00", 280226.21d, "280,226.21");
+        check("#,###", 10537, "10,537");
+        check("Currency", 4072.6925d, "$4,072.69");
+        check("Currency", 196.5396d, "$196.54");
+        check("$#,##0.00", 3.6799919027325143d, "$3.68");
+        check("Standard", "#ERR: oops", "#ERR: oops");
+    }
+
+    public void testNumeric() {
+        check("0.00", 1.005d, "1.01");
+        check("0.00", -2.5d, "-2.50");
+        check("0.00", -0.001d, "0.00");
+        check("#.##", 0.5d, ".5");
+        check("#,##0.0#", 1234567.891d, "1,234,567.89");
+        check("00000", 42, "00042");
+        check("#,##0,", 1234567, "1,235");
+        check("0.0,,", 1234567, "1.2");
+        check("0%", 0.256d, "26%");
+        check("Percent", 0.256d, "25.60%");
+        check("Fixed", 3, "3.00");
+        check("0.00E+00", 12345, "1.23E+04");
+        check("0.00E-00", 0.000123d, "1.23E-04");
+        check("Scientific", 9.999d, "1.00E+01");
+        check("\"Total: \"#,##0", 1000, "Total: 1,000");
+        check("\\$0.00", 5, "$5.00");
+        check("#,##0.00", new BigDecimal("12345678901234567890.125"),
+            "12,345,678,901,234,567,890.13");
+        check("General Number", 1234.5d, "1234.5");
+        check(null, 0.1d + 0.2d, "0.3");
+        check("", 7, "7");
+        check("#", Double.NaN, "NaN");
+    }
+
+    public void testSections() {
+        final String format = "#,##0;(#,##0);\"Zero\";\"n.a.\"";
+        check(format, 1234, "1,234");
+        check(format, -1234, "(1,234)");
+        check(format, 0, "Zero");
+        check(format, null, "n.a.");
+        check("#,##0;;\"-\"", -5, "-5");
+        check("#,##0;;\"-\"", 0, "-");
+        check("0.00", null, "");
+    }
+
+    public void testBoolean() {
+        check("Yes/No", 1, "Yes");
+        check("Yes/No", 0, "No");
+        check("True/False", true, "True");
+        check("On/Off", false, "Off");
+        check("0", true, "-1");
+    }
+
+    public void testLocale() {
+        check("#,##0.00", Locale.GERMANY, 1234.5d, "1.234,50");
+        check("Currency", Locale.UK, 3.5d, "\u00a33.50");
+        // Yen have no decimal places
+        assertTrue(
+            FormatString.compile("Currency", Locale.JAPAN).format(1234d)
+                .endsWith("1,234"));
+        assertEquals(
+            "1.234,50",
+            FormatString.compile("#,##0.00", (short) 0x0407).format(1234.5d));
+    }
+
+    public void testDate() {
+        final Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(2011, Calendar.MARCH, 7, 14, 5, 9);
+        final Date date = calendar.getTime();
+        check("yyyy-mm-dd", date, "2011-03-07");
+        check("dd/mm/yy hh:nn:ss", date, "07/03/11 14:05:09");
+        check("h:mm AM/PM", date, "2:05 PM");
+        check("dddd, mmmm d", date, "Monday, March 7");
+        check("mmm yyyy", Locale.FRANCE, calendar, "mars 2011");
+        check("Medium Date", date, "07-Mar-11");
+        check("Short Time", date, "14:05");
+
+        // OLE Automation date: 2011-03-07 is 40609 days after 1899-12-30.
+        check("yyyy-mm-dd hh:nn", 40609.75d, "2011-03-07 18:00");
+    }
+
+    /**
+     * Tests that compiled formats are cached.
+     */
+    public void testCache() {
+        final FormatString format = FormatString.compile("#,##0", Locale.US);
+        assertSame(format, FormatString.compile("#,##0", Locale.US));
+        assertNotSame(format, FormatString.compile("#,##0", Locale.UK));
+        assertEquals("#,##0", format.getFormatString());
+    }
+}
+
+// End FormatStringTest.java
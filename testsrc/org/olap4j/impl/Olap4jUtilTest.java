@@ -247,6 +247,54 @@ public class Olap4jUtilTest extends TestCase {
         assertEquals(arrayList.hashCode(), list3.hashCode());
     }
 
+    /**
+     * Tests that {@link ArrayNamedListImpl} finds elements by name, before
+     * and after it builds its index, and after it is modified.
+     */
+    public void testArrayNamedListIndex() {
+        final ArrayNamedListImpl<String> list =
+            new ArrayNamedListImpl<String>() {
+                public String getName(Object element) {
+                    return ((String) element).toLowerCase();
+                }
+            };
+        for (int i = 0; i < 10; i++) {
+            list.add("A" + i);
+        }
+        assertEquals(3, list.indexOfName("a3"));
+        assertEquals(-1, list.indexOfName("A3"));
+        assertEquals(-1, list.indexOfName(null));
+
+        // large enough to use the index
+        for (int i = 10; i < 1000; i++) {
+            list.add("A" + i);
+        }
+        assertEquals(3, list.indexOfName("a3"));
+        assertEquals("A999", list.get("a999"));
+        assertNull(list.get("a1000"));
+        assertNull(list.get(null));
+
+        // appending updates the index; duplicates resolve to the first
+        list.add("A1000");
+        list.add("a5");
+        assertEquals(1000, list.indexOfName("a1000"));
+        assertEquals(5, list.indexOfName("a5"));
+
+        // other modifications invalidate it
+        list.remove(0);
+        assertEquals(-1, list.indexOfName("a0"));
+        assertEquals(4, list.indexOfName("a5"));
+        list.set(4, "B");
+        assertEquals(1000, list.indexOfName("a5"));
+        assertEquals(4, list.indexOfName("b"));
+        Collections.reverse(list);
+        assertEquals(0, list.indexOfName("a5"));
+        assertEquals(1, list.indexOfName("a1000"));
+        list.clear();
+        assertEquals(-1, list.indexOfName("a5"));
+        assertTrue(list.asMap().isEmpty());
+    }
+
     /**
      * Unit test for {@link Olap4jUtil#parseUniqueName(String)}.
      */
@@ -610,6 +658,52 @@ public class Olap4jUtilTest extends TestCase {
         assertEquals(0, list.size());
     }
 
+    /**
+     * Tests the {@link IdentifierParser#parentOf(String)} method, and that
+     * parsing re-uses segments.
+     */
+    public void testParentOf() {
+        assertEquals(
+            "[Time].[1997]", IdentifierParser.parentOf("[Time].[1997].[Q1]"));
+        assertEquals("[Time]", IdentifierParser.parentOf("[Time].[1997]"));
+        assertNull(IdentifierParser.parentOf("[Time]"));
+        assertEquals(
+            "[Time]", IdentifierParser.parentOf("[Time].&[1997]&[1]"));
+        assertEquals(
+            "[Time].&[1997]",
+            IdentifierParser.parentOf("[Time].&[1997].&[1]"));
+        assertEquals(
+            "[Foo.]]Bar]", IdentifierParser.parentOf("[Foo.]]Bar].[Baz]"));
+
+        // Names that are not fully quoted are parsed, then unparsed.
+        assertEquals("Time.1997", IdentifierParser.parentOf("Time.1997.Q1"));
+        assertEquals(
+            "[Time].[1997]", IdentifierParser.parentOf("[Time] . [1997].Q1"));
+        assertEquals("[Time]", IdentifierParser.parentOf("[Time].&1997"));
+        try {
+            final String s = IdentifierParser.parentOf("[Time].[1997].");
+            fail("expected error, got " + s);
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().startsWith("Expected identifier"));
+        }
+
+        // Segments are shared between names, and are equal to segments
+        // created from strings.
+        final List<IdentifierSegment> segments1 =
+            IdentifierParser.parseIdentifier("[Store].[USA].[CA]");
+        final List<IdentifierSegment> segments2 =
+            IdentifierParser.parseIdentifier(
+                new StringBuilder("[Store].[USA].[OR]"));
+        assertSame(segments1.get(0), segments2.get(0));
+        assertEquals(new NameSegment("OR"), segments2.get(2));
+        assertEquals(
+            new NameSegment("a]b"),
+            IdentifierParser.parseIdentifier("[a]]b]").get(0));
+        assertEquals(
+            new NameSegment(null, "ab", Quoting.UNQUOTED),
+            IdentifierParser.parseIdentifier("[x]. ab ").get(1));
+    }
+
     public void testParseTupleList() {
         final StringBuilder buf = new StringBuilder();
         final IdentifierParser.Builder builder =
@@ -17,6 +17,7 @@
 */
 package org.olap4j.mdx;
 
+import org.olap4j.Axis;
 import org.olap4j.mdx.parser.MdxParser;
 import org.olap4j.mdx.parser.impl.DefaultMdxParserImpl;
 import org.olap4j.test.TestContext;
@@ -203,6 +204,76 @@ public class MdxTest extends TestCase {
             + "FROM [Cube]",
             rootNode.toString());
     }
+
+    /**
+     * Tests that a frozen parse tree cannot be modified, that structurally
+     * equal trees are equal and have equal hash codes, and that freezing a
+     * tree that contains a frozen sub-tree re-uses the sub-tree.
+     */
+    public void testFreeze() {
+        final CallNode set =
+            new CallNode(
+                null, "{}", Syntax.Braces,
+                IdentifierNode.ofNames("Measures", "Unit Sales"),
+                IdentifierNode.ofNames("Measures", "Store Sales"));
+        final SelectNode select = new SelectNode();
+        select.setFrom(IdentifierNode.ofNames("Sales"));
+        select.getAxisList().add(
+            new AxisNode(null, false, Axis.COLUMNS, null, set));
+        assertFalse(select.isFrozen());
+
+        final SelectNode copy = select.deepCopy();
+        assertNotSame(select, copy);
+        assertEquals(select, copy);
+        assertEquals(select.hashCode(), copy.hashCode());
+
+        assertSame(select, select.freeze());
+        assertTrue(select.isFrozen());
+        assertTrue(select.getAxisList().get(0).isFrozen());
+        assertTrue(set.isFrozen());
+        assertFalse(copy.isFrozen());
+        assertEquals(select, copy);
+        assertEquals(copy, select);
+        assertEquals(select.hashCode(), copy.hashCode());
+        assertEquals(select.toString(), copy.toString());
+
+        try {
+            select.setFrom(IdentifierNode.ofNames("Warehouse"));
+            fail("expected error");
+        } catch (IllegalStateException e) {
+            // ok
+        }
+        try {
+            select.getAxisList().get(0).setNonEmpty(true);
+            fail("expected error");
+        } catch (IllegalStateException e) {
+            // ok
+        }
+        try {
+            set.getArgList().add(IdentifierNode.ofNames("Measures"));
+            fail("expected error");
+        } catch (UnsupportedOperationException e) {
+            // ok
+        }
+
+        // A copy of a frozen tree is mutable.
+        copy.getAxisList().get(0).setNonEmpty(true);
+        assertFalse(select.equals(copy));
+
+        // A new tree may share a frozen sub-tree.
+        final SelectNode select2 =
+            new SelectNode(
+                null,
+                select.getWithList(),
+                Collections.singletonList(
+                    new AxisNode(null, true, Axis.COLUMNS, null, set)),
+                select.getFrom(),
+                select.getFilterAxis(),
+                select.getCellPropertyList()).freeze();
+        assertSame(set, select2.getAxisList().get(0).getExpression());
+        assertEquals(copy, select2);
+        assertEquals(copy.hashCode(), select2.hashCode());
+    }
 }
 
 // End MdxTest.java
@@ -0,0 +1,183 @@
+/*
+// Licensed to Julian Hyde under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Julian Hyde licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+*/
+package org.olap4j.mdx.parser.impl;
+
+import org.olap4j.driver.xmla.proxy.XmlaReplayProxy;
+import org.olap4j.mdx.SelectNode;
+import org.olap4j.mdx.parser.MdxParser;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * Measures how fast {@link DefaultMdxParserImpl} parses a workload in which
+ * the same statements occur many times, compared with creating a new
+ * generated parser for each statement, and with re-using one generated
+ * parser.
+ *
+ * <p>The workload is the MDX statements recorded in the
+ * <code>xmla-cache</code> directory, parsed in random order.
+ *
+ * <p>Usage: <code>ParserBenchmark [-recording <i>file</i>]
+ * [-iterations <i>n</i>] [-seed <i>n</i>]</code>
+ *
+ * @author jhyde
+ */
+public class ParserBenchmark {
+    private static final String DEFAULT_RECORDING =
+        "xmla-cache/xmla-cache-hsqldb-mondrian-3.3-SNAPSHOT.zip";
+
+    private static final DefaultMdxParserImpl.FunTable FUN_TABLE =
+        new DefaultMdxParserImpl.FunTable() {
+            public boolean isProperty(String s) {
+                return s.equalsIgnoreCase("CHILDREN");
+            }
+        };
+
+    private final List<String> statements;
+    private final int iterationCount;
+
+    /**
+     * Creates a ParserBenchmark.
+     *
+     * @param statements Statements to parse, in order
+     * @param iterationCount Number of times to parse the list of statements
+     */
+    public ParserBenchmark(List<String> statements, int iterationCount) {
+        this.statements = statements;
+        this.iterationCount = iterationCount;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String recording = DEFAULT_RECORDING;
+        int iterationCount = 200;
+        long seed = 0;
+        for (int i = 0; i < args.length; i++) {
+            final String arg = args[i];
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing value for " + arg);
+            } else if (arg.equals("-recording")) {
+                recording = args[++i];
+            } else if (arg.equals("-iterations")) {
+                iterationCount = Integer.parseInt(args[++i]);
+            } else if (arg.equals("-seed")) {
+                seed = Long.parseLong(args[++i]);
+            } else {
+                throw new IllegalArgumentException("Unknown argument " + arg);
+            }
+        }
+
+        // Keep the statements that are valid SELECT statements.
+        final List<String> statements = new ArrayList<String>();
+        final MdxParser parser = new DefaultMdxParserImpl();
+        for (String statement
+            : XmlaReplayProxy.create(new File(recording))
+                .getRecordedStatements())
+        {
+            try {
+                parser.parseSelect(statement);
+                statements.add(statement);
+            } catch (RuntimeException e) {
+                // not a SELECT statement
+            }
+        }
+        if (statements.isEmpty()) {
+            throw new IllegalArgumentException("no statements");
+        }
+        Collections.shuffle(statements, new Random(seed));
+
+        final ParserBenchmark benchmark =
+            new ParserBenchmark(statements, iterationCount);
+        System.out.println(
+            statements.size() + " statements, "
+            + new HashSet<String>(statements).size() + " distinct, "
+            + iterationCount + " iterations");
+        final long newParser = benchmark.run("new parser", new Parse() {
+            public SelectNode parse(String mdx) throws ParseException {
+                return new MdxParserImpl(mdx, false, FUN_TABLE, false)
+                    .selectStatement();
+            }
+        });
+        final MdxParserImpl reusedParser =
+            new MdxParserImpl("", false, FUN_TABLE, false);
+        final long reused = benchmark.run("re-used parser", new Parse() {
+            public SelectNode parse(String mdx) throws ParseException {
+                reusedParser.reset(mdx);
+                return reusedParser.selectStatement();
+            }
+        });
+        final long cached = benchmark.run(
+            DefaultMdxParserImpl.class.getSimpleName(),
+            new Parse() {
+                public SelectNode parse(String mdx) {
+                    return parser.parseSelect(mdx);
+                }
+            });
+        System.out.println(
+            "Speedup: re-used parser "
+            + ratio(newParser, reused) + "x, "
+            + DefaultMdxParserImpl.class.getSimpleName() + " "
+            + ratio(newParser, cached) + "x");
+    }
+
+    private static String ratio(long before, long after) {
+        return String.format("%.1f", (double) before / Math.max(after, 1));
+    }
+
+    /**
+     * Parses the workload, once to warm up then once timed, and prints the
+     * elapsed time.
+     *
+     * @param name Name of method
+     * @param parse Method to parse a statement
+     * @return Elapsed time, in nanoseconds
+     * @throws ParseException on error
+     */
+    long run(String name, Parse parse) throws ParseException {
+        parseAll(parse);
+        final long start = System.nanoTime();
+        final int count = parseAll(parse);
+        final long elapsed = System.nanoTime() - start;
+        System.out.println(
+            name + ": " + elapsed / 1000000 + " ms, "
+            + elapsed / count + " ns per statement");
+        return elapsed;
+    }
+
+    private int parseAll(Parse parse) throws ParseException {
+        int count = 0;
+        for (int i = 0; i < iterationCount; i++) {
+            for (String statement : statements) {
+                if (parse.parse(statement) == null) {
+                    throw new AssertionError("null parse tree");
+                }
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Method of parsing a statement.
+     */
+    interface Parse {
+        SelectNode parse(String mdx) throws ParseException;
+    }
+}
+
+// End ParserBenchmark.java
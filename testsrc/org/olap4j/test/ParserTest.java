@@ -271,6 +271,40 @@ public class ParserTest extends TestCase {
             + "WHERE [Marital Status].[S]");
     }
 
+    /**
+     * Tests that parsing the same statement twice returns equal parse trees
+     * that do not share nodes, so that modifying one does not affect the
+     * other, nor subsequent parses. (The parser caches parse trees.)
+     */
+    public void testParseCache() {
+        final String mdx =
+            "select {[Measures].[Unit Sales]} on columns,\n"
+            + " {[Gender].Children} on rows\n"
+            + "from [Sales]";
+        final MdxParser parser = createParser();
+        final SelectNode select1 = parser.parseSelect(mdx);
+        final String unparsed = TestContext.toString(select1);
+        final SelectNode select2 = createParser().parseSelect(mdx);
+        assertNotSame(select1, select2);
+        assertEquals(unparsed, TestContext.toString(select2));
+
+        select1.getAxisList().get(1).setExpression(
+            IdentifierNode.ofNames("Store", "USA"));
+        assertEquals(unparsed, TestContext.toString(select2));
+        assertEquals(unparsed, TestContext.toString(parser.parseSelect(mdx)));
+
+        // A statement that fails to parse leaves the parser usable.
+        try {
+            parser.parseSelect("select from");
+            fail("expected error");
+        } catch (RuntimeException e) {
+            // ok
+        }
+        assertEquals(
+            "(1 + 2)",
+            TestContext.toString(parser.parseExpression("1 + 2")));
+    }
+
     private void checkUnparse(String queryString, final String expected) {
         try {
             OlapConnection olapConnection = getOlapConnection();
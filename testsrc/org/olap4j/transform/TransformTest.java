@@ -18,14 +18,17 @@
 package org.olap4j.transform;
 
 import org.olap4j.*;
-import org.olap4j.mdx.SelectNode;
+import org.olap4j.mdx.*;
 import org.olap4j.mdx.parser.MdxParser;
+import org.olap4j.metadata.Cube;
 import org.olap4j.test.TestContext;
 
 import junit.framework.TestCase;
 
+import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.*;
 
 /**
  * Testcase for org.olap4j.transform package.
@@ -181,37 +184,233 @@ public class TransformTest extends TestCase {
      *
      * @throws java.sql.SQLException on error
      */
-    public void _testDrillDownOnPositionTransform() throws SQLException {
-        // TODO: rewrite the initial and expected MDX once this transform
-        // is written.
-        // Will fail for now.
-
+    public void testDrillDownOnPositionTransform() throws SQLException {
         final String initialMdx =
             "SELECT {[Measures].[Unit Sales], "
-            + "        [Measures].[Store Cost], "
-            + "        [Measures].[Store Sales]} ON COLUMNS, "
-            + "       {[Product].[All Products]} ON ROWS "
+            + "        [Measures].[Store Cost]} ON COLUMNS, "
+            + "       {[Product].[All Products], [Product].[Food]} ON ROWS "
             + "FROM Sales "
             + "WHERE ([Time].[1997])";
 
         final String expectedMdx =
             "SELECT {[Measures].[Unit Sales], "
-            + "        [Measures].[Store Cost], "
-            + "        [Measures].[Store Sales]} ON COLUMNS, "
-            + "       {[Product].[All Products].Children} ON ROWS "
+            + "        [Measures].[Store Cost]} ON COLUMNS, "
+            + "       {Head({[Product].[All Products], [Product].[Food]}, "
+            + "             Rank([Product].[Product].[All Products], "
+            + "                  {[Product].[All Products], "
+            + "                   [Product].[Food]})), "
+            + "        {[Product].[Product].[All Products].Children}, "
+            + "        Subset({[Product].[All Products], [Product].[Food]}, "
+            + "               Rank([Product].[Product].[All Products], "
+            + "                    {[Product].[All Products], "
+            + "                     [Product].[Food]}))} "
+            + "ON ROWS "
             + "FROM Sales "
             + "WHERE ([Time].[1997])";
 
         CellSet cellSet = getStatement().executeOlapQuery(initialMdx);
 
-        MdxQueryTransform transform =
-            StandardTransformLibrary.createDrillDownOnPositionTransform(
+        AxisTransform transform =
+            new DrillDownOnPositionTransform(
                 Axis.ROWS,
                 0, // position ordinal in axis
                 0, // member ordinal in position
                 cellSet);
 
         assertTransformTo(initialMdx, expectedMdx, transform);
+
+        // Executing the transform only computes the new positions, but gives
+        // the same result as executing the transformed query.
+        final OlapConnection olapConnection = getConnection();
+        final SelectNode before =
+            olapConnection.getParserFactory().createMdxParser(olapConnection)
+                .parseSelect(initialMdx);
+        final CellSet drilled = transform.execute(getStatement(), before);
+        assertEquals(5, drilled.getAxes().get(1).getPositionCount());
+        assertEquals(
+            TestContext.toString(
+                getStatement().executeOlapQuery(transform.apply(before))),
+            TestContext.toString(drilled));
+    }
+
+    /**
+     * Unit test for {@link QueryOptimizer}.
+     *
+     * @throws java.sql.SQLException on error
+     */
+    public void testQueryOptimizer() throws SQLException {
+        // WITH MEMBER [Measures].[Foo] AS '(2 + 3) * -4'
+        //   MEMBER [Measures].[Foo] AS '(2 + 3) * -4'
+        // SELECT {{[Measures].[Foo], [Measures].[Unit Sales]}} ON COLUMNS,
+        //   Hierarchize(Union({[Store].[USA]},
+        //     Union(Hierarchize({[Store].[USA].Children}),
+        //       {[Store].[Mexico]}))) ON ROWS
+        // FROM [Sales]
+        final List<ParseTreeNode> withList = new ArrayList<ParseTreeNode>();
+        for (int i = 0; i < 2; i++) {
+            withList.add(
+                new WithMemberNode(
+                    null,
+                    IdentifierNode.ofNames("Measures", "Foo"),
+                    new CallNode(
+                        null, "*", Syntax.Infix,
+                        new CallNode(
+                            null, "()", Syntax.Parentheses,
+                            new CallNode(
+                                null, "+", Syntax.Infix,
+                                number(2), number(3))),
+                        new CallNode(
+                            null, "-", Syntax.Prefix, number(4))),
+                    Collections.<PropertyValueNode>emptyList()));
+        }
+        final SelectNode select =
+            new SelectNode(
+                null,
+                withList,
+                new ArrayList<AxisNode>(),
+                IdentifierNode.ofNames("Sales"),
+                new AxisNode(null, false, Axis.FILTER, null, null),
+                new ArrayList<IdentifierNode>());
+        select.getAxisList().add(
+            new AxisNode(
+                null, false, Axis.COLUMNS, null,
+                braces(
+                    braces(
+                        IdentifierNode.ofNames("Measures", "Foo"),
+                        IdentifierNode.ofNames("Measures", "Unit Sales")))));
+        select.getAxisList().add(
+            new AxisNode(
+                null, false, Axis.ROWS, null,
+                new CallNode(
+                    null, "Hierarchize", Syntax.Function,
+                    new CallNode(
+                        null, "Union", Syntax.Function,
+                        braces(IdentifierNode.ofNames("Store", "USA")),
+                        new CallNode(
+                            null, "Union", Syntax.Function,
+                            new CallNode(
+                                null, "Hierarchize", Syntax.Function,
+                                braces(
+                                    new CallNode(
+                                        null, "Children", Syntax.Property,
+                                        IdentifierNode.ofNames(
+                                            "Store", "USA")))),
+                            braces(
+                                IdentifierNode.ofNames(
+                                    "Store", "Mexico")))))));
+        final String before = select.toString();
+
+        final QueryOptimizer optimizer = new QueryOptimizer();
+        SelectNode after = optimizer.apply(select);
+        TestContext.assertEqualsVerbose(
+            TestContext.fold(
+                "WITH\n"
+                + "MEMBER [Measures].[Foo] AS\n"
+                + "    -20\n"
+                + "SELECT\n"
+                + "{[Measures].[Foo], [Measures].[Unit Sales]} ON COLUMNS,\n"
+                + "Hierarchize(Distinct({[Store].[USA], "
+                + "[Store].[USA].Children, [Store].[Mexico]})) ON ROWS\n"
+                + "FROM [Sales]"),
+            after.toString(),
+            true,
+            null);
+        assertEquals(before, select.toString());
+        assertEquals(
+            1, optimizer.getRewriteCount(QueryOptimizer.Rule.FLATTEN_UNIONS));
+        assertEquals(
+            1,
+            optimizer.getRewriteCount(
+                QueryOptimizer.Rule.REMOVE_DUPLICATE_WITH));
+        assertEquals(
+            0, optimizer.getRewriteCount(QueryOptimizer.Rule.NON_EMPTY));
+
+        // A frozen query gives a frozen, equal result.
+        final SelectNode frozenAfter = optimizer.apply(select.freeze());
+        assertTrue(frozenAfter.isFrozen());
+        assertEquals(after, frozenAfter);
+
+        // Rules that change the result apply only if asked for. The member
+        // in the crossjoin moves to the slicer.
+        final Cube cube =
+            getConnection().getOlapSchema().getCubes().get("Sales");
+        final MemberNode q2 =
+            new MemberNode(
+                null,
+                cube.lookupMember(
+                    IdentifierNode.ofNames("Time", "1997", "Q2")
+                        .getSegmentList()));
+        final MemberNode allCustomers =
+            new MemberNode(
+                null,
+                cube.lookupMember(
+                    IdentifierNode.ofNames("Customers", "All Customers")
+                        .getSegmentList()));
+        final SelectNode select2 =
+            new SelectNode(
+                null,
+                new ArrayList<ParseTreeNode>(),
+                new ArrayList<AxisNode>(),
+                IdentifierNode.ofNames("Sales"),
+                new AxisNode(null, false, Axis.FILTER, null, null),
+                new ArrayList<IdentifierNode>());
+        select2.getAxisList().add(
+            new AxisNode(
+                null, false, Axis.ROWS, null,
+                new CallNode(
+                    null, "CrossJoin", Syntax.Function,
+                    braces(q2),
+                    new CallNode(
+                        null, "Children", Syntax.Property,
+                        allCustomers))));
+        assertEquals(select2.toString(), optimizer.apply(select2).toString());
+        final QueryOptimizer optimizer2 =
+            new QueryOptimizer(
+                EnumSet.of(
+                    QueryOptimizer.Rule.SLICE_SINGLE_MEMBERS,
+                    QueryOptimizer.Rule.NON_EMPTY));
+        TestContext.assertEqualsVerbose(
+            TestContext.fold(
+                "SELECT\n"
+                + "NON EMPTY [Customers].[All Customers].Children ON ROWS\n"
+                + "FROM [Sales]\n"
+                + "WHERE [Time].[1997].[Q2]"),
+            optimizer2.apply(select2).toString(),
+            true,
+            null);
+        assertEquals(
+            1,
+            optimizer2.getRewriteCount(
+                QueryOptimizer.Rule.SLICE_SINGLE_MEMBERS));
+
+        // The name of a calculated member is an identifier, but does not
+        // stop the member from moving to the slicer.
+        select2.getWithList().add(
+            new WithMemberNode(
+                null,
+                IdentifierNode.ofNames("Measures", "Foo"),
+                number(1),
+                Collections.<PropertyValueNode>emptyList()));
+        TestContext.assertEqualsVerbose(
+            TestContext.fold(
+                "WITH\n"
+                + "MEMBER [Measures].[Foo] AS\n"
+                + "    1\n"
+                + "SELECT\n"
+                + "NON EMPTY [Customers].[All Customers].Children ON ROWS\n"
+                + "FROM [Sales]\n"
+                + "WHERE [Time].[1997].[Q2]"),
+            optimizer2.apply(select2).toString(),
+            true,
+            null);
+    }
+
+    private static LiteralNode number(int n) {
+        return LiteralNode.createNumeric(null, new BigDecimal(n), false);
+    }
+
+    private static CallNode braces(ParseTreeNode... args) {
+        return new CallNode(null, "{}", Syntax.Braces, args);
     }
 }
 